@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.benchmarks;
+
+import com.dmdirc.parser.common.MyInfo;
+import com.dmdirc.parser.irc.IRCParser;
+import com.dmdirc.parser.irc.IRCReader.ReadLine;
+
+import java.util.List;
+
+/**
+ * An {@link IRCParser} which is fed lines directly rather than reading them
+ * from a socket. Anything the parser tries to send is dropped.
+ */
+class BenchmarkParser extends IRCParser {
+
+    /**
+     * Creates a new parser, and brings it up to date with the preamble of the
+     * recorded traffic.
+     */
+    BenchmarkParser() {
+        this(Traffic.getPreamble());
+    }
+
+    /**
+     * Creates a new parser, and brings it up to date with the given lines.
+     *
+     * @param preamble The lines to process before the parser is used
+     */
+    BenchmarkParser(final List<String> preamble) {
+        super(getDetails());
+        preamble.forEach(this::process);
+    }
+
+    /**
+     * Processes a line as if it had been received from the server.
+     *
+     * @param line The line to process
+     */
+    void process(final String line) {
+        processLine(new ReadLine(line, tokeniseLine(line)));
+    }
+
+    /**
+     * Processes a line that has been read from the server.
+     *
+     * @param line The line to process
+     */
+    void process(final ReadLine line) {
+        processLine(line);
+    }
+
+    /**
+     * Gets the details the parser identifies itself with, using the nickname
+     * the recorded traffic is addressed to.
+     *
+     * @return The details to give a parser
+     */
+    static MyInfo getDetails() {
+        final MyInfo info = new MyInfo();
+        info.setNickname("me");
+        return info;
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.benchmarks;
+
+import com.dmdirc.parser.irc.IRCEncoding;
+import com.dmdirc.parser.irc.IRCStringConverter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the {@link IRCStringConverter} operations used for nickname and
+ * channel lookups.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CasemappingBenchmark {
+
+    /** The casemapping to use. */
+    @Param({"RFC1459", "STRICT_RFC1459", "ASCII"})
+    public IRCEncoding encoding;
+
+    /** Names to look up, in the case they were seen on the wire. */
+    private final String[] names = {
+        "Dataforce", "MD87", "Greboid", "ShaneMcC", "[Tomoe]", "beta_bot", "wrong^way", "{pixel}",
+        "#DMDirc", "#dmdirc-dev", "#Parser", "lower", "UPPERCASENICK",
+    };
+
+    /** Names as they would be typed by a user, differing in case. */
+    private String[] lookups;
+    /** The converter being measured. */
+    private IRCStringConverter converter;
+    /** Map keyed by converter keys, as used for known clients and channels. */
+    private Map<IRCStringConverter.Key, String> map;
+
+    @Setup
+    public void setup() {
+        converter = new IRCStringConverter(encoding);
+        lookups = new String[names.length];
+        map = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            lookups[i] = i % 2 == 0 ? names[i].toUpperCase() : names[i].toLowerCase();
+            map.put(converter.key(names[i]), names[i]);
+        }
+    }
+
+    @Benchmark
+    public void toLowerCase(final Blackhole blackhole) {
+        for (String name : names) {
+            blackhole.consume(converter.toLowerCase(name));
+        }
+    }
+
+    @Benchmark
+    public void equalsIgnoreCase(final Blackhole blackhole) {
+        for (int i = 0; i < names.length; i++) {
+            blackhole.consume(converter.equalsIgnoreCase(names[i], lookups[i]));
+        }
+    }
+
+    @Benchmark
+    public void keyLookup(final Blackhole blackhole) {
+        for (String lookup : lookups) {
+            blackhole.consume(map.get(converter.key(lookup)));
+        }
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.benchmarks;
+
+import com.dmdirc.parser.common.CallbackManager;
+import com.dmdirc.parser.common.HandlerTableDispatcher;
+import com.dmdirc.parser.events.DebugInfoEvent;
+import com.dmdirc.parser.events.NumericEvent;
+import com.dmdirc.parser.events.ParserEvent;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import net.engio.mbassy.listener.Handler;
+import net.engio.mbassy.listener.Listener;
+import net.engio.mbassy.listener.References;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+    /** Whether to dispatch with MBassador or a {@link HandlerTableDispatcher}. */
+    @Param({"mbassador", "table"})
+    public String dispatcher;
+
+    /** The manager being measured. */
+    private CallbackManager manager;
+    /** A numeric with a conditional handler. */
+    private NumericEvent whois;
+    /** A numeric which no conditional handler accepts. */
+    private NumericEvent other;
+    /** An event with only a catch-all handler. */
+    private DebugInfoEvent debug;
+
+    @Setup
+    public void setup() {
+        manager = "table".equals(dispatcher)
+                ? new CallbackManager(error -> {}, HandlerTableDispatcher::new)
+                : new CallbackManager(error -> {});
+        manager.subscribe(new WhoisListener());
+        manager.subscribe(new ClientListener());
+
+        final BenchmarkParser parser = new BenchmarkParser();
+        whois = new NumericEvent(parser, LocalDateTime.now(), 311,
+                new String[]{":server", "311", "me", "nick", "user", "host", "*", "Name"});
+        other = new NumericEvent(parser, LocalDateTime.now(), 1,
+                new String[]{":server", "001", "me", "Welcome"});
+        debug = new DebugInfoEvent(parser, LocalDateTime.now(), 1, "debug");
+    }
+
+    @Benchmark
+    public void publish(final Blackhole blackhole) {
+        blackhole.consume(manager.publish(whois));
+        blackhole.consume(manager.publish(other));
+        blackhole.consume(manager.publish(debug));
+    }
+
+    /** Handlers in the style of the parser's WHOIS handling. */
+    @Listener(references = References.Strong)
+    public static class WhoisListener {
+
+        @Handler(condition = "msg.numeric == 311")
+        public void handleUser(final NumericEvent event) {
+        }
+
+        @Handler(condition = "msg.numeric == 318")
+        public void handleEnd(final NumericEvent event) {
+        }
+
+        @Handler(condition = "msg.numeric == 319")
+        public void handleChannels(final NumericEvent event) {
+        }
+
+    }
+
+    /** Handlers in the style of a client listening to everything. */
+    @Listener(references = References.Strong)
+    public static class ClientListener {
+
+        @Handler
+        public void handleEvent(final ParserEvent event) {
+        }
+
+        @Handler
+        public void handleNumeric(final NumericEvent event) {
+        }
+
+    }
+
+}
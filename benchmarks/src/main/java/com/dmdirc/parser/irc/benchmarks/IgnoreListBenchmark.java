@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.benchmarks;
+
+import com.dmdirc.parser.common.IgnoreList;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures checking the hostmasks in the recorded traffic against an ignore
+ * list of varying size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IgnoreListBenchmark {
+
+    /** The number of entries in the ignore list. */
+    @Param({"10", "100", "1000"})
+    public int size;
+
+    /** The list being measured. */
+    private IgnoreList list;
+    /** The hostmasks to check. */
+    private List<String> hosts;
+
+    @Setup
+    public void setup() {
+        hosts = Traffic.getLines().stream()
+                .filter(line -> line.startsWith(":") && line.contains("!"))
+                .map(line -> line.substring(1, line.indexOf(' ')))
+                .collect(Collectors.toList());
+
+        // A mix of the sort of entries users add: exact masks, host bans,
+        // nick wildcards and the occasional hand-written regex.
+        final Random random = new Random(size);
+        list = new IgnoreList();
+        for (int i = 0; i < size; i++) {
+            switch (i % 4) {
+                case 0:
+                    list.add("spammer" + i + "!~spam@spam" + i + "\\.example\\.com");
+                    break;
+                case 1:
+                    list.add(".*@host-" + random.nextInt(100000) + "\\.dyn\\.example\\.org");
+                    break;
+                case 2:
+                    list.add("bot" + i + ".*!.*@.*");
+                    break;
+                default:
+                    list.add("^(troll|flood)[0-9]*" + i + "!.*");
+                    break;
+            }
+        }
+    }
+
+    @Benchmark
+    public void matches(final Blackhole blackhole) {
+        for (String host : hosts) {
+            blackhole.consume(list.matches(host));
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures ingesting a complete NAMES reply for a channel of varying size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NamesBenchmark {
+
+    /** The number of users in the channel. */
+    @Param({"100", "1000", "10000"})
+    public int members;
+
+    /** The parser to process lines with. */
+    private BenchmarkParser parser;
+    /** The 353 lines followed by the terminating 366. */
+    private List<String> lines;
+
+    @Setup
+    public void setup() {
+        parser = new BenchmarkParser();
+        parser.process(":me!~me@localhost JOIN :#big");
+
+        // Split the names across lines in the same way servers do.
+        lines = new ArrayList<>();
+        StringBuilder line = null;
+        for (int i = 0; i < members; i++) {
+            if (line == null) {
+                line = new StringBuilder(":irc.example.net 353 me = #big :");
+            } else {
+                line.append(' ');
+            }
+
+            line.append(i % 10 == 0 ? "@" : i % 4 == 0 ? "+" : "")
+                    .append("user").append(i).append("!~ident").append(i)
+                    .append("@host-").append(i).append(".example.net");
+
+            if (line.length() > 400) {
+                lines.add(line.toString());
+                line = null;
+            }
+        }
+        if (line != null) {
+            lines.add(line.toString());
+        }
+        lines.add(":irc.example.net 366 me #big :End of /NAMES list.");
+    }
+
+    /**
+     * Processes the full NAMES reply. The first 353 line empties the channel,
+     * so every invocation rebuilds the member list from scratch.
+     */
+    @Benchmark
+    public void names() {
+        for (String line : lines) {
+            parser.process(line);
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a netsplit and the following netjoin, where half the users across
+ * many channels quit and then rejoin the channels they were in.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NetsplitBenchmark {
+
+    /** The number of channels the local client is in. */
+    @Param({"10", "200"})
+    public int channels;
+
+    /** The number of users sharing channels with the local client. */
+    @Param({"1000", "10000"})
+    public int users;
+
+    /** The quit message used, either a split or a normal quit. */
+    @Param({"hub.example.net leaf.example.net", "Quit: Leaving"})
+    public String reason;
+
+    /** The parser to process lines with. */
+    private BenchmarkParser parser;
+    /** The QUIT lines for the split, followed by the JOIN lines for the rejoin. */
+    private List<String> lines;
+
+    @Setup
+    public void setup() {
+        parser = new BenchmarkParser();
+        lines = new ArrayList<>();
+
+        // Each user is in up to three channels.
+        final Random random = new Random(channels + users);
+        final List<List<String>> members = new ArrayList<>();
+        for (int i = 0; i < channels; i++) {
+            members.add(new ArrayList<>());
+        }
+        final List<String> quits = new ArrayList<>();
+        final List<String> joins = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            final String host = "user" + i + "!~ident@host-" + i + ".example.net";
+            for (int j = 0; j < 3; j++) {
+                final int channel = random.nextInt(channels);
+                if (!members.get(channel).contains(host)) {
+                    members.get(channel).add(host);
+                    if (i % 2 == 0) {
+                        joins.add(':' + host + " JOIN :#channel" + channel);
+                    }
+                }
+            }
+            if (i % 2 == 0) {
+                quits.add(':' + host + " QUIT :" + reason);
+            }
+        }
+
+        for (int i = 0; i < channels; i++) {
+            parser.process(":me!~me@localhost JOIN :#channel" + i);
+            for (String host : members.get(i)) {
+                parser.process(":irc.example.net 353 me = #channel" + i + " :" + host);
+            }
+            parser.process(":irc.example.net 366 me #channel" + i + " :End of /NAMES list.");
+        }
+
+        lines.addAll(quits);
+        lines.addAll(joins);
+    }
+
+    @Benchmark
+    public void splitAndRejoin() {
+        for (String line : lines) {
+            parser.process(line);
+        }
+        parser.getNetsplitTracker().flush();
+    }
+
+}
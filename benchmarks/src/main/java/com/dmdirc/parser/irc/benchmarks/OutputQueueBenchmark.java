@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.benchmarks;
+
+import com.dmdirc.parser.common.QueuePriority;
+import com.dmdirc.parser.irc.outputqueue.OutputQueue;
+import com.dmdirc.parser.irc.outputqueue.PriorityOutputQueue;
+import com.dmdirc.parser.irc.outputqueue.QueueItem;
+import com.dmdirc.parser.irc.outputqueue.SimpleRateLimitedOutputQueue;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures enqueuing a burst of lines at mixed priorities and draining them
+ * again in send order.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputQueueBenchmark {
+
+    /** Which queue implementation to use. */
+    @Param({"priority", "rateLimited"})
+    public String queue;
+
+    /** The number of lines in each burst. */
+    @Param({"10", "1000"})
+    public int burst;
+
+    /** Priorities to cycle through, weighted towards normal. */
+    private static final QueuePriority[] PRIORITIES = {
+        QueuePriority.NORMAL, QueuePriority.NORMAL, QueuePriority.LOW, QueuePriority.HIGH,
+        QueuePriority.NORMAL,
+    };
+
+    /** The queue being measured. */
+    private Queue target;
+    /** The lines to send. */
+    private String[] lines;
+
+    @Setup
+    public void setup() {
+        target = "priority".equals(queue) ? new PriorityQueue() : new RateLimitedQueue();
+        lines = new String[burst];
+        for (int i = 0; i < burst; i++) {
+            lines[i] = "PRIVMSG #dmdirc :line " + i;
+        }
+    }
+
+    @Benchmark
+    public void enqueueDequeue(final Blackhole blackhole) {
+        for (int i = 0; i < lines.length; i++) {
+            target.add(lines[i], PRIORITIES[i % PRIORITIES.length]);
+        }
+
+        QueueItem item;
+        while ((item = target.getQueue().poll()) != null) {
+            blackhole.consume(item.getLine());
+        }
+    }
+
+    /**
+     * Access to {@link OutputQueue#enqueue} and the backing queue, so lines can
+     * be queued without starting a sending thread.
+     */
+    private interface Queue {
+
+        void add(String line, QueuePriority priority);
+
+        BlockingQueue<QueueItem> getQueue();
+
+    }
+
+    /** A {@link PriorityOutputQueue} exposing its enqueue method. */
+    private static class PriorityQueue extends PriorityOutputQueue implements Queue {
+
+        @Override
+        public void add(final String line, final QueuePriority priority) {
+            enqueue(line, priority);
+        }
+
+    }
+
+    /** A {@link SimpleRateLimitedOutputQueue} exposing its enqueue method. */
+    private static class RateLimitedQueue extends SimpleRateLimitedOutputQueue
+            implements Queue {
+
+        @Override
+        public void add(final String line, final QueuePriority priority) {
+            enqueue(line, priority);
+        }
+
+    }
+
+}
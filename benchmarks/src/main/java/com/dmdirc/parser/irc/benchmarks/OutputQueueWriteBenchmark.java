@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.benchmarks;
+
+import com.dmdirc.parser.common.QueuePriority;
+import com.dmdirc.parser.irc.outputqueue.BatchingOutputQueue;
+import com.dmdirc.parser.irc.outputqueue.OutputQueue;
+import com.dmdirc.parser.irc.outputqueue.PriorityOutputQueue;
+
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures sending a burst of lines through an output queue until they have
+ * all been written to the stream, including the cost of flushing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputQueueWriteBenchmark {
+
+    /** Which queue implementation to use. */
+    @Param({"priority", "batching"})
+    public String queue;
+
+    /** The number of lines in each burst. */
+    @Param({"10", "1000"})
+    public int burst;
+
+    /** Priorities to cycle through, weighted towards normal. */
+    private static final QueuePriority[] PRIORITIES = {
+        QueuePriority.NORMAL, QueuePriority.NORMAL, QueuePriority.LOW, QueuePriority.HIGH,
+        QueuePriority.NORMAL,
+    };
+
+    /** The queue being measured. */
+    private OutputQueue target;
+    /** The stream the queue writes to. */
+    private FlushCountingStream stream;
+    /** The lines to send. */
+    private String[] lines;
+    /** The number of bytes each burst writes. */
+    private long burstBytes;
+
+    @Setup
+    public void setup() {
+        target = "priority".equals(queue) ? new PriorityOutputQueue() : new BatchingOutputQueue();
+        stream = new FlushCountingStream();
+        target.setOutputStream(stream);
+        lines = new String[burst];
+        for (int i = 0; i < burst; i++) {
+            lines[i] = "PRIVMSG #dmdirc :line " + i;
+            burstBytes += (lines[i] + "\r\n").getBytes(Charset.defaultCharset()).length;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        target.clearQueue();
+    }
+
+    @Benchmark
+    public long sendBurst() {
+        final long target = stream.written.get() + burstBytes;
+        for (int i = 0; i < lines.length; i++) {
+            this.target.sendLine(lines[i], PRIORITIES[i % PRIORITIES.length]);
+        }
+
+        while (stream.written.get() < target) {
+            Thread.yield();
+        }
+        return stream.flushes.get();
+    }
+
+    /**
+     * A stream which discards its output, standing in for a socket where each
+     * flush is a system call.
+     */
+    private static class FlushCountingStream extends OutputStream {
+
+        /** Number of bytes written. */
+        private final AtomicLong written = new AtomicLong();
+        /** Number of flushes. */
+        private final AtomicLong flushes = new AtomicLong();
+
+        @Override
+        public void write(final int b) {
+            written.incrementAndGet();
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            written.addAndGet(len);
+        }
+
+        @Override
+        public void flush() {
+            flushes.incrementAndGet();
+        }
+
+    }
+
+}
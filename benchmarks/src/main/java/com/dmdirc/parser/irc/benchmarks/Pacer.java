@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Works out when each line of a replay is due, so that lines are delivered
+ * at a constant rate regardless of how long each one takes to send.
+ */
+final class Pacer {
+
+    /** Nanoseconds between lines, or 0 to send as fast as possible. */
+    private final long interval;
+    /** The time the first line was due. */
+    private long start;
+
+    /**
+     * Creates a new pacer.
+     *
+     * @param rate The number of lines to send per second, or 0 for no limit
+     */
+    Pacer(final int rate) {
+        this.interval = rate > 0 ? TimeUnit.SECONDS.toNanos(1) / rate : 0;
+    }
+
+    /**
+     * Starts the clock. The first line is due immediately.
+     */
+    void start() {
+        start = System.nanoTime();
+    }
+
+    /**
+     * Gets the time the given line is due. Without a rate limit every line
+     * is due immediately, so latencies include the time spent waiting for
+     * earlier lines to be processed.
+     *
+     * @param line The index of the line
+     * @return The time the line is due, in nanoseconds
+     */
+    long getDueTime(final int line) {
+        return start + line * interval;
+    }
+
+    /**
+     * Determines whether the given line is due to be sent yet.
+     *
+     * @param line The index of the line
+     * @return True if the line is due
+     */
+    boolean isDue(final int line) {
+        return System.nanoTime() - getDueTime(line) >= 0;
+    }
+
+    /**
+     * Waits until the given line is due.
+     *
+     * @param line The index of the line
+     */
+    void awaitDue(final int line) {
+        long remaining;
+        while ((remaining = getDueTime(line) - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return interval == 0 ? "unlimited"
+                : String.format("%d lines/s", TimeUnit.SECONDS.toNanos(1) / interval);
+    }
+
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.benchmarks;
+
+import com.dmdirc.parser.common.ChannelListModeItem;
+import com.dmdirc.parser.interfaces.ChannelClientInfo;
+import com.dmdirc.parser.irc.IRCChannelInfo;
+import com.dmdirc.parser.irc.IRCParser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * A snapshot of the channels a parser is tracking, used to check that
+ * replayed traffic left the parser in the expected state.
+ */
+final class ParserState {
+
+    /** The channels, by lower case name. */
+    private final SortedMap<String, Channel> channels = new TreeMap<>();
+
+    /**
+     * Takes a snapshot of the channels tracked by the given parser.
+     *
+     * @param parser The parser to take a snapshot of
+     * @return The parser's current state
+     */
+    static ParserState of(final IRCParser parser) {
+        final ParserState state = new ParserState();
+        final String listModes = parser.getListChannelModes();
+        for (IRCChannelInfo info : parser.getChannels()) {
+            final Channel channel = state.addChannel(info.getName(), info.getModes());
+            for (ChannelClientInfo client : info.getChannelClients()) {
+                channel.addMember(client.getAllModesPrefix() + client.getClient().getNickname());
+            }
+            for (char mode : listModes.toCharArray()) {
+                final Collection<ChannelListModeItem> items = info.getListMode(mode);
+                if (items != null) {
+                    items.forEach(item -> channel.addListItem(mode, item.getItem()));
+                }
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Adds a channel to the snapshot.
+     *
+     * @param name The name of the channel
+     * @param modes The channel's modes, as given by {@link IRCChannelInfo#getModes()}
+     * @return The new channel, to which members and list items may be added
+     */
+    Channel addChannel(final String name, final String modes) {
+        final Channel channel = new Channel(name, normaliseModes(modes));
+        channels.put(name.toLowerCase(Locale.ENGLISH), channel);
+        return channel;
+    }
+
+    /**
+     * Gets the number of channels in the snapshot.
+     *
+     * @return The number of channels
+     */
+    int getChannelCount() {
+        return channels.size();
+    }
+
+    /**
+     * Compares this state with the state that was expected. Only the
+     * expected channels are compared, so that scenarios need not describe
+     * every channel the parser is in.
+     *
+     * @param expected The expected state
+     * @return A description of each difference found, or an empty list
+     */
+    List<String> compare(final ParserState expected) {
+        final List<String> differences = new ArrayList<>();
+        for (Map.Entry<String, Channel> entry : expected.channels.entrySet()) {
+            final Channel want = entry.getValue();
+            final Channel got = channels.get(entry.getKey());
+            if (got == null) {
+                differences.add(want.name + ": missing");
+                continue;
+            }
+            if (!want.modes.equals(got.modes)) {
+                differences.add(String.format("%s: modes are %s, expected %s", want.name,
+                        got.modes, want.modes));
+            }
+            compare(differences, want.name + " members", want.members, got.members);
+            for (char mode : want.lists.keySet()) {
+                compare(differences, want.name + " +" + mode + " list", want.lists.get(mode),
+                        got.lists.getOrDefault(mode, new TreeSet<>()));
+            }
+        }
+        return differences;
+    }
+
+    /**
+     * Sorts a mode string as given by {@link IRCChannelInfo#getModes()}, so
+     * that the order the parser happens to store modes in doesn't matter.
+     * Modes with parameters always follow boolean modes, with their
+     * parameters in the same order.
+     *
+     * @param modes The mode string to be normalised
+     * @return The mode string with modes in alphabetical order
+     */
+    private static String normaliseModes(final String modes) {
+        final String[] parts = modes.split(" ");
+        final int booleans = parts[0].length() - (parts.length - 1);
+        final char[] flags = parts[0].substring(1, booleans).toCharArray();
+        Arrays.sort(flags);
+
+        final SortedMap<Character, String> params = new TreeMap<>();
+        for (int i = 1; i < parts.length; i++) {
+            params.put(parts[0].charAt(booleans + i - 1), parts[i]);
+        }
+
+        final StringBuilder result = new StringBuilder("+").append(flags);
+        params.keySet().forEach(result::append);
+        params.values().forEach(param -> result.append(' ').append(param));
+        return result.toString();
+    }
+
+    private static void compare(final List<String> differences, final String what,
+            final SortedSet<String> want, final SortedSet<String> got) {
+        if (want.equals(got)) {
+            return;
+        }
+        final SortedSet<String> missing = new TreeSet<>(want);
+        missing.removeAll(got);
+        final SortedSet<String> unexpected = new TreeSet<>(got);
+        unexpected.removeAll(want);
+        differences.add(String.format("%s: %d missing %s, %d unexpected %s", what,
+                missing.size(), abbreviate(missing), unexpected.size(), abbreviate(unexpected)));
+    }
+
+    private static String abbreviate(final SortedSet<String> values) {
+        final List<String> first = new ArrayList<>();
+        for (String value : values) {
+            if (first.size() == 5) {
+                first.add("...");
+                break;
+            }
+            first.add(value);
+        }
+        return first.toString();
+    }
+
+    /** A snapshot of a single channel. */
+    static final class Channel {
+
+        /** The name of the channel. */
+        private final String name;
+        /** The channel's modes. */
+        private final String modes;
+        /** The members of the channel, each prefixed with their modes. */
+        private final SortedSet<String> members = new TreeSet<>();
+        /** The items in each of the channel's list modes. */
+        private final SortedMap<Character, SortedSet<String>> lists = new TreeMap<>();
+
+        private Channel(final String name, final String modes) {
+            this.name = name;
+            this.modes = modes;
+        }
+
+        /**
+         * Adds a member to the channel.
+         *
+         * @param member The member's nickname, prefixed with all of their modes
+         * @return This channel
+         */
+        Channel addMember(final String member) {
+            members.add(member);
+            return this;
+        }
+
+        /**
+         * Adds an item to one of the channel's list modes.
+         *
+         * @param mode The list mode
+         * @param item The item, such as a ban mask
+         * @return This channel
+         */
+        Channel addListItem(final char mode, final String item) {
+            lists.computeIfAbsent(mode, k -> new TreeSet<>()).add(item);
+            return this;
+        }
+
+    }
+
+}
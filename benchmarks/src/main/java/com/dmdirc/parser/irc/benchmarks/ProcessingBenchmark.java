@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.benchmarks;
+
+import com.dmdirc.parser.irc.IRCParser;
+import com.dmdirc.parser.irc.ProcessingManager;
+import com.dmdirc.parser.irc.ProcessorNotFoundException;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures dispatching the recorded session through the parser, both from the
+ * {@link ProcessingManager} onwards and for the whole of line processing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessingBenchmark {
+
+    /** The parser to process lines with. */
+    private BenchmarkParser parser;
+    /** The raw lines of the session. */
+    private List<String> lines;
+    /** Pre-tokenised lines of the session which have a processor. */
+    private String[][] tokens;
+
+    @Setup
+    public void setup() {
+        parser = new BenchmarkParser();
+        lines = Traffic.getSession();
+        tokens = lines.stream()
+                .map(IRCParser::tokeniseLine)
+                .filter(this::isProcessed)
+                .toArray(String[][]::new);
+    }
+
+    /**
+     * Dispatches each pre-tokenised line via {@link ProcessingManager#process}.
+     *
+     * @throws ProcessorNotFoundException Never, as unhandled lines are skipped
+     */
+    @Benchmark
+    public void process() throws ProcessorNotFoundException {
+        final ProcessingManager manager = parser.getProcessingManager();
+        final LocalDateTime now = LocalDateTime.now();
+        for (String[] line : tokens) {
+            manager.process(now, line[1], line);
+        }
+    }
+
+    /**
+     * Processes each raw line as if it had just been read from the server.
+     */
+    @Benchmark
+    public void processLine() {
+        for (String line : lines) {
+            parser.process(line);
+        }
+    }
+
+    private boolean isProcessed(final String... line) {
+        try {
+            return line.length > 1 && line[0].charAt(0) == ':'
+                    && parser.getProcessingManager().getProcessor(line[1]) != null;
+        } catch (ProcessorNotFoundException ex) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.benchmarks;
+
+import com.dmdirc.parser.common.SystemEncoder;
+import com.dmdirc.parser.irc.BufferedIRCReader;
+import com.dmdirc.parser.irc.IRCReader;
+import com.dmdirc.parser.irc.IRCReader.ReadLine;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures reading and tokenising the recorded traffic from a stream.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReaderBenchmark {
+
+    /** Which reader implementation to use. */
+    @Param({"plain", "buffered"})
+    public String reader;
+
+    /** The traffic to read. */
+    private byte[] traffic;
+
+    @Setup
+    public void setup() {
+        traffic = Traffic.getBytes();
+    }
+
+    /**
+     * Reads every line of the recorded traffic.
+     *
+     * @param blackhole Blackhole to consume the lines
+     * @throws IOException Never, as the traffic is read from memory
+     */
+    @Benchmark
+    public void readLine(final Blackhole blackhole) throws IOException {
+        final IRCReader ircReader = createReader();
+        ReadLine line;
+        while ((line = ircReader.readLine()) != null) {
+            blackhole.consume(line);
+        }
+    }
+
+    private IRCReader createReader() {
+        final ByteArrayInputStream stream = new ByteArrayInputStream(traffic);
+        return "buffered".equals(reader)
+                ? new BufferedIRCReader(stream, new SystemEncoder(), StandardCharsets.UTF_8)
+                : new IRCReader(stream, new SystemEncoder(), StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.benchmarks;
+
+import com.dmdirc.parser.irc.benchmarks.ReplayHarness.Transport;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Replays recorded or generated traffic into a parser and reports on its
+ * throughput, latency, allocation and final state.
+ *
+ * <p>Usage: {@code Replay [--loopback] [--rate=N] [--warmup=N] [--iterations=N]
+ * [scenario...]}, where each scenario is one of:
+ * <ul>
+ * <li>{@code traffic} - the recorded traffic used by the benchmarks</li>
+ * <li>{@code netsplit[:channels[:users]]} - a netsplit and netjoin</li>
+ * <li>{@code names[:members]} - a giant NAMES reply</li>
+ * <li>{@code bans[:count]} - a flood of bans being set and removed</li>
+ * <li>the path of a capture file with one raw line per line</li>
+ * </ul>
+ *
+ * <p>Exits with status 1 if any scenario leaves the parser in the wrong
+ * state, so it can be used on CI machines without a network.
+ */
+public final class Replay {
+
+    private Replay() {
+        // Shouldn't be instantiated
+    }
+
+    public static void main(final String... args) throws IOException, InterruptedException {
+        Transport transport = Transport.IN_MEMORY;
+        int rate = 0;
+        int warmup = 2;
+        int iterations = 1;
+        final List<Scenario> scenarios = new ArrayList<>();
+
+        for (String arg : args) {
+            if ("--loopback".equals(arg)) {
+                transport = Transport.LOOPBACK;
+            } else if (arg.startsWith("--rate=")) {
+                rate = Integer.parseInt(arg.substring(7));
+            } else if (arg.startsWith("--warmup=")) {
+                warmup = Integer.parseInt(arg.substring(9));
+            } else if (arg.startsWith("--iterations=")) {
+                iterations = Integer.parseInt(arg.substring(13));
+            } else if (arg.startsWith("--")) {
+                System.err.println("Unknown option: " + arg);
+                System.exit(2);
+            } else {
+                scenarios.add(Scenarios.forName(arg));
+            }
+        }
+
+        if (scenarios.isEmpty()) {
+            for (String name : Arrays.asList("traffic", "netsplit", "names", "bans")) {
+                scenarios.add(Scenarios.forName(name));
+            }
+        }
+
+        final ReplayHarness harness = new ReplayHarness(transport, rate);
+        boolean failed = false;
+        for (Scenario scenario : scenarios) {
+            for (int i = 0; i < warmup; i++) {
+                harness.run(scenario);
+            }
+            for (int i = 0; i < iterations; i++) {
+                final ReplayResult result = harness.run(scenario);
+                System.out.print(result);
+                failed |= !result.getDifferences().isEmpty();
+            }
+        }
+
+        System.exit(failed ? 1 : 0);
+    }
+
+}
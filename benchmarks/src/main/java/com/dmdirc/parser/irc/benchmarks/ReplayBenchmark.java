@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.benchmarks;
+
+import com.dmdirc.parser.common.SystemEncoder;
+import com.dmdirc.parser.irc.BufferedIRCReader;
+import com.dmdirc.parser.irc.IRCReader.ReadLine;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures replaying whole {@link Scenarios} from memory into a fresh parser,
+ * from registration through to the final state. See {@link Replay} for
+ * latency and state checks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReplayBenchmark {
+
+    /** The scenario to replay, as understood by {@link Scenarios#forName(String)}. */
+    @Param({"traffic", "netsplit:20:1000", "names:10000", "bans:1000"})
+    public String scenario;
+
+    /** The raw bytes of the scenario. */
+    private byte[] bytes;
+    /** The parser to replay into, recreated for each replay. */
+    private BenchmarkParser parser;
+
+    @Setup
+    public void setup() throws IOException {
+        bytes = Scenarios.forName(scenario).getBytes();
+    }
+
+    @Setup(Level.Invocation)
+    public void createParser() {
+        parser = new BenchmarkParser(Collections.emptyList());
+    }
+
+    @Benchmark
+    public BenchmarkParser replay() throws IOException {
+        final BufferedIRCReader reader = new BufferedIRCReader(new ByteArrayInputStream(bytes),
+                new SystemEncoder(), StandardCharsets.UTF_8);
+        ReadLine line;
+        while ((line = reader.readLine()) != null) {
+            parser.process(line);
+        }
+        return parser;
+    }
+
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.benchmarks;
+
+import com.dmdirc.parser.common.SystemEncoder;
+import com.dmdirc.parser.irc.BufferedIRCReader;
+import com.dmdirc.parser.irc.IRCParser;
+import com.dmdirc.parser.irc.IRCReader.ReadLine;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a {@link Scenario} into a parser and measures how it copes.
+ *
+ * <p>Lines can be delivered in memory, by reading them from a buffer on the
+ * current thread, or over a real connection to a {@link ReplayServer} on the
+ * loopback interface. Either way lines are read using
+ * {@link BufferedIRCReader}, and can be paced to arrive at a fixed rate.
+ *
+ * <p>The latency of each line is measured from when it was due to be sent
+ * until the parser has finished processing it, including raising any events.
+ * Allocation is measured on the thread processing lines.
+ */
+final class ReplayHarness {
+
+    /** How lines are delivered to the parser. */
+    enum Transport {
+        /** Lines are read from memory on the current thread. */
+        IN_MEMORY,
+        /** Lines are sent over a loopback connection and read by the parser's own thread. */
+        LOOPBACK,
+    }
+
+    /** Line sent after the scenario, so we know when the parser has caught up. */
+    private static final String SENTINEL = "PING :replay-complete";
+    /** Time to wait for a loopback replay to finish. */
+    private static final long TIMEOUT_SECONDS = 300;
+    /** How lines are delivered to the parser. */
+    private final Transport transport;
+    /** The number of lines to deliver per second, or 0 for no limit. */
+    private final int rate;
+
+    /**
+     * Creates a new harness.
+     *
+     * @param transport How lines are delivered to the parser
+     * @param rate The number of lines to deliver per second, or 0 for no limit
+     */
+    ReplayHarness(final Transport transport, final int rate) {
+        this.transport = transport;
+        this.rate = rate;
+    }
+
+    /**
+     * Replays a scenario into a new parser.
+     *
+     * @param scenario The scenario to replay
+     * @return The measurements taken
+     * @throws IOException If the lines couldn't be delivered
+     * @throws InterruptedException If interrupted while waiting for the parser
+     */
+    ReplayResult run(final Scenario scenario) throws IOException, InterruptedException {
+        return transport == Transport.IN_MEMORY ? runInMemory(scenario) : runLoopback(scenario);
+    }
+
+    private ReplayResult runInMemory(final Scenario scenario) throws IOException {
+        final BenchmarkParser parser = new BenchmarkParser(Collections.emptyList());
+        final BufferedIRCReader reader = new BufferedIRCReader(
+                new ByteArrayInputStream(scenario.getBytes()), new SystemEncoder(),
+                StandardCharsets.UTF_8);
+        final int count = scenario.getLines().size();
+        final long[] due = new long[count];
+        final long[] done = new long[count];
+        final Pacer pacer = new Pacer(rate);
+
+        final long allocated = getAllocatedBytes();
+        pacer.start();
+        for (int i = 0; i < count; i++) {
+            pacer.awaitDue(i);
+            due[i] = pacer.getDueTime(i);
+            parser.process(reader.readLine());
+            done[i] = System.nanoTime();
+        }
+        final long allocation = allocated < 0 ? -1 : getAllocatedBytes() - allocated;
+
+        return new ReplayResult(scenario, transport + ", " + pacer, due, done, allocation,
+                ParserState.of(parser));
+    }
+
+    private ReplayResult runLoopback(final Scenario scenario)
+            throws IOException, InterruptedException {
+        final List<String> lines = new ArrayList<>(scenario.getLines());
+        lines.add(SENTINEL);
+        final Pacer pacer = new Pacer(rate);
+
+        try (ReplayServer server = new ReplayServer(lines, pacer)) {
+            final RecordingParser parser = new RecordingParser(getUri(server), lines.size());
+            parser.setBufferedReader(true);
+            parser.connect();
+            try {
+                if (!parser.complete.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    throw new IOException(String.format("Timed out after %d of %d lines",
+                            parser.count, lines.size()), server.getError());
+                }
+
+                final int count = scenario.getLines().size();
+                final long[] due = Arrays.copyOf(server.getDueTimes(), count);
+                final long[] done = Arrays.copyOf(parser.processed, count);
+
+                return new ReplayResult(scenario, transport + ", " + pacer, due, done,
+                        parser.allocation, ParserState.of(parser));
+            } finally {
+                parser.disconnect("");
+            }
+        }
+    }
+
+    private static URI getUri(final ReplayServer server) throws IOException {
+        try {
+            return new URI("irc", null, InetAddress.getLoopbackAddress().getHostAddress(),
+                    server.getPort(), null, null, null);
+        } catch (URISyntaxException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Gets the number of bytes allocated by the current thread so far.
+     *
+     * @return The number of bytes allocated, or -1 if the JVM can't tell us
+     */
+    private static long getAllocatedBytes() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (threads.isThreadAllocatedMemorySupported()
+                    && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /** A parser which records when it finishes processing each line it receives. */
+    private static final class RecordingParser extends IRCParser {
+
+        /** The time each line finished being processed. */
+        private final long[] processed;
+        /** Released once the last line has been processed. */
+        private final CountDownLatch complete = new CountDownLatch(1);
+        /** The number of lines processed so far. */
+        private volatile int count;
+        /** Bytes allocated by the parser's thread before the first line was processed. */
+        private long allocated;
+        /** Bytes allocated while processing lines, or -1 if unknown. */
+        private long allocation = -1;
+
+        RecordingParser(final URI uri, final int lines) {
+            super(BenchmarkParser.getDetails(), uri);
+            this.processed = new long[lines];
+        }
+
+        @Override
+        protected void processLine(final ReadLine line) {
+            final int index = count;
+            if (index == 0) {
+                allocated = getAllocatedBytes();
+            }
+
+            super.processLine(line);
+
+            if (index < processed.length) {
+                processed[index] = System.nanoTime();
+                count = index + 1;
+                if (count == processed.length) {
+                    allocation = allocated < 0 ? -1 : getAllocatedBytes() - allocated;
+                    complete.countDown();
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.benchmarks;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The measurements taken while replaying a {@link Scenario}.
+ */
+final class ReplayResult {
+
+    /** The percentiles included in reports. */
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    /** The scenario that was replayed. */
+    private final Scenario scenario;
+    /** Description of how the scenario was replayed. */
+    private final String description;
+    /** The number of lines replayed. */
+    private final int lines;
+    /** Time from the first line being due to the last being processed, in nanoseconds. */
+    private final long elapsed;
+    /** The latency of each line, in ascending order, in nanoseconds. */
+    private final long[] latencies;
+    /** Bytes allocated while processing lines, or -1 if unknown. */
+    private final long allocated;
+    /** The state the parser was left in. */
+    private final ParserState state;
+    /** Differences from the expected state, if there is one. */
+    private final List<String> differences;
+
+    /**
+     * Creates a new result.
+     *
+     * @param scenario The scenario that was replayed
+     * @param description Description of how the scenario was replayed
+     * @param due The time each line was due to be delivered
+     * @param done The time each line finished being processed
+     * @param allocated Bytes allocated while processing lines, or -1 if unknown
+     * @param state The state the parser was left in
+     */
+    ReplayResult(final Scenario scenario, final String description, final long[] due,
+            final long[] done, final long allocated, final ParserState state) {
+        this.scenario = scenario;
+        this.description = description;
+        this.lines = due.length;
+        this.elapsed = lines == 0 ? 0 : done[lines - 1] - due[0];
+        this.latencies = new long[lines];
+        for (int i = 0; i < lines; i++) {
+            latencies[i] = done[i] - due[i];
+        }
+        Arrays.sort(latencies);
+        this.allocated = allocated;
+        this.state = state;
+        final ParserState expected = scenario.getExpected();
+        this.differences = expected == null ? Collections.emptyList() : state.compare(expected);
+    }
+
+    int getLines() {
+        return lines;
+    }
+
+    long getElapsedNanos() {
+        return elapsed;
+    }
+
+    double getLinesPerSecond() {
+        return elapsed == 0 ? 0 : lines * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    /**
+     * Gets the latency below which the given percentage of lines were
+     * processed.
+     *
+     * @param percentile The percentile to get, between 0 and 100
+     * @return The latency, in nanoseconds
+     */
+    long getLatency(final double percentile) {
+        if (lines == 0) {
+            return 0;
+        }
+        final int index = (int) Math.ceil(percentile / 100 * lines) - 1;
+        return latencies[Math.max(0, Math.min(lines - 1, index))];
+    }
+
+    long getAllocatedBytes() {
+        return allocated;
+    }
+
+    ParserState getState() {
+        return state;
+    }
+
+    /**
+     * Gets the differences between the state the parser was left in and the
+     * scenario's expected state.
+     *
+     * @return The differences, or an empty list if the state was correct or
+     * the scenario has no expected state
+     */
+    List<String> getDifferences() {
+        return differences;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append(String.format("%s (%s): %d lines in %.3f s, %.0f lines/s%n",
+                scenario.getName(), description, lines, elapsed / 1e9, getLinesPerSecond()));
+
+        builder.append("  latency:");
+        for (double percentile : PERCENTILES) {
+            builder.append(String.format(" p%s %s", formatPercentile(percentile),
+                    formatNanos(getLatency(percentile))));
+        }
+        builder.append(String.format(" max %s%n", formatNanos(getLatency(100))));
+
+        if (allocated >= 0) {
+            builder.append(String.format("  allocated: %.1f MB, %d bytes/line%n",
+                    allocated / 1048576.0, lines == 0 ? 0 : allocated / lines));
+        }
+
+        if (scenario.getExpected() == null) {
+            builder.append(String.format("  state: %d channels, not checked%n",
+                    state.getChannelCount()));
+        } else if (differences.isEmpty()) {
+            builder.append(String.format("  state: %d channels, as expected%n",
+                    state.getChannelCount()));
+        } else {
+            builder.append(String.format("  state: %d differences%n", differences.size()));
+            differences.forEach(difference -> builder.append("    ").append(difference)
+                    .append(System.lineSeparator()));
+        }
+        return builder.toString();
+    }
+
+    private static String formatPercentile(final double percentile) {
+        return percentile == Math.floor(percentile) ? String.valueOf((int) percentile)
+                : String.valueOf(percentile);
+    }
+
+    private static String formatNanos(final long nanos) {
+        if (nanos < TimeUnit.MICROSECONDS.toNanos(1)) {
+            return nanos + "ns";
+        } else if (nanos < TimeUnit.MILLISECONDS.toNanos(1)) {
+            return String.format("%.1fus", nanos / 1e3);
+        } else {
+            return String.format("%.1fms", nanos / 1e6);
+        }
+    }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.benchmarks;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+/**
+ * A server on the loopback interface which accepts a single connection and
+ * sends it a list of lines at a controlled rate. Anything sent by the client
+ * is read and discarded.
+ */
+final class ReplayServer implements Closeable {
+
+    /** The socket listening for the client. */
+    private final ServerSocket serverSocket;
+    /** The lines to send, without line endings. */
+    private final List<String> lines;
+    /** Paces the lines being sent. */
+    private final Pacer pacer;
+    /** The time each line was due to be sent, in nanoseconds. */
+    private final long[] dueTimes;
+    /** The thread sending lines to the client. */
+    private final Thread thread;
+
+    /** The connection to the client, once accepted. */
+    @Nullable private volatile Socket socket;
+    /** The error that stopped lines being sent, if any. */
+    @Nullable private volatile IOException error;
+
+    /**
+     * Creates a new server, listening on an ephemeral port.
+     *
+     * @param lines The lines to send, without line endings
+     * @param pacer The pacer to send lines at
+     * @throws IOException If the server socket can't be opened
+     */
+    ReplayServer(final List<String> lines, final Pacer pacer) throws IOException {
+        this.serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        this.lines = lines;
+        this.pacer = pacer;
+        this.dueTimes = new long[lines.size()];
+        this.thread = new Thread(this::serve, "Replay server");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Gets the port the server is listening on.
+     *
+     * @return The server's port
+     */
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Gets the time each line was due to be sent. Only valid once the client
+     * has received every line.
+     *
+     * @return The due time of each line, in nanoseconds
+     */
+    long[] getDueTimes() {
+        return dueTimes;
+    }
+
+    /**
+     * Gets the error that stopped lines being sent, if any.
+     *
+     * @return The error, or null if there wasn't one
+     */
+    @Nullable
+    IOException getError() {
+        return error;
+    }
+
+    private void serve() {
+        try (Socket client = serverSocket.accept()) {
+            socket = client;
+            // Paced lines are written one at a time, and shouldn't wait for acks.
+            client.setTcpNoDelay(true);
+            final Thread reader = new Thread(() -> discard(client), "Replay server reader");
+            reader.setDaemon(true);
+            reader.start();
+
+            final OutputStream out = new BufferedOutputStream(client.getOutputStream());
+            pacer.start();
+            for (int i = 0; i < lines.size(); i++) {
+                if (!pacer.isDue(i)) {
+                    // Make sure the client has everything it's due before waiting.
+                    out.flush();
+                    pacer.awaitDue(i);
+                }
+                dueTimes[i] = pacer.getDueTime(i);
+                out.write(lines.get(i).getBytes(StandardCharsets.UTF_8));
+                out.write('\r');
+                out.write('\n');
+            }
+            out.flush();
+
+            // Keep the connection open until we're closed.
+            reader.join();
+        } catch (IOException ex) {
+            error = ex;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void discard(final Socket client) {
+        final byte[] buffer = new byte[4096];
+        try (InputStream in = client.getInputStream()) {
+            while (in.read(buffer) != -1) {
+                // Discard everything the client sends.
+            }
+        } catch (IOException ex) {
+            // The connection has been closed.
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        final Socket client = socket;
+        if (client != null) {
+            client.close();
+        }
+        try {
+            thread.join(1000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nullable;
+
+/**
+ * Server traffic to be replayed into a parser, along with the state the
+ * parser should be left in.
+ */
+final class Scenario {
+
+    /** The name of the scenario, used in reports. */
+    private final String name;
+    /** The lines sent by the server, without line endings. */
+    private final List<String> lines;
+    /** The state the parser should be left in, if known. */
+    @Nullable private final ParserState expected;
+
+    /**
+     * Creates a new scenario.
+     *
+     * @param name The name of the scenario, used in reports
+     * @param lines The lines sent by the server, without line endings
+     * @param expected The state the parser should be left in, if known
+     */
+    Scenario(final String name, final List<String> lines, @Nullable final ParserState expected) {
+        this.name = name;
+        this.lines = Collections.unmodifiableList(lines);
+        this.expected = expected;
+    }
+
+    /**
+     * Loads a capture file containing one raw line per line, as sent by the
+     * server. Blank lines are ignored.
+     *
+     * @param path The path of the capture file
+     * @return A scenario replaying the capture, with no expected state
+     * @throws IOException If the file can't be read
+     */
+    static Scenario fromCapture(final Path path) throws IOException {
+        return new Scenario(path.getFileName().toString(),
+                Files.readAllLines(path, StandardCharsets.UTF_8).stream()
+                        .filter(line -> !line.isEmpty())
+                        .collect(Collectors.toList()),
+                null);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    List<String> getLines() {
+        return lines;
+    }
+
+    @Nullable
+    ParserState getExpected() {
+        return expected;
+    }
+
+    /**
+     * Gets the traffic as it would be received from the server.
+     *
+     * @param extra Additional lines to send after the scenario's own
+     * @return The raw bytes of all lines, each terminated with CRLF
+     */
+    byte[] getBytes(final String... extra) {
+        final StringBuilder builder = new StringBuilder();
+        for (String line : lines) {
+            builder.append(line).append("\r\n");
+        }
+        for (String line : extra) {
+            builder.append(line).append("\r\n");
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+}
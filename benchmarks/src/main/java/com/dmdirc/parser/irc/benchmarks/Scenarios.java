@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic scenarios for traffic that is hard to capture: large
+ * netsplits, giant NAMES replies and floods of bans.
+ *
+ * <p>Every scenario starts with the registration from the recorded
+ * {@link Traffic}, so the server's 005 settings are the same throughout.
+ */
+final class Scenarios {
+
+    /** The server all synthetic replies come from. */
+    private static final String SERVER = ":irc.example.net";
+    /** The maximum length of the names in a single NAMES line. */
+    private static final int NAMES_LENGTH = 400;
+    /** The number of modes the server sends per MODE line, matching its 005. */
+    private static final int MODES = 4;
+
+    private Scenarios() {
+        // Shouldn't be instantiated
+    }
+
+    /**
+     * Gets a scenario by name. Names are one of {@code traffic},
+     * {@code netsplit[:channels[:users]]}, {@code names[:members]} or
+     * {@code bans[:count]}; anything else is treated as the path of a
+     * capture file.
+     *
+     * @param name The name of the scenario and its parameters, or a file path
+     * @return The scenario
+     * @throws IOException If a capture file can't be read
+     */
+    static Scenario forName(final String name) throws IOException {
+        final String[] parts = name.split(":");
+        switch (parts[0]) {
+            case "traffic":
+                return traffic();
+            case "netsplit":
+                return netsplit(getInt(parts, 1, 200), getInt(parts, 2, 10000));
+            case "names":
+                return giantNames(getInt(parts, 1, 10000));
+            case "bans":
+                return banFlood(getInt(parts, 1, 5000));
+            default:
+                return Scenario.fromCapture(Paths.get(name));
+        }
+    }
+
+    /**
+     * Gets the recorded {@link Traffic}.
+     *
+     * @return A scenario replaying the recorded traffic, with no expected state
+     */
+    static Scenario traffic() {
+        return new Scenario("traffic", Traffic.getLines(), null);
+    }
+
+    /**
+     * Generates a netsplit and the following netjoin. Half of the users quit
+     * with a split message, then rejoin each of their channels, and the
+     * server restores the voices they had.
+     *
+     * @param channels The number of channels the local client is in
+     * @param users The number of users sharing channels with the local client
+     * @return The generated scenario
+     */
+    static Scenario netsplit(final int channels, final int users) {
+        final List<String> lines = new ArrayList<>(Traffic.getRegistration());
+        final ParserState expected = new ParserState();
+
+        // Each user is in up to three channels, and every fifth is voiced.
+        final Random random = new Random(channels + users);
+        final List<List<Integer>> members = new ArrayList<>();
+        for (int i = 0; i < channels; i++) {
+            members.add(new ArrayList<>());
+        }
+        for (int i = 0; i < users; i++) {
+            for (int j = 0; j < 3; j++) {
+                final List<Integer> channel = members.get(random.nextInt(channels));
+                if (!channel.contains(i)) {
+                    channel.add(i);
+                }
+            }
+        }
+
+        for (int i = 0; i < channels; i++) {
+            final String channel = "#channel" + i;
+            final ParserState.Channel state = expected.addChannel(channel, "+nt").addMember("me");
+            final List<String> names = new ArrayList<>();
+            names.add("me");
+            for (int user : members.get(i)) {
+                final String prefix = user % 5 == 0 ? "+" : "";
+                names.add(prefix + getHost(user));
+                state.addMember(prefix + "user" + user);
+            }
+            addJoin(lines, channel, names);
+            lines.add(SERVER + " 324 me " + channel + " +nt");
+        }
+
+        for (int user = 0; user < users; user += 2) {
+            lines.add(':' + getHost(user) + " QUIT :hub.example.net leaf.example.net");
+        }
+        for (int i = 0; i < channels; i++) {
+            final List<String> voices = new ArrayList<>();
+            for (int user : members.get(i)) {
+                if (user % 2 == 0) {
+                    lines.add(':' + getHost(user) + " JOIN :#channel" + i);
+                    if (user % 5 == 0) {
+                        voices.add("user" + user);
+                    }
+                }
+            }
+            addModes(lines, ":leaf.example.net", "#channel" + i, '+', 'v', voices);
+        }
+
+        return new Scenario("netsplit-" + channels + 'x' + users, lines, expected);
+    }
+
+    /**
+     * Generates a join to a channel with a very large NAMES reply.
+     *
+     * @param members The number of users in the channel
+     * @return The generated scenario
+     */
+    static Scenario giantNames(final int members) {
+        final List<String> lines = new ArrayList<>(Traffic.getRegistration());
+        final ParserState expected = new ParserState();
+        final ParserState.Channel state = expected.addChannel("#big", "+").addMember("me");
+
+        final List<String> names = new ArrayList<>();
+        names.add("me");
+        for (int i = 0; i < members; i++) {
+            final String prefix = i % 10 == 0 ? "@" : i % 4 == 0 ? "+" : "";
+            names.add(prefix + getHost(i));
+            state.addMember(prefix + "user" + i);
+        }
+        addJoin(lines, "#big", names);
+
+        return new Scenario("names-" + members, lines, expected);
+    }
+
+    /**
+     * Generates a flood of bans being set in a channel, followed by a third
+     * of them being removed again.
+     *
+     * @param bans The number of bans to set
+     * @return The generated scenario
+     */
+    static Scenario banFlood(final int bans) {
+        final List<String> lines = new ArrayList<>(Traffic.getRegistration());
+        final ParserState expected = new ParserState();
+        final ParserState.Channel state = expected.addChannel("#bans", "+")
+                .addMember("me").addMember("@op");
+        final String op = ":op!~op@services.example.net";
+
+        final List<String> names = new ArrayList<>();
+        names.add("me");
+        names.add("@op!~op@services.example.net");
+        addJoin(lines, "#bans", names);
+
+        final List<String> added = new ArrayList<>();
+        final List<String> removed = new ArrayList<>();
+        for (int i = 0; i < bans; i++) {
+            final String mask = "*!*@host-" + i + ".example.net";
+            added.add(mask);
+            if (i % 3 == 0) {
+                removed.add(mask);
+            } else {
+                state.addListItem('b', mask);
+            }
+        }
+        addModes(lines, op, "#bans", '+', 'b', added);
+        addModes(lines, op, "#bans", '-', 'b', removed);
+
+        return new Scenario("bans-" + bans, lines, expected);
+    }
+
+    /**
+     * Adds the lines for the local client joining a channel.
+     *
+     * @param lines The lines to add to
+     * @param channel The channel being joined
+     * @param names The names in the channel, with any prefixes and hosts
+     */
+    private static void addJoin(final List<String> lines, final String channel,
+            final List<String> names) {
+        lines.add(":me!~me@localhost JOIN :" + channel);
+
+        // Split the names across lines in the same way servers do.
+        StringBuilder line = null;
+        for (String name : names) {
+            if (line != null && line.length() + name.length() > NAMES_LENGTH) {
+                lines.add(line.toString());
+                line = null;
+            }
+            if (line == null) {
+                line = new StringBuilder(SERVER + " 353 me = " + channel + " :");
+            } else {
+                line.append(' ');
+            }
+            line.append(name);
+        }
+        if (line != null) {
+            lines.add(line.toString());
+        }
+        lines.add(SERVER + " 366 me " + channel + " :End of /NAMES list.");
+    }
+
+    /**
+     * Adds MODE lines applying the same mode with each of the given
+     * parameters, as many to a line as the server allows.
+     *
+     * @param lines The lines to add to
+     * @param source The prefix of the user or server setting the modes
+     * @param channel The channel the modes are set on
+     * @param sign Whether the modes are being added or removed
+     * @param mode The mode being changed
+     * @param params The parameter for each change
+     */
+    private static void addModes(final List<String> lines, final String source,
+            final String channel, final char sign, final char mode, final List<String> params) {
+        for (int i = 0; i < params.size(); i += MODES) {
+            final List<String> batch = params.subList(i, Math.min(i + MODES, params.size()));
+            final StringBuilder line = new StringBuilder(source).append(" MODE ")
+                    .append(channel).append(' ').append(sign);
+            for (int j = 0; j < batch.size(); j++) {
+                line.append(mode);
+            }
+            for (String param : batch) {
+                line.append(' ').append(param);
+            }
+            lines.add(line.toString());
+        }
+    }
+
+    private static int getInt(final String[] parts, final int index, final int fallback) {
+        return parts.length > index ? Integer.parseInt(parts[index]) : fallback;
+    }
+
+    private static String getHost(final int user) {
+        return "user" + user + "!~ident" + user + "@host-" + user + ".example.net";
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Recorded server traffic used as input for the benchmarks.
+ *
+ * <p>The traffic covers registration, joining a handful of channels, and a
+ * mix of messages, mode changes, joins, parts and quits in those channels.
+ */
+final class Traffic {
+
+    /** The recorded lines, without line endings. */
+    private static final List<String> LINES = load();
+
+    private Traffic() {
+        // Shouldn't be instantiated
+    }
+
+    /**
+     * Gets all of the recorded lines.
+     *
+     * @return The recorded lines, without line endings
+     */
+    static List<String> getLines() {
+        return LINES;
+    }
+
+    /**
+     * Gets the lines sent by the server during registration, up to the end of
+     * the MOTD.
+     *
+     * @return The lines needed to register a parser without joining channels
+     */
+    static List<String> getRegistration() {
+        for (int i = 0; i < LINES.size(); i++) {
+            if (LINES.get(i).contains(" 376 ")) {
+                return LINES.subList(0, i + 1);
+            }
+        }
+        throw new IllegalStateException("No end of MOTD in traffic");
+    }
+
+    /**
+     * Gets the lines sent by the server during registration and while
+     * joining channels, up to the end of the last NAMES reply.
+     *
+     * @return The lines needed to bring a parser up to date
+     */
+    static List<String> getPreamble() {
+        int end = 0;
+        for (int i = 0; i < LINES.size(); i++) {
+            if (LINES.get(i).contains(" 366 ")) {
+                end = i + 1;
+            }
+        }
+        return LINES.subList(0, end);
+    }
+
+    /**
+     * Gets the lines received after the preamble.
+     *
+     * @return The lines received after channels have been joined
+     */
+    static List<String> getSession() {
+        return LINES.subList(getPreamble().size(), LINES.size());
+    }
+
+    /**
+     * Gets the recorded traffic as it was received from the server.
+     *
+     * @return The raw bytes of all lines, each terminated with CRLF
+     */
+    static byte[] getBytes() {
+        final StringBuilder builder = new StringBuilder();
+        for (String line : LINES) {
+            builder.append(line).append("\r\n");
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> load() {
+        try (InputStream stream = Traffic.class.getResourceAsStream("traffic.txt");
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            final List<String> lines = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+            return Collections.unmodifiableList(lines);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+}
@@ -0,0 +1,416 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.common;
+
+import com.dmdirc.parser.events.ChannelNamesEvent;
+import com.dmdirc.parser.events.DataInEvent;
+import com.dmdirc.parser.events.DataOutEvent;
+import com.dmdirc.parser.events.DebugInfoEvent;
+import com.dmdirc.parser.events.ParserEvent;
+import com.dmdirc.parser.events.PingSentEvent;
+import com.dmdirc.parser.events.PingSuccessEvent;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import javax.annotation.Nullable;
+
+import net.engio.mbassy.bus.IMessagePublication;
+
+/**
+ * An {@link EventDispatcher} which can hand events to a bounded queue, to be
+ * delivered to listeners on another thread.
+ *
+ * <p>Listeners are split into two groups. Inline listeners are always called
+ * on the publishing thread, and are intended for the parser's own bookkeeping
+ * which must happen before the next line is processed. Other listeners are
+ * called on the publishing thread until {@link #start} is called, and from
+ * then on are called by a single task at a time on the given executor, in the
+ * order the events were published.
+ *
+ * <p>When the queue is full, the {@link EventOverflowPolicy} decides whether
+ * to wait, drop debug and data events, or coalesce events which have been
+ * superseded. Events published by queued listeners themselves never wait, as
+ * they would be waiting for themselves; they may take the queue over capacity
+ * instead.
+ */
+public class AsyncEventDispatcher implements EventDispatcher {
+
+    /** Dispatcher for listeners called on the publishing thread. */
+    private final EventDispatcher inline;
+    /** Dispatcher for listeners called from the queue. */
+    private final EventDispatcher queued;
+    /** Lock guarding the queue. */
+    private final ReentrantLock lock = new ReentrantLock();
+    /** Signalled when space becomes available in the queue. */
+    private final Condition notFull = lock.newCondition();
+    /** Events waiting to be delivered. */
+    private final ArrayDeque<ParserEvent> queue = new ArrayDeque<>();
+    /** Number of events dropped because the queue was full. */
+    private final AtomicLong dropped = new AtomicLong();
+    /** Number of queued events replaced by a newer event. */
+    private final AtomicLong coalesced = new AtomicLong();
+    /** Task which delivers queued events. */
+    private final Runnable drainTask = this::drain;
+
+    /** Executor to deliver events on, or null if delivering synchronously. */
+    @Nullable private volatile Executor executor;
+    /** Maximum number of events to queue. */
+    private int capacity;
+    /** What to do when the queue is full. */
+    private EventOverflowPolicy policy = EventOverflowPolicy.BLOCK;
+    /** Gives the key events are coalesced by, or null if they can't be. */
+    private Function<ParserEvent, Object> coalescingKey = AsyncEventDispatcher::getDefaultKey;
+    /** Whether a drain task has been submitted and not yet finished. */
+    private boolean draining;
+    /** The thread currently delivering queued events, if any. */
+    @Nullable private volatile Thread drainThread;
+
+    /**
+     * Creates a new dispatcher, which initially delivers all events
+     * synchronously.
+     *
+     * @param inline Dispatcher for listeners that are always called synchronously
+     * @param queued Dispatcher for all other listeners
+     */
+    public AsyncEventDispatcher(final EventDispatcher inline, final EventDispatcher queued) {
+        this.inline = inline;
+        this.queued = queued;
+    }
+
+    /**
+     * Starts delivering events to non-inline listeners on the given executor.
+     *
+     * <p>The executor must not run tasks on the publishing thread, or a full
+     * queue using {@link EventOverflowPolicy#BLOCK} will never drain.
+     *
+     * @param executor The executor to deliver events on
+     * @param capacity The maximum number of events to queue
+     * @param policy What to do when the queue is full
+     */
+    public void start(final Executor executor, final int capacity,
+            final EventOverflowPolicy policy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+
+        lock.lock();
+        try {
+            if (this.executor != null) {
+                throw new IllegalStateException("Asynchronous delivery already started");
+            }
+            this.capacity = capacity;
+            this.policy = policy;
+            this.executor = executor;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the function used to decide which events supersede each other when
+     * using {@link EventOverflowPolicy#COALESCE}. A queued event is replaced
+     * by a newer one with an equal, non-null, key.
+     *
+     * <p>By default, ping events are coalesced by type and names events by
+     * channel.
+     *
+     * @param coalescingKey Function giving the key for an event, or null if
+     * it can't be coalesced
+     */
+    public void setCoalescingKey(final Function<ParserEvent, Object> coalescingKey) {
+        lock.lock();
+        try {
+            this.coalescingKey = coalescingKey;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Subscribes a listener which will always be called on the publishing
+     * thread, before any queued listeners see the event.
+     *
+     * @param listener The listener to subscribe
+     */
+    public void subscribeInline(final Object listener) {
+        inline.subscribe(listener);
+    }
+
+    @Override
+    public void subscribe(final Object listener) {
+        queued.subscribe(listener);
+    }
+
+    @Override
+    public boolean unsubscribe(final Object listener) {
+        final boolean wasInline = inline.unsubscribe(listener);
+        return queued.unsubscribe(listener) || wasInline;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Once asynchronous delivery has started, the returned publication
+     * only covers inline listeners, and events with no other listeners are
+     * not queued.
+     */
+    @Override
+    public IMessagePublication publish(final ParserEvent event) {
+        final IMessagePublication publication = inline.publish(event);
+        final Executor current = executor;
+        if (current == null) {
+            return queued.publish(event);
+        }
+
+        if (queued.hasSubscribers(event.getClass())) {
+            enqueue(current, event);
+        }
+        return publication;
+    }
+
+    @Override
+    public boolean hasSubscribers(final Class<? extends ParserEvent> type) {
+        return inline.hasSubscribers(type) || queued.hasSubscribers(type);
+    }
+
+    /**
+     * Gets the number of events waiting to be delivered.
+     *
+     * @return The current depth of the queue
+     */
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of events that have been dropped because the queue was
+     * full.
+     *
+     * @return The number of dropped events
+     */
+    public long getDroppedEvents() {
+        return dropped.get();
+    }
+
+    /**
+     * Gets the number of queued events that have been replaced by a newer
+     * event because the queue was full.
+     *
+     * @return The number of coalesced events
+     */
+    public long getCoalescedEvents() {
+        return coalesced.get();
+    }
+
+    /**
+     * Determines if the listeners are falling behind, such that events may be
+     * dropped or publishers may have to wait.
+     *
+     * @return True if the queue is full
+     */
+    public boolean isFull() {
+        lock.lock();
+        try {
+            return executor != null && queue.size() >= capacity;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds an event to the queue, applying the overflow policy if it is full,
+     * and makes sure a task is running to deliver it.
+     *
+     * @param current The executor to deliver events on
+     * @param event The event to add
+     */
+    private void enqueue(final Executor current, final ParserEvent event) {
+        final boolean submit;
+        lock.lock();
+        try {
+            while (queue.size() >= capacity && Thread.currentThread() != drainThread) {
+                if (policy == EventOverflowPolicy.COALESCE && coalesce(event)) {
+                    return;
+                }
+                if (policy != EventOverflowPolicy.BLOCK && makeRoom(event)) {
+                    if (isDiagnostic(event)) {
+                        return;
+                    }
+                    break;
+                }
+                notFull.awaitUninterruptibly();
+            }
+
+            queue.add(event);
+            submit = !draining;
+            draining = true;
+        } finally {
+            lock.unlock();
+        }
+
+        if (submit) {
+            submit(current);
+        }
+    }
+
+    /**
+     * Submits the drain task to the executor.
+     *
+     * @param current The executor to deliver events on
+     */
+    private void submit(final Executor current) {
+        try {
+            current.execute(drainTask);
+        } catch (RuntimeException ex) {
+            lock.lock();
+            try {
+                draining = false;
+            } finally {
+                lock.unlock();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Replaces a queued event superseded by the given event, if there is one.
+     *
+     * @param event The new event
+     * @return True if a queued event was replaced
+     */
+    private boolean coalesce(final ParserEvent event) {
+        final Object key = coalescingKey.apply(event);
+        if (key == null) {
+            return false;
+        }
+
+        for (Iterator<ParserEvent> it = queue.iterator(); it.hasNext();) {
+            if (key.equals(coalescingKey.apply(it.next()))) {
+                it.remove();
+                queue.add(event);
+                coalesced.incrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drops an event to make room in the queue. The new event is dropped if it
+     * is a debug or data event, otherwise the oldest queued one is.
+     *
+     * @param event The new event
+     * @return True if an event was dropped
+     */
+    private boolean makeRoom(final ParserEvent event) {
+        if (isDiagnostic(event)) {
+            dropped.incrementAndGet();
+            return true;
+        }
+
+        for (Iterator<ParserEvent> it = queue.iterator(); it.hasNext();) {
+            if (isDiagnostic(it.next())) {
+                it.remove();
+                dropped.incrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Delivers queued events until the queue is empty.
+     */
+    private void drain() {
+        drainThread = Thread.currentThread();
+        boolean finished = false;
+        try {
+            while (true) {
+                final ParserEvent event;
+                lock.lock();
+                try {
+                    event = queue.poll();
+                    if (event == null) {
+                        draining = false;
+                        finished = true;
+                        return;
+                    }
+                    notFull.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+
+                queued.publish(event);
+            }
+        } finally {
+            drainThread = null;
+            if (!finished) {
+                // Something went badly wrong delivering an event; let another
+                // task carry on with the rest of the queue.
+                submit(executor);
+            }
+        }
+    }
+
+    /**
+     * Determines if an event is a debug or data event, which may be dropped
+     * when listeners are falling behind.
+     *
+     * @param event The event to check
+     * @return True if the event may be dropped
+     */
+    private static boolean isDiagnostic(final ParserEvent event) {
+        return event instanceof DebugInfoEvent || event instanceof DataInEvent
+                || event instanceof DataOutEvent;
+    }
+
+    /**
+     * Gets the default coalescing key for an event.
+     *
+     * @param event The event to get a key for
+     * @return The key, or null if the event can't be coalesced
+     */
+    @Nullable
+    private static Object getDefaultKey(final ParserEvent event) {
+        if (event instanceof PingSentEvent || event instanceof PingSuccessEvent) {
+            return event.getClass();
+        } else if (event instanceof ChannelNamesEvent) {
+            return Arrays.asList(ChannelNamesEvent.class, ((ChannelNamesEvent) event).getChannel());
+        }
+        return null;
+    }
+
+}
@@ -24,27 +24,179 @@ package com.dmdirc.parser.common;
 
 import com.dmdirc.parser.events.ParserEvent;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import javax.annotation.Nullable;
+
+import net.engio.mbassy.bus.IMessagePublication;
 import net.engio.mbassy.bus.MBassador;
 import net.engio.mbassy.bus.config.BusConfiguration;
 import net.engio.mbassy.bus.config.Feature;
 import net.engio.mbassy.bus.error.IPublicationErrorHandler;
+import net.engio.mbassy.subscription.Subscription;
 
 /**
  * Parser Callback Manager.
  * Manages adding/removing/calling callbacks.
+ *
+ * <p>By default events are dispatched by MBassador itself. An
+ * {@link EventDispatcher} may be supplied instead, in which case it receives
+ * all subscriptions and synchronous publications, and asynchronous publication
+ * is not supported.
  */
 public class CallbackManager extends MBassador<ParserEvent> {
 
+    /** Incremented whenever a listener is subscribed or unsubscribed. */
+    private final AtomicLong subscriptionVersion = new AtomicLong();
+    /** Cached results of {@link #hasSubscribers(Class)}. */
+    private final Map<Class<?>, SubscriberCount> subscriberCounts = new ConcurrentHashMap<>();
+    /** The dispatcher to use in place of MBassador, if any. */
+    @Nullable private final EventDispatcher dispatcher;
+
     public CallbackManager(final IPublicationErrorHandler errorHandler) {
-        this(new BusConfiguration().addFeature(Feature.SyncPubSub.Default())
+        this(createConfiguration(errorHandler));
+    }
+
+    /**
+     * Creates a new callback manager which dispatches events using the
+     * given dispatcher.
+     *
+     * @param errorHandler The handler to report errors in listeners to
+     * @param dispatcherFactory Factory to create the dispatcher for this manager
+     */
+    public CallbackManager(final IPublicationErrorHandler errorHandler,
+            final Function<CallbackManager, EventDispatcher> dispatcherFactory) {
+        this(createConfiguration(errorHandler), dispatcherFactory);
+    }
+
+    protected CallbackManager(final BusConfiguration busConfiguration) {
+        super(busConfiguration);
+        this.dispatcher = null;
+    }
+
+    /**
+     * Creates a new callback manager which dispatches events using the
+     * given dispatcher.
+     *
+     * @param busConfiguration The configuration of the underlying bus
+     * @param dispatcherFactory Factory to create the dispatcher for this manager
+     */
+    protected CallbackManager(final BusConfiguration busConfiguration,
+            final Function<CallbackManager, EventDispatcher> dispatcherFactory) {
+        super(busConfiguration);
+        this.dispatcher = dispatcherFactory.apply(this);
+    }
+
+    private static BusConfiguration createConfiguration(
+            final IPublicationErrorHandler errorHandler) {
+        return new BusConfiguration().addFeature(Feature.SyncPubSub.Default())
                 .addFeature(Feature.AsynchronousHandlerInvocation.Default(1, 1))
                 .addFeature(Feature.AsynchronousMessageDispatch.Default()
                         .setNumberOfMessageDispatchers(1))
-                .addPublicationErrorHandler(errorHandler));
+                .addPublicationErrorHandler(errorHandler);
     }
 
-    protected CallbackManager(final BusConfiguration busConfiguration) {
-        super(busConfiguration);
+    /**
+     * Gets the dispatcher events are delivered by, if one was supplied.
+     *
+     * @return The dispatcher, or null if MBassador is dispatching events
+     */
+    @Nullable
+    protected EventDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    @Override
+    public void subscribe(final Object listener) {
+        if (dispatcher == null) {
+            super.subscribe(listener);
+        } else {
+            dispatcher.subscribe(listener);
+        }
+        subscriptionVersion.incrementAndGet();
+    }
+
+    @Override
+    public boolean unsubscribe(final Object listener) {
+        final boolean result = dispatcher == null ? super.unsubscribe(listener)
+                : dispatcher.unsubscribe(listener);
+        subscriptionVersion.incrementAndGet();
+        return result;
+    }
+
+    @Override
+    public IMessagePublication publish(final ParserEvent message) {
+        return dispatcher == null ? super.publish(message) : dispatcher.publish(message);
+    }
+
+    @Override
+    public IMessagePublication publishAsync(final ParserEvent message) {
+        checkAsyncSupported();
+        return super.publishAsync(message);
+    }
+
+    @Override
+    public IMessagePublication publishAsync(final ParserEvent message, final long timeout,
+            final TimeUnit unit) {
+        checkAsyncSupported();
+        return super.publishAsync(message, timeout, unit);
+    }
+
+    private void checkAsyncSupported() {
+        if (dispatcher != null) {
+            throw new UnsupportedOperationException(
+                    "publishAsync is not supported with a custom dispatcher");
+        }
+    }
+
+    /**
+     * Determines whether any handler would receive an event of the given type,
+     * including handlers for any of its supertypes. This allows callers to
+     * skip building events that would be thrown away.
+     *
+     * <p>The answer is cached until the next call to {@link #subscribe(Object)}
+     * or {@link #unsubscribe(Object)}.
+     *
+     * @param type The type of event to check
+     * @return True if at least one handler is subscribed for the type
+     */
+    public boolean hasSubscribers(final Class<? extends ParserEvent> type) {
+        if (dispatcher != null) {
+            return dispatcher.hasSubscribers(type);
+        }
+
+        final long version = subscriptionVersion.get();
+        final SubscriberCount cached = subscriberCounts.get(type);
+        if (cached != null && cached.version == version) {
+            return cached.count > 0;
+        }
+
+        int count = 0;
+        for (Subscription subscription : getSubscriptionsByMessageType(type)) {
+            // Subscriptions stay registered, but empty, once their listeners unsubscribe.
+            count += subscription.size();
+        }
+        subscriberCounts.put(type, new SubscriberCount(version, count));
+        return count > 0;
+    }
+
+    /** The number of subscribed listeners for an event type, as of a given version. */
+    private static final class SubscriberCount {
+
+        /** The subscription version the count was taken at. */
+        private final long version;
+        /** The number of listeners with matching handlers. */
+        private final int count;
+
+        SubscriberCount(final long version, final int count) {
+            this.version = version;
+            this.count = count;
+        }
+
     }
 
 }
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.common;
+
+import com.dmdirc.parser.events.ParserEvent;
+
+import net.engio.mbassy.bus.IMessagePublication;
+
+/**
+ * Delivers events published through a {@link CallbackManager} to its
+ * subscribed listeners, in place of the manager's own MBassador dispatch.
+ *
+ * <p>Implementations must honour the {@link net.engio.mbassy.listener.Handler}
+ * contract that listeners are written against.
+ */
+public interface EventDispatcher {
+
+    /**
+     * Subscribes all handlers of the given listener. Subscribing a listener
+     * that is already subscribed has no effect.
+     *
+     * @param listener The listener to subscribe
+     */
+    void subscribe(Object listener);
+
+    /**
+     * Unsubscribes all handlers of the given listener.
+     *
+     * @param listener The listener to unsubscribe
+     * @return True if the listener was subscribed
+     */
+    boolean unsubscribe(Object listener);
+
+    /**
+     * Synchronously delivers an event to every handler that accepts it.
+     *
+     * @param event The event to deliver
+     * @return The completed publication
+     */
+    IMessagePublication publish(ParserEvent event);
+
+    /**
+     * Determines whether any handler is subscribed for the given type of event.
+     *
+     * @param type The type of event to check
+     * @return True if at least one handler is subscribed for the type
+     */
+    boolean hasSubscribers(Class<? extends ParserEvent> type);
+
+}
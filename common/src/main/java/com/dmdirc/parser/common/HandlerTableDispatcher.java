@@ -0,0 +1,480 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.common;
+
+import com.dmdirc.parser.events.ParserEvent;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+
+import net.engio.mbassy.bus.IMessagePublication;
+import net.engio.mbassy.bus.common.DeadMessage;
+import net.engio.mbassy.bus.common.FilteredMessage;
+import net.engio.mbassy.bus.config.IBusConfiguration;
+import net.engio.mbassy.bus.error.PublicationError;
+import net.engio.mbassy.dispatch.ReflectiveHandlerInvocation;
+import net.engio.mbassy.dispatch.el.ElFilter;
+import net.engio.mbassy.listener.IMessageFilter;
+import net.engio.mbassy.listener.MessageHandler;
+import net.engio.mbassy.listener.MetadataReader;
+import net.engio.mbassy.subscription.SubscriptionContext;
+
+/**
+ * An {@link EventDispatcher} which works out the handlers for each class of
+ * event once, rather than on every publication.
+ *
+ * <p>Listeners are read with MBassador's own {@link MetadataReader}, so the
+ * same handlers are found as MBassador would find. The first time an event
+ * class is published, the handlers accepting it are collected into an array
+ * ordered by descending priority, which is reused until the next subscribe or
+ * unsubscribe. Publishing is then a map lookup and a loop over method handles.
+ *
+ * <p>Priorities, {@code rejectSubtypes}, filters, conditions, asynchronous
+ * delivery, synchronized handlers, weak and strong listener references, and
+ * dead and filtered messages all behave as they do in MBassador. Handlers with
+ * the same priority are called in the order they were subscribed. Conditions
+ * which just compare a property of the event with a literal, such as
+ * {@code msg.numeric == 311}, are checked directly instead of through EL.
+ * Enveloped handlers and custom handler invocations are not supported.
+ */
+public class HandlerTableDispatcher implements EventDispatcher {
+
+    /** Conditions simple enough to be checked without EL, as wrapped by MBassador. */
+    private static final Pattern SIMPLE_CONDITION = Pattern.compile(
+            "\\$\\{\\s*msg\\.([A-Za-z_][A-Za-z0-9_]*)\\s*==\\s*"
+            + "(?:'([^']*)'|\"([^\"]*)\"|(-?[0-9]{1,18})|(true|false))\\s*}");
+    /** Orders registrations by descending priority. */
+    private static final Comparator<Registration> BY_PRIORITY =
+            (a, b) -> Integer.compare(b.priority, a.priority);
+
+    /** The manager we are dispatching for. */
+    private final CallbackManager manager;
+    /** Reader used to find the handlers of listeners. */
+    private final MetadataReader metadataReader = new MetadataReader();
+    /** Lock used to serialise changes to the subscriptions. */
+    private final Object lock = new Object();
+    /** The current subscriptions, replaced whenever they change. */
+    private volatile Table table = new Table(new Registration[0]);
+
+    /**
+     * Creates a new dispatcher.
+     *
+     * @param manager The manager that events will be published through
+     */
+    public HandlerTableDispatcher(final CallbackManager manager) {
+        this.manager = manager;
+    }
+
+    @Override
+    public void subscribe(final Object listener) {
+        synchronized (lock) {
+            final List<Registration> registrations = new ArrayList<>();
+            for (Registration registration : table.registrations) {
+                final Object existing = registration.getListener();
+                if (existing == listener) {
+                    return;
+                } else if (existing != null) {
+                    registrations.add(registration);
+                }
+            }
+
+            for (MessageHandler handler : metadataReader.getMessageListener(listener.getClass())
+                    .getHandlers()) {
+                registrations.add(new Registration(listener, handler));
+            }
+            table = new Table(registrations.toArray(new Registration[registrations.size()]));
+        }
+    }
+
+    @Override
+    public boolean unsubscribe(final Object listener) {
+        synchronized (lock) {
+            final List<Registration> registrations = new ArrayList<>();
+            boolean found = false;
+            for (Registration registration : table.registrations) {
+                final Object existing = registration.getListener();
+                if (existing == listener) {
+                    found = true;
+                } else if (existing != null) {
+                    registrations.add(registration);
+                }
+            }
+            table = new Table(registrations.toArray(new Registration[registrations.size()]));
+            return found;
+        }
+    }
+
+    @Override
+    public IMessagePublication publish(final ParserEvent event) {
+        final Table current = table;
+        final Registration[] handlers = current.getHandlers(event.getClass());
+        if (handlers.length == 0) {
+            deliver(current.getHandlers(DeadMessage.class), new DeadMessage(event));
+            return new Publication(event, true, false);
+        }
+
+        if (!deliver(handlers, event)) {
+            deliver(current.getHandlers(FilteredMessage.class), new FilteredMessage(event));
+            return new Publication(event, false, true);
+        }
+
+        return new Publication(event, false, false);
+    }
+
+    @Override
+    public boolean hasSubscribers(final Class<? extends ParserEvent> type) {
+        return table.getHandlers(type).length > 0;
+    }
+
+    /**
+     * Delivers a message to each of the given handlers that accepts it.
+     *
+     * @param handlers The handlers to deliver to
+     * @param message The message to deliver
+     * @return True if at least one handler accepted the message
+     */
+    private static boolean deliver(final Registration[] handlers, final Object message) {
+        boolean delivered = false;
+        for (Registration handler : handlers) {
+            delivered |= handler.deliver(message);
+        }
+        return delivered;
+    }
+
+    /**
+     * Tries to build a check for a condition that doesn't need EL.
+     *
+     * @param condition The handler's condition, or null if it has none
+     * @param types The types of message the handler accepts
+     * @return A check for the condition, or null if it has none or it needs to be evaluated by EL
+     */
+    @Nullable
+    private static Condition compileCondition(@Nullable final String condition,
+            final Class<?>... types) {
+        if (condition == null || types.length != 1) {
+            return null;
+        }
+
+        final Matcher matcher = SIMPLE_CONDITION.matcher(condition);
+        if (!matcher.matches()) {
+            return null;
+        }
+
+        final Method getter = getGetter(types[0], matcher.group(1));
+        if (getter == null) {
+            return null;
+        }
+
+        final MethodHandle handle;
+        try {
+            getter.setAccessible(true);
+            handle = MethodHandles.lookup().unreflect(getter);
+        } catch (IllegalAccessException | SecurityException ex) {
+            return null;
+        }
+
+        final Class<?> type = getter.getReturnType();
+        final String string = matcher.group(2) == null ? matcher.group(3) : matcher.group(2);
+        if (string != null && type == String.class) {
+            final MethodHandle typed = handle.asType(
+                    MethodType.methodType(Object.class, Object.class));
+            return message -> string.equals((Object) typed.invokeExact(message));
+        } else if (matcher.group(4) != null && (type == int.class || type == long.class
+                || type == short.class || type == byte.class)) {
+            final long number = Long.parseLong(matcher.group(4));
+            final MethodHandle typed = handle.asType(
+                    MethodType.methodType(long.class, Object.class));
+            return message -> (long) typed.invokeExact(message) == number;
+        } else if (matcher.group(5) != null && type == boolean.class) {
+            final boolean value = Boolean.parseBoolean(matcher.group(5));
+            final MethodHandle typed = handle.asType(
+                    MethodType.methodType(boolean.class, Object.class));
+            return message -> (boolean) typed.invokeExact(message) == value;
+        }
+
+        return null;
+    }
+
+    /**
+     * Finds the public getter for a bean property.
+     *
+     * @param type The type to find the getter on
+     * @param property The name of the property
+     * @return The property's getter, or null if there isn't one
+     */
+    @Nullable
+    private static Method getGetter(final Class<?> type, final String property) {
+        final String name = Character.toUpperCase(property.charAt(0)) + property.substring(1);
+        for (String prefix : new String[]{"get", "is"}) {
+            try {
+                return type.getMethod(prefix + name);
+            } catch (NoSuchMethodException ex) {
+                // Try the next prefix
+            }
+        }
+        return null;
+    }
+
+    /** A condition on messages which is checked without EL. */
+    @FunctionalInterface
+    private interface Condition {
+
+        boolean test(Object message) throws Throwable;
+
+    }
+
+    /** An immutable set of registrations, and the handlers for each event class. */
+    private static final class Table {
+
+        /** All registrations, in the order they were subscribed. */
+        private final Registration[] registrations;
+        /** Registrations that handle each message class, highest priority first. */
+        private final Map<Class<?>, Registration[]> handlers = new ConcurrentHashMap<>();
+
+        Table(final Registration... registrations) {
+            this.registrations = registrations;
+        }
+
+        Registration[] getHandlers(final Class<?> type) {
+            Registration[] result = handlers.get(type);
+            if (result == null) {
+                result = Arrays.stream(registrations)
+                        .filter(registration -> registration.handler.handlesMessage(type))
+                        .sorted(BY_PRIORITY)
+                        .toArray(Registration[]::new);
+                handlers.put(type, result);
+            }
+            return result;
+        }
+
+    }
+
+    /** A single handler method of a subscribed listener. */
+    private final class Registration {
+
+        /** The listener, if it is strongly referenced. */
+        @Nullable private final Object strongListener;
+        /** The listener, if it is weakly referenced. */
+        @Nullable private final WeakReference<Object> weakListener;
+        /** MBassador's description of the handler. */
+        private final MessageHandler handler;
+        /** Context passed to filters and used to report errors. */
+        private final SubscriptionContext context;
+        /** Handle to invoke the handler, of type (Object, Object) void. */
+        private final MethodHandle invoker;
+        /** Condition checked without EL, if the handler has one. */
+        @Nullable private final Condition condition;
+        /** Other filters the message must pass. */
+        private final IMessageFilter<?>[] filters;
+        /** Executor to call the handler on, or null to call it directly. */
+        @Nullable private final Executor executor;
+        /** The handler's priority. */
+        private final int priority;
+
+        Registration(final Object listener, final MessageHandler handler) {
+            if (handler.isEnveloped()
+                    || handler.getHandlerInvocation() != ReflectiveHandlerInvocation.class) {
+                throw new IllegalArgumentException("Unsupported handler " + handler.getMethod()
+                        + ": enveloped handlers and custom invocations are not supported");
+            }
+
+            this.strongListener = handler.useStrongReferences() ? listener : null;
+            this.weakListener = handler.useStrongReferences() ? null : new WeakReference<>(listener);
+            this.handler = handler;
+            this.context = new SubscriptionContext(manager.getRuntime(), handler,
+                    manager.getRegisteredErrorHandlers());
+            this.priority = handler.getPriority();
+
+            try {
+                final Method method = handler.getMethod();
+                method.setAccessible(true);
+                invoker = MethodHandles.lookup().unreflect(method)
+                        .asType(MethodType.methodType(void.class, Object.class, Object.class));
+            } catch (IllegalAccessException ex) {
+                throw new IllegalArgumentException("Unable to access handler "
+                        + handler.getMethod(), ex);
+            }
+
+            condition = compileCondition(handler.getCondition(), handler.getHandledMessages());
+            final List<IMessageFilter<?>> filterList = new ArrayList<>();
+            for (IMessageFilter<?> filter : handler.getFilter()) {
+                if (condition == null || !(filter instanceof ElFilter)) {
+                    filterList.add(filter);
+                }
+            }
+            filters = filterList.toArray(new IMessageFilter<?>[filterList.size()]);
+
+            if (handler.isAsynchronous()) {
+                executor = manager.getRuntime().get(
+                        IBusConfiguration.Properties.AsynchronousHandlerExecutor);
+                if (executor == null) {
+                    throw new IllegalArgumentException("Asynchronous handler "
+                            + handler.getMethod() + " but no executor is configured");
+                }
+            } else {
+                executor = null;
+            }
+        }
+
+        @Nullable
+        Object getListener() {
+            return weakListener == null ? strongListener : weakListener.get();
+        }
+
+        /**
+         * Delivers a message to the handler, if it accepts it.
+         *
+         * @param message The message to deliver
+         * @return True if the message was accepted
+         */
+        boolean deliver(final Object message) {
+            final Object listener = getListener();
+            if (listener == null) {
+                return false;
+            }
+
+            try {
+                if (condition != null && !condition.test(message)) {
+                    return false;
+                }
+            } catch (Throwable ex) {
+                context.handleError(new PublicationError(ex,
+                        "Error while evaluating condition on message", context)
+                        .setPublishedMessage(message));
+                return false;
+            }
+
+            for (IMessageFilter<?> filter : filters) {
+                // Filters are declared against the handler's message type, which this is.
+                @SuppressWarnings("unchecked")
+                final IMessageFilter<Object> typed = (IMessageFilter<Object>) filter;
+                if (!typed.accepts(message, context)) {
+                    return false;
+                }
+            }
+
+            if (executor == null) {
+                invoke(listener, message);
+            } else {
+                executor.execute(() -> invoke(listener, message));
+            }
+            return true;
+        }
+
+        private void invoke(final Object listener, final Object message) {
+            try {
+                if (handler.isSynchronized()) {
+                    synchronized (listener) {
+                        invoker.invokeExact(listener, message);
+                    }
+                } else {
+                    invoker.invokeExact(listener, message);
+                }
+            } catch (Throwable ex) {
+                context.handleError(new PublicationError(ex,
+                        "Error during invocation of message handler.", handler.getMethod(),
+                        listener, null).setPublishedMessage(message));
+            }
+        }
+
+    }
+
+    /** A publication that has already been delivered. */
+    private static final class Publication implements IMessagePublication {
+
+        /** The published message. */
+        private final Object message;
+        /** Whether there were no handlers for the message. */
+        private final boolean dead;
+        /** Whether every handler filtered the message out. */
+        private final boolean filtered;
+
+        Publication(final Object message, final boolean dead, final boolean filtered) {
+            this.message = message;
+            this.dead = dead;
+            this.filtered = filtered;
+        }
+
+        @Override
+        public void execute() {
+            // Already delivered
+        }
+
+        @Override
+        public boolean isFinished() {
+            return true;
+        }
+
+        @Override
+        public boolean isRunning() {
+            return false;
+        }
+
+        @Override
+        public boolean isScheduled() {
+            return false;
+        }
+
+        @Override
+        public boolean hasError() {
+            return false;
+        }
+
+        @Override
+        public PublicationError getError() {
+            return null;
+        }
+
+        @Override
+        public boolean isDeadMessage() {
+            return dead;
+        }
+
+        @Override
+        public boolean isFilteredMessage() {
+            return filtered;
+        }
+
+        @Override
+        public Object getMessage() {
+            return message;
+        }
+
+    }
+
+}
@@ -29,11 +29,17 @@ import java.util.stream.Collectors;
 
 /**
  * Parser Ignore list.
+ *
+ * <p>Patterns are compiled the first time the list is checked after being
+ * changed, so that checking a string doesn't require any regular expressions
+ * to be compiled.
  */
 public class IgnoreList {
 
     /** Arraylist storing ignore patterns. */
-    protected final List<String> ignoreInfo = new ArrayList<>();
+    protected final List<String> ignoreInfo = new VersionedList();
+    /** Compiled form of the patterns, or null if not yet compiled. */
+    private volatile IgnoreMatcher matcher;
 
     /**
      * Creates a new instance of RegexStringList.
@@ -103,12 +109,7 @@ public class IgnoreList {
      * @throws PatternSyntaxException if one of the items in the list is an invalid regex
      */
     public int matches(final String check) throws PatternSyntaxException {
-        for (int i = 0; i < count(); i++) {
-            if (check.matches("(?i)" + get(i))) {
-                return i;
-            }
-        }
-        return -1;
+        return getMatcher().matches(check);
     }
 
     /**
@@ -121,7 +122,23 @@ public class IgnoreList {
      */
     public boolean matches(final int position, final String check) throws
             PatternSyntaxException {
-        return position < count() && check.matches("(?i)" + get(position));
+        return position < count() && getMatcher().matches(position, check);
+    }
+
+    /**
+     * Gets the compiled form of the patterns in this list, compiling them if
+     * the list has changed since they were last compiled.
+     *
+     * @return A matcher for the current patterns
+     */
+    private IgnoreMatcher getMatcher() {
+        final long version = ((VersionedList) ignoreInfo).getVersion();
+        IgnoreMatcher current = matcher;
+        if (current == null || current.getVersion() != version) {
+            current = new IgnoreMatcher(new ArrayList<>(ignoreInfo), version);
+            matcher = current;
+        }
+        return current;
     }
 
     /**
@@ -326,6 +343,34 @@ public class IgnoreList {
         return res.toString();
     }
 
+    /**
+     * List which keeps track of changes made to it, so that we know when the
+     * compiled patterns need to be rebuilt.
+     */
+    private static final class VersionedList extends ArrayList<String> {
+
+        /** A version number for the list. */
+        private static final long serialVersionUID = 1;
+        /** Number of times an element has been replaced. */
+        private long replacements;
+
+        @Override
+        public String set(final int index, final String element) {
+            replacements++;
+            return super.set(index, element);
+        }
+
+        /**
+         * Gets a number which changes whenever the list is modified.
+         *
+         * @return The current version of the list
+         */
+        public long getVersion() {
+            return modCount + replacements;
+        }
+
+    }
+
     /**
      * Utility class to represent state while converting a regex to a simple form.
      */
@@ -0,0 +1,512 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.common;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Compiled form of the patterns in an {@link IgnoreList}.
+ *
+ * <p>Each pattern is compiled once, when the matcher is built. Patterns which
+ * are really simple hostmasks (i.e. survive a round trip through
+ * {@link IgnoreList#regexToSimple(String)}) are matched without using regular
+ * expressions at all: literal masks are looked up in a hash table, and
+ * wildcard masks are indexed by their literal nickname or host where they
+ * have one. The remaining regular expressions are combined into a single
+ * alternation so that a string can be checked against all of them in one
+ * pass.
+ *
+ * <p>{@link #matches(String)} gives exactly the same result as checking each
+ * pattern in turn with {@code check.matches("(?i)" + pattern)}, including
+ * throwing a {@link PatternSyntaxException} if an invalid pattern is reached
+ * before any match is found.
+ *
+ * <p>Instances are immutable and may be shared between threads.
+ */
+final class IgnoreMatcher {
+
+    /** The compiled form of each pattern, or null for invalid patterns. */
+    private final Pattern[] patterns;
+    /** Exceptions for each invalid pattern, indexed by position. */
+    private final PatternSyntaxException[] errors;
+    /** Position of the first invalid pattern, or -1 if all are valid. */
+    private final int firstError;
+    /** Position of the first literal mask with each lowercased value. */
+    private final Map<String, Integer> literals = new HashMap<>();
+    /** Wildcard masks with a literal nickname, keyed by lowercased nickname. */
+    private final Map<String, List<Glob>> globsByNick = new HashMap<>();
+    /** Wildcard masks with a literal host, keyed by lowercased host. */
+    private final Map<String, List<Glob>> globsByHost = new HashMap<>();
+    /** Wildcard masks with neither a literal nickname nor host. */
+    private final List<Glob> otherGlobs = new ArrayList<>();
+    /** All wildcard masks, in order. */
+    private final List<Glob> allGlobs = new ArrayList<>();
+    /** All regular expressions which can be safely combined, or null if none. */
+    private final Pattern combined;
+    /** The position of each alternative in the combined pattern, by group number. */
+    private final int[] combinedPositions;
+    /** The group number of each alternative in the combined pattern. */
+    private final int[] combinedGroups;
+    /** Positions of regular expressions which must be checked individually. */
+    private final int[] individual;
+    /** Version of the list these patterns were compiled from. */
+    private final long version;
+
+    /**
+     * Compiles the given patterns.
+     *
+     * @param entries The patterns from the ignore list, in order
+     * @param version The version of the list the patterns came from
+     */
+    IgnoreMatcher(final List<String> entries, final long version) {
+        this.version = version;
+        patterns = new Pattern[entries.size()];
+        errors = new PatternSyntaxException[entries.size()];
+
+        final StringBuilder combinedRegex = new StringBuilder("(?i)");
+        final List<Integer> positions = new ArrayList<>();
+        final List<Integer> groups = new ArrayList<>();
+        final List<Integer> individualPositions = new ArrayList<>();
+        int error = -1;
+        int group = 1;
+
+        for (int i = 0; i < entries.size(); i++) {
+            final String entry = entries.get(i);
+            try {
+                patterns[i] = Pattern.compile("(?i)" + entry);
+            } catch (PatternSyntaxException ex) {
+                errors[i] = ex;
+                if (error == -1) {
+                    error = i;
+                }
+                continue;
+            }
+
+            final String simple = toSimple(entry);
+            if (simple == null) {
+                if (canCombine(entry)) {
+                    if (!positions.isEmpty()) {
+                        combinedRegex.append('|');
+                    }
+                    combinedRegex.append('(').append(entry).append(')');
+                    positions.add(i);
+                    groups.add(group);
+                    group += 1 + patterns[i].matcher("").groupCount();
+                } else {
+                    individualPositions.add(i);
+                }
+            } else if (simple.indexOf('*') == -1 && simple.indexOf('?') == -1) {
+                literals.putIfAbsent(toLowerCase(simple), i);
+            } else {
+                addGlob(new Glob(i, simple));
+            }
+        }
+
+        firstError = error;
+        combined = positions.isEmpty() ? null : compileCombined(combinedRegex.toString(),
+                positions, groups, individualPositions);
+        combinedPositions = positions.stream().mapToInt(Integer::intValue).toArray();
+        combinedGroups = groups.stream().mapToInt(Integer::intValue).toArray();
+        individual = individualPositions.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Gets the version of the list these patterns were compiled from.
+     *
+     * @return The version passed when this matcher was created
+     */
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * Finds the first pattern which matches the given string.
+     *
+     * @param check String to check
+     * @return The position of the first matching pattern, or -1 if none match
+     * @throws PatternSyntaxException if an invalid pattern occurs before the first match
+     */
+    int matches(final String check) throws PatternSyntaxException {
+        int best = literals.getOrDefault(toLowerCase(check), -1);
+        best = matchGlobs(check, best);
+        best = matchRegexes(check, best);
+
+        if (firstError > -1 && (best == -1 || firstError < best)) {
+            throw errors[firstError];
+        }
+
+        return best;
+    }
+
+    /**
+     * Checks if the given string matches the pattern at the given position.
+     *
+     * @param position Position of the pattern to check
+     * @param check String to check
+     * @return True if the pattern matches, false otherwise
+     * @throws PatternSyntaxException if the pattern is invalid
+     */
+    boolean matches(final int position, final String check) throws PatternSyntaxException {
+        if (position < 0 || position >= patterns.length) {
+            return false;
+        }
+        if (errors[position] != null) {
+            throw errors[position];
+        }
+        return patterns[position].matcher(check).matches();
+    }
+
+    /**
+     * Compiles the combined regular expression. If the individual expressions
+     * don't combine cleanly, they are all moved to the list of expressions to
+     * be checked individually instead.
+     *
+     * @param regex The combined regular expression
+     * @param positions The positions of the combined expressions
+     * @param groups The group numbers of the combined expressions
+     * @param individualPositions The positions of expressions to check individually
+     * @return The compiled pattern, or null if it couldn't be compiled
+     */
+    private static Pattern compileCombined(final String regex, final List<Integer> positions,
+            final List<Integer> groups, final List<Integer> individualPositions) {
+        try {
+            return Pattern.compile(regex);
+        } catch (PatternSyntaxException ex) {
+            individualPositions.addAll(positions);
+            individualPositions.sort(null);
+            positions.clear();
+            groups.clear();
+            return null;
+        }
+    }
+
+    /**
+     * Checks the wildcard masks against the given string.
+     *
+     * @param check String to check
+     * @param best Position of the best match found so far, or -1
+     * @return The position of the best match
+     */
+    private int matchGlobs(final String check, final int best) {
+        if (allGlobs.isEmpty()) {
+            return best;
+        }
+
+        if (!isPlain(check)) {
+            // The regex '.' doesn't match line terminators, and treats
+            // surrogate pairs as a single character, so let the compiled
+            // patterns deal with anything unusual.
+            for (Glob glob : allGlobs) {
+                if (isBetter(glob.position, best)) {
+                    if (patterns[glob.position].matcher(check).matches()) {
+                        return glob.position;
+                    }
+                } else {
+                    break;
+                }
+            }
+            return best;
+        }
+
+        int result = best;
+        final int nickEnd = check.indexOf('!');
+        if (nickEnd > -1) {
+            result = matchGlobs(globsByNick.get(toLowerCase(check.substring(0, nickEnd))),
+                    check, result);
+        }
+        final int hostStart = check.lastIndexOf('@');
+        if (hostStart > -1) {
+            result = matchGlobs(globsByHost.get(toLowerCase(check.substring(hostStart + 1))),
+                    check, result);
+        }
+        return matchGlobs(otherGlobs, check, result);
+    }
+
+    /**
+     * Checks the given wildcard masks against the given string.
+     *
+     * @param globs The masks to check, in order, or null
+     * @param check String to check
+     * @param best Position of the best match found so far, or -1
+     * @return The position of the best match
+     */
+    private static int matchGlobs(final List<Glob> globs, final String check, final int best) {
+        if (globs != null) {
+            for (Glob glob : globs) {
+                if (!isBetter(glob.position, best)) {
+                    break;
+                }
+                if (glob.matches(check)) {
+                    return glob.position;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Checks the regular expressions against the given string.
+     *
+     * @param check String to check
+     * @param best Position of the best match found so far, or -1
+     * @return The position of the best match
+     */
+    private int matchRegexes(final String check, final int best) {
+        int result = best;
+
+        if (combined != null && isBetter(combinedPositions[0], result)) {
+            final Matcher matcher = combined.matcher(check);
+            if (matcher.matches()) {
+                for (int i = 0; i < combinedGroups.length; i++) {
+                    if (matcher.start(combinedGroups[i]) > -1) {
+                        result = isBetter(combinedPositions[i], result)
+                                ? combinedPositions[i] : result;
+                        break;
+                    }
+                }
+            }
+        }
+
+        for (int position : individual) {
+            if (!isBetter(position, result)) {
+                break;
+            }
+            if (patterns[position].matcher(check).matches()) {
+                return position;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Adds the given wildcard mask to the appropriate index.
+     *
+     * @param glob The mask to add
+     */
+    private void addGlob(final Glob glob) {
+        allGlobs.add(glob);
+
+        final String mask = glob.mask;
+        final int nickEnd = mask.indexOf('!');
+        if (nickEnd > -1 && isLiteral(mask, 0, nickEnd)) {
+            globsByNick.computeIfAbsent(toLowerCase(mask.substring(0, nickEnd)),
+                    k -> new ArrayList<>()).add(glob);
+            return;
+        }
+
+        final int hostStart = mask.lastIndexOf('@');
+        if (hostStart > -1 && isLiteral(mask, hostStart + 1, mask.length())) {
+            globsByHost.computeIfAbsent(toLowerCase(mask.substring(hostStart + 1)),
+                    k -> new ArrayList<>()).add(glob);
+            return;
+        }
+
+        otherGlobs.add(glob);
+    }
+
+    /**
+     * Converts the given regular expression to a simple mask, if it is
+     * exactly equivalent to one.
+     *
+     * @param regex The regular expression to convert
+     * @return The equivalent simple mask, or null if there isn't one
+     */
+    private static String toSimple(final String regex) {
+        try {
+            final String simple = IgnoreList.regexToSimple(regex);
+            return IgnoreList.simpleToRegex(simple).equals(regex) ? simple : null;
+        } catch (UnsupportedOperationException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Determines if the given regular expression can be included in the
+     * combined pattern. Expressions with back references, inline flags or
+     * named groups, or which quote the remainder of the pattern, may behave
+     * differently once combined, so are checked on their own.
+     *
+     * @param regex The regular expression to check
+     * @return True if the expression can be combined, false otherwise
+     */
+    private static boolean canCombine(final String regex) {
+        if (regex.contains("(?")) {
+            return false;
+        }
+        for (int i = 0; i < regex.length() - 1; i++) {
+            if (regex.charAt(i) == '\\') {
+                final char next = regex.charAt(++i);
+                if (next == 'Q' || next == 'k' || (next >= '0' && next <= '9')) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determines if the given region of a mask contains no wildcards.
+     *
+     * @param mask The mask to check
+     * @param start The start of the region (inclusive)
+     * @param end The end of the region (exclusive)
+     * @return True if the region contains no wildcards, false otherwise
+     */
+    private static boolean isLiteral(final String mask, final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            final char c = mask.charAt(i);
+            if (c == '*' || c == '?') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determines if the given string can be matched by wildcard masks
+     * directly, i.e. it contains no line terminators or surrogates.
+     *
+     * @param check The string to check
+     * @return True if the string is plain, false otherwise
+     */
+    private static boolean isPlain(final String check) {
+        for (int i = 0; i < check.length(); i++) {
+            final char c = check.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029'
+                    || Character.isSurrogate(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determines if a candidate match is better than the best match so far.
+     *
+     * @param position The position of the candidate
+     * @param best The position of the best match so far, or -1
+     * @return True if the candidate occurs earlier in the list
+     */
+    private static boolean isBetter(final int position, final int best) {
+        return best == -1 || position < best;
+    }
+
+    /**
+     * Converts ASCII characters in the given string to lower case, in the
+     * same way as a case-insensitive regular expression compares them.
+     *
+     * @param value The string to convert
+     * @return The lower case version of the string
+     */
+    private static String toLowerCase(final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                final char[] chars = value.toCharArray();
+                for (int j = i; j < chars.length; j++) {
+                    if (chars[j] >= 'A' && chars[j] <= 'Z') {
+                        chars[j] += 'a' - 'A';
+                    }
+                }
+                return new String(chars);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Compares two characters case-insensitively, in the same way as a
+     * case-insensitive regular expression does.
+     *
+     * @param a The first character
+     * @param b The second character
+     * @return True if the characters are equal ignoring ASCII case
+     */
+    private static boolean equalsIgnoreCase(final char a, final char b) {
+        if (a == b) {
+            return true;
+        }
+        final int lower = a | 0x20;
+        return lower == (b | 0x20) && lower >= 'a' && lower <= 'z';
+    }
+
+    /**
+     * A simple mask containing '*' and '?' wildcards.
+     */
+    private static final class Glob {
+
+        /** Position of the mask in the ignore list. */
+        private final int position;
+        /** The simple mask. */
+        private final String mask;
+
+        Glob(final int position, final String mask) {
+            this.position = position;
+            this.mask = mask;
+        }
+
+        /**
+         * Checks if the given string matches this mask.
+         *
+         * @param check String to check, which must be plain
+         * @return True if the string matches, false otherwise
+         */
+        boolean matches(final String check) {
+            int m = 0;
+            int c = 0;
+            int starMask = -1;
+            int starCheck = -1;
+
+            while (c < check.length()) {
+                if (m < mask.length() && mask.charAt(m) == '*') {
+                    starMask = m++;
+                    starCheck = c;
+                } else if (m < mask.length() && (mask.charAt(m) == '?'
+                        || equalsIgnoreCase(mask.charAt(m), check.charAt(c)))) {
+                    m++;
+                    c++;
+                } else if (starMask > -1) {
+                    m = starMask + 1;
+                    c = ++starCheck;
+                } else {
+                    return false;
+                }
+            }
+
+            while (m < mask.length() && mask.charAt(m) == '*') {
+                m++;
+            }
+            return m == mask.length();
+        }
+
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.common;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Utility methods for creating {@link ThreadFactory}s suitable for use by
+ * parsers.
+ *
+ * <p>Virtual threads are used via reflection, so that parsers can still be
+ * built for and run on JVMs that do not support them.
+ */
+public final class ParserThreadFactories {
+
+    /** Cached virtual thread builder method ({@code Thread.ofVirtual()}), or null. */
+    private static final Method OF_VIRTUAL;
+    /** Cached {@code Thread.Builder.name(String, long)} method, or null. */
+    private static final Method BUILDER_NAME;
+    /** Cached {@code Thread.Builder.factory()} method, or null. */
+    private static final Method BUILDER_FACTORY;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderFactory = null;
+        try {
+            final Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            builderName = builder.getMethod("name", String.class, long.class);
+            builderFactory = builder.getMethod("factory");
+        } catch (ClassNotFoundException | NoSuchMethodException ex) {
+            // Virtual threads aren't supported by this JVM.
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+    }
+
+    private ParserThreadFactories() {
+        // Shouldn't be instantiated
+    }
+
+    /**
+     * Determines whether the current JVM supports virtual threads.
+     *
+     * @return True if virtual threads are available, false otherwise
+     */
+    public static boolean isVirtualThreadSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Creates a factory which creates virtual threads named with the given
+     * prefix followed by a sequence number.
+     *
+     * @param prefix The prefix to use for thread names
+     * @return A factory that creates virtual threads
+     * @throws UnsupportedOperationException If virtual threads are not supported
+     */
+    public static ThreadFactory virtualThreads(final String prefix) {
+        if (OF_VIRTUAL == null) {
+            throw new UnsupportedOperationException("Virtual threads are not supported");
+        }
+
+        try {
+            final Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), prefix, 0L);
+            return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+        } catch (IllegalAccessException | InvocationTargetException ex) {
+            throw new UnsupportedOperationException("Unable to create virtual threads", ex);
+        }
+    }
+
+    /**
+     * Creates a factory which creates virtual threads if the JVM supports
+     * them, or ordinary platform threads if not.
+     *
+     * @param prefix The prefix to use for thread names
+     * @return A factory that creates virtual threads where possible
+     */
+    public static ThreadFactory virtualThreadsIfSupported(final String prefix) {
+        return isVirtualThreadSupported() ? virtualThreads(prefix) : platformThreads(prefix);
+    }
+
+    /**
+     * Creates a factory which creates ordinary platform threads named with the
+     * given prefix followed by a sequence number.
+     *
+     * @param prefix The prefix to use for thread names
+     * @return A factory that creates platform threads
+     */
+    public static ThreadFactory platformThreads(final String prefix) {
+        return new ThreadFactory() {
+            private long count;
+
+            @Override
+            public synchronized Thread newThread(final Runnable runnable) {
+                return new Thread(runnable, prefix + count++);
+            }
+        };
+    }
+
+}
@@ -24,6 +24,10 @@ package com.dmdirc.parser.common;
 
 import com.dmdirc.parser.interfaces.Parser;
 
+import java.util.concurrent.ThreadFactory;
+
+import javax.annotation.Nullable;
+
 /**
  * This class represents a Parser that runs inside a thread (which should be
  * most parsers!)
@@ -34,12 +38,15 @@ public abstract class ThreadedParser implements Parser {
     protected Thread controlThread;
     /** Object to use to lock access to {@link #controlThread}. */
     protected final Object controlThreadLock = new Object();
+    /** Factory used to create threads, or null to create ordinary named threads. */
+    @Nullable
+    private volatile ThreadFactory threadFactory;
 
     @Override
     public void connect() {
         synchronized (controlThreadLock) {
             if (controlThread == null) {
-                controlThread = new Thread(this::run, "Parser Thread");
+                controlThread = createThread(this::run, "Parser Thread");
                 controlThread.start();
             } else {
                 // To ensure correct internal state, parsers must be recreated for
@@ -67,6 +74,40 @@ public abstract class ThreadedParser implements Parser {
         return controlThread;
     }
 
+    /**
+     * Gets the factory used to create this parser's threads.
+     *
+     * @return The thread factory in use, or null if ordinary threads are created
+     */
+    @Nullable
+    public ThreadFactory getThreadFactory() {
+        return threadFactory;
+    }
+
+    /**
+     * Sets the factory used to create this parser's threads. This allows, for
+     * example, parsers to run on virtual threads (see
+     * {@link ParserThreadFactories#virtualThreads(String)}). Threads that
+     * have already been started are not affected.
+     *
+     * @param threadFactory The thread factory to use, or null to create ordinary threads
+     */
+    public void setThreadFactory(@Nullable final ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * Creates a new, unstarted, thread using this parser's thread factory.
+     *
+     * @param runnable The task the thread should run
+     * @param name The name to give the thread, if no thread factory has been set
+     * @return A new thread
+     */
+    protected Thread createThread(final Runnable runnable, final String name) {
+        final ThreadFactory factory = threadFactory;
+        return factory == null ? new Thread(runnable, name) : factory.newThread(runnable);
+    }
+
     /**
      * Entry point for the control thread for this parser.
      */
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.events;
+
+import com.dmdirc.parser.interfaces.ChannelClientInfo;
+import com.dmdirc.parser.interfaces.ChannelInfo;
+import com.dmdirc.parser.interfaces.ClientInfo;
+import com.dmdirc.parser.interfaces.Parser;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Called once for each netjoin, with all of the clients that rejoined after a netsplit.
+ */
+public class NetjoinEvent extends ParserEvent {
+
+    private final String server;
+    private final String splitServer;
+    private final List<ClientInfo> clients;
+    private final Map<ChannelInfo, List<ChannelClientInfo>> channels;
+
+    public NetjoinEvent(final Parser parser, final LocalDateTime date, final String server,
+            final String splitServer, final Collection<? extends ClientInfo> clients,
+            final Map<? extends ChannelInfo, ? extends Collection<? extends ChannelClientInfo>> channels) {
+        super(parser, date);
+        this.server = checkNotNull(server);
+        this.splitServer = checkNotNull(splitServer);
+        this.clients = Collections.unmodifiableList(new ArrayList<>(clients));
+        final Map<ChannelInfo, List<ChannelClientInfo>> channelsCopy = new LinkedHashMap<>();
+        channels.forEach((channel, members) -> channelsCopy.put(channel,
+                Collections.unmodifiableList(new ArrayList<>(members))));
+        this.channels = Collections.unmodifiableMap(channelsCopy);
+    }
+
+    /**
+     * Gets the name of the server which the split server rejoined.
+     *
+     * @return The name of the server that was rejoined
+     */
+    public String getServer() {
+        return server;
+    }
+
+    /**
+     * Gets the name of the server which rejoined the network.
+     *
+     * @return The name of the server that rejoined
+     */
+    public String getSplitServer() {
+        return splitServer;
+    }
+
+    /**
+     * Gets all of the clients that rejoined.
+     *
+     * @return The clients that rejoined
+     */
+    public List<ClientInfo> getClients() {
+        return clients;
+    }
+
+    /**
+     * Gets the clients that rejoined each channel we are on.
+     *
+     * @return Map of channels to the channel clients that joined them
+     */
+    public Map<ChannelInfo, List<ChannelClientInfo>> getChannels() {
+        return channels;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.events;
+
+import com.dmdirc.parser.interfaces.ClientInfo;
+import com.dmdirc.parser.interfaces.Parser;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Called once when the reply to a WHO has been applied to the clients it
+ * describes, in place of an away state event for each client.
+ */
+public class WhoResultEvent extends ParserEvent {
+
+    private final String target;
+    private final List<ClientInfo> clients;
+    private final List<ClientInfo> awayChanged;
+
+    public WhoResultEvent(final Parser parser, final LocalDateTime date, final String target,
+            final Collection<? extends ClientInfo> clients,
+            final Collection<? extends ClientInfo> awayChanged) {
+        super(parser, date);
+        this.target = checkNotNull(target);
+        this.clients = Collections.unmodifiableList(new ArrayList<>(clients));
+        this.awayChanged = Collections.unmodifiableList(new ArrayList<>(awayChanged));
+    }
+
+    /**
+     * Gets the channel, nickname or mask that the WHO was for.
+     *
+     * @return The target of the WHO
+     */
+    public String getTarget() {
+        return target;
+    }
+
+    /**
+     * Gets all of the known clients that were updated by the reply.
+     *
+     * @return The clients that were updated
+     */
+    public List<ClientInfo> getClients() {
+        return clients;
+    }
+
+    /**
+     * Gets the clients whose away state was changed by the reply.
+     *
+     * @return The clients whose away state changed
+     */
+    public List<ClientInfo> getAwayChanged() {
+        return awayChanged;
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.common;
+
+import com.dmdirc.parser.events.DebugInfoEvent;
+import com.dmdirc.parser.events.ParserEvent;
+import com.dmdirc.parser.events.PingSentEvent;
+import com.dmdirc.parser.events.ServerReadyEvent;
+import com.dmdirc.parser.interfaces.Parser;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import net.engio.mbassy.listener.Handler;
+import net.engio.mbassy.listener.Listener;
+import net.engio.mbassy.listener.References;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class AsyncEventDispatcherTest {
+
+    private final Parser parser = mock(Parser.class);
+    private final List<Runnable> tasks = new ArrayList<>();
+    private final List<ParserEvent> inlineEvents = Collections.synchronizedList(new ArrayList<>());
+    private final List<ParserEvent> queuedEvents = Collections.synchronizedList(new ArrayList<>());
+    private ExecutorService executor;
+    private AsyncEventDispatcher dispatcher;
+    private CallbackManager manager;
+
+    @Before
+    public void setup() {
+        manager = new CallbackManager(error -> {}, m -> dispatcher = new AsyncEventDispatcher(
+                new HandlerTableDispatcher(m), new HandlerTableDispatcher(m)));
+        dispatcher.subscribeInline(new RecordingListener(inlineEvents));
+        manager.subscribe(new RecordingListener(queuedEvents));
+    }
+
+    @After
+    public void tearDown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSynchronousByDefault() {
+        final ParserEvent event = ready();
+        manager.publish(event);
+
+        assertEquals(asList(event), inlineEvents);
+        assertEquals(asList(event), queuedEvents);
+    }
+
+    @Test
+    public void testQueuedInOrder() {
+        dispatcher.start(tasks::add, 10, EventOverflowPolicy.BLOCK);
+        final ParserEvent first = ready();
+        final ParserEvent second = debug();
+        manager.publish(first);
+        manager.publish(second);
+
+        assertEquals(asList(first, second), inlineEvents);
+        assertTrue(queuedEvents.isEmpty());
+        assertEquals(2, dispatcher.getQueueDepth());
+        assertEquals(1, tasks.size());
+
+        tasks.get(0).run();
+        assertEquals(asList(first, second), queuedEvents);
+        assertEquals(0, dispatcher.getQueueDepth());
+    }
+
+    @Test
+    public void testDropDiagnostics() {
+        dispatcher.start(tasks::add, 2, EventOverflowPolicy.DROP_DIAGNOSTICS);
+        final ParserEvent debug = debug();
+        final ParserEvent first = ready();
+        final ParserEvent second = ready();
+        manager.publish(debug);
+        manager.publish(first);
+        assertTrue(dispatcher.isFull());
+
+        // Queued debug events make way for others, and new ones are dropped.
+        manager.publish(second);
+        manager.publish(debug());
+        assertEquals(2, dispatcher.getDroppedEvents());
+        assertEquals(4, inlineEvents.size());
+
+        tasks.get(0).run();
+        assertEquals(asList(first, second), queuedEvents);
+    }
+
+    @Test
+    public void testCoalesce() {
+        dispatcher.start(tasks::add, 2, EventOverflowPolicy.COALESCE);
+        final ParserEvent ready = ready();
+        final ParserEvent latest = new PingSentEvent(parser, LocalDateTime.now());
+        manager.publish(new PingSentEvent(parser, LocalDateTime.now()));
+        manager.publish(ready);
+        manager.publish(latest);
+
+        assertEquals(1, dispatcher.getCoalescedEvents());
+        assertEquals(0, dispatcher.getDroppedEvents());
+
+        tasks.get(0).run();
+        assertEquals(asList(ready, latest), queuedEvents);
+    }
+
+    @Test
+    public void testBlockWaitsForListeners() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        manager.subscribe(new BlockingListener(release));
+        executor = Executors.newSingleThreadExecutor();
+        dispatcher.start(executor, 1, EventOverflowPolicy.BLOCK);
+
+        manager.publish(ready());
+        final Thread publisher = new Thread(() -> {
+            manager.publish(ready());
+            manager.publish(ready());
+        });
+        publisher.start();
+        publisher.join(200);
+        assertTrue(publisher.isAlive());
+
+        release.countDown();
+        publisher.join(5000);
+        assertFalse(publisher.isAlive());
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(3, queuedEvents.size());
+        assertEquals(0, dispatcher.getDroppedEvents());
+    }
+
+    @Test
+    public void testListenersPublishingDontBlock() throws InterruptedException {
+        manager.subscribe(new RepublishingListener());
+        executor = Executors.newSingleThreadExecutor();
+        dispatcher.start(executor, 1, EventOverflowPolicy.BLOCK);
+
+        manager.publish(ready());
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(4, queuedEvents.size());
+    }
+
+    private ServerReadyEvent ready() {
+        return new ServerReadyEvent(parser, LocalDateTime.now());
+    }
+
+    private DebugInfoEvent debug() {
+        return new DebugInfoEvent(parser, LocalDateTime.now(), 1, "debug");
+    }
+
+    @Listener(references = References.Strong)
+    private static class RecordingListener {
+
+        private final List<ParserEvent> events;
+
+        RecordingListener(final List<ParserEvent> events) {
+            this.events = events;
+        }
+
+        @Handler
+        public void handleEvent(final ParserEvent event) {
+            events.add(event);
+        }
+
+    }
+
+    @Listener(references = References.Strong)
+    private static class BlockingListener {
+
+        private final CountDownLatch release;
+
+        BlockingListener(final CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Handler
+        public void handleReady(final ServerReadyEvent event) throws InterruptedException {
+            release.await();
+        }
+
+    }
+
+    @Listener(references = References.Strong)
+    private class RepublishingListener {
+
+        @Handler
+        public void handleReady(final ServerReadyEvent event) {
+            // Each of these would otherwise wait for this listener to finish.
+            manager.publish(debug());
+            manager.publish(debug());
+            manager.publish(debug());
+        }
+
+    }
+
+}
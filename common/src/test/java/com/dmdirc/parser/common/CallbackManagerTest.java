@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.common;
+
+import com.dmdirc.parser.events.DataInEvent;
+import com.dmdirc.parser.events.DebugInfoEvent;
+import com.dmdirc.parser.events.ParserEvent;
+import net.engio.mbassy.listener.Handler;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CallbackManagerTest {
+
+    private CallbackManager manager;
+
+    @Before
+    public void setup() {
+        manager = new CallbackManager(error -> {});
+    }
+
+    @Test
+    public void testNoSubscribers() {
+        assertFalse(manager.hasSubscribers(DebugInfoEvent.class));
+        assertFalse(manager.hasSubscribers(DataInEvent.class));
+    }
+
+    @Test
+    public void testSubscribeAndUnsubscribe() {
+        final DebugListener listener = new DebugListener();
+        assertFalse(manager.hasSubscribers(DebugInfoEvent.class));
+
+        manager.subscribe(listener);
+        assertTrue(manager.hasSubscribers(DebugInfoEvent.class));
+        assertFalse(manager.hasSubscribers(DataInEvent.class));
+
+        manager.unsubscribe(listener);
+        assertFalse(manager.hasSubscribers(DebugInfoEvent.class));
+    }
+
+    @Test
+    public void testSupertypeSubscriber() {
+        manager.subscribe(new AllListener());
+
+        assertTrue(manager.hasSubscribers(DebugInfoEvent.class));
+        assertTrue(manager.hasSubscribers(DataInEvent.class));
+    }
+
+    private static final class DebugListener {
+        @Handler
+        public void handleDebug(final DebugInfoEvent event) {
+        }
+    }
+
+    private static final class AllListener {
+        @Handler
+        public void handleAll(final ParserEvent event) {
+        }
+    }
+
+}
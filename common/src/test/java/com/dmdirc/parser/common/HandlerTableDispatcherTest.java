@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.common;
+
+import com.dmdirc.parser.events.DataInEvent;
+import com.dmdirc.parser.events.DebugInfoEvent;
+import com.dmdirc.parser.events.NumericEvent;
+import com.dmdirc.parser.events.ParserEvent;
+import com.dmdirc.parser.interfaces.Parser;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import net.engio.mbassy.bus.IMessagePublication;
+import net.engio.mbassy.bus.common.DeadMessage;
+import net.engio.mbassy.bus.error.PublicationError;
+import net.engio.mbassy.listener.Handler;
+import net.engio.mbassy.listener.Listener;
+import net.engio.mbassy.listener.References;
+import org.junit.Before;
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class HandlerTableDispatcherTest {
+
+    private final Parser parser = mock(Parser.class);
+    private final List<PublicationError> errors = new ArrayList<>();
+    private final List<String> calls = new ArrayList<>();
+    private CallbackManager manager;
+
+    @Before
+    public void setup() {
+        manager = new CallbackManager(errors::add, HandlerTableDispatcher::new);
+    }
+
+    @Test
+    public void testPriorityOrdering() {
+        manager.subscribe(new OrderListener("first"));
+        manager.subscribe(new OrderListener("second"));
+
+        manager.publish(debug(1, "test"));
+
+        assertEquals(asList("first-high", "second-high", "first-normal", "second-normal",
+                "first-low", "second-low"), calls);
+    }
+
+    @Test
+    public void testSubtypes() {
+        manager.subscribe(new TypeListener());
+
+        manager.publish(debug(1, "test"));
+        manager.publish(new DataInEvent(parser, LocalDateTime.now(), "test"));
+
+        assertEquals(asList("debug", "any", "any"), calls);
+    }
+
+    @Test
+    public void testConditions() {
+        manager.subscribe(new ConditionListener());
+
+        manager.publish(numeric(311));
+        manager.publish(numeric(318));
+        manager.publish(numeric(1));
+        manager.publish(debug(1, "JOIN"));
+        manager.publish(debug(1, "PART"));
+
+        assertEquals(asList("311", "whois", "whois", "JOIN"), calls);
+    }
+
+    @Test
+    public void testFilteredMessage() {
+        manager.subscribe(new ConditionListener());
+
+        final IMessagePublication publication = manager.publish(numeric(1));
+
+        assertTrue(publication.isFilteredMessage());
+        assertFalse(publication.isDeadMessage());
+    }
+
+    @Test
+    public void testDeadMessage() {
+        final DeadListener listener = new DeadListener();
+        manager.subscribe(listener);
+
+        final ParserEvent event = debug(1, "test");
+        final IMessagePublication publication = manager.publish(event);
+
+        assertTrue(publication.isDeadMessage());
+        assertEquals(singletonList(event), listener.messages);
+    }
+
+    @Test
+    public void testSubscribeAndUnsubscribe() {
+        final OrderListener listener = new OrderListener("test");
+        assertFalse(manager.hasSubscribers(DebugInfoEvent.class));
+
+        manager.subscribe(listener);
+        manager.subscribe(listener);
+        assertTrue(manager.hasSubscribers(DebugInfoEvent.class));
+        assertFalse(manager.hasSubscribers(DataInEvent.class));
+
+        manager.publish(debug(1, "test"));
+        assertEquals(3, calls.size());
+
+        assertTrue(manager.unsubscribe(listener));
+        assertFalse(manager.unsubscribe(listener));
+        assertFalse(manager.hasSubscribers(DebugInfoEvent.class));
+
+        manager.publish(debug(1, "test"));
+        assertEquals(3, calls.size());
+    }
+
+    @Test
+    public void testErrorsReported() {
+        final IllegalStateException exception = new IllegalStateException();
+        manager.subscribe(new FailingListener(exception));
+        manager.subscribe(new TypeListener());
+
+        manager.publish(debug(1, "test"));
+
+        assertEquals(1, errors.size());
+        assertSame(exception, errors.get(0).getCause());
+        assertEquals(asList("debug", "any"), calls);
+    }
+
+    /** MBassador orders handlers of equal priority randomly, so these all differ. */
+    @Test
+    public void testMatchesMBassador() {
+        final CallbackManager mbassador = new CallbackManager(errors::add);
+        final List<String> expected = new ArrayList<>();
+        mbassador.subscribe(new ConditionListener(expected));
+        mbassador.subscribe(new TypeListener(expected));
+        manager.subscribe(new ConditionListener());
+        manager.subscribe(new TypeListener());
+
+        for (ParserEvent event : asList(numeric(311), numeric(301), debug(1, "JOIN"),
+                debug(2, "other"), new DataInEvent(parser, LocalDateTime.now(), "data"))) {
+            mbassador.publish(event);
+            manager.publish(event);
+        }
+
+        assertEquals(expected, calls);
+        assertEquals(emptyList(), errors);
+    }
+
+    private DebugInfoEvent debug(final int level, final String data) {
+        return new DebugInfoEvent(parser, LocalDateTime.now(), level, data);
+    }
+
+    private NumericEvent numeric(final int numeric) {
+        return new NumericEvent(parser, LocalDateTime.now(), numeric, new String[0]);
+    }
+
+    @Listener(references = References.Strong)
+    private class OrderListener {
+
+        private final String name;
+
+        OrderListener(final String name) {
+            this.name = name;
+        }
+
+        @Handler(priority = -10)
+        public void handleLow(final DebugInfoEvent event) {
+            calls.add(name + "-low");
+        }
+
+        @Handler(priority = 10)
+        public void handleHigh(final DebugInfoEvent event) {
+            calls.add(name + "-high");
+        }
+
+        @Handler
+        public void handleNormal(final DebugInfoEvent event) {
+            calls.add(name + "-normal");
+        }
+
+    }
+
+    @Listener(references = References.Strong)
+    private class TypeListener {
+
+        private final List<String> target;
+
+        TypeListener() {
+            this(calls);
+        }
+
+        TypeListener(final List<String> target) {
+            this.target = target;
+        }
+
+        @Handler(rejectSubtypes = true, priority = 1)
+        public void handleDebug(final DebugInfoEvent event) {
+            target.add("debug");
+        }
+
+        @Handler(rejectSubtypes = true)
+        public void handleExact(final ParserEvent event) {
+            target.add("exact");
+        }
+
+        @Handler(priority = -1)
+        public void handleAny(final ParserEvent event) {
+            target.add("any");
+        }
+
+    }
+
+    @Listener(references = References.Strong)
+    private class ConditionListener {
+
+        private final List<String> target;
+
+        ConditionListener() {
+            this(calls);
+        }
+
+        ConditionListener(final List<String> target) {
+            this.target = target;
+        }
+
+        @Handler(condition = "msg.numeric == 311", priority = 1)
+        public void handle311(final NumericEvent event) {
+            target.add("311");
+        }
+
+        @Handler(condition = "msg.numeric >= 300 && msg.numeric < 400")
+        public void handleWhois(final NumericEvent event) {
+            target.add("whois");
+        }
+
+        @Handler(condition = "msg.data == 'JOIN'")
+        public void handleJoin(final DebugInfoEvent event) {
+            target.add(event.getData());
+        }
+
+    }
+
+    @Listener(references = References.Strong)
+    private static class DeadListener {
+
+        private final List<Object> messages = new ArrayList<>();
+
+        @Handler
+        public void handleDead(final DeadMessage message) {
+            messages.add(message.getMessage());
+        }
+
+    }
+
+    @Listener(references = References.Strong)
+    private static class FailingListener {
+
+        private final RuntimeException exception;
+
+        FailingListener(final RuntimeException exception) {
+            this.exception = exception;
+        }
+
+        @Handler(priority = 2)
+        public void handleDebug(final DebugInfoEvent event) {
+            throw exception;
+        }
+
+    }
+
+}
@@ -25,6 +25,8 @@ package com.dmdirc.parser.common;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.regex.PatternSyntaxException;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -125,4 +127,101 @@ public class IgnoreListTest {
         assertEquals(items, list.getSimpleList());
     }
     
+    @Test
+    public void testMatchesSameAsRegex() {
+        final List<String> patterns = Arrays.asList(
+                "nick!user@host\\.com",
+                "NICK!.*@.*",
+                ".*!.*@bad\\.host",
+                ".*!ident@.*",
+                "f.o!.*@.*",
+                "(foo|bar)!.*@.*",
+                "([a-z])\\1!.*@.*",
+                "(?-i)CaSe!.*@.*",
+                "[0-9]+!.*@.*",
+                ".*@.*\\.example",
+                "\\Qq.q\\E!.*",
+                ".*");
+        final String[] checks = {
+            "nick!user@host.com", "NICK!USER@HOST.COM", "nick!x@y", "a!b@bad.host",
+            "a!b@BAD.HOST", "x!ident@y", "fxo!a@b", "bar!a@b", "aa!a@b", "ab!a@b",
+            "CaSe!a@b", "case!a@b", "123!a@b", "a!b@c.example", "q.q!x", "qxq!x",
+            "f\no!a@b", "line\nbreak", "\ud83d\ude00!a@b", "", "!@", "nick!u@host\u2028",
+        };
+
+        for (int start = 0; start < patterns.size(); start++) {
+            final List<String> items = new ArrayList<>(patterns.subList(start, patterns.size()));
+            items.addAll(patterns.subList(0, start));
+            final IgnoreList list = new IgnoreList(items);
+
+            for (String check : checks) {
+                assertEquals(check, naiveMatch(items, check), list.matches(check));
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesRandomMasks() {
+        final Random random = new Random(1234);
+        final String alphabet = "aAbB!@.*?";
+        for (int run = 0; run < 50; run++) {
+            final IgnoreList list = new IgnoreList();
+            for (int i = 0; i < 20; i++) {
+                list.addSimple(randomString(random, alphabet, 6));
+            }
+            for (int i = 0; i < 200; i++) {
+                final String check = randomString(random, "aAbB!@.", 8);
+                assertEquals(check, naiveMatch(list.getRegexList(), check), list.matches(check));
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidPatternBeforeMatch() {
+        final IgnoreList list = new IgnoreList(Arrays.asList("foo", "[", "bar"));
+
+        assertEquals(0, list.matches("foo"));
+        try {
+            list.matches("bar");
+            fail("Expected PatternSyntaxException");
+        } catch (PatternSyntaxException ex) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testMatchesAfterChange() {
+        final IgnoreList list = new IgnoreList(Arrays.asList("foo", "bar"));
+        assertEquals(1, list.matches("bar"));
+
+        list.set(0, "bar");
+        assertEquals(0, list.matches("bar"));
+
+        list.remove(0);
+        assertEquals(0, list.matches("bar"));
+        assertEquals(-1, list.matches("foo"));
+
+        list.clear();
+        assertEquals(-1, list.matches("bar"));
+    }
+
+    private static int naiveMatch(final List<String> patterns, final String check) {
+        for (int i = 0; i < patterns.size(); i++) {
+            if (check.matches("(?i)" + patterns.get(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String randomString(final Random random, final String alphabet,
+            final int maxLength) {
+        final StringBuilder builder = new StringBuilder();
+        final int length = random.nextInt(maxLength + 1);
+        for (int i = 0; i < length; i++) {
+            builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return builder.toString();
+    }
+
 }
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.common;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+
+public class ParserThreadFactoriesTest {
+
+    @Test
+    public void testPlatformThreadsAreNamedInSequence() {
+        final ThreadFactory factory = ParserThreadFactories.platformThreads("parser-");
+        assertEquals("parser-0", factory.newThread(() -> {}).getName());
+        assertEquals("parser-1", factory.newThread(() -> {}).getName());
+    }
+
+    @Test
+    public void testVirtualThreadsIfSupportedRunsTasks() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Thread thread = ParserThreadFactories.virtualThreadsIfSupported("parser-")
+                .newThread(latch::countDown);
+        thread.start();
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals("parser-0", thread.getName());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testVirtualThreadsThrowsIfUnsupported() {
+        assumeFalse(ParserThreadFactories.isVirtualThreadSupported());
+        ParserThreadFactories.virtualThreads("parser-");
+    }
+
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc;
+
+import com.dmdirc.parser.interfaces.Encoder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * An {@link IRCReader} which reads from the underlying stream in bulk rather
+ * than a byte at a time.
+ *
+ * <p>Incoming data is kept in a single reusable buffer, line endings and
+ * tokens are found by scanning that buffer in place, and the protocol-level
+ * part of each line is decoded into a reusable character buffer. The lines
+ * produced are identical to those produced by {@link IRCReader}.
+ *
+ * <p>Instances are not thread safe, and should only be used by the thread
+ * reading from the server.
+ */
+public class BufferedIRCReader extends IRCReader {
+
+    /** Size of the buffer used for bulk reads from the stream. */
+    private static final int BUFFER_SIZE = 8192;
+    /** The input stream to read input from. */
+    private final InputStream stream;
+    /** The encoder to use to encode lines. */
+    private final Encoder encoder;
+    /** Decoder to use for parts not handled by the encoder. */
+    private final CharsetDecoder decoder;
+    /** Buffer holding data read from the stream but not yet consumed. */
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    /** The line currently being assembled, with any CRs removed. */
+    private final byte[] line = new byte[LINE_LENGTH];
+    /** Buffer used to decode the protocol-level part of lines. */
+    private final CharBuffer chars;
+
+    /** Number of bytes of the current line assembled so far. */
+    private int offset;
+    /** Offset of the trailing parameter in the current line, or -1. */
+    private int paramOffset = -1;
+    /** The last byte added to the current line. */
+    private int lastChr;
+    /** Whether the current line starts with tags. */
+    private boolean hasTags;
+    /** Whether we have passed the end of the tags in the current line. */
+    private boolean endOfTags;
+    /** Whether the current line has IRCv3 message tags. */
+    private boolean hasV3Tags;
+    /** Whether we have found the space following IRCv3 message tags. */
+    private boolean foundFirstSpace;
+
+    /**
+     * Creates a new BufferedIRCReader which will read from the specified
+     * stream. Protocol-level elements (e.g. channel and user names) will be
+     * encoded using the system default charset.
+     *
+     * @param inputStream The stream to read input from
+     * @param encoder The encoder to use to encode lines
+     */
+    public BufferedIRCReader(final InputStream inputStream, final Encoder encoder) {
+        this(inputStream, encoder, Charset.defaultCharset());
+    }
+
+    /**
+     * Creates a new BufferedIRCReader which will read from the specified
+     * stream.
+     *
+     * @param inputStream The stream to read input from
+     * @param encoder The encoder to use to encode lines
+     * @param charset The charset to use for protocol-level elements
+     */
+    public BufferedIRCReader(final InputStream inputStream, final Encoder encoder,
+            final Charset charset) {
+        super(inputStream, encoder, charset);
+        this.stream = inputStream;
+        this.encoder = encoder;
+        this.decoder = charset.newDecoder();
+        this.decoder.onMalformedInput(CodingErrorAction.REPLACE);
+        this.decoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.chars = CharBuffer.allocate((int) Math.ceil(LINE_LENGTH * decoder.maxCharsPerByte()));
+        this.buffer.flip();
+    }
+
+    /**
+     * Creates a new BufferedIRCReader with no underlying stream. Data must be
+     * supplied using {@link #nextLine(ByteBuffer)}.
+     *
+     * @param encoder The encoder to use to encode lines
+     */
+    BufferedIRCReader(final Encoder encoder) {
+        this(null, encoder, Charset.defaultCharset());
+    }
+
+    @Override
+    public ReadLine readLine() throws IOException {
+        ReadLine result = nextLine(buffer);
+        while (result == null) {
+            buffer.compact();
+            final int read = stream.read(buffer.array(), buffer.position(), buffer.remaining());
+            if (read > 0) {
+                buffer.position(buffer.position() + read);
+            }
+            buffer.flip();
+
+            if (read == -1) {
+                // Hit the end of the stream
+                return null;
+            }
+
+            result = nextLine(buffer);
+        }
+
+        return result;
+    }
+
+    /**
+     * Consumes bytes from the given buffer until a complete line has been
+     * assembled. If the buffer is exhausted first, the partial line is
+     * retained and will be continued by the next call.
+     *
+     * @param source The buffer to consume bytes from
+     * @return The next complete line, or null if more data is required
+     */
+    ReadLine nextLine(final ByteBuffer source) {
+        while (offset < LINE_LENGTH && source.hasRemaining()) {
+            final int chr = source.get() & 0xff;
+            if (chr == '\r') {
+                continue;
+            } else if (chr == '\n') {
+                // End of the line
+                return completeLine();
+            }
+
+            if (hasTags && !endOfTags) {
+                // Tags end either at the first @ for non-v3 tags or space for v3
+                if (offset > 0 && ((chr == '@' && !hasV3Tags) || chr == ' ')) {
+                    endOfTags = true;
+                    hasV3Tags = chr == ' ';
+                }
+                // If we are still possibly looking at tags, and we find a non-numeric
+                // character, then we probably have v3Tags
+                if (!endOfTags && (chr < '0' || chr > '9')) {
+                    hasV3Tags = true;
+                }
+            } else if (offset == 0 && chr == '@') {
+                hasTags = true;
+            } else if (offset == 0) {
+                endOfTags = true;
+            }
+
+            line[offset++] = (byte) chr;
+
+            if (lastChr == ' ' && chr == ':' && paramOffset == -1) {
+                // We've found the last param
+                if (!hasV3Tags || foundFirstSpace) {
+                    paramOffset = offset;
+                } else {
+                    foundFirstSpace = true;
+                }
+            }
+
+            lastChr = chr;
+        }
+
+        return offset == LINE_LENGTH ? completeLine() : null;
+    }
+
+    /**
+     * Builds a {@link ReadLine} from the line assembled so far, and resets the
+     * state ready for the next line.
+     *
+     * @return A corresponding {@link ReadLine} instance
+     */
+    private ReadLine completeLine() {
+        final ReadLine result = processLine(offset, paramOffset);
+
+        offset = 0;
+        paramOffset = -1;
+        lastChr = 0;
+        hasTags = false;
+        endOfTags = false;
+        hasV3Tags = false;
+        foundFirstSpace = false;
+
+        return result;
+    }
+
+    /**
+     * Processes the assembled line into a wrapped {@link ReadLine} instance.
+     *
+     * @param length The length of the line in bytes
+     * @param trailingOffset The offset of the first byte of the trailing
+     * parameter, or -1 if no such parameter exists.
+     * @return A corresponding {@link ReadLine} instance
+     */
+    private ReadLine processLine(final int length, final int trailingOffset) {
+        final String[] firstTokens = tokenise(
+                trailingOffset == -1 ? length : trailingOffset - 2);
+
+        final String[] tokens;
+        if (trailingOffset > -1) {
+            final String source = getSource(firstTokens);
+            final String destination = getDestination(firstTokens);
+
+            tokens = new String[firstTokens.length + 1];
+            System.arraycopy(firstTokens, 0, tokens, 0, firstTokens.length);
+            tokens[firstTokens.length] = encoder.encode(source, destination,
+                    line, trailingOffset, length - trailingOffset);
+        } else {
+            tokens = firstTokens;
+        }
+
+        return new ReadLine(new String(line, 0, length), tokens);
+    }
+
+    /**
+     * Decodes the first part of the current line and splits it into tokens
+     * on runs of spaces. The result is the same as calling
+     * {@code split("[ ]+")} on the decoded string.
+     *
+     * @param length The number of bytes making up the first part of the line
+     * @return The tokens making up the first part of the line
+     */
+    private String[] tokenise(final int length) {
+        final char[] text;
+        final int textLength;
+
+        decoder.reset();
+        chars.clear();
+        final ByteBuffer in = ByteBuffer.wrap(line, 0, length);
+        final CoderResult result = decoder.decode(in, chars, true);
+        if (result.isOverflow() || decoder.flush(chars).isOverflow()) {
+            // Shouldn't happen as the buffer is sized for the worst case, but
+            // fall back to letting the decoder allocate if it does.
+            try {
+                final CharBuffer decoded = decoder.decode(ByteBuffer.wrap(line, 0, length));
+                text = decoded.array();
+                textLength = decoded.limit();
+            } catch (CharacterCodingException ex) {
+                // Shouldn't happen, as we're replacing errors.
+                return new String[0];
+            }
+        } else {
+            text = chars.array();
+            textLength = chars.position();
+        }
+
+        int count = 0;
+        boolean inToken = false;
+        for (int i = 0; i < textLength; i++) {
+            if (text[i] == ' ') {
+                inToken = false;
+            } else if (!inToken) {
+                inToken = true;
+                count++;
+            }
+        }
+
+        if (count == 0) {
+            // Either an empty string, which is returned as-is, or nothing but
+            // spaces, which produces no tokens at all.
+            return textLength == 0 ? new String[]{""} : new String[0];
+        }
+
+        final boolean leadingSpace = text[0] == ' ';
+        final String[] tokens = new String[leadingSpace ? count + 1 : count];
+        int index = 0;
+        if (leadingSpace) {
+            tokens[index++] = "";
+        }
+
+        int start = -1;
+        for (int i = 0; i <= textLength; i++) {
+            if (i == textLength || text[i] == ' ') {
+                if (start > -1) {
+                    tokens[index++] = new String(text, start, i - start);
+                    start = -1;
+                }
+            } else if (start == -1) {
+                start = i;
+            }
+        }
+
+        return tokens;
+    }
+
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc;
+
+import com.dmdirc.parser.common.QueuePriority;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+/**
+ * Paces the queries the parser sends to find out about channels it has just
+ * joined: the channel's modes, its list modes (if
+ * {@link IRCParser#getAutoListMode()} is enabled) and a WHO (if
+ * {@link IRCParser#getAutoWho()} is enabled).
+ *
+ * <p>Joining hundreds of channels at once would otherwise queue several
+ * queries per channel at the same time, which is enough to be disconnected
+ * for flooding on many servers. Instead, channels are queried in waves once
+ * their NAMES reply has finished: each wave covers at most
+ * {@link #getWaveSize()} channels, and the next wave is only sent once the
+ * previous one has left the output queue and {@link #getWaveInterval()}
+ * milliseconds have passed. Waves are scheduled using the parser's
+ * {@link IRCParser#getScheduler() scheduler}, and sent in sequence with the
+ * processing of lines from the server rather than on the scheduler's thread.
+ *
+ * <p>If the wave size is 0, queries are sent immediately as channels are
+ * joined, as they were before pacing was introduced.
+ *
+ * <p>Channels that aren't fully tracked (see {@link ChannelTrackingLevel})
+ * are never queried.
+ */
+public class ChannelSyncPacer {
+
+    /** The default number of channels queried in each wave. */
+    public static final int DEFAULT_WAVE_SIZE = 10;
+    /** The default time, in milliseconds, between waves. */
+    public static final long DEFAULT_WAVE_INTERVAL = 1000;
+    /** The parser that owns this pacer. */
+    private final IRCParser parser;
+    /** Channels that have been joined, but haven't finished receiving NAMES. */
+    private final Set<IRCChannelInfo> awaitingNames =
+            Collections.newSetFromMap(new WeakHashMap<>());
+    /** Names of channels waiting to be queried, in order. */
+    private final Queue<String> pending = new LinkedList<>();
+    /** The number of channels to query in each wave, or 0 to not pace queries. */
+    private int waveSize = DEFAULT_WAVE_SIZE;
+    /** The time, in milliseconds, between waves. */
+    private long waveInterval = DEFAULT_WAVE_INTERVAL;
+    /** The task that will send the next wave, if one is scheduled. */
+    @Nullable
+    private PingScheduler.Task task;
+
+    /**
+     * Creates a new pacer.
+     *
+     * @param parser The parser that owns this pacer
+     */
+    public ChannelSyncPacer(final IRCParser parser) {
+        this.parser = parser;
+    }
+
+    /**
+     * Gets the number of channels queried in each wave.
+     *
+     * @return The wave size, or 0 if queries are not paced
+     */
+    public synchronized int getWaveSize() {
+        return waveSize;
+    }
+
+    /**
+     * Sets the number of channels queried in each wave. Setting this to 0
+     * disables pacing for channels joined afterwards.
+     *
+     * @param waveSize The new wave size, or 0 to not pace queries
+     */
+    public synchronized void setWaveSize(final int waveSize) {
+        this.waveSize = Math.max(0, waveSize);
+    }
+
+    /**
+     * Gets the minimum time between waves.
+     *
+     * @return The time between waves, in milliseconds
+     */
+    public synchronized long getWaveInterval() {
+        return waveInterval;
+    }
+
+    /**
+     * Sets the minimum time between waves.
+     *
+     * @param waveInterval The new time between waves, in milliseconds
+     */
+    public synchronized void setWaveInterval(final long waveInterval) {
+        this.waveInterval = Math.max(0, waveInterval);
+    }
+
+    /**
+     * Called when the local client joins a channel.
+     *
+     * @param channel The channel that was joined
+     */
+    public synchronized void joined(final IRCChannelInfo channel) {
+        if (channel.getTrackingLevel() != ChannelTrackingLevel.FULL) {
+            return;
+        }
+
+        if (waveSize == 0) {
+            // List modes are still requested once the NAMES reply has finished.
+            sendModeAndWho(channel);
+        } else {
+            awaitingNames.add(channel);
+        }
+    }
+
+    /**
+     * Called when the NAMES reply for a channel has finished.
+     *
+     * @param channel The channel whose names were received
+     */
+    public synchronized void gotNames(final IRCChannelInfo channel) {
+        if (channel.getTrackingLevel() != ChannelTrackingLevel.FULL) {
+            return;
+        }
+
+        if (awaitingNames.remove(channel)) {
+            pending.add(channel.getName());
+            if (task == null) {
+                schedule(0);
+            }
+        } else if (!channel.hasAskedForListModes() && parser.getAutoListMode()) {
+            // Either pacing is disabled, or this is a later NAMES reply.
+            channel.requestListModes();
+        }
+    }
+
+    /**
+     * Gets the number of channels waiting to be queried.
+     *
+     * @return The number of channels waiting
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Forgets about all channels, and cancels any scheduled wave.
+     */
+    public synchronized void clear() {
+        awaitingNames.clear();
+        pending.clear();
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * Sends the next wave of queries, if the output queue has caught up with
+     * the previous one.
+     */
+    synchronized void sendWave() {
+        task = null;
+        if (parser.getOutputQueue().queueCount() > 0) {
+            // The server hasn't been sent the last wave yet.
+            schedule(waveInterval);
+            return;
+        }
+
+        final int size = waveSize == 0 ? pending.size() : waveSize;
+        for (int i = 0; i < size && !pending.isEmpty(); i++) {
+            final IRCChannelInfo channel = parser.getChannel(pending.poll());
+            if (channel != null) {
+                sync(channel);
+            }
+        }
+
+        if (!pending.isEmpty()) {
+            schedule(waveInterval);
+        }
+    }
+
+    /**
+     * Sends the queries for a channel.
+     *
+     * @param channel The channel to query
+     */
+    private void sync(final IRCChannelInfo channel) {
+        sendModeAndWho(channel);
+        if (!channel.hasAskedForListModes() && parser.getAutoListMode()) {
+            channel.requestListModes();
+        }
+    }
+
+    /**
+     * Sends the MODE query for a channel, and a WHO if automatic WHOs are
+     * enabled.
+     *
+     * @param channel The channel to query
+     */
+    private void sendModeAndWho(final IRCChannelInfo channel) {
+        parser.sendString("MODE " + channel.getName(), QueuePriority.LOW);
+        if (parser.getAutoWho()) {
+            parser.getWhoxTracker().sendWho(channel.getName(), QueuePriority.LOW);
+        }
+    }
+
+    /**
+     * Schedules the next wave.
+     *
+     * @param delay The delay before the wave is sent, in milliseconds
+     */
+    private void schedule(final long delay) {
+        task = parser.getScheduler().schedule(() -> parser.executeProcessingTask(this::sendWave),
+                delay, 0, TimeUnit.MILLISECONDS);
+    }
+
+}
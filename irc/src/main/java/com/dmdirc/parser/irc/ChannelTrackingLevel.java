@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc;
+
+/**
+ * How much state the parser keeps about a channel it is on.
+ *
+ * <p>The level for a channel is decided when it is joined, using
+ * {@link IRCParser#getChannelTrackingLevel(String)}, and may be changed later
+ * using {@link IRCChannelInfo#setTrackingLevel(ChannelTrackingLevel)}.
+ */
+public enum ChannelTrackingLevel {
+
+    /**
+     * Every member of the channel is tracked, and the channel's modes, list
+     * modes and (if enabled) a WHO are requested after joining.
+     */
+    FULL,
+    /**
+     * Only the number of members is kept, from the NAMES reply and later
+     * joins, parts and kicks. Quits can't be attributed to the channel, so the
+     * count may drift until the next NAMES reply. No queries are sent after
+     * joining.
+     */
+    COUNTS_ONLY,
+    /**
+     * No members are tracked, and no queries are sent after joining. Messages,
+     * topics and mode changes for the channel are still processed.
+     */
+    MESSAGES_ONLY
+
+}
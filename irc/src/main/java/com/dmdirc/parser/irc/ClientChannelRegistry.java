@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import javax.annotation.Nullable;
+
+/**
+ * Keeps track of the clients and channels known to an {@link IRCParser}.
+ *
+ * <p>The registry is only modified by the parser's thread, but may be read
+ * from any thread. Lookups are casemap-aware and constant time, and the
+ * collections returned by {@link #getClients()} and {@link #getChannels()}
+ * are immutable snapshots which are only rebuilt after the registry changes,
+ * so readers never block or observe a half-applied update.
+ */
+public class ClientChannelRegistry {
+
+    /** Known clients, keyed by nickname. */
+    private final Map<IRCStringConverter.Key, IRCClientInfo> clients = new ConcurrentHashMap<>();
+    /** Known channels, keyed by name. */
+    private final Map<IRCStringConverter.Key, IRCChannelInfo> channels = new ConcurrentHashMap<>();
+    /** Snapshot of the known clients. */
+    private final Snapshot<IRCClientInfo> clientSnapshot = new Snapshot<>(clients);
+    /** Snapshot of the known channels. */
+    private final Snapshot<IRCChannelInfo> channelSnapshot = new Snapshot<>(channels);
+    /** Converter used to create keys. */
+    private volatile IRCStringConverter converter;
+
+    /**
+     * Creates a new, empty, registry.
+     *
+     * @param converter The converter to use to compare names
+     */
+    public ClientChannelRegistry(final IRCStringConverter converter) {
+        this.converter = converter;
+    }
+
+    /**
+     * Changes the converter used to compare names, rebuilding the indexes
+     * using the new casemapping.
+     *
+     * @param converter The new converter to use
+     */
+    public void setConverter(final IRCStringConverter converter) {
+        this.converter = converter;
+        rekey(clients, IRCClientInfo::getRealNickname);
+        rekey(channels, IRCChannelInfo::getName);
+        clientSnapshot.invalidate();
+        channelSnapshot.invalidate();
+    }
+
+    /**
+     * Gets the client with the given nickname.
+     *
+     * @param nickname The nickname to look up
+     * @return The matching client, or null if it isn't known
+     */
+    @Nullable
+    public IRCClientInfo getClient(final String nickname) {
+        return clients.get(converter.key(nickname));
+    }
+
+    /**
+     * Determines if a client with the given nickname is known.
+     *
+     * @param nickname The nickname to look up
+     * @return True if the client is known, false otherwise
+     */
+    public boolean isKnownClient(final String nickname) {
+        return clients.containsKey(converter.key(nickname));
+    }
+
+    /**
+     * Adds a client, replacing any existing client with the same nickname.
+     *
+     * @param client The client to add
+     */
+    public void addClient(final IRCClientInfo client) {
+        clients.put(converter.key(client.getRealNickname()), client);
+        clientSnapshot.invalidate();
+    }
+
+    /**
+     * Removes the client with the given client's nickname.
+     *
+     * @param client The client to remove
+     */
+    public void removeClient(final IRCClientInfo client) {
+        if (clients.remove(converter.key(client.getRealNickname())) != null) {
+            clientSnapshot.invalidate();
+        }
+    }
+
+    /**
+     * Gets the number of known clients.
+     *
+     * @return The number of known clients
+     */
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    /**
+     * Gets an immutable snapshot of all known clients.
+     *
+     * @return The known clients
+     */
+    public Collection<IRCClientInfo> getClients() {
+        return clientSnapshot.get();
+    }
+
+    /**
+     * Removes all known clients.
+     */
+    public void clearClients() {
+        clients.clear();
+        clientSnapshot.invalidate();
+    }
+
+    /**
+     * Gets the channel with the given name.
+     *
+     * @param name The name of the channel
+     * @return The matching channel, or null if it isn't known
+     */
+    @Nullable
+    public IRCChannelInfo getChannel(final String name) {
+        return channels.get(converter.key(name));
+    }
+
+    /**
+     * Adds a channel, replacing any existing channel with the same name.
+     *
+     * @param channel The channel to add
+     */
+    public void addChannel(final IRCChannelInfo channel) {
+        channels.put(converter.key(channel.getName()), channel);
+        channelSnapshot.invalidate();
+    }
+
+    /**
+     * Removes the channel with the given name.
+     *
+     * @param name The name of the channel to remove
+     */
+    public void removeChannel(final String name) {
+        if (channels.remove(converter.key(name)) != null) {
+            channelSnapshot.invalidate();
+        }
+    }
+
+    /**
+     * Gets the number of known channels.
+     *
+     * @return The number of known channels
+     */
+    public int getChannelCount() {
+        return channels.size();
+    }
+
+    /**
+     * Gets an immutable snapshot of all known channels.
+     *
+     * @return The known channels
+     */
+    public Collection<IRCChannelInfo> getChannels() {
+        return channelSnapshot.get();
+    }
+
+    /**
+     * Gets the known channels which the client with the given nickname is
+     * on. This uses the client's own record of its memberships, so is
+     * proportional to the number of channels the client is on rather than
+     * the number of channels we know about.
+     *
+     * @param nickname The nickname of the client
+     * @return The channels the client is known to be on
+     */
+    public Collection<IRCChannelInfo> getChannels(final String nickname) {
+        final IRCClientInfo client = getClient(nickname);
+        if (client == null) {
+            return Collections.emptyList();
+        }
+
+        final List<IRCChannelInfo> result = new ArrayList<>();
+        for (IRCChannelClientInfo channelClient : client.getChannelMemberships()) {
+            result.add((IRCChannelInfo) channelClient.getChannel());
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Removes all known channels.
+     */
+    public void clearChannels() {
+        channels.clear();
+        channelSnapshot.invalidate();
+    }
+
+    /**
+     * Rebuilds the keys of the given map using the current converter.
+     *
+     * @param map The map to rebuild
+     * @param name Function to get the name of a value
+     * @param <V> The type of value in the map
+     */
+    private <V> void rekey(final Map<IRCStringConverter.Key, V> map,
+            final Function<V, String> name) {
+        final List<V> values = new ArrayList<>(map.values());
+        map.clear();
+        for (V value : values) {
+            map.put(converter.key(name.apply(value)), value);
+        }
+    }
+
+    /**
+     * Lazily-built immutable copy of the values in a map.
+     *
+     * @param <V> The type of value in the map
+     */
+    private static final class Snapshot<V> {
+
+        /** The map being copied. */
+        private final Map<?, V> source;
+        /** Version of the map, incremented whenever it is changed. */
+        private final AtomicLong version = new AtomicLong();
+        /** The most recently built copy, and the version it was built from. */
+        private final AtomicReference<Copy<V>> copy = new AtomicReference<>();
+
+        Snapshot(final Map<?, V> source) {
+            this.source = source;
+        }
+
+        /**
+         * Marks the current copy as out of date. Must be called after the map
+         * has been changed.
+         */
+        void invalidate() {
+            version.incrementAndGet();
+        }
+
+        /**
+         * Gets a copy of the values in the map, building a new one if the map
+         * has changed since the last copy was built.
+         *
+         * @return An immutable copy of the values in the map
+         */
+        Collection<V> get() {
+            while (true) {
+                final Copy<V> current = copy.get();
+                final long expected = version.get();
+                if (current != null && current.version == expected) {
+                    return current.values;
+                }
+
+                final Collection<V> values = Collections.unmodifiableList(
+                        new ArrayList<>(source.values()));
+                if (version.get() == expected) {
+                    // No changes were made while we were copying, so the copy
+                    // is consistent.
+                    copy.compareAndSet(current, new Copy<>(expected, values));
+                    return values;
+                }
+            }
+        }
+
+    }
+
+    /**
+     * A copy of the values in a map at a given version.
+     *
+     * @param <V> The type of value in the map
+     */
+    private static final class Copy<V> {
+
+        /** The version the copy was built from. */
+        private final long version;
+        /** The copied values. */
+        private final Collection<V> values;
+
+        Copy(final long version, final Collection<V> values) {
+            this.version = version;
+            this.values = values;
+        }
+
+    }
+
+}
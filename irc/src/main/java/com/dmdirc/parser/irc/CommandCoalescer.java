@@ -0,0 +1,354 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc;
+
+import com.dmdirc.parser.irc.outputqueue.LineMerger;
+
+import java.util.Locale;
+
+import javax.annotation.Nullable;
+
+/**
+ * Merges compatible commands that are waiting in the output queue, within
+ * the limits advertised by the server.
+ *
+ * <p>The following are merged when they are queued one after the other:
+ * <ul>
+ * <li>Channel MODE changes for the same channel, up to the MODES limit on
+ * modes with parameters.</li>
+ * <li>JOINs, up to the TARGMAX limit for JOIN if there is one. Channels
+ * with keys must come before those without.</li>
+ * <li>PRIVMSGs or NOTICEs with the same text to different targets, up to
+ * the TARGMAX or MAXTARGETS limit. These are never merged if the server
+ * doesn't advertise a limit.</li>
+ * <li>WHOs with the same options, up to the TARGMAX limit for WHO.
+ * Identical WHOs are always merged.</li>
+ * </ul>
+ *
+ * <p>Lines with tags or a prefix are never merged, and no merged line is
+ * longer than {@link IRCParser#MAX_LINELENGTH}.
+ */
+public class CommandCoalescer implements LineMerger {
+
+    /** The number of modes with parameters allowed per line if the server doesn't say. */
+    private static final int DEFAULT_MODES = 3;
+    /** The parser whose lines are being merged. */
+    private final IRCParser parser;
+    /** Manager used to handle prefix modes. */
+    private final PrefixModeManager prefixModeManager;
+    /** Manager used to handle channel boolean modes. */
+    private final ModeManager chanModeManager;
+
+    /**
+     * Creates a new coalescer for the given parser.
+     *
+     * @param parser The parser whose lines are being merged
+     * @param prefixModeManager The manager of the server's prefix modes
+     * @param chanModeManager The manager of the server's boolean channel modes
+     */
+    public CommandCoalescer(final IRCParser parser, final PrefixModeManager prefixModeManager,
+            final ModeManager chanModeManager) {
+        this.parser = parser;
+        this.prefixModeManager = prefixModeManager;
+        this.chanModeManager = chanModeManager;
+    }
+
+    @Nullable
+    @Override
+    public String merge(final String queued, final String line) {
+        final Command first = Command.parse(queued);
+        final Command second = Command.parse(line);
+        if (first == null || second == null || !first.name.equals(second.name)) {
+            return null;
+        }
+
+        final String merged;
+        switch (first.name) {
+            case "MODE":
+                merged = mergeModes(first, second);
+                break;
+            case "JOIN":
+                merged = mergeJoins(first, second);
+                break;
+            case "PRIVMSG":
+            case "NOTICE":
+                merged = mergeMessages(first, second);
+                break;
+            case "WHO":
+                merged = queued.equals(line) ? queued : mergeWhos(first, second);
+                break;
+            default:
+                merged = null;
+                break;
+        }
+
+        return merged == null || merged.length() > IRCParser.MAX_LINELENGTH ? null : merged;
+    }
+
+    /**
+     * Merges two channel mode changes.
+     *
+     * @param first The queued MODE command
+     * @param second The new MODE command
+     * @return The merged line, or null if they can't be merged
+     */
+    @Nullable
+    private String mergeModes(final Command first, final Command second) {
+        if (first.params.length < 2 || second.params.length < 2
+                || first.trailing != null || second.trailing != null
+                || !parser.isValidChannelName(first.params[0])
+                || !parser.getStringConverter().equalsIgnoreCase(first.params[0],
+                        second.params[0])) {
+            return null;
+        }
+
+        final String firstModes = first.params[1];
+        final String secondModes = second.params[1];
+        final int firstCount = countParameters(firstModes);
+        final int secondCount = countParameters(secondModes);
+        if (firstCount != first.params.length - 2 || secondCount != second.params.length - 2
+                || firstCount + secondCount > getMaxModes()) {
+            // Either we don't know what the modes are, or there are too many.
+            return null;
+        }
+
+        final StringBuilder result = new StringBuilder("MODE ").append(first.params[0])
+                .append(' ').append(firstModes);
+        final char lastSign = firstModes.lastIndexOf('+') > firstModes.lastIndexOf('-')
+                ? '+' : '-';
+        result.append(secondModes, secondModes.charAt(0) == lastSign ? 1 : 0,
+                secondModes.length());
+        appendAll(result, first.params, 2, ' ');
+        appendAll(result, second.params, 2, ' ');
+        return result.toString();
+    }
+
+    /**
+     * Merges two JOINs.
+     *
+     * @param first The queued JOIN command
+     * @param second The new JOIN command
+     * @return The merged line, or null if they can't be merged
+     */
+    @Nullable
+    private String mergeJoins(final Command first, final Command second) {
+        if (first.params.length < 1 || first.params.length > 2
+                || second.params.length < 1 || second.params.length > 2
+                || first.trailing != null || second.trailing != null
+                || "0".equals(first.params[0]) || "0".equals(second.params[0])) {
+            return null;
+        }
+
+        final int firstChannels = count(first.params[0]);
+        final int firstKeys = first.params.length > 1 ? count(first.params[1]) : 0;
+        final int secondKeys = second.params.length > 1 ? count(second.params[1]) : 0;
+        if ((secondKeys > 0 && firstKeys < firstChannels)
+                || firstChannels + count(second.params[0]) > parser.getMaxTargets("JOIN")) {
+            // Keys are matched to channels in order, so the second line's
+            // keys would end up with the wrong channels.
+            return null;
+        }
+
+        final StringBuilder result = new StringBuilder("JOIN ").append(first.params[0])
+                .append(',').append(second.params[0]);
+        if (firstKeys > 0) {
+            result.append(' ').append(first.params[1]);
+            if (secondKeys > 0) {
+                result.append(',').append(second.params[1]);
+            }
+        } else if (secondKeys > 0) {
+            result.append(' ').append(second.params[1]);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Merges two messages with the same text to different targets.
+     *
+     * @param first The queued PRIVMSG or NOTICE command
+     * @param second The new PRIVMSG or NOTICE command
+     * @return The merged line, or null if they can't be merged
+     */
+    @Nullable
+    private String mergeMessages(final Command first, final Command second) {
+        if (first.params.length != 1 || second.params.length != 1
+                || first.trailing == null || !first.trailing.equals(second.trailing)
+                || second.params[0].indexOf(',') != -1
+                || count(first.params[0]) + 1 > parser.getMaxTargets(first.name)) {
+            return null;
+        }
+
+        for (String target : first.params[0].split(",")) {
+            if (parser.getStringConverter().equalsIgnoreCase(target, second.params[0])) {
+                // Sending the same message to the same target twice is deliberate.
+                return null;
+            }
+        }
+
+        return first.name + ' ' + first.params[0] + ',' + second.params[0] + " :"
+                + first.trailing;
+    }
+
+    /**
+     * Merges two WHOs with the same options.
+     *
+     * @param first The queued WHO command
+     * @param second The new WHO command
+     * @return The merged line, or null if they can't be merged
+     */
+    @Nullable
+    private String mergeWhos(final Command first, final Command second) {
+        if (first.params.length < 1 || first.params.length != second.params.length
+                || first.trailing != null || second.trailing != null
+                || count(first.params[0]) + count(second.params[0]) > parser.getMaxTargets("WHO")) {
+            return null;
+        }
+        for (int i = 1; i < first.params.length; i++) {
+            if (!first.params[i].equals(second.params[i])) {
+                return null;
+            }
+        }
+
+        final StringBuilder result = new StringBuilder("WHO ").append(first.params[0])
+                .append(',').append(second.params[0]);
+        appendAll(result, first.params, 1, ' ');
+        return result.toString();
+    }
+
+    /**
+     * Counts the number of parameters the given channel mode string needs.
+     *
+     * @param modes The mode string, starting with a + or -
+     * @return The number of parameters, or -1 if the modes aren't all known
+     */
+    private int countParameters(final String modes) {
+        if (modes.isEmpty() || modes.charAt(0) != '+' && modes.charAt(0) != '-') {
+            return -1;
+        }
+
+        int count = 0;
+        boolean adding = true;
+        for (int i = 0; i < modes.length(); i++) {
+            final char mode = modes.charAt(i);
+            if (mode == '+' || mode == '-') {
+                adding = mode == '+';
+            } else if (prefixModeManager.isPrefixMode(mode)) {
+                count++;
+            } else if (parser.chanModesOther.containsKey(mode)) {
+                final byte type = parser.chanModesOther.get(mode);
+                if ((type & IRCParser.MODE_LIST) == IRCParser.MODE_LIST
+                        || adding && (type & IRCParser.MODE_SET) == IRCParser.MODE_SET
+                        || !adding && (type & IRCParser.MODE_UNSET) == IRCParser.MODE_UNSET) {
+                    count++;
+                }
+            } else if (!chanModeManager.isMode(mode)) {
+                return -1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the maximum number of modes with parameters allowed in a single
+     * MODE command.
+     *
+     * @return The maximum number of modes
+     */
+    private int getMaxModes() {
+        final String modes = parser.h005Info.get("MODES");
+        if (modes == null) {
+            return DEFAULT_MODES;
+        }
+        try {
+            return Integer.parseInt(modes);
+        } catch (NumberFormatException ex) {
+            return 1;
+        }
+    }
+
+    private static int count(final String list) {
+        int count = 1;
+        for (int i = 0; i < list.length(); i++) {
+            if (list.charAt(i) == ',') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void appendAll(final StringBuilder builder, final String[] values,
+            final int start, final char separator) {
+        for (int i = start; i < values.length; i++) {
+            builder.append(separator).append(values[i]);
+        }
+    }
+
+    /** A command split into its parts. */
+    private static final class Command {
+
+        /** The upper case name of the command. */
+        private final String name;
+        /** The middle parameters of the command. */
+        private final String[] params;
+        /** The trailing parameter of the command, if any. */
+        @Nullable private final String trailing;
+
+        private Command(final String name, final String[] params,
+                @Nullable final String trailing) {
+            this.name = name;
+            this.params = params;
+            this.trailing = trailing;
+        }
+
+        /**
+         * Splits a line into a command.
+         *
+         * @param line The line to be split
+         * @return The command, or null if the line has tags, a prefix or
+         * anything else we wouldn't merge.
+         */
+        @Nullable
+        static Command parse(final String line) {
+            if (line.isEmpty() || line.charAt(0) == '@' || line.charAt(0) == ':') {
+                return null;
+            }
+
+            final int trailingStart = line.indexOf(" :");
+            final String[] parts = (trailingStart == -1 ? line
+                    : line.substring(0, trailingStart)).split(" ", -1);
+            for (String part : parts) {
+                if (part.isEmpty()) {
+                    return null;
+                }
+            }
+
+            final String[] params = new String[parts.length - 1];
+            System.arraycopy(parts, 1, params, 0, params.length);
+            return new Command(parts[0].toUpperCase(Locale.ENGLISH), params,
+                    trailingStart == -1 ? null : line.substring(trailingStart + 2));
+        }
+
+    }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Decides which of a stream of high volume events, such as debug or data
+ * events, are actually published.
+ *
+ * <p>By default every event is published. A tap can instead publish only one
+ * in every N events, and/or cap the number of events published each second,
+ * so that tracing can be left enabled on a busy connection without the
+ * listeners slowing the parser down. Events which are not published are
+ * counted, so listeners can tell how much they missed.
+ */
+public class EventTap {
+
+    /** Length of the window that the per-second limit applies to. */
+    private static final long WINDOW = TimeUnit.SECONDS.toNanos(1);
+
+    /** Source of the current time, in nanoseconds. */
+    private final LongSupplier clock;
+    /** Number of events seen, used for sampling. */
+    private final AtomicLong seen = new AtomicLong();
+    /** Number of events that were not published. */
+    private final AtomicLong dropped = new AtomicLong();
+    /** Start of the current rate limiting window, in nanoseconds. */
+    private final AtomicLong windowStart;
+    /** Number of events published in the current window. */
+    private final AtomicLong windowCount = new AtomicLong();
+    /** Publish one in every this many events. */
+    private volatile int sampleRate = 1;
+    /** Maximum number of events to publish each second, or 0 for no limit. */
+    private volatile int maxPerSecond;
+
+    /**
+     * Creates a new tap which publishes everything.
+     */
+    public EventTap() {
+        this(System::nanoTime);
+    }
+
+    /**
+     * Creates a new tap which publishes everything.
+     *
+     * @param clock Source of the current time, in nanoseconds
+     */
+    EventTap(final LongSupplier clock) {
+        this.clock = clock;
+        this.windowStart = new AtomicLong(clock.getAsLong());
+    }
+
+    /**
+     * Determines whether the next event should be published. This must be
+     * called once for every event that would otherwise be published.
+     *
+     * @return True if the event should be published, false to drop it
+     */
+    public boolean tryAcquire() {
+        final int rate = sampleRate;
+        final int limit = maxPerSecond;
+        if (rate <= 1 && limit <= 0) {
+            return true;
+        }
+
+        if (rate > 1 && seen.getAndIncrement() % rate != 0) {
+            dropped.incrementAndGet();
+            return false;
+        }
+
+        if (limit > 0) {
+            final long now = clock.getAsLong();
+            final long start = windowStart.get();
+            if (now - start >= WINDOW && windowStart.compareAndSet(start, now)) {
+                windowCount.set(0);
+            }
+            if (windowCount.incrementAndGet() > limit) {
+                dropped.incrementAndGet();
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the sample rate.
+     *
+     * @return The number of events for each one published
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Sets the sample rate. A rate of N publishes one in every N events; a
+     * rate of 1 or less publishes every event.
+     *
+     * @param sampleRate The number of events for each one published
+     */
+    public void setSampleRate(final int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Gets the maximum number of events published each second.
+     *
+     * @return The maximum events per second, or 0 if there is no limit
+     */
+    public int getMaxPerSecond() {
+        return maxPerSecond;
+    }
+
+    /**
+     * Sets the maximum number of events published each second. Events over the
+     * limit are dropped until the next second starts.
+     *
+     * @param maxPerSecond The maximum events per second, or 0 for no limit
+     */
+    public void setMaxPerSecond(final int maxPerSecond) {
+        this.maxPerSecond = maxPerSecond;
+    }
+
+    /**
+     * Gets the number of events that have been dropped by sampling or rate
+     * limiting.
+     *
+     * @return The number of events not published
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+}
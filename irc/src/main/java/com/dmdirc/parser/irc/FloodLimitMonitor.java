@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc;
+
+import com.dmdirc.parser.events.NumericEvent;
+import com.dmdirc.parser.events.ServerNoticeEvent;
+import com.dmdirc.parser.events.ServerReadyEvent;
+import com.dmdirc.parser.irc.outputqueue.FloodProfile;
+import com.dmdirc.parser.irc.outputqueue.OutputQueue;
+import com.dmdirc.parser.irc.outputqueue.TokenBucketOutputQueue;
+
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+
+import net.engio.mbassy.listener.Handler;
+import net.engio.mbassy.listener.Listener;
+import net.engio.mbassy.listener.References;
+
+/**
+ * Keeps a {@link TokenBucketOutputQueue} in step with the server: applies the
+ * {@link FloodProfile} for the server's type once it is known, and tells the
+ * queue when the server warns that we are sending too quickly.
+ *
+ * <p>Does nothing if the parser is using a different type of output queue.
+ */
+@Listener(references = References.Strong)
+public class FloodLimitMonitor {
+
+    /** Server notices which indicate we are flooding. */
+    private static final Pattern FLOOD_WARNING = Pattern.compile(
+            "(?i).*(?:throttled due to flood|(?:sending|typing) (?:messages |commands )?too fast).*");
+    /** The parser whose queue we are monitoring. */
+    private final IRCParser parser;
+
+    /**
+     * Creates a new monitor for the given parser.
+     *
+     * @param parser The parser whose output queue should be monitored
+     */
+    public FloodLimitMonitor(final IRCParser parser) {
+        this.parser = parser;
+    }
+
+    @Handler
+    public void handleServerReady(final ServerReadyEvent event) {
+        final TokenBucketOutputQueue queue = getQueue();
+        if (queue != null) {
+            final ServerType type = parser.getServerType();
+            queue.setProfile(FloodProfile.forServerType(type));
+            parser.callDebugInfo(IRCParser.DEBUG_INFO, "Using flood profile %s for %s",
+                    queue.getProfile(), type);
+        }
+    }
+
+    /** Handles RPL_TRYAGAIN, sent when a command is refused as the server is busy. */
+    @Handler(condition = "msg.numeric == 263")
+    public void handleTryAgain(final NumericEvent event) {
+        warn();
+    }
+
+    /** Handles ERR_TARGETTOOFAST, sent by ircu when we message new targets too quickly. */
+    @Handler(condition = "msg.numeric == 439")
+    public void handleTargetTooFast(final NumericEvent event) {
+        warn();
+    }
+
+    @Handler
+    public void handleServerNotice(final ServerNoticeEvent event) {
+        if (FLOOD_WARNING.matcher(event.getMessage()).matches()) {
+            warn();
+        }
+    }
+
+    private void warn() {
+        final TokenBucketOutputQueue queue = getQueue();
+        if (queue != null) {
+            queue.floodWarning();
+            parser.callDebugInfo(IRCParser.DEBUG_INFO,
+                    "Flood warning received, send rate reduced to %s", queue.getRate());
+        }
+    }
+
+    @Nullable
+    private TokenBucketOutputQueue getQueue() {
+        final OutputQueue queue = parser.getOutputQueue();
+        return queue instanceof TokenBucketOutputQueue ? (TokenBucketOutputQueue) queue : null;
+    }
+
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link PingScheduler} backed by a hashed timing wheel.
+ *
+ * <p>Tasks are placed into one of a fixed number of buckets according to
+ * their deadline, and a single thread advances through the buckets one tick
+ * at a time, so scheduling, cancelling and expiring tasks are all constant
+ * time regardless of how many parsers are registered. Deadlines are only
+ * accurate to within one tick, which is more than enough for pinging.
+ */
+public class HashedWheelPingScheduler implements PingScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HashedWheelPingScheduler.class);
+
+    /** The scheduler shared by all parsers that aren't given their own. */
+    private static final HashedWheelPingScheduler DEFAULT = new HashedWheelPingScheduler(
+            100, TimeUnit.MILLISECONDS, 512, r -> {
+                final Thread thread = new Thread(r, "IRC Parser ping scheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /** Duration of a single tick, in nanoseconds. */
+    private final long tickDuration;
+    /** The buckets making up the wheel. Only accessed by the worker thread. */
+    private final List<List<WheelTask>> wheel;
+    /** Mask used to map ticks onto buckets. */
+    private final int mask;
+    /** Tasks waiting to be placed in the wheel. */
+    private final Queue<WheelTask> pending = new ConcurrentLinkedQueue<>();
+    /** Factory used to create the worker thread. */
+    private final ThreadFactory threadFactory;
+    /** Whether the worker thread has been started. */
+    private final AtomicBoolean started = new AtomicBoolean();
+    /** Time the wheel was created, used as the origin for ticks. */
+    private final long startTime = System.nanoTime();
+    /** The number of ticks that have been processed. Only accessed by the worker thread. */
+    private long tick;
+    /** Whether the scheduler has been shut down. */
+    private volatile boolean stopped;
+
+    /**
+     * Creates a new scheduler. The worker thread is not started until the
+     * first task is scheduled.
+     *
+     * @param tickDuration The duration of a single tick
+     * @param unit The unit of the tick duration
+     * @param wheelSize The number of buckets in the wheel; rounded up to a power of two
+     * @param threadFactory The factory to use to create the worker thread
+     */
+    public HashedWheelPingScheduler(final long tickDuration, final TimeUnit unit,
+            final int wheelSize, final ThreadFactory threadFactory) {
+        this.tickDuration = Math.max(1, unit.toNanos(tickDuration));
+        this.threadFactory = threadFactory;
+
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+        mask = size - 1;
+        wheel = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            wheel.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Gets the scheduler shared by all parsers which haven't been given a
+     * scheduler of their own. It uses a single daemon thread, which is only
+     * started once a task is first scheduled.
+     *
+     * @return The default ping scheduler
+     */
+    public static PingScheduler getDefault() {
+        return DEFAULT;
+    }
+
+    @Override
+    public Task schedule(final Runnable task, final long delay, final long period,
+            final TimeUnit unit) {
+        if (stopped) {
+            throw new IllegalStateException("Scheduler has been shut down");
+        }
+
+        final WheelTask wheelTask = new WheelTask(task,
+                System.nanoTime() + unit.toNanos(delay), unit.toNanos(period));
+        pending.add(wheelTask);
+
+        if (started.compareAndSet(false, true)) {
+            threadFactory.newThread(this::run).start();
+        }
+
+        return wheelTask;
+    }
+
+    /**
+     * Stops the worker thread. Any scheduled tasks will not be run.
+     */
+    public void shutdown() {
+        stopped = true;
+    }
+
+    /**
+     * Main loop of the worker thread.
+     */
+    private void run() {
+        while (!stopped) {
+            final long deadline = startTime + (tick + 1) * tickDuration;
+            long remaining;
+            while ((remaining = deadline - System.nanoTime()) > 0 && !stopped) {
+                LockSupport.parkNanos(this, remaining);
+            }
+
+            transferPending();
+            expire(wheel.get((int) (tick & mask)));
+            tick++;
+        }
+    }
+
+    /**
+     * Moves newly scheduled tasks into the appropriate buckets.
+     */
+    private void transferPending() {
+        WheelTask task;
+        while ((task = pending.poll()) != null) {
+            if (!task.cancelled) {
+                final long ticks = Math.max((task.deadline - startTime) / tickDuration, tick);
+                task.remainingRounds = (ticks - tick) >> Integer.bitCount(mask);
+                wheel.get((int) (ticks & mask)).add(task);
+            }
+        }
+    }
+
+    /**
+     * Runs any tasks in the given bucket which are due, and removes any which
+     * have been cancelled. Periodic tasks are rescheduled.
+     *
+     * @param bucket The bucket for the current tick
+     */
+    private void expire(final List<WheelTask> bucket) {
+        int kept = 0;
+        for (int i = 0; i < bucket.size(); i++) {
+            final WheelTask task = bucket.get(i);
+            if (task.cancelled) {
+                continue;
+            }
+
+            if (task.remainingRounds > 0) {
+                task.remainingRounds--;
+                bucket.set(kept++, task);
+                continue;
+            }
+
+            try {
+                task.task.run();
+            } catch (RuntimeException ex) {
+                LOG.warn("Exception in scheduled ping task", ex);
+            }
+
+            if (task.period > 0 && !task.cancelled) {
+                task.deadline += task.period;
+                pending.add(task);
+            }
+        }
+
+        bucket.subList(kept, bucket.size()).clear();
+    }
+
+    /**
+     * A task which has been placed in the wheel.
+     */
+    private static class WheelTask implements Task {
+
+        /** The task to run. */
+        private final Runnable task;
+        /** Period between runs, in nanoseconds, or 0 for one-shot tasks. */
+        private final long period;
+        /** Time the task is next due, per {@link System#nanoTime()}. */
+        private long deadline;
+        /** Number of complete turns of the wheel before the task is due. */
+        private long remainingRounds;
+        /** Whether the task has been cancelled. */
+        private volatile boolean cancelled;
+
+        WheelTask(final Runnable task, final long deadline, final long period) {
+            this.task = task;
+            this.deadline = deadline;
+            this.period = period;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+    }
+
+}
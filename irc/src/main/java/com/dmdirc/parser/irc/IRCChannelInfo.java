@@ -35,6 +35,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -77,11 +78,13 @@ public class IRCChannelInfo implements ChannelInfo {
     /** Channel Key. */
     private String password = "";
     /** Hashtable containing references to ChannelClients. */
-    private final Map<String, IRCChannelClientInfo> clients = Collections.synchronizedMap(new HashMap<>());
+    private final Map<IRCStringConverter.Key, IRCChannelClientInfo> clients = Collections.synchronizedMap(new HashMap<>());
+    /** The same ChannelClients as {@link #clients}, keyed by client identity. Guarded by clients. */
+    private final Map<ClientInfo, IRCChannelClientInfo> members = new IdentityHashMap<>();
     /** Hashtable storing values for modes set in the channel that use parameters. */
     private final Map<Character, String> paramModes = new HashMap<>();
     /** Hashtable storing list modes. */
-    private final Map<Character, ArrayList<ChannelListModeItem>> listModes = new HashMap<>();
+    private final Map<Character, ListModeStore> listModes = new HashMap<>();
     /**
      * LinkedList storing status of mode adding.
      * if an item is in this list for a mode, we are expecting new items for the list
@@ -99,6 +102,10 @@ public class IRCChannelInfo implements ChannelInfo {
     private boolean askedForListModes;
     /** Has OnChannelGotListModes ever been called for this channel? */
     private boolean hasGotListModes;
+    /** How much state is kept about this channel. */
+    private volatile ChannelTrackingLevel trackingLevel;
+    /** Number of members in the channel, if only the count is being tracked. */
+    private volatile int memberCount;
 
     /**
      * Create a new channel object.
@@ -112,12 +119,30 @@ public class IRCChannelInfo implements ChannelInfo {
     public IRCChannelInfo(final IRCParser parser, final PrefixModeManager prefixModeManager,
             final ModeManager userModeManager, final ModeManager chanModeManager,
             final String name) {
+        this(parser, prefixModeManager, userModeManager, chanModeManager, name,
+                ChannelTrackingLevel.FULL);
+    }
+
+    /**
+     * Create a new channel object.
+     *
+     * @param parser Reference to parser that owns this channelclient (used for modes)
+     * @param prefixModeManager The manager to use for prefix modes.
+     * @param userModeManager Mode manager to use for user modes.
+     * @param chanModeManager Mode manager to use for channel modes.
+     * @param name Channel name.
+     * @param trackingLevel How much state to keep about the channel.
+     */
+    public IRCChannelInfo(final IRCParser parser, final PrefixModeManager prefixModeManager,
+            final ModeManager userModeManager, final ModeManager chanModeManager,
+            final String name, final ChannelTrackingLevel trackingLevel) {
         map = new HashMap<>();
         this.parser = parser;
         this.prefixModeManager = prefixModeManager;
         this.userModeManager = userModeManager;
         this.chanModeManager = chanModeManager;
         this.name = name;
+        this.trackingLevel = trackingLevel;
     }
 
     /**
@@ -171,6 +196,10 @@ public class IRCChannelInfo implements ChannelInfo {
         // See my proposal: http://shane.dmdirc.com/listmodes.php
         // Add listmode handler
         final boolean supportLISTMODE = parser.h005Info.containsKey("LISTMODE");
+        // With labeled responses, request each mode separately so that the
+        // label identifies the list being sent back.
+        final LabeledResponseTracker labeledResponses = parser.getLabeledResponseTracker();
+        final boolean labeled = !supportLISTMODE && labeledResponses.isEnabled();
 
         String listmodes = "";
         int i = 0;
@@ -186,7 +215,11 @@ public class IRCChannelInfo implements ChannelInfo {
                 }
                 i++;
                 listmodes = listmodes + cTemp;
-                if (i >= modecount && !supportLISTMODE) {
+                if (labeled) {
+                    labeledResponses.send("MODE " + getName() + " " + cTemp, QueuePriority.LOW);
+                    i = 0;
+                    listmodes = "";
+                } else if (i >= modecount && !supportLISTMODE) {
                     parser.sendString("MODE " + getName() + " " + listmodes, QueuePriority.LOW);
                     i = 0;
                     listmodes = "";
@@ -273,9 +306,96 @@ public class IRCChannelInfo implements ChannelInfo {
         return name;
     }
 
+    /**
+     * Gets how much state is kept about this channel.
+     *
+     * @return The channel's tracking level
+     */
+    public ChannelTrackingLevel getTrackingLevel() {
+        return trackingLevel;
+    }
+
+    /**
+     * Changes how much state is kept about this channel.
+     *
+     * <p>When raising the level, the channel's NAMES are requested again so
+     * that the members (or their number) can be filled in; when upgrading to
+     * {@link ChannelTrackingLevel#FULL}, the channel is then synced as if it
+     * had just been joined. When lowering the level from full tracking, every
+     * member other than the local client is forgotten.
+     *
+     * <p>The change is made in sequence with the processing of lines from
+     * the server, so it may not have taken effect when this method returns.
+     *
+     * @param newLevel The new tracking level
+     */
+    public void setTrackingLevel(final ChannelTrackingLevel newLevel) {
+        parser.executeProcessingTask(() -> applyTrackingLevel(newLevel));
+    }
+
+    /**
+     * Changes how much state is kept about this channel. This must only be
+     * called while no other line is being processed.
+     *
+     * @param newLevel The new tracking level
+     */
+    private void applyTrackingLevel(final ChannelTrackingLevel newLevel) {
+        final ChannelTrackingLevel oldLevel;
+        synchronized (clients) {
+            oldLevel = trackingLevel;
+            if (oldLevel == newLevel) {
+                return;
+            }
+            if (oldLevel == ChannelTrackingLevel.FULL) {
+                memberCount = clients.size();
+                emptyChannel();
+                addClient(parser.getLocalClient());
+            }
+            trackingLevel = newLevel;
+        }
+
+        if (newLevel == ChannelTrackingLevel.FULL
+                || oldLevel == ChannelTrackingLevel.MESSAGES_ONLY) {
+            if (newLevel == ChannelTrackingLevel.FULL) {
+                parser.getChannelSyncPacer().joined(this);
+            }
+            // The reply replaces whatever we currently know.
+            setAddingNames(false);
+            parser.sendLabeled("NAMES " + name, QueuePriority.LOW);
+        }
+    }
+
+    /**
+     * Sets the number of members in the channel. This is only used if the
+     * channel's tracking level is {@link ChannelTrackingLevel#COUNTS_ONLY}.
+     *
+     * @param newValue The number of members
+     */
+    public void setMemberCount(final int newValue) {
+        memberCount = Math.max(0, newValue);
+    }
+
+    /**
+     * Adjusts the number of members in the channel, when members join or
+     * leave. This is only used if the channel's tracking level is
+     * {@link ChannelTrackingLevel#COUNTS_ONLY}.
+     *
+     * @param delta The change in the number of members
+     */
+    public void adjustMemberCount(final int delta) {
+        setMemberCount(memberCount + delta);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * If only the number of members is being tracked, this returns the last
+     * known count; if members aren't tracked at all, only the local client is
+     * counted.
+     */
     @Override
     public int getChannelClientCount() {
-        return clients.size();
+        return trackingLevel == ChannelTrackingLevel.COUNTS_ONLY ? memberCount : clients.size();
     }
 
     @Override
@@ -298,8 +418,9 @@ public class IRCChannelInfo implements ChannelInfo {
                     parser.removeClient(cTemp);
                 }
             }
+            clients.clear();
+            members.clear();
         }
-        clients.clear();
     }
 
     @Override
@@ -309,9 +430,10 @@ public class IRCChannelInfo implements ChannelInfo {
 
     @Override
     public IRCChannelClientInfo getChannelClient(final String client, final boolean create) {
-        final String who = parser.getStringConverter().toLowerCase(IRCClientInfo.parseHost(client));
-        if (clients.containsKey(who)) {
-            return clients.get(who);
+        final IRCChannelClientInfo channelClient = clients.get(
+                parser.getStringConverter().key(IRCClientInfo.parseHost(client)));
+        if (channelClient != null) {
+            return channelClient;
         }
         if (create) {
             return new IRCChannelClientInfo(parser, prefixModeManager,
@@ -324,13 +446,8 @@ public class IRCChannelInfo implements ChannelInfo {
     @Override
     public IRCChannelClientInfo getChannelClient(final ClientInfo client) {
         synchronized (clients) {
-            for (IRCChannelClientInfo target : clients.values()) {
-                if (target.getClient() == client) {
-                    return target;
-                }
-            }
+            return members.get(client);
         }
-        return null;
     }
 
     /**
@@ -340,12 +457,33 @@ public class IRCChannelInfo implements ChannelInfo {
      * @return ChannelClientInfo object added, or an existing object if already known on channel
      */
     public IRCChannelClientInfo addClient(final IRCClientInfo cClient) {
-        IRCChannelClientInfo cTemp = getChannelClient(cClient);
-        if (cTemp == null) {
-            cTemp = new IRCChannelClientInfo(parser, prefixModeManager, cClient, this);
-            clients.put(parser.getStringConverter().toLowerCase(cTemp.getClient().getNickname()), cTemp);
+        synchronized (clients) {
+            IRCChannelClientInfo cTemp = members.get(cClient);
+            if (cTemp == null) {
+                cTemp = new IRCChannelClientInfo(parser, prefixModeManager, cClient, this);
+                clients.put(parser.getStringConverter().key(cClient.getNickname()), cTemp);
+                members.put(cClient, cTemp);
+            }
+            return cTemp;
         }
-        return cTemp;
+    }
+
+    /**
+     * Adds a number of clients to the channel at once, such as those listed in
+     * a NAMES reply. This is equivalent to calling {@link #addClient} for each
+     * client, but only takes the channel's lock once.
+     *
+     * @param newClients Client objects to be added to channel
+     * @return The ChannelClientInfo for each client, in the same order
+     */
+    public List<IRCChannelClientInfo> addClients(final List<IRCClientInfo> newClients) {
+        final List<IRCChannelClientInfo> result = new ArrayList<>(newClients.size());
+        synchronized (clients) {
+            for (IRCClientInfo client : newClients) {
+                result.add(addClient(client));
+            }
+        }
+        return result;
     }
 
     /**
@@ -354,14 +492,18 @@ public class IRCChannelInfo implements ChannelInfo {
      * @param cClient Client object to be removed from channel
      */
     public void delClient(final IRCClientInfo cClient) {
-        final IRCChannelClientInfo cTemp = getChannelClient(cClient);
-        if (cTemp != null) {
-            final IRCClientInfo clTemp = cTemp.getClient();
-            clTemp.delChannelClientInfo(cTemp);
-            if (clTemp != parser.getLocalClient() && !clTemp.checkVisibility()) {
-                parser.removeClient(clTemp);
+        synchronized (clients) {
+            final IRCChannelClientInfo cTemp = members.remove(cClient);
+            if (cTemp != null) {
+                if (!clients.remove(parser.getStringConverter().key(cClient.getNickname()), cTemp)) {
+                    // Nickname is out of sync with our key, fall back to finding it.
+                    clients.values().remove(cTemp);
+                }
+                cClient.delChannelClientInfo(cTemp);
+                if (cClient != parser.getLocalClient() && !cClient.checkVisibility()) {
+                    parser.removeClient(cClient);
+                }
             }
-            clients.remove(parser.getStringConverter().toLowerCase(cTemp.getClient().getNickname()));
         }
     }
 
@@ -372,15 +514,14 @@ public class IRCChannelInfo implements ChannelInfo {
      * @param cChannelClient ChannelClient object with updated client object
      */
     public void renameClient(final String oldNickname, final IRCChannelClientInfo cChannelClient) {
-        if (clients.containsKey(oldNickname)) {
-            final IRCChannelClientInfo cTemp = clients.get(oldNickname);
-            if (cTemp == cChannelClient) {
-                // Remove the old key
-                clients.remove(oldNickname);
-                // Add with the new key. (getNickname will return the new name not the
-                // old one)
-                clients.put(parser.getStringConverter().toLowerCase(cTemp.getClient().getNickname()), cTemp);
-            }
+        final IRCStringConverter.Key oldKey = parser.getStringConverter().key(oldNickname);
+        final IRCChannelClientInfo cTemp = clients.get(oldKey);
+        if (cTemp != null && cTemp == cChannelClient) {
+            // Remove the old key
+            clients.remove(oldKey);
+            // Add with the new key. (getNickname will return the new name not the
+            // old one)
+            clients.put(parser.getStringConverter().key(cTemp.getClient().getNickname()), cTemp);
         }
     }
 
@@ -554,23 +695,11 @@ public class IRCChannelInfo implements ChannelInfo {
             }
         }
 
-        if (!listModes.containsKey(cMode)) {
-            listModes.put(cMode, new ArrayList<>());
-        }
-
-        final List<ChannelListModeItem> lModes = listModes.get(cMode);
-        for (int i = 0; i < lModes.size(); i++) {
-            if (parser.getStringConverter().equalsIgnoreCase(lModes.get(i).getItem(), newItem.getItem())) {
-                if (bAdd) {
-                    return;
-                } else {
-                    lModes.remove(i);
-                    break;
-                }
-            }
-        }
+        final ListModeStore lModes = getListModeStore(cMode);
         if (bAdd) {
             lModes.add(newItem);
+        } else {
+            lModes.removeItem(newItem.getItem());
         }
     }
 
@@ -580,10 +709,40 @@ public class IRCChannelInfo implements ChannelInfo {
             return null;
         }
 
-        if (!listModes.containsKey(mode)) {
-            listModes.put(mode, new ArrayList<>());
+        return getListModeStore(mode);
+    }
+
+    /**
+     * Finds the items in a list mode which match the given hostmask. For
+     * example, this can be used to find the bans that apply to a user.
+     *
+     * @param mode Character representing the list mode, e.g. 'b'
+     * @param hostmask The hostmask to check, in the form nick!user@host
+     * @return The matching items in the order they were added, or null if
+     * the mode is not a list mode
+     * @see ListModeStore#getMatching(String)
+     */
+    public List<ChannelListModeItem> getMatchingListModes(final char mode, final String hostmask) {
+        if (!parser.chanModesOther.containsKey(mode) || parser.chanModesOther.get(mode) != IRCParser.MODE_LIST) {
+            return null;
         }
-        return listModes.get(mode);
+
+        return getListModeStore(mode).getMatching(hostmask);
+    }
+
+    /**
+     * Gets the store for the given list mode, creating it if necessary and
+     * making sure it is using the parser's current casemapping.
+     *
+     * @param mode Character representing the list mode
+     * @return The store for the mode
+     */
+    private ListModeStore getListModeStore(final char mode) {
+        final IRCStringConverter converter = parser.getStringConverter();
+        final ListModeStore store = listModes.computeIfAbsent(mode,
+                k -> new ListModeStore(converter));
+        store.setConverter(converter);
+        return store;
     }
 
     /**
@@ -838,6 +997,6 @@ public class IRCChannelInfo implements ChannelInfo {
 
     @Override
     public void sendWho() {
-        parser.sendRawMessage("WHO " + name);
+        parser.getWhoxTracker().sendWho(name, QueuePriority.NORMAL);
     }
 }
@@ -33,6 +33,7 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -67,8 +68,8 @@ public class IRCClientInfo implements LocalClientInfo {
     private final IRCParser parser;
     /** A Map to allow applications to attach misc data to this object. */
     private final Map<Object, Object> map;
-    /** List of ChannelClientInfos that point to this. */
-    private final Map<String, IRCChannelClientInfo> clients = new HashMap<>();
+    /** List of ChannelClientInfos that point to this, keyed by channel name. */
+    private final Map<IRCStringConverter.Key, IRCChannelClientInfo> clients = new ConcurrentHashMap<>();
     /** Modes waiting to be sent to the server. */
     private final Collection<String> modeQueue = new LinkedList<>();
 
@@ -131,8 +132,16 @@ public class IRCClientInfo implements LocalClientInfo {
      * @return nickname of user
      */
     public static String parseHost(final String sWho) {
-        // Get the nickname from the string.
-        return parseHostFull(sWho)[0];
+        // Get the nickname from the string. This is equivalent to
+        // parseHostFull(sWho)[0], without splitting out the other parts.
+        final int start = !sWho.isEmpty() && sWho.charAt(0) == ':' ? 1 : 0;
+        for (int i = start; i < sWho.length(); i++) {
+            final char c = sWho.charAt(i);
+            if (c == '!' || c == '@') {
+                return sWho.substring(start, i);
+            }
+        }
+        return start == 0 ? sWho : sWho.substring(start);
     }
 
     /**
@@ -195,6 +204,17 @@ public class IRCClientInfo implements LocalClientInfo {
         }
     }
 
+    /**
+     * Set the ident and host of this client, without parsing a hostmask.
+     *
+     * @param newIdent The client's ident
+     * @param newHost The client's host
+     */
+    void setIdentAndHost(final String newIdent, final String newHost) {
+        ident = newIdent;
+        host = newHost;
+    }
+
     /**
      * Get a string representation of the user.
      *
@@ -343,10 +363,7 @@ public class IRCClientInfo implements LocalClientInfo {
      * @param cci ChannelClientInfo to add as a known reference
      */
     public void addChannelClientInfo(final IRCChannelClientInfo cci) {
-        final String key = parser.getStringConverter().toLowerCase(cci.getChannel().getName());
-        if (!clients.containsKey(key)) {
-            clients.put(key, cci);
-        }
+        clients.putIfAbsent(parser.getStringConverter().key(cci.getChannel().getName()), cci);
     }
 
     /**
@@ -355,10 +372,7 @@ public class IRCClientInfo implements LocalClientInfo {
      * @param cci ChannelClientInfo to remove as a known reference
      */
     public void delChannelClientInfo(final IRCChannelClientInfo cci) {
-        final String key = parser.getStringConverter().toLowerCase(cci.getChannel().getName());
-        if (clients.containsKey(key)) {
-            clients.remove(key);
-        }
+        clients.remove(parser.getStringConverter().key(cci.getChannel().getName()));
     }
 
     /**
@@ -380,6 +394,17 @@ public class IRCClientInfo implements LocalClientInfo {
         return new ArrayList<>(clients.values());
     }
 
+    /**
+     * Gets this client's membership of each channel it is known to be on.
+     * This allows per-channel updates for the client to visit only the
+     * channels it is on, rather than every channel we know about.
+     *
+     * @return A copy of the channel clients that refer to this client
+     */
+    public List<IRCChannelClientInfo> getChannelMemberships() {
+        return new ArrayList<>(clients.values());
+    }
+
     @Override
     public void alterMode(final boolean add, final Character mode) {
         if (isFake() || !userModeManager.isMode(mode)) {
@@ -47,15 +47,22 @@ import com.dmdirc.parser.interfaces.SecureParser;
 import com.dmdirc.parser.irc.IRCReader.ReadLine;
 import com.dmdirc.parser.irc.events.IRCDataInEvent;
 import com.dmdirc.parser.irc.events.IRCDataOutEvent;
+import com.dmdirc.parser.irc.nio.EventLoopGroup;
+import com.dmdirc.parser.irc.nio.EventLoopOutputQueue;
+import com.dmdirc.parser.irc.nio.NioConnection;
+import com.dmdirc.parser.irc.outputqueue.BatchingOutputQueue;
 import com.dmdirc.parser.irc.outputqueue.OutputQueue;
-import com.dmdirc.parser.irc.outputqueue.PriorityOutputQueue;
+import com.dmdirc.parser.irc.processors.ProcessJoin;
 
 import java.io.IOException;
+import java.net.Inet6Address;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
@@ -74,12 +81,19 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
-import java.util.Timer;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+import javax.annotation.Nullable;
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
@@ -136,16 +150,18 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
     private MyInfo me = new MyInfo();
     /** Should PINGs be sent to the server to check if its alive? */
     private boolean checkServerPing = true;
+    /** Scheduler used to run the ping timer. */
+    private PingScheduler pingScheduler = HashedWheelPingScheduler.getDefault();
     /** Timer for server ping. */
-    private Timer pingTimer;
-    /** Semaphore for access to pingTimer. */
-    private final Semaphore pingTimerSem = new Semaphore(1);
+    private final AtomicReference<PingTimer> pingTimer = new AtomicReference<>();
+    /** Lock held while processing a line, so timer work doesn't run part way through one. */
+    private final Object processingLock = new Object();
     /** Is a ping needed? */
     private final AtomicBoolean pingNeeded = new AtomicBoolean(false);
     /** Time last ping was sent at. */
-    private long pingTime;
+    private volatile long pingTime;
     /** Current Server Lag. */
-    private long serverLag;
+    private volatile long serverLag;
     /** Last value sent as a ping argument. */
     private String lastPingValue = "";
     /**
@@ -157,10 +173,12 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
      *
      * @see #setPingTimerInterval
      */
-    private int pingCountDown;
+    private volatile int pingCountDown;
 
     /** Network name. This is "" if no network name is provided */
     public String networkName;
+    /** The last server type found by {@link #getServerType()}, and what it was found from. */
+    private volatile CachedServerType cachedServerType;
     /** This is what we think the nickname should be. */
     public String thinkNickname;
     /** Have we received the 001. */
@@ -195,10 +213,26 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
     private boolean addLastLine;
     /** Channel Prefixes (ie # + etc). */
     private String chanPrefix = DEFAULT_CHAN_PREFIX;
-    /** Hashtable storing all known clients based on nickname (in lowercase). */
-    private final Map<String, IRCClientInfo> clientList = new HashMap<>();
-    /** Hashtable storing all known channels based on chanel name (inc prefix - in lowercase). */
-    private final Map<String, IRCChannelInfo> channelList = new HashMap<>();
+    /** Tracker used to group netsplits and netjoins. */
+    private final NetsplitTracker netsplitTracker = new NetsplitTracker(this);
+    /** Paces the queries sent about newly joined channels. */
+    private final ChannelSyncPacer channelSyncPacer = new ChannelSyncPacer(this);
+    /** Matches labeled commands with their responses. */
+    private final LabeledResponseTracker labeledResponses = new LabeledResponseTracker(this);
+    /** Manager for queries whose replies are returned as futures. */
+    private final QueryManager queryManager = new QueryManager(this);
+    /** Tracker for WHOs sent using the WHOX extension. */
+    private final WhoxTracker whoxTracker = new WhoxTracker(this);
+    /** Should per-user events be raised for netsplits and netjoins? */
+    private boolean netsplitUserEvents = true;
+    /** Bitmask of the debug levels to raise events for. */
+    private volatile int debugLevels = DEBUG_INFO | DEBUG_SOCKET | DEBUG_PROCESSOR | DEBUG_LMQ;
+    /** Tap used to sample and limit debug events. */
+    private final EventTap debugTap = new EventTap();
+    /** Tap used to sample and limit data in events. */
+    private final EventTap dataTap = new EventTap();
+    /** Registry of all known clients and channels. */
+    private final ClientChannelRegistry registry = new ClientChannelRegistry(getStringConverter());
     /** Reference to the ClientInfo object that references ourself. */
     private IRCClientInfo myself;
     /** Hashtable storing all information gathered from 005. */
@@ -207,6 +241,8 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
     private long tsdiff;
     /** Reference to the Processing Manager. */
     private final ProcessingManager myProcessingManager;
+    /** The processor for JOINs, which tracks the keys of joins we have sent. */
+    private final ProcessJoin joinProcessor;
     /** Should we automatically disconnect on fatal errors?. */
     private boolean disconnectOnFatal = true;
     /** Current Socket State. */
@@ -224,10 +260,27 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
     private Encoder encoder = new SystemEncoder();
     /** Used for reading from the server. */
     private IRCReader in;
+    /** Should a {@link BufferedIRCReader} be used to read from the server? */
+    private boolean bufferedReader;
+    /** The event loops to use for non-blocking I/O, or null to use a parser thread. */
+    private EventLoopGroup eventLoopGroup;
+    /** The non-blocking connection to the server, if using an event loop. */
+    private volatile NioConnection connection;
+    /** Has the output queue been explicitly set? */
+    private boolean customOutputQueue;
+    /** Merges compatible commands in the output queue, or null if disabled. */
+    @Nullable
+    private CommandCoalescer commandCoalescer;
     /** This is the default TrustManager for SSL Sockets, it trusts all ssl certs. */
     private final TrustManager[] trustAllCerts = {new TrustingTrustManager()};
     /** Should channels automatically request list modes? */
     private boolean autoListMode = true;
+    /** Should channels automatically request a WHO on join? */
+    private boolean autoWho;
+    /** Tracking levels chosen for specific channels, by lowercased name. */
+    private final Map<String, ChannelTrackingLevel> channelTrackingLevels = new ConcurrentHashMap<>();
+    /** The tracking level for channels without one chosen. */
+    private ChannelTrackingLevel defaultChannelTrackingLevel = ChannelTrackingLevel.FULL;
     /** Should part/quit/kick callbacks be fired before removing the user internally? */
     private boolean removeAfterCallback = true;
     /** This is the TrustManager used for SSL Sockets. */
@@ -284,14 +337,17 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
         final ObjectGraph graph = ObjectGraph.create(new IRCParserModule(this, prefixModes,
                 userModes, chanModesBool));
         myProcessingManager = graph.get(ProcessingManager.class);
+        joinProcessor = graph.get(ProcessJoin.class);
         myself = new IRCClientInfo(this, userModes, "myself").setFake(true);
 
-        out = new PriorityOutputQueue();
+        out = new BatchingOutputQueue();
         if (myDetails != null) {
             this.me = myDetails;
         }
 
-        this.whoisHandler = new WhoisResponseHandler(this, getCallbackManager());
+        this.whoisHandler = new WhoisResponseHandler(this, getCallbackManager(), queryManager);
+        getCallbackManager().subscribeInline(new FloodLimitMonitor(this));
+        getCallbackManager().subscribeInline(queryManager);
 
         setIgnoreList(new IgnoreList());
         setPingTimerInterval(10000);
@@ -322,9 +378,16 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
 
         if (socket != null) {
             queue.setOutputStream(socket.getOutputStream());
+        } else if (connection != null) {
+            queue.setOutputStream(connection.getOutputStream());
         }
 
+        queue.setThreadFactory(getThreadFactory());
+        if (commandCoalescer != null) {
+            queue.setLineMerger(commandCoalescer);
+        }
         out = queue;
+        customOutputQueue = true;
     }
 
     @Override
@@ -460,6 +523,96 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
         autoListMode = newValue;
     }
 
+    /**
+     * Get the current Value of autoWho.
+     *
+     * @return Value of autoWho (true if channels automatically send a WHO on join, else false)
+     */
+    public boolean getAutoWho() {
+        return autoWho;
+    }
+
+    /**
+     * Set the current Value of autoWho.
+     *
+     * @param newValue New value to set autoWho
+     */
+    public void setAutoWho(final boolean newValue) {
+        autoWho = newValue;
+    }
+
+    /**
+     * Get the tracking level used for channels that have no level chosen.
+     *
+     * @return The default channel tracking level
+     */
+    public ChannelTrackingLevel getDefaultChannelTrackingLevel() {
+        return defaultChannelTrackingLevel;
+    }
+
+    /**
+     * Set the tracking level used for channels that have no level chosen.
+     * This only affects channels joined afterwards.
+     *
+     * @param newValue The new default channel tracking level
+     */
+    public void setDefaultChannelTrackingLevel(final ChannelTrackingLevel newValue) {
+        defaultChannelTrackingLevel = newValue;
+    }
+
+    /**
+     * Get the tracking level that will be used when the given channel is
+     * joined.
+     *
+     * @param channel The name of the channel
+     * @return The tracking level for the channel
+     */
+    public ChannelTrackingLevel getChannelTrackingLevel(final String channel) {
+        final ChannelTrackingLevel level = channelTrackingLevels.get(
+                getStringConverter().toLowerCase(channel));
+        return level == null ? defaultChannelTrackingLevel : level;
+    }
+
+    /**
+     * Choose the tracking level to use when the given channel is joined. This
+     * doesn't affect the channel if it has already been joined; use
+     * {@link IRCChannelInfo#setTrackingLevel(ChannelTrackingLevel)} instead.
+     *
+     * @param channel The name of the channel
+     * @param newValue The tracking level for the channel, or null to use the default
+     */
+    public void setChannelTrackingLevel(final String channel,
+            @Nullable final ChannelTrackingLevel newValue) {
+        final String key = getStringConverter().toLowerCase(channel);
+        if (newValue == null) {
+            channelTrackingLevels.remove(key);
+        } else {
+            channelTrackingLevels.put(key, newValue);
+        }
+    }
+
+    /**
+     * Are compatible commands merged while they wait in the output queue?
+     *
+     * @return True if commands are merged, else false
+     * @see CommandCoalescer
+     */
+    public boolean getCommandCoalescing() {
+        return commandCoalescer != null;
+    }
+
+    /**
+     * Set whether compatible commands, such as consecutive MODE changes for
+     * the same channel, are merged while they wait in the output queue.
+     *
+     * @param newValue True to merge commands, else false
+     * @see CommandCoalescer
+     */
+    public void setCommandCoalescing(final boolean newValue) {
+        commandCoalescer = newValue ? new CommandCoalescer(this, prefixModes, chanModesBool) : null;
+        out.setLineMerger(commandCoalescer);
+    }
+
     /**
      * Get the current Value of removeAfterCallback.
      *
@@ -478,6 +631,66 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
         removeAfterCallback = newValue;
     }
 
+    /**
+     * Get the current Value of bufferedReader.
+     *
+     * @return Value of bufferedReader (true if input is read in bulk using a
+     *         {@link BufferedIRCReader}, else false)
+     */
+    public boolean getBufferedReader() {
+        return bufferedReader;
+    }
+
+    /**
+     * Set the current Value of bufferedReader. This takes effect the next time
+     * the parser connects.
+     *
+     * @param newValue New value to set bufferedReader
+     */
+    public void setBufferedReader(final boolean newValue) {
+        bufferedReader = newValue;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The factory is used for the parser thread and the output queue's
+     * sending thread. Timer work such as pings runs on the connection's event
+     * loop, or on a small pool of threads shared by all parsers, and does not
+     * use the factory.
+     */
+    @Override
+    public void setThreadFactory(final ThreadFactory threadFactory) {
+        super.setThreadFactory(threadFactory);
+        out.setThreadFactory(threadFactory);
+    }
+
+    /**
+     * Gets the event loops used to drive this parser's connection.
+     *
+     * @return The event loop group in use, or null if the parser uses its own thread
+     */
+    public EventLoopGroup getEventLoopGroup() {
+        return eventLoopGroup;
+    }
+
+    /**
+     * Sets the event loops used to drive this parser's connection. If set
+     * before {@link #connect()} is called, the parser will not create a
+     * thread of its own; instead one of the group's loops will perform all
+     * reading, writing and pinging for the connection, and the parser's
+     * callbacks will be fired on that loop's thread.
+     *
+     * <p>Unless a custom output queue has been set, an
+     * {@link EventLoopOutputQueue} is used so that no sending thread is
+     * needed either. Connections via a proxy still use a parser thread.
+     *
+     * @param group The event loop group to use, or null to use a parser thread
+     */
+    public void setEventLoopGroup(final EventLoopGroup group) {
+        eventLoopGroup = group;
+    }
+
     /**
      * Get the current Value of addLastLine.
      *
@@ -564,7 +777,9 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
      * @param line Incoming Line.
      */
     protected void callDataIn(final ReadLine line) {
-        getCallbackManager().publish(new IRCDataInEvent(this, LocalDateTime.now(), line));
+        if (getCallbackManager().hasSubscribers(IRCDataInEvent.class) && dataTap.tryAcquire()) {
+            getCallbackManager().publish(new IRCDataInEvent(this, LocalDateTime.now(), line));
+        }
     }
 
     /**
@@ -574,7 +789,9 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
      * @param fromParser True if parser sent the data, false if sent using .sendLine
      */
     protected void callDataOut(final String data, final boolean fromParser) {
-        getCallbackManager().publish(new IRCDataOutEvent(this, LocalDateTime.now(), data));
+        if (getCallbackManager().hasSubscribers(IRCDataOutEvent.class)) {
+            getCallbackManager().publish(new IRCDataOutEvent(this, LocalDateTime.now(), data));
+        }
     }
 
     /**
@@ -585,7 +802,10 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
      * @param args Formatting String Options
      */
     public void callDebugInfo(final int level, final String data, final Object... args) {
-        callDebugInfo(level, args == null || args.length == 0 ? data : String.format(data, args));
+        if (isDebugging(level) && debugTap.tryAcquire()) {
+            publishDebugInfo(level,
+                    args == null || args.length == 0 ? data : String.format(data, args));
+        }
     }
 
     /**
@@ -595,9 +815,34 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
      * @param data Debugging Information
      */
     protected void callDebugInfo(final int level, final String data) {
+        if (isDebugging(level) && debugTap.tryAcquire()) {
+            publishDebugInfo(level, data);
+        }
+    }
+
+    /**
+     * Publishes a debug info event, without checking if it is wanted.
+     *
+     * @param level Debugging Level (DEBUG_INFO, DEBUG_SOCKET etc)
+     * @param data Debugging Information
+     */
+    private void publishDebugInfo(final int level, final String data) {
         getCallbackManager().publish(new DebugInfoEvent(this, LocalDateTime.now(), level, data));
     }
 
+    /**
+     * Determines whether debug information at the given level will be
+     * published. Callers can use this to avoid building expensive debug
+     * messages that would be discarded.
+     *
+     * @param level Debugging Level (DEBUG_INFO, DEBUG_SOCKET etc)
+     * @return True if the level is enabled and something is listening for debug events
+     */
+    public boolean isDebugging(final int level) {
+        return (debugLevels & level) != 0
+                && getCallbackManager().hasSubscribers(DebugInfoEvent.class);
+    }
+
     /**
      * Callback to all objects implementing the IErrorInfo Interface.
      *
@@ -682,8 +927,13 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
             got001 = false;
             post005 = false;
             // Clear the hash tables
-            channelList.clear();
-            clientList.clear();
+            registry.clearChannels();
+            registry.clearClients();
+            netsplitTracker.flush();
+            channelSyncPacer.clear();
+            labeledResponses.clear();
+            queryManager.clear();
+            whoxTracker.clear();
             h005Info.clear();
             prefixModes.clear();
             chanModesOther.clear();
@@ -793,7 +1043,8 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
         out.setQueueEnabled(true);
         currentSocketState = SocketState.OPEN;
         callDebugInfo(DEBUG_SOCKET, "\t-> Opening socket input stream BufferedReader");
-        in = new IRCReader(socket.getInputStream(), encoder);
+        in = bufferedReader ? new BufferedIRCReader(socket.getInputStream(), encoder)
+                : new IRCReader(socket.getInputStream(), encoder);
         callDebugInfo(DEBUG_SOCKET, "\t-> Socket Opened");
     }
 
@@ -837,6 +1088,74 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
         resetState();
     }
 
+    @Override
+    public void connect() {
+        if (eventLoopGroup == null || getProxy() != null) {
+            super.connect();
+            return;
+        }
+
+        synchronized (controlThreadLock) {
+            if (hasBegan || controlThread != null) {
+                // To ensure correct internal state, parsers must be recreated for
+                // new connections rather than being recycled.
+                throw new UnsupportedOperationException("This parser has already been running.");
+            }
+            hasBegan = true;
+        }
+
+        callDebugInfo(DEBUG_INFO, "Begin Event Loop Execution");
+        eventLoopGroup.getResolverExecutor().execute(this::doConnectNonBlocking);
+    }
+
+    /**
+     * Resolves the server and starts a non-blocking connection to it using
+     * one of the parser's event loops. Name resolution may block, so this
+     * must not be run on an event loop.
+     */
+    private void doConnectNonBlocking() {
+        try {
+            if (getURI() == null || getURI().getHost() == null) {
+                throw new UnknownHostException("Unspecified host.");
+            }
+
+            resetState();
+            callDebugInfo(DEBUG_SOCKET, "Connecting to %s:%s", getURI().getHost(), getURI().getPort());
+
+            currentSocketState = SocketState.OPENING;
+
+            final URI connectUri = getConnectURI(getURI());
+            final InetAddress address = InetAddress.getByName(connectUri.getHost());
+            final String bindIp = address instanceof Inet6Address ? getBindIPv6() : getBindIP();
+            final InetSocketAddress local = bindIp == null || bindIp.isEmpty() ? null
+                    : new InetSocketAddress(InetAddress.getByName(bindIp), 0);
+
+            SSLEngine engine = null;
+            if (getURI().getScheme().endsWith("s")) {
+                callDebugInfo(DEBUG_SOCKET, "Server is SSL.");
+
+                if (myTrustManager == null) {
+                    myTrustManager = trustAllCerts;
+                }
+
+                final SSLContext sc = SSLContext.getInstance("SSL");
+                sc.init(myKeyManagers, myTrustManager, new SecureRandom());
+                engine = sc.createSSLEngine(getURI().getHost(), getURI().getPort());
+                engine.setUseClientMode(true);
+            }
+
+            final NioConnection newConnection = new NioConnection(eventLoopGroup.next(),
+                    new ConnectionListener());
+            connection = newConnection;
+            newConnection.connect(new InetSocketAddress(address, connectUri.getPort()), local,
+                    engine, getConnectTimeout());
+        } catch (IOException e) {
+            handleConnectException(e, true);
+        } catch (NoSuchAlgorithmException | KeyManagementException e) {
+            handleConnectException(e, false);
+        }
+    }
+
     /**
      * Begin execution.
      * Connect to server, and start parsing incoming lines
@@ -890,8 +1209,17 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
         callDebugInfo(DEBUG_INFO, "End Thread Execution");
     }
 
+    @Override
+    public int getLocalPort() {
+        final NioConnection current = connection;
+        return current == null ? super.getLocalPort() : current.getLocalPort();
+    }
+
     @Override
     public void shutdown() {
+        if (connection != null) {
+            connection.close();
+        }
         try {
             // See note at disconnect() method for why we close rawSocket.
             if (rawSocket != null) {
@@ -972,25 +1300,22 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
 
     @Override
     public IRCClientInfo getClient(final String details) {
-        final String sWho = getStringConverter().toLowerCase(IRCClientInfo.parseHost(details));
+        final IRCClientInfo client = registry.getClient(IRCClientInfo.parseHost(details));
 
-        if (clientList.containsKey(sWho)) {
-            return clientList.get(sWho);
-        } else {
+        if (client == null) {
             return new IRCClientInfo(this, userModes, details).setFake(true);
+        } else {
+            return client;
         }
     }
 
     public boolean isKnownClient(final String host) {
-        final String sWho = getStringConverter().toLowerCase(IRCClientInfo.parseHost(host));
-        return clientList.containsKey(sWho);
+        return registry.isKnownClient(IRCClientInfo.parseHost(host));
     }
 
     @Override
     public IRCChannelInfo getChannel(final String channel) {
-        synchronized (channelList) {
-            return channelList.get(getStringConverter().toLowerCase(channel));
-        }
+        return registry.getChannel(channel);
     }
 
     @Override
@@ -1000,7 +1325,7 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
 
     @Override
     public void sendWhois(final String nickname) {
-        sendRawMessage("WHOIS " + nickname);
+        sendLabeled("WHOIS " + nickname, QueuePriority.NORMAL);
     }
 
     @Override
@@ -1047,6 +1372,22 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
         return sendString(line, priority, true);
     }
 
+    /**
+     * Send a line to the server with a label if labeled-response is enabled,
+     * so that its response can be told apart from replies to other commands.
+     * Otherwise, the line is sent as normal.
+     *
+     * @param line Line to send, without any tags
+     * @param priority Priority of this line.
+     * @return True if line was sent, else false.
+     */
+    public boolean sendLabeled(final String line, final QueuePriority priority) {
+        if (labeledResponses.isEnabled()) {
+            return !labeledResponses.send(line, priority).isCancelled();
+        }
+        return sendString(line, priority);
+    }
+
     /**
      * Send a line to the server and add proper line ending.
      *
@@ -1059,9 +1400,14 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
         if (getSocketState() != SocketState.OPEN) {
             return false;
         }
+        final String[] newLine = tokeniseLine(line);
         callDataOut(line, fromParser);
+        if ("join".equalsIgnoreCase(newLine[0])) {
+            // This must be seen before any reply to the JOIN is processed.
+            joinProcessor.joinSent(newLine);
+        }
         out.sendLine(line, priority);
-        parseOutgoingLine(line);
+        parseOutgoingLine(newLine);
 
         return true;
     }
@@ -1069,12 +1415,13 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
     /**
      * Parses a line that has been sent to the server in order to track state.
      *
-     * @param line The line to be parsed.
+     * @param newLine The tokenised line to be parsed.
      */
-    private void parseOutgoingLine(final String line) {
-        final String[] newLine = tokeniseLine(line);
+    private void parseOutgoingLine(final String... newLine) {
         if ("away".equalsIgnoreCase(newLine[0]) && newLine.length > 1) {
             myself.setAwayReason(newLine[newLine.length - 1]);
+        } else if ("who".equalsIgnoreCase(newLine[0])) {
+            whoxTracker.whoSent(newLine);
         } else if ("mode".equalsIgnoreCase(newLine[0]) && newLine.length == 3) {
             final IRCChannelInfo channel = getChannel(newLine[1]);
             if (channel != null) {
@@ -1121,9 +1468,26 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
      *
      * @param line Line read from the IRC server
      */
-    @SuppressWarnings("fallthrough")
     protected void processLine(final ReadLine line) {
+        synchronized (processingLock) {
+            labeledResponses.startLine(line);
+            try {
+                handleLine(line);
+            } finally {
+                labeledResponses.endLine();
+            }
+        }
+    }
+
+    /**
+     * Handles a line by updating state and calling the relevant processors.
+     *
+     * @param line Line read from the IRC server
+     */
+    @SuppressWarnings("fallthrough")
+    private void handleLine(final ReadLine line) {
         callDataIn(line);
+        netsplitTracker.setCurrentBatch(line.getTags().get("batch"));
         final String[] token = line.getTokens();
         LocalDateTime lineTS = LocalDateTime.now();
 
@@ -1282,6 +1646,7 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
      */
     public void setEncoding(final IRCEncoding encoding) {
         stringConverter = new IRCStringConverter(encoding);
+        registry.setConverter(stringConverter);
     }
 
     /**
@@ -1541,43 +1906,42 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
 
     @Override
     public void joinChannels(final ChannelJoinRequest... channels) {
-        // We store a map from key->channels to allow intelligent joining of
-        // channels using as few JOIN commands as needed.
-        final Map<String, StringBuffer> joinMap = new HashMap<>();
+        // Pack the channels into as few JOIN commands as the server allows.
+        String channelLimit = h005Info.get(IrcConstants.ISUPPORT_CHANNEL_LIMIT);
+        if (channelLimit == null && h005Info.containsKey(IrcConstants.ISUPPORT_MAXIMUM_CHANNELS)) {
+            channelLimit = chanPrefix + ':' + h005Info.get(IrcConstants.ISUPPORT_MAXIMUM_CHANNELS);
+        }
+        final Collection<String> joined = new ArrayList<>();
+        for (IRCChannelInfo channel : registry.getChannels()) {
+            joined.add(channel.getName());
+        }
+        final JoinPacker packer = new JoinPacker(MAX_LINELENGTH, getMaxTargets("JOIN"),
+                channelLimit, joined, getStringConverter());
 
         for (ChannelJoinRequest channel : channels) {
-            // Make sure we have a list to put stuff in.
-            StringBuffer list = joinMap.computeIfAbsent(channel.getPassword(), k -> new StringBuffer());
-
             // Add the channel to the list. If the name is invalid and
             // autoprefix is off we will just skip this channel.
             if (!channel.getName().isEmpty()) {
-                if (list.length() > 0) {
-                    list.append(',');
-                }
-                if (!isValidChannelName(channel.getName())) {
-                    if (chanPrefix.isEmpty()) {
-                        // TODO: This is wrong - empty chan prefix means the
-                        // IRCd supports no channels.
-                        list.append('#');
-                    } else {
-                        list.append(chanPrefix.charAt(0));
-                    }
+                if (isValidChannelName(channel.getName())) {
+                    packer.add(channel.getName(), channel.getPassword());
+                } else if (chanPrefix.isEmpty()) {
+                    // TODO: This is wrong - empty chan prefix means the
+                    // IRCd supports no channels.
+                    packer.add('#' + channel.getName(), channel.getPassword());
+                } else {
+                    packer.add(chanPrefix.charAt(0) + channel.getName(), channel.getPassword());
                 }
-                list.append(channel.getName());
             }
         }
 
-        for (Map.Entry<String, StringBuffer> entrySet : joinMap.entrySet()) {
-            final String thisKey = entrySet.getKey();
-            final String channelString = entrySet.getValue().toString();
-            if (!channelString.isEmpty()) {
-                if (thisKey == null || thisKey.isEmpty()) {
-                    sendString("JOIN " + channelString);
-                } else {
-                    sendString("JOIN " + channelString + ' ' + thisKey);
-                }
-            }
+        if (!packer.getSkipped().isEmpty()) {
+            callErrorInfo(new ParserError(ParserError.ERROR_WARNING,
+                    "Not joining " + String.join(",", packer.getSkipped())
+                            + " as the server's channel limit has been reached", getLastLine()));
+        }
+
+        for (String line : packer.getLines()) {
+            sendString(line);
         }
     }
 
@@ -1645,6 +2009,51 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
         }
     }
 
+    /**
+     * Gets the maximum number of targets allowed for a command, from the
+     * TARGMAX or MAXTARGETS tokens.
+     *
+     * @param command The upper case command to get the limit for
+     * @return The maximum number of targets, or {@link Integer#MAX_VALUE} if
+     * there is no limit
+     */
+    public int getMaxTargets(final String command) {
+        final String targmax = h005Info.get("TARGMAX");
+        if (targmax != null) {
+            for (String entry : targmax.split(",")) {
+                final int colon = entry.indexOf(':');
+                if (colon != -1 && entry.substring(0, colon).equalsIgnoreCase(command)) {
+                    return parseLimit(entry.substring(colon + 1));
+                }
+            }
+        }
+
+        if ("PRIVMSG".equals(command) || "NOTICE".equals(command)) {
+            final String maxTargets = h005Info.get("MAXTARGETS");
+            return maxTargets == null ? 1 : parseLimit(maxTargets);
+        }
+
+        // JOIN has always accepted a list of channels, but other commands may not.
+        return "JOIN".equals(command) ? Integer.MAX_VALUE : 1;
+    }
+
+    /**
+     * Parses a target limit, where an empty value means there is no limit.
+     *
+     * @param limit The limit to be parsed
+     * @return The limit
+     */
+    private static int parseLimit(final String limit) {
+        if (limit.isEmpty()) {
+            return Integer.MAX_VALUE;
+        }
+        try {
+            return Integer.parseInt(limit);
+        } catch (NumberFormatException ex) {
+            return 1;
+        }
+    }
+
     @Override
     public int getMaxListModes(final char mode) {
         // MAXLIST=bdeI:50
@@ -1782,6 +2191,9 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
             if (rawSocket != null) {
                 rawSocket.close();
             }
+            if (connection != null) {
+                connection.close();
+            }
         } catch (IOException e) {
             /* Do Nothing */
         } finally {
@@ -1844,7 +2256,20 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
      * @return The ServerType for this IRCD.
      */
     public ServerType getServerType() {
-        return ServerType.findServerType(h005Info.get("004IRCD"), networkName, h005Info.get("003IRCD"), h005Info.get("002IRCD"));
+        // This is called for every ban and quiet that's processed, so avoid
+        // running all of the server type regexes unless something changed.
+        final String version = h005Info.get("004IRCD");
+        final String network = networkName;
+        final String raw003 = h005Info.get("003IRCD");
+        final String raw002 = h005Info.get("002IRCD");
+        final CachedServerType cached = cachedServerType;
+        if (cached != null && cached.isFor(version, network, raw003, raw002)) {
+            return cached.type;
+        }
+
+        final ServerType type = ServerType.findServerType(version, network, raw003, raw002);
+        cachedServerType = new CachedServerType(type, version, network, raw003, raw002);
+        return type;
     }
 
     @Override
@@ -1894,37 +2319,214 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
         startPingTimer();
     }
 
+    /**
+     * Get the tracker used to group netsplits and netjoins.
+     *
+     * @return This parser's netsplit tracker
+     */
+    public NetsplitTracker getNetsplitTracker() {
+        return netsplitTracker;
+    }
+
+    /**
+     * Get the pacer used for the queries sent about newly joined channels.
+     *
+     * @return This parser's channel sync pacer
+     */
+    public ChannelSyncPacer getChannelSyncPacer() {
+        return channelSyncPacer;
+    }
+
+    /**
+     * Get the tracker used to match labeled commands with their responses.
+     *
+     * @return This parser's labeled response tracker
+     */
+    public LabeledResponseTracker getLabeledResponseTracker() {
+        return labeledResponses;
+    }
+
+    /**
+     * Get the manager used to send WHOIS, WHO, MODE and LIST queries whose
+     * replies are returned as futures.
+     *
+     * @return This parser's query manager
+     */
+    public QueryManager getQueryManager() {
+        return queryManager;
+    }
+
+    /**
+     * Get the tracker used to send WHOs and apply their replies.
+     *
+     * @return This parser's WHOX tracker
+     */
+    public WhoxTracker getWhoxTracker() {
+        return whoxTracker;
+    }
+
+    /**
+     * Get the value of netsplitUserEvents.
+     *
+     * @return value of netsplitUserEvents.
+     */
+    public boolean getNetsplitUserEvents() {
+        return netsplitUserEvents;
+    }
+
+    /**
+     * Set the value of netsplitUserEvents. If this is false, quits and joins
+     * that are part of a netsplit or netjoin are only reported by a single
+     * NetsplitEvent or NetjoinEvent, rather than also raising the usual
+     * per-user and per-channel events.
+     *
+     * @param newValue New value to use.
+     */
+    public void setNetsplitUserEvents(final boolean newValue) {
+        netsplitUserEvents = newValue;
+    }
+
+    /**
+     * Get the debug levels that events are raised for.
+     *
+     * @return Bitmask of debug levels (DEBUG_INFO, DEBUG_SOCKET etc)
+     */
+    public int getDebugLevels() {
+        return debugLevels;
+    }
+
+    /**
+     * Set the debug levels that events are raised for. Debug information at
+     * any other level is discarded without being formatted.
+     *
+     * @param newValue Bitmask of debug levels (DEBUG_INFO, DEBUG_SOCKET etc)
+     */
+    public void setDebugLevels(final int newValue) {
+        debugLevels = newValue;
+    }
+
+    /**
+     * Get the tap used to sample and rate limit debug events.
+     *
+     * @return The debug event tap
+     */
+    public EventTap getDebugTap() {
+        return debugTap;
+    }
+
+    /**
+     * Get the tap used to sample and rate limit data in events. Data out
+     * events are always published, as the parser relies on them internally.
+     *
+     * @return The data event tap
+     */
+    public EventTap getDataTap() {
+        return dataTap;
+    }
+
+    @Override
+    public IRCParserCallbackManager getCallbackManager() {
+        return (IRCParserCallbackManager) super.getCallbackManager();
+    }
+
+    /**
+     * Get the scheduler used to run the ping timer.
+     *
+     * @return The current ping scheduler
+     */
+    public PingScheduler getPingScheduler() {
+        return pingScheduler;
+    }
+
+    /**
+     * Set the scheduler used to run the ping timer. By default all parsers
+     * share a single scheduler. Connections made using an event loop always
+     * use the event loop instead.
+     *
+     * @param scheduler New scheduler to use
+     */
+    public void setPingScheduler(final PingScheduler scheduler) {
+        pingScheduler = scheduler;
+        if (pingTimer.get() != null) {
+            startPingTimer();
+        }
+    }
+
     /**
      * Start the pingTimer.
      */
     public void startPingTimer() {
-        pingTimerSem.acquireUninterruptibly();
+        setPingNeeded(false);
+        pingCountDown = 1;
 
-        try {
-            setPingNeeded(false);
+        final PingTimer timer = new PingTimer(this);
+        final PingTimer oldTimer = pingTimer.getAndSet(timer);
+        if (oldTimer != null) {
+            oldTimer.cancel();
+        }
 
-            if (pingTimer != null) {
-                pingTimer.cancel();
-            }
+        timer.start(getScheduler(), getPingTimerInterval());
+    }
 
-            pingTimer = new Timer("IRCParser pingTimer");
-            pingTimer.schedule(new PingTimer(this, pingTimer), 0, getPingTimerInterval());
-            pingCountDown = 1;
-        } finally {
-            pingTimerSem.release();
-        }
+    /**
+     * Get the scheduler that timers for this parser should use. This is the
+     * event loop for connections made using one, or the ping scheduler
+     * otherwise.
+     *
+     * @return The scheduler to use for timers
+     */
+    PingScheduler getScheduler() {
+        final NioConnection current = connection;
+        return current == null ? pingScheduler : current.getEventLoop();
     }
 
     /**
      * Stop the pingTimer.
      */
     protected void stopPingTimer() {
-        pingTimerSem.acquireUninterruptibly();
-        if (pingTimer != null) {
-            pingTimer.cancel();
-            pingTimer = null;
+        final PingTimer oldTimer = pingTimer.getAndSet(null);
+        if (oldTimer != null) {
+            oldTimer.cancel();
+        }
+    }
+
+    /**
+     * Runs the given task away from the scheduler's thread, so that it never
+     * blocks a shared scheduler. For connections made using an event loop,
+     * the task is run on the event loop; otherwise it is run on a pool of
+     * threads shared by all parsers.
+     *
+     * @param task The task to run
+     */
+    void executeTask(final Runnable task) {
+        final NioConnection current = connection;
+        if (current == null) {
+            TaskExecutor.EXECUTOR.execute(task);
+        } else {
+            current.getEventLoop().execute(task);
+        }
+    }
+
+    /**
+     * Runs the given task in sequence with the processing of lines from the
+     * server, so that it may safely update state and publish events. For
+     * connections made using an event loop, the task is run on the event loop
+     * that processes lines; otherwise it is run on the shared pool used by
+     * {@link #executeTask(Runnable)} while no line is being processed.
+     *
+     * @param task The task to run
+     */
+    void executeProcessingTask(final Runnable task) {
+        final NioConnection current = connection;
+        if (current == null) {
+            TaskExecutor.EXECUTOR.execute(() -> {
+                synchronized (processingLock) {
+                    task.run();
+                }
+            });
+        } else {
+            current.getEventLoop().execute(task);
         }
-        pingTimerSem.release();
     }
 
     /**
@@ -1934,16 +2536,12 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
      *
      * @param timer The timer that called this.
      */
-    protected void pingTimerTask(final Timer timer) {
+    protected void pingTimerTask(final PingTimer timer) {
         // If user no longer wants server ping to be checked, or the socket is
         // closed then cancel the time and do nothing else.
         if (!getCheckServerPing() || getSocketState() != SocketState.OPEN) {
-            pingTimerSem.acquireUninterruptibly();
-            if (pingTimer != null && pingTimer.equals(timer)) {
-                pingTimer.cancel();
-            }
-            pingTimerSem.release();
-
+            pingTimer.compareAndSet(timer, null);
+            timer.cancel();
             return;
         }
 
@@ -2061,7 +2659,7 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
      * @param client Client to add
      */
     public void addClient(final IRCClientInfo client) {
-        clientList.put(getStringConverter().toLowerCase(client.getRealNickname()), client);
+        registry.addClient(client);
     }
 
     /**
@@ -2083,7 +2681,7 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
      * @param client Client to remove
      */
     public void forceRemoveClient(final IRCClientInfo client) {
-        clientList.remove(getStringConverter().toLowerCase(client.getRealNickname()));
+        registry.removeClient(client);
     }
 
     /**
@@ -2092,23 +2690,24 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
      * @return Count of known clients
      */
     public int knownClients() {
-        return clientList.size();
+        return registry.getClientCount();
     }
 
     /**
-     * Get the known clients as a collection.
+     * Get the known clients as a collection. The collection is a snapshot,
+     * and will not reflect any later changes.
      *
      * @return Known clients as a collection
      */
     public Collection<IRCClientInfo> getClients() {
-        return clientList.values();
+        return registry.getClients();
     }
 
     /**
      * Clear the client list.
      */
     public void clearClients() {
-        clientList.clear();
+        registry.clearClients();
         addClient(getLocalClient());
     }
 
@@ -2118,9 +2717,7 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
      * @param channel Channel to add
      */
     public void addChannel(final IRCChannelInfo channel) {
-        synchronized (channelList) {
-            channelList.put(getStringConverter().toLowerCase(channel.getName()), channel);
-        }
+        registry.addChannel(channel);
     }
 
     /**
@@ -2129,9 +2726,7 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
      * @param channel Channel to remove
      */
     public void removeChannel(final ChannelInfo channel) {
-        synchronized (channelList) {
-            channelList.remove(getStringConverter().toLowerCase(channel.getName()));
-        }
+        registry.removeChannel(channel.getName());
     }
 
     /**
@@ -2140,25 +2735,29 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
      * @return Count of known channel
      */
     public int knownChannels() {
-        synchronized (channelList) {
-            return channelList.size();
-        }
+        return registry.getChannelCount();
     }
 
     @Override
     public Collection<IRCChannelInfo> getChannels() {
-        synchronized (channelList) {
-            return channelList.values();
-        }
+        return registry.getChannels();
+    }
+
+    /**
+     * Get the known channels that the given client is on.
+     *
+     * @param nickname Nickname of the client
+     * @return Channels that the client is known to be on
+     */
+    public Collection<IRCChannelInfo> getCommonChannels(final String nickname) {
+        return registry.getChannels(nickname);
     }
 
     /**
      * Clear the channel list.
      */
     public void clearChannels() {
-        synchronized (channelList) {
-            channelList.clear();
-        }
+        registry.clearChannels();
     }
 
     @Override
@@ -2194,4 +2793,118 @@ public class IRCParser extends BaseSocketAwareParser implements SecureParser, En
         super.handleSocketDebug(message);
         callDebugInfo(DEBUG_SOCKET, message);
     }
+
+    /**
+     * Handles events from a non-blocking connection. This takes the place of
+     * {@link #run()} when the parser is driven by an event loop.
+     */
+    private class ConnectionListener implements NioConnection.Listener {
+
+        /** Reader used to split incoming data into lines. */
+        private BufferedIRCReader reader;
+
+        @Override
+        public void connected() {
+            reader = new BufferedIRCReader(encoder);
+
+            callDebugInfo(DEBUG_SOCKET, "\t-> Opening event loop output queue");
+            if (customOutputQueue) {
+                out.setOutputStream(connection.getOutputStream());
+            } else {
+                out = new EventLoopOutputQueue(connection);
+                out.setLineMerger(commandCoalescer);
+            }
+            out.setQueueEnabled(true);
+            currentSocketState = SocketState.OPEN;
+            callDebugInfo(DEBUG_SOCKET, "Socket Connected");
+
+            sendConnectionStrings();
+        }
+
+        @Override
+        public void connectFailed(final IOException cause) {
+            handleConnectException(cause, true);
+        }
+
+        @Override
+        public void dataReceived(final ByteBuffer data) {
+            ReadLine line;
+            while ((line = reader.nextLine(data)) != null) {
+                lastLine = line;
+                if (currentSocketState != SocketState.CLOSING) {
+                    processLine(line);
+                }
+            }
+        }
+
+        @Override
+        public void closed(final IOException cause) {
+            if (cause != null) {
+                callDebugInfo(DEBUG_SOCKET, "Exception in main loop (%s), Aborted",
+                        cause.getMessage());
+            }
+
+            if (currentSocketState != SocketState.CLOSED) {
+                currentSocketState = SocketState.CLOSED;
+                callSocketClosed();
+            }
+            resetState();
+            callDebugInfo(DEBUG_INFO, "End Event Loop Execution");
+        }
+
+    }
+
+    /**
+     * Holds the pool used to run timer work for connections that don't use an
+     * event loop. Threads are only started when needed, and exit once idle.
+     */
+    private static final class TaskExecutor {
+
+        /** The maximum number of threads in the pool. */
+        private static final int MAX_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+        /** The shared pool. */
+        static final ThreadPoolExecutor EXECUTOR = createExecutor();
+
+        private TaskExecutor() {
+        }
+
+        private static ThreadPoolExecutor createExecutor() {
+            final AtomicInteger count = new AtomicInteger();
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS,
+                    30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                        final Thread thread = new Thread(r,
+                                "IRC Parser task runner " + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+
+    }
+
+    /** A server type, and the details it was found from. */
+    private static final class CachedServerType {
+
+        /** The server type. */
+        private final ServerType type;
+        /** The details the type was found from. */
+        private final String[] details;
+
+        CachedServerType(final ServerType type, final String... details) {
+            this.type = type;
+            this.details = details;
+        }
+
+        /**
+         * Determines if this type was found from the given details.
+         *
+         * @param details Details to check, in the order passed to the constructor
+         * @return True if the details are the same, false otherwise
+         */
+        boolean isFor(final String... details) {
+            return Arrays.equals(this.details, details);
+        }
+
+    }
 }
@@ -22,7 +22,9 @@
 
 package com.dmdirc.parser.irc;
 
+import com.dmdirc.parser.common.AsyncEventDispatcher;
 import com.dmdirc.parser.common.CallbackManager;
+import com.dmdirc.parser.common.HandlerTableDispatcher;
 import com.dmdirc.parser.events.ParserEvent;
 import net.engio.mbassy.bus.IMessagePublication;
 import net.engio.mbassy.bus.config.BusConfiguration;
@@ -39,6 +41,13 @@ import java.util.concurrent.TimeUnit;
  * in this CallbackManager for now.
  *
  * This may change in future.
+ *
+ * Events are dispatched through a {@link HandlerTableDispatcher}, which works out the handlers for each type of
+ * event once rather than on every publish.
+ *
+ * Listeners may optionally be called on a separate thread, so that slow listeners don't hold up the parser. See
+ * {@link AsyncEventDispatcher#start}. The parser's own listeners are subscribed with {@link #subscribeInline} so
+ * that they are always called before the next line is processed.
  */
 public class IRCParserCallbackManager extends CallbackManager {
     public IRCParserCallbackManager(final IPublicationErrorHandler errorHandler) {
@@ -46,7 +55,24 @@ public class IRCParserCallbackManager extends CallbackManager {
                 .addFeature(Feature.AsynchronousHandlerInvocation.Default(1, 1))
                 .addFeature(Feature.AsynchronousMessageDispatch.Default()
                         .setNumberOfMessageDispatchers(0))
-                .addPublicationErrorHandler(errorHandler));
+                .addPublicationErrorHandler(errorHandler),
+                manager -> new AsyncEventDispatcher(new HandlerTableDispatcher(manager),
+                        new HandlerTableDispatcher(manager)));
+    }
+
+    @Override
+    public AsyncEventDispatcher getDispatcher() {
+        return (AsyncEventDispatcher) super.getDispatcher();
+    }
+
+    /**
+     * Subscribes a listener which is always called on the thread that published the event, even when other
+     * listeners are being called asynchronously.
+     *
+     * @param listener The listener to subscribe
+     */
+    public void subscribeInline(final Object listener) {
+        getDispatcher().subscribeInline(listener);
     }
 
     @Override
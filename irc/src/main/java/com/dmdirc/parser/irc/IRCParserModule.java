@@ -22,6 +22,7 @@
 
 package com.dmdirc.parser.irc;
 
+import com.dmdirc.parser.irc.processors.ProcessJoin;
 import com.dmdirc.parser.irc.processors.ProcessorsModule;
 
 import javax.inject.Named;
@@ -32,7 +33,7 @@ import dagger.Provides;
 /**
  * Dagger module for injecting the main IRC parser and its dependencies.
  */
-@Module(includes = ProcessorsModule.class, injects = ProcessingManager.class)
+@Module(includes = ProcessorsModule.class, injects = {ProcessingManager.class, ProcessJoin.class})
 public class IRCParserModule {
 
     private final IRCParser parser;
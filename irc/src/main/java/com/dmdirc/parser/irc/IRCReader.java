@@ -44,7 +44,7 @@ import java.util.Map;
 public class IRCReader implements Closeable {
 
     /** Maximum length for an IRC line in bytes. */
-    private static final int LINE_LENGTH = 1024;
+    static final int LINE_LENGTH = 1024;
     /** The input stream to read input from. */
     private final InputStream stream;
     /** The encoder to use to encode lines. */
@@ -193,7 +193,7 @@ public class IRCReader implements Closeable {
      * @param tokens The tokens to extract a source from
      * @return The relevant source or null if none specified
      */
-    private String getSource(final String... tokens) {
+    static String getSource(final String... tokens) {
         if (tokens.length > 0 && tokens[0].length() > 1 && tokens[0].charAt(0) == ':') {
             return tokens[0].substring(1);
         }
@@ -210,9 +210,9 @@ public class IRCReader implements Closeable {
      * @param tokens The tokens to extract a destination from
      * @return The relevant destination or null if none specified
      */
-    private String getDestination(final String... tokens) {
+    static String getDestination(final String... tokens) {
         if (tokens.length > 0 && tokens[0].length() >= 3 && tokens[0].charAt(0) == ':') {
-            final int target = tokens[1].matches("^[0-9]+$") ? 3 : 2;
+            final int target = isNumeric(tokens[1]) ? 3 : 2;
 
             if (tokens.length > target) {
                 return tokens[target];
@@ -222,9 +222,33 @@ public class IRCReader implements Closeable {
         return null;
     }
 
+    /**
+     * Determines whether the specified token consists solely of one or more
+     * ASCII digits.
+     *
+     * @param token The token to be checked
+     * @return True if the token is numeric, false otherwise
+     */
+    private static boolean isNumeric(final String token) {
+        if (token.isEmpty()) {
+            return false;
+        }
+
+        for (int i = 0; i < token.length(); i++) {
+            final char chr = token.charAt(i);
+            if (chr < '0' || chr > '9') {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     @Override
     public void close() throws IOException {
-        stream.close();
+        if (stream != null) {
+            stream.close();
+        }
     }
 
     /**
@@ -78,28 +78,41 @@ public class IRCStringConverter implements StringConverter {
 
     @Override
     public String toLowerCase(final String input) {
-        final char[] result = input.toCharArray();
+        return convert(input, lowercase);
+    }
 
-        for (int i = 0; i < input.length(); ++i) {
-            if (result[i] >= 0 && result[i] < lowercase.length) {
-                result[i] = lowercase[result[i]];
-            } else {
-                result[i] = result[i];
+    @Override
+    public String toUpperCase(final String input) {
+        return convert(input, uppercase);
+    }
+
+    /**
+     * Converts the given string using the given table. If no characters need
+     * to be changed, the input string is returned as-is.
+     *
+     * @param input The string to be converted
+     * @param table The table mapping characters to their replacements
+     * @return The converted string
+     */
+    private static String convert(final String input, final char[] table) {
+        final int length = input.length();
+        int i = 0;
+        while (i < length) {
+            final char c = input.charAt(i);
+            if (c < table.length && table[c] != c) {
+                break;
             }
+            i++;
         }
 
-        return new String(result);
-    }
+        if (i == length) {
+            return input;
+        }
 
-    @Override
-    public String toUpperCase(final String input) {
         final char[] result = input.toCharArray();
-
-        for (int i = 0; i < input.length(); ++i) {
-            if (result[i] >= 0 && result[i] < uppercase.length) {
-                result[i] = uppercase[result[i]];
-            } else {
-                result[i] = result[i];
+        for (; i < length; ++i) {
+            if (result[i] < table.length) {
+                result[i] = table[result[i]];
             }
         }
 
@@ -116,25 +129,130 @@ public class IRCStringConverter implements StringConverter {
             return false;
         }
 
-        boolean result = first.length() == second.length();
+        if (first.length() != second.length()) {
+            return false;
+        }
 
-        if (result) {
-            final char[] firstChar = first.toCharArray();
-            final char[] secondChar = second.toCharArray();
+        for (int i = 0; i < first.length(); ++i) {
+            final char firstChar = first.charAt(i);
+            final char secondChar = second.charAt(i);
+            if (firstChar != secondChar && lower(firstChar) != lower(secondChar)) {
+                return false;
+            }
+        }
 
-            for (int i = 0; i < first.length(); ++i) {
-                if (firstChar[i] < lowercase.length && secondChar[i] < lowercase.length) {
-                    result = lowercase[firstChar[i]] == lowercase[secondChar[i]];
-                } else {
-                    result = firstChar[i] == secondChar[i];
-                }
+        return true;
+    }
+
+    /**
+     * Calculates a hash code for the given string which ignores case. The
+     * result is the same as {@code toLowerCase(input).hashCode()}, but no
+     * copy of the string is made.
+     *
+     * @param input The string to hash
+     * @return A case-insensitive hash code for the string
+     */
+    public int hashCodeIgnoreCase(final String input) {
+        int hash = 0;
+        for (int i = 0; i < input.length(); ++i) {
+            hash = 31 * hash + lower(input.charAt(i));
+        }
+        return hash;
+    }
 
-                if (!result) {
-                    break;
+    /**
+     * Creates a key for the given string which can be used in hash-based
+     * collections, and which is equal to any other key for a string that
+     * differs only in case.
+     *
+     * @param input The string to create a key for
+     * @return A case-insensitive key for the string
+     */
+    public Key key(final String input) {
+        return new Key(this, input);
+    }
+
+    /**
+     * Converts a single character to lowercase.
+     *
+     * @param c The character to convert
+     * @return The lowercase version of the character
+     */
+    char lower(final char c) {
+        return c < lowercase.length ? lowercase[c] : c;
+    }
+
+    /**
+     * A case-insensitive key wrapping a string, for use in hash-based
+     * collections. Keys hold the original string, so creating one doesn't
+     * require a lowercase copy to be made.
+     */
+    public static final class Key {
+
+        /** The converter used to compare this key. */
+        private final IRCStringConverter converter;
+        /** The original string. */
+        private final String value;
+        /** The case-insensitive hash of the string. */
+        private final int hash;
+
+        /**
+         * Creates a new key.
+         *
+         * @param converter The converter used to compare this key
+         * @param value The original string
+         */
+        private Key(final IRCStringConverter converter, final String value) {
+            this.converter = converter;
+            this.value = value;
+            this.hash = converter.hashCodeIgnoreCase(value);
+        }
+
+        /**
+         * Retrieves the original string this key was created from.
+         *
+         * @return The original string
+         */
+        public String getValue() {
+            return value;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+
+            final Key other = (Key) obj;
+            if (hash != other.hash || value.length() != other.value.length()) {
+                return false;
+            }
+
+            // Compare each string as lowered by its own converter, so that
+            // keys created before and after a change of casemapping behave
+            // the same as comparing lowercase copies would.
+            for (int i = 0; i < value.length(); i++) {
+                if (converter.lower(value.charAt(i))
+                        != other.converter.lower(other.value.charAt(i))) {
+                    return false;
                 }
             }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return value;
         }
 
-        return result;
     }
+
 }
@@ -30,13 +30,16 @@ public final class IrcConstants {
     public static final int DEFAULT_PORT = 6667;
     public static final int DEFAULT_SSL_PORT = 6697;
 
+    public static final String ISUPPORT_CHANNEL_LIMIT = "CHANLIMIT";
     public static final String ISUPPORT_CHANNEL_MODES = "CHANMODES";
     public static final String ISUPPORT_CHANNEL_USER_PREFIXES = "PREFIX";
     public static final String ISUPPORT_MAXIMUM_BANS = "MAXBANS";
+    public static final String ISUPPORT_MAXIMUM_CHANNELS = "MAXCHANNELS";
     public static final String ISUPPORT_MAXIMUM_LIST_MODES = "MAXLIST";
     public static final String ISUPPORT_USER_CHANNEL_MODES = "USERCHANMODES";
     public static final String ISUPPORT_USER_MODES = "USERMODES";
     public static final String ISUPPORT_TOPIC_LENGTH = "TOPICLEN";
+    public static final String ISUPPORT_WHOX = "WHOX";
 
     public static final int NUMERIC_ERROR_NICKNAME_IN_USE = 433;
     public static final int NUMERIC_ERROR_PASSWORD_MISMATCH = 464;
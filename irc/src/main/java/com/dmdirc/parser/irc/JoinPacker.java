@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+/**
+ * Packs channels to be joined into as few JOIN lines as possible, within the
+ * limits advertised by the server.
+ *
+ * <p>Each line is kept within {@link IRCParser#MAX_LINELENGTH} and the TARGMAX
+ * limit for JOIN. Channels with keys are listed before those without on each
+ * line, so that the keys line up with their channels. Channels which would
+ * take the client over its CHANLIMIT (or MAXCHANNELS) for their type are not
+ * joined at all, as the server would only refuse them. Channels the client is
+ * already in, and channels added more than once, are only counted (and
+ * joined) once.
+ */
+final class JoinPacker {
+
+    /** The maximum length of each line. */
+    private final int maxLength;
+    /** The maximum number of channels on each line. */
+    private final int maxTargets;
+    /** The converter used to compare channel names. */
+    private final IRCStringConverter converter;
+    /** The channels which have been joined or added so far. */
+    private final Set<IRCStringConverter.Key> channels = new HashSet<>();
+    /** The number of channels which may still be joined, keyed by the prefixes they share. */
+    private final Map<String, Integer> remaining = new LinkedHashMap<>();
+    /** Channels to join which have keys. */
+    private final List<String> keyedChannels = new ArrayList<>();
+    /** The keys of the channels in {@link #keyedChannels}. */
+    private final List<String> keys = new ArrayList<>();
+    /** Channels to join which don't have keys. */
+    private final List<String> unkeyedChannels = new ArrayList<>();
+    /** Channels which won't be joined as the channel limit has been reached. */
+    private final List<String> skipped = new ArrayList<>();
+
+    /**
+     * Creates a new packer.
+     *
+     * @param maxLength The maximum length of each line
+     * @param maxTargets The maximum number of channels on each line
+     * @param channelLimit The server's channel limits, in the form of the
+     * CHANLIMIT token (e.g. {@code #&:100,+:10}), or null if there are none
+     * @param joined The names of the channels the client is already in
+     * @param converter The converter used to compare channel names
+     */
+    JoinPacker(final int maxLength, final int maxTargets, @Nullable final String channelLimit,
+            final Collection<String> joined, final IRCStringConverter converter) {
+        this.maxLength = maxLength;
+        this.maxTargets = Math.max(1, maxTargets);
+        this.converter = converter;
+
+        if (channelLimit != null) {
+            for (String entry : channelLimit.split(",")) {
+                final int colon = entry.indexOf(':');
+                if (colon < 1 || colon == entry.length() - 1) {
+                    // No prefixes, or no limit.
+                    continue;
+                }
+                try {
+                    remaining.put(entry.substring(0, colon),
+                            Integer.parseInt(entry.substring(colon + 1)));
+                } catch (NumberFormatException ex) {
+                    // Ignore limits we can't understand; the server will still enforce them.
+                }
+            }
+        }
+
+        for (String channel : joined) {
+            final String prefixes = getPrefixes(channel);
+            if (channels.add(converter.key(channel)) && prefixes != null) {
+                remaining.put(prefixes, remaining.get(prefixes) - 1);
+            }
+        }
+    }
+
+    /**
+     * Adds a channel to be joined. Channels which the client is already in,
+     * or which have already been added, are ignored.
+     *
+     * @param channel The name of the channel, including its prefix
+     * @param key The key for the channel, or null or empty if it has none
+     */
+    void add(final String channel, @Nullable final String key) {
+        if (!channels.add(converter.key(channel))) {
+            return;
+        }
+
+        final String prefixes = getPrefixes(channel);
+        if (prefixes != null) {
+            final int count = remaining.get(prefixes);
+            if (count <= 0) {
+                skipped.add(channel);
+                return;
+            }
+            remaining.put(prefixes, count - 1);
+        }
+
+        if (key == null || key.isEmpty()) {
+            unkeyedChannels.add(channel);
+        } else {
+            keyedChannels.add(channel);
+            keys.add(key);
+        }
+    }
+
+    /**
+     * Gets the JOIN lines needed to join all of the channels added.
+     *
+     * @return The lines to send, in order
+     */
+    List<String> getLines() {
+        final List<String> lines = new ArrayList<>();
+        final StringBuilder channels = new StringBuilder();
+        final StringBuilder lineKeys = new StringBuilder();
+        int targets = 0;
+
+        for (int i = 0; i < keyedChannels.size() + unkeyedChannels.size(); i++) {
+            final boolean keyed = i < keyedChannels.size();
+            final String channel = keyed ? keyedChannels.get(i)
+                    : unkeyedChannels.get(i - keyedChannels.size());
+            final String key = keyed ? keys.get(i) : "";
+
+            // The length of "JOIN <channels>,<channel> <keys>,<key>"
+            final int keysLength = lineKeys.length() == 0 ? key.length()
+                    : lineKeys.length() + (keyed ? 1 + key.length() : 0);
+            final int length = 5 + channels.length() + 1 + channel.length()
+                    + (keysLength == 0 ? 0 : 1 + keysLength);
+            if (targets > 0 && (targets >= maxTargets || length > maxLength)) {
+                lines.add(getLine(channels, lineKeys));
+                channels.setLength(0);
+                lineKeys.setLength(0);
+                targets = 0;
+            }
+
+            if (targets > 0) {
+                channels.append(',');
+            }
+            channels.append(channel);
+            if (keyed) {
+                if (lineKeys.length() > 0) {
+                    lineKeys.append(',');
+                }
+                lineKeys.append(key);
+            }
+            targets++;
+        }
+
+        if (targets > 0) {
+            lines.add(getLine(channels, lineKeys));
+        }
+        return lines;
+    }
+
+    /**
+     * Gets the channels which won't be joined because the client would
+     * exceed its channel limit.
+     *
+     * @return The skipped channels, in the order they were added
+     */
+    List<String> getSkipped() {
+        return Collections.unmodifiableList(skipped);
+    }
+
+    /**
+     * Finds the channel limit which applies to the given channel.
+     *
+     * @param channel The channel to check
+     * @return The prefixes sharing a limit with the channel, or null if it
+     * isn't limited
+     */
+    @Nullable
+    private String getPrefixes(final String channel) {
+        if (!channel.isEmpty()) {
+            for (String prefixes : remaining.keySet()) {
+                if (prefixes.indexOf(channel.charAt(0)) != -1) {
+                    return prefixes;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String getLine(final CharSequence channels, final CharSequence keys) {
+        return keys.length() == 0 ? "JOIN " + channels : "JOIN " + channels + ' ' + keys;
+    }
+
+}
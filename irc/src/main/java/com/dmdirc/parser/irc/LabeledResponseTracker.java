@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc;
+
+import com.dmdirc.parser.common.QueuePriority;
+import com.dmdirc.parser.irc.IRCReader.ReadLine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+/**
+ * Matches the server's replies to the commands that caused them, using the
+ * IRCv3 {@code labeled-response} capability.
+ *
+ * <p>Commands sent with {@link #send(String, QueuePriority)} are tagged with a
+ * unique label, which the server copies onto its response. The response is
+ * either a single line, a {@code labeled-response} batch (which may contain
+ * nested batches), or an {@code ACK} if there was nothing to reply with.
+ * This lets any number of queries be outstanding at once, without guessing
+ * which reply belongs to which query from the order they were sent in.
+ *
+ * <p>Lines in a response are still processed by the parser as normal. While
+ * each one is processed, {@link #getCurrentRequest()} gives the command it is
+ * in response to, and once the last one has been processed the future
+ * returned when the command was sent is completed with all of the lines in
+ * the response (excluding any {@code BATCH} and {@code ACK} lines). Futures
+ * are completed on the parser's thread.
+ */
+public class LabeledResponseTracker {
+
+    /** The capability the server must support for labels to be used. */
+    public static final String CAPABILITY = "labeled-response";
+    /** The parser that owns this tracker. */
+    private final IRCParser parser;
+    /** Requests waiting for a response, by label. */
+    private final Map<String, Request> requests = new ConcurrentHashMap<>();
+    /** Requests whose response is being received in a batch, by batch reference. */
+    private final Map<String, Request> batches = new HashMap<>();
+    /** Counter used to generate labels. */
+    private final AtomicLong nextLabel = new AtomicLong();
+    /** The request the line being processed is part of the response to, if any. */
+    @Nullable
+    private Request current;
+    /** Whether the line being processed completes the response to {@link #current}. */
+    private boolean completesCurrent;
+
+    /**
+     * Creates a new tracker.
+     *
+     * @param parser The parser that owns this tracker
+     */
+    public LabeledResponseTracker(final IRCParser parser) {
+        this.parser = parser;
+    }
+
+    /**
+     * Determines whether labels can be used with the server.
+     *
+     * @return True if the labeled-response capability is enabled
+     */
+    public boolean isEnabled() {
+        return parser.getCapabilityState(CAPABILITY) == CapabilityState.ENABLED;
+    }
+
+    /**
+     * Sends a command with a label, so that its response can be identified.
+     * This must only be used if {@link #isEnabled()} returns true.
+     *
+     * @param line The command to send, without any tags
+     * @param priority The priority to send the command with
+     * @return A future which will be completed with the lines of the
+     * response, or cancelled if the connection is closed first
+     * @throws IllegalStateException if labeled-response isn't enabled
+     */
+    public CompletableFuture<List<ReadLine>> send(final String line,
+            final QueuePriority priority) {
+        if (!isEnabled()) {
+            throw new IllegalStateException(CAPABILITY + " is not enabled");
+        }
+
+        final Request request = new Request(Long.toString(nextLabel.incrementAndGet(), 36), line);
+        requests.put(request.label, request);
+        if (!parser.sendString("@label=" + request.label + ' ' + line, priority)) {
+            requests.remove(request.label);
+            request.future.cancel(false);
+        }
+        return request.future;
+    }
+
+    /**
+     * Gets the command that the line currently being processed is in
+     * response to. This is only meaningful on the parser's thread.
+     *
+     * @return The command that was sent, or null if the line isn't part of
+     * the response to a labeled command
+     */
+    @Nullable
+    public String getCurrentRequest() {
+        return current == null ? null : current.line;
+    }
+
+    /**
+     * Gets the future for the command that the line currently being processed
+     * is in response to, as returned by {@link #send(String, QueuePriority)}.
+     * This lets callers tell apart responses to identical commands. This is
+     * only meaningful on the parser's thread.
+     *
+     * @return The future for the command, or null if the line isn't part of
+     * the response to a labeled command
+     */
+    @Nullable
+    public CompletableFuture<List<ReadLine>> getCurrentResponse() {
+        return current == null ? null : current.future;
+    }
+
+    /**
+     * Gets the number of labeled commands still waiting for a response.
+     *
+     * @return The number of outstanding commands
+     */
+    public int getOutstandingCount() {
+        return requests.size();
+    }
+
+    /**
+     * Called before a line received from the server is processed.
+     *
+     * @param line The line that was received
+     */
+    void startLine(final ReadLine line) {
+        current = null;
+        completesCurrent = false;
+        if (requests.isEmpty()) {
+            return;
+        }
+
+        final Map<String, String> tags = line.getTags();
+        final String[] tokens = line.getTokens();
+        final int command = tokens.length > 0 && !tokens[0].isEmpty()
+                && tokens[0].charAt(0) == ':' ? 1 : 0;
+        final String label = tags.get("label");
+
+        if (tokens.length > command + 1 && "BATCH".equalsIgnoreCase(tokens[command])
+                && tokens[command + 1].length() > 1) {
+            final String reference = tokens[command + 1].substring(1);
+            if (tokens[command + 1].charAt(0) == '+') {
+                // A labeled batch, or one nested inside a labeled batch.
+                current = label == null ? batches.get(tags.get("batch")) : requests.get(label);
+                if (current != null) {
+                    batches.put(reference, current);
+                    if (label != null) {
+                        current.batch = reference;
+                    }
+                }
+            } else {
+                current = batches.remove(reference);
+                completesCurrent = current != null && reference.equals(current.batch);
+            }
+        } else if (label != null) {
+            // A single line response, or an acknowledgement with no response.
+            current = requests.get(label);
+            if (current != null) {
+                completesCurrent = true;
+                if (tokens.length <= command || !"ACK".equalsIgnoreCase(tokens[command])) {
+                    current.lines.add(line);
+                }
+            }
+        } else {
+            current = batches.get(tags.get("batch"));
+            if (current != null) {
+                current.lines.add(line);
+            }
+        }
+    }
+
+    /**
+     * Called after a line received from the server has been processed.
+     */
+    void endLine() {
+        final Request request = current;
+        current = null;
+        if (completesCurrent) {
+            completesCurrent = false;
+            requests.remove(request.label);
+            request.future.complete(Collections.unmodifiableList(request.lines));
+        }
+    }
+
+    /**
+     * Forgets all outstanding requests, cancelling their futures. This is
+     * called when the connection is closed.
+     */
+    public void clear() {
+        final List<Request> outstanding = new ArrayList<>(requests.values());
+        requests.clear();
+        batches.clear();
+        current = null;
+        completesCurrent = false;
+        for (Request request : outstanding) {
+            request.future.cancel(false);
+        }
+    }
+
+    /** A command which has been sent with a label. */
+    private static final class Request {
+
+        /** The label the command was sent with. */
+        private final String label;
+        /** The command that was sent. */
+        private final String line;
+        /** The future to complete when the response has been received. */
+        private final CompletableFuture<List<ReadLine>> future = new CompletableFuture<>();
+        /** The lines received so far. */
+        private final List<ReadLine> lines = new ArrayList<>();
+        /** The reference of the batch containing the response, if any. */
+        @Nullable
+        private String batch;
+
+        Request(final String label, final String line) {
+            this.label = label;
+            this.line = line;
+        }
+
+    }
+
+}
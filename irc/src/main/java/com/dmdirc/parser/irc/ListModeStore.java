@@ -0,0 +1,377 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc;
+
+import com.dmdirc.parser.common.ChannelListModeItem;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+/**
+ * The items in one of a channel's list modes, such as its bans.
+ *
+ * <p>Items are kept in the order they were added, and are unique ignoring
+ * case according to the server's casemapping, so adding and removing items
+ * takes constant time however long the list grows.
+ *
+ * <p>Masks are also indexed by their nickname or host where either is free of
+ * wildcards, so {@link #getMatching(String)} only has to check the few masks
+ * which could possibly match a given hostmask, rather than every item in the
+ * list.
+ *
+ * <p>Like the rest of the channel's state, instances are only modified by the
+ * parser's thread and are not thread safe.
+ */
+public class ListModeStore extends AbstractCollection<ChannelListModeItem> {
+
+    /** Orders entries by when they were added. */
+    private static final Comparator<Entry> BY_SEQUENCE =
+            Comparator.comparingLong(entry -> entry.sequence);
+    /** All entries in the list, in the order they were added. */
+    private final Map<IRCStringConverter.Key, Entry> entries = new LinkedHashMap<>();
+    /** Entries whose mask has a literal nickname, keyed by that nickname. */
+    private final Map<IRCStringConverter.Key, Set<Entry>> byNick = new HashMap<>();
+    /** Entries whose mask has a literal host but not nickname, keyed by that host. */
+    private final Map<IRCStringConverter.Key, Set<Entry>> byHost = new HashMap<>();
+    /** Entries which aren't in either index. */
+    private final Set<Entry> unindexed = new HashSet<>();
+    /** Converter used to compare items. */
+    private IRCStringConverter converter;
+    /** Sequence number to give the next entry. */
+    private long nextSequence;
+
+    /**
+     * Creates a new, empty, store.
+     *
+     * @param converter The converter to use to compare items
+     */
+    public ListModeStore(final IRCStringConverter converter) {
+        this.converter = converter;
+    }
+
+    /**
+     * Changes the converter used to compare items, rebuilding the indexes
+     * using the new casemapping. If items become equal under the new
+     * casemapping, only the first of them is kept.
+     *
+     * @param converter The new converter to use
+     */
+    public void setConverter(final IRCStringConverter converter) {
+        if (converter == this.converter) {
+            return;
+        }
+
+        this.converter = converter;
+        final List<Entry> existing = new ArrayList<>(entries.values());
+        clear();
+        for (Entry entry : existing) {
+            add(entry.item);
+        }
+    }
+
+    /**
+     * Adds the given item, unless an item which is equal to it ignoring case
+     * is already in the list.
+     *
+     * @param item The item to add
+     * @return True if the item was added, false if it was already present
+     */
+    @Override
+    public boolean add(final ChannelListModeItem item) {
+        final IRCStringConverter.Key key = converter.key(item.getItem());
+        if (entries.containsKey(key)) {
+            return false;
+        }
+
+        final Entry entry = new Entry(item, nextSequence++);
+        entries.put(key, entry);
+        index(entry);
+        return true;
+    }
+
+    /**
+     * Gets the item equal to the given string ignoring case.
+     *
+     * @param item The item to look for, e.g. a ban mask
+     * @return The matching item, or null if there isn't one
+     */
+    @Nullable
+    public ChannelListModeItem get(final String item) {
+        final Entry entry = entries.get(converter.key(item));
+        return entry == null ? null : entry.item;
+    }
+
+    /**
+     * Removes the item equal to the given string ignoring case.
+     *
+     * @param item The item to remove, e.g. a ban mask
+     * @return The item that was removed, or null if there wasn't one
+     */
+    @Nullable
+    public ChannelListModeItem removeItem(final String item) {
+        final Entry entry = entries.remove(converter.key(item));
+        if (entry == null) {
+            return null;
+        }
+
+        unindex(entry);
+        return entry.item;
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        return o instanceof ChannelListModeItem
+                && getEntry((ChannelListModeItem) o) != null;
+    }
+
+    @Override
+    public boolean remove(final Object o) {
+        if (o instanceof ChannelListModeItem && getEntry((ChannelListModeItem) o) != null) {
+            removeItem(((ChannelListModeItem) o).getItem());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Finds the masks in the list which match the given hostmask, using '*'
+     * and '?' wildcards and the server's casemapping. Extended bans and other
+     * items which aren't masks only match if they happen to be equal to the
+     * hostmask.
+     *
+     * @param hostmask The hostmask to check, in the form nick!user@host
+     * @return The matching items, in the order they were added
+     */
+    public List<ChannelListModeItem> getMatching(final String hostmask) {
+        final List<Entry> candidates = new ArrayList<>(unindexed);
+        final int nickEnd = hostmask.indexOf('!');
+        if (nickEnd > -1) {
+            addAll(candidates, byNick.get(converter.key(hostmask.substring(0, nickEnd))));
+        }
+        final int hostStart = hostmask.lastIndexOf('@');
+        if (hostStart > -1) {
+            addAll(candidates, byHost.get(converter.key(hostmask.substring(hostStart + 1))));
+        }
+
+        candidates.sort(BY_SEQUENCE);
+        final List<ChannelListModeItem> result = new ArrayList<>();
+        for (Entry entry : candidates) {
+            if (matches(entry.item.getItem(), hostmask)) {
+                result.add(entry.item);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Iterator<ChannelListModeItem> iterator() {
+        final Iterator<Entry> iterator = entries.values().iterator();
+        return new Iterator<ChannelListModeItem>() {
+            /** The entry last returned by {@link #next()}. */
+            private Entry current;
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public ChannelListModeItem next() {
+                current = iterator.next();
+                return current.item;
+            }
+
+            @Override
+            public void remove() {
+                iterator.remove();
+                unindex(current);
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void clear() {
+        entries.clear();
+        byNick.clear();
+        byHost.clear();
+        unindexed.clear();
+    }
+
+    /**
+     * Gets the entry holding the given item, if the item is in the list.
+     *
+     * @param item The item to look for
+     * @return The entry holding that exact item, or null
+     */
+    @Nullable
+    private Entry getEntry(final ChannelListModeItem item) {
+        final Entry entry = entries.get(converter.key(item.getItem()));
+        return entry != null && entry.item.equals(item) ? entry : null;
+    }
+
+    /**
+     * Adds the given entry to the appropriate index. Masks are indexed by
+     * nickname if it is literal, or else by host if that is.
+     *
+     * @param entry The entry to index
+     */
+    private void index(final Entry entry) {
+        final String mask = entry.item.getItem();
+        final int nickEnd = mask.indexOf('!');
+        final int hostStart = mask.lastIndexOf('@');
+        if (nickEnd > 0 && isLiteral(mask, 0, nickEnd)) {
+            entry.index = byNick;
+            entry.indexKey = converter.key(mask.substring(0, nickEnd));
+        } else if (hostStart > -1 && hostStart < mask.length() - 1
+                && isLiteral(mask, hostStart + 1, mask.length())) {
+            entry.index = byHost;
+            entry.indexKey = converter.key(mask.substring(hostStart + 1));
+        } else {
+            unindexed.add(entry);
+            return;
+        }
+
+        entry.index.computeIfAbsent(entry.indexKey, k -> new HashSet<>()).add(entry);
+    }
+
+    /**
+     * Removes the given entry from whichever index it is in.
+     *
+     * @param entry The entry to remove
+     */
+    private void unindex(final Entry entry) {
+        if (entry.index == null) {
+            unindexed.remove(entry);
+            return;
+        }
+
+        final Set<Entry> bucket = entry.index.get(entry.indexKey);
+        bucket.remove(entry);
+        if (bucket.isEmpty()) {
+            entry.index.remove(entry.indexKey);
+        }
+    }
+
+    /**
+     * Checks if the given string matches a mask containing '*' and '?'
+     * wildcards, ignoring case according to the current casemapping.
+     *
+     * @param mask The mask to check against
+     * @param check The string to check
+     * @return True if the string matches, false otherwise
+     */
+    private boolean matches(final String mask, final String check) {
+        int m = 0;
+        int c = 0;
+        int starMask = -1;
+        int starCheck = -1;
+
+        while (c < check.length()) {
+            if (m < mask.length() && mask.charAt(m) == '*') {
+                starMask = m++;
+                starCheck = c;
+            } else if (m < mask.length() && (mask.charAt(m) == '?'
+                    || converter.lower(mask.charAt(m)) == converter.lower(check.charAt(c)))) {
+                m++;
+                c++;
+            } else if (starMask > -1) {
+                m = starMask + 1;
+                c = ++starCheck;
+            } else {
+                return false;
+            }
+        }
+
+        while (m < mask.length() && mask.charAt(m) == '*') {
+            m++;
+        }
+        return m == mask.length();
+    }
+
+    /**
+     * Adds the entries in the given bucket, if there is one, to a list.
+     *
+     * @param target The list to add to
+     * @param bucket The bucket to add, or null
+     */
+    private static void addAll(final Collection<Entry> target, @Nullable final Set<Entry> bucket) {
+        if (bucket != null) {
+            target.addAll(bucket);
+        }
+    }
+
+    /**
+     * Determines if the given region of a mask contains no wildcards.
+     *
+     * @param mask The mask to check
+     * @param start The start of the region (inclusive)
+     * @param end The end of the region (exclusive)
+     * @return True if the region contains no wildcards, false otherwise
+     */
+    private static boolean isLiteral(final String mask, final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            final char c = mask.charAt(i);
+            if (c == '*' || c == '?') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** An item in the list, and when it was added. */
+    private static final class Entry {
+
+        /** The item itself. */
+        private final ChannelListModeItem item;
+        /** Sequence number recording the order entries were added. */
+        private final long sequence;
+        /** The index the entry is in, or null if it isn't indexed. */
+        @Nullable private Map<IRCStringConverter.Key, Set<Entry>> index;
+        /** The entry's key in its index. */
+        @Nullable private IRCStringConverter.Key indexKey;
+
+        Entry(final ChannelListModeItem item, final long sequence) {
+            this.item = item;
+            this.sequence = sequence;
+        }
+
+    }
+
+}
@@ -0,0 +1,488 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc;
+
+import com.dmdirc.parser.events.NetjoinEvent;
+import com.dmdirc.parser.events.NetsplitEvent;
+import com.dmdirc.parser.events.ParserEvent;
+import com.dmdirc.parser.interfaces.ChannelClientInfo;
+import com.dmdirc.parser.interfaces.ChannelInfo;
+import com.dmdirc.parser.interfaces.ClientInfo;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+/**
+ * Groups the QUITs caused by a netsplit, and the JOINs caused by the
+ * corresponding netjoin, so that they can be reported as a single
+ * {@link NetsplitEvent} or {@link NetjoinEvent}.
+ *
+ * <p>If the server supports the IRCv3 {@code batch} capability, groups are
+ * delimited by the server's {@code netsplit} and {@code netjoin} batches.
+ * Otherwise, quits with a reason of the form "{@code server1 server2}" are
+ * treated as part of a netsplit, and joins from clients that recently split
+ * are treated as part of a netjoin. A group without a batch is reported
+ * once it has been idle for {@link #FLUSH_DELAY} milliseconds, or when a
+ * different split starts.
+ *
+ * <p>Channel state is still updated as each line is received; only the
+ * events are grouped.
+ */
+public class NetsplitTracker {
+
+    /** Time, in milliseconds, a group must be idle for before it is reported. */
+    public static final long FLUSH_DELAY = 1000;
+    /** Time, in milliseconds, after a split that joins are considered a netjoin. */
+    public static final long NETJOIN_WINDOW = TimeUnit.MINUTES.toMillis(30);
+
+    /** The parser that owns this tracker. */
+    private final IRCParser parser;
+    /** Open batches from the server, by reference. */
+    private final Map<String, Group> batches = new HashMap<>();
+    /** Clients that have recently split, by nickname, in order of splitting. */
+    private final Map<IRCStringConverter.Key, SplitClient> splitClients = new LinkedHashMap<>();
+    /** The batch the current line is part of, if any. */
+    @Nullable
+    private String currentBatch;
+    /** The current netsplit not delimited by a batch. */
+    @Nullable
+    private Group currentSplit;
+    /** The current netjoin not delimited by a batch. */
+    @Nullable
+    private Group currentJoin;
+
+    /**
+     * Creates a new tracker.
+     *
+     * @param parser The parser that owns this tracker
+     */
+    public NetsplitTracker(final IRCParser parser) {
+        this.parser = parser;
+    }
+
+    /**
+     * Sets the batch that the line currently being processed belongs to.
+     *
+     * @param batch The batch reference from the line's tags, or null
+     */
+    public synchronized void setCurrentBatch(@Nullable final String batch) {
+        currentBatch = batch;
+    }
+
+    /**
+     * Handles the start of a batch.
+     *
+     * @param date The date the batch started
+     * @param reference The server's reference for the batch
+     * @param type The type of batch
+     * @param params The parameters of the batch
+     */
+    public synchronized void startBatch(final LocalDateTime date, final String reference,
+            final String type, final String... params) {
+        final boolean join = "netjoin".equalsIgnoreCase(type);
+        if ((join || "netsplit".equalsIgnoreCase(type)) && params.length >= 2) {
+            batches.put(reference, new Group(date, join, params[0], params[1]));
+        }
+    }
+
+    /**
+     * Handles the end of a batch, reporting any netsplit or netjoin it
+     * contained.
+     *
+     * @param reference The server's reference for the batch
+     */
+    public void endBatch(final String reference) {
+        final Group group;
+        synchronized (this) {
+            group = batches.remove(reference);
+            if (group != null && group.join) {
+                forgetSplitClients(group);
+            }
+        }
+        publish(group);
+    }
+
+    /**
+     * Records a client quitting, if it is part of a netsplit.
+     *
+     * @param date The date of the quit
+     * @param client The client that quit
+     * @param reason The quit reason
+     * @param memberships The client's channel memberships at the time they quit
+     * @return True if the quit is part of a netsplit, false otherwise
+     */
+    public boolean quit(final LocalDateTime date, final IRCClientInfo client, final String reason,
+            final Collection<IRCChannelClientInfo> memberships) {
+        Group flushed = null;
+        synchronized (this) {
+            Group group = getBatch(false);
+            if (group == null) {
+                final String[] servers = getSplitServers(reason);
+                if (servers == null) {
+                    return false;
+                }
+
+                if (currentSplit == null || !currentSplit.isFor(servers)) {
+                    flushed = currentSplit;
+                    currentSplit = new Group(date, false, servers[0], servers[1]);
+                    schedule(currentSplit);
+                }
+                group = currentSplit;
+            }
+
+            group.add(client, memberships);
+            splitClients.remove(key(client));
+            splitClients.put(key(client), new SplitClient(client, group));
+            expireSplitClients();
+        }
+
+        publish(flushed);
+        return true;
+    }
+
+    /**
+     * Records a client joining a channel, if it is part of a netjoin.
+     *
+     * @param date The date of the join
+     * @param channelClient The client's new channel membership
+     * @return True if the join is part of a netjoin, false otherwise
+     */
+    public boolean join(final LocalDateTime date, final IRCChannelClientInfo channelClient) {
+        final IRCClientInfo client = channelClient.getClient();
+        Group flushed = null;
+        synchronized (this) {
+            Group group = getBatch(true);
+            if (group == null) {
+                final SplitClient split = splitClients.get(key(client));
+                if (split == null || !split.matches(client)) {
+                    return false;
+                }
+
+                final String[] servers = {split.server, split.splitServer};
+                if (currentJoin == null || !currentJoin.isFor(servers)) {
+                    flushed = currentJoin;
+                    currentJoin = new Group(date, true, servers[0], servers[1]);
+                    schedule(currentJoin);
+                }
+                group = currentJoin;
+            }
+
+            group.add(client, Collections.singletonList(channelClient));
+        }
+
+        publish(flushed);
+        return true;
+    }
+
+    /**
+     * Immediately reports any groups not delimited by a batch, and forgets
+     * about any open batches and recent splits.
+     */
+    public void flush() {
+        final Group split;
+        final Group join;
+        synchronized (this) {
+            split = currentSplit;
+            join = currentJoin;
+            currentSplit = null;
+            currentJoin = null;
+            currentBatch = null;
+            batches.clear();
+            splitClients.clear();
+        }
+        publish(split);
+        publish(join);
+    }
+
+    /**
+     * Gets the group for the current batch, if it is of the given type.
+     *
+     * @param join True to look for a netjoin, false for a netsplit
+     * @return The group for the current batch, or null
+     */
+    @Nullable
+    private Group getBatch(final boolean join) {
+        final Group group = currentBatch == null ? null : batches.get(currentBatch);
+        return group != null && group.join == join ? group : null;
+    }
+
+    /**
+     * Schedules a check for the given group becoming idle. The check itself is
+     * handed to the parser, so that events are never published on the
+     * scheduler's thread.
+     *
+     * @param group The group to be checked
+     */
+    private void schedule(final Group group) {
+        group.timer = parser.getScheduler().schedule(
+                () -> parser.executeProcessingTask(() -> checkIdle(group)),
+                FLUSH_DELAY, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reports the given group if it has been idle for long enough.
+     *
+     * @param group The group to be checked
+     */
+    private void checkIdle(final Group group) {
+        synchronized (this) {
+            if (System.nanoTime() - group.lastActivity
+                    < TimeUnit.MILLISECONDS.toNanos(FLUSH_DELAY)) {
+                return;
+            }
+
+            if (group == currentSplit) {
+                currentSplit = null;
+            } else if (group == currentJoin) {
+                currentJoin = null;
+                forgetSplitClients(group);
+            } else {
+                // Already reported
+                group.timer.cancel();
+                return;
+            }
+        }
+        publish(group);
+    }
+
+    /**
+     * Publishes the event for the given group.
+     *
+     * @param group The group to be reported, or null
+     */
+    private void publish(@Nullable final Group group) {
+        if (group == null) {
+            return;
+        }
+
+        if (group.timer != null) {
+            group.timer.cancel();
+        }
+
+        if (group.clients.isEmpty()) {
+            return;
+        }
+
+        final ParserEvent event;
+        if (group.join) {
+            event = new NetjoinEvent(parser, group.date, group.server, group.splitServer,
+                    group.clients, group.channels);
+        } else {
+            event = new NetsplitEvent(parser, group.date, group.server, group.splitServer,
+                    group.clients, group.channels);
+        }
+        parser.getCallbackManager().publish(event);
+    }
+
+    /**
+     * Forgets about the clients in the given netjoin, so that any later joins
+     * aren't treated as part of it.
+     *
+     * @param group The netjoin group
+     */
+    private void forgetSplitClients(final Group group) {
+        for (ClientInfo client : group.clients) {
+            splitClients.remove(key(client));
+        }
+    }
+
+    /**
+     * Forgets about clients that split too long ago to be part of a netjoin.
+     */
+    private void expireSplitClients() {
+        final long cutoff = System.currentTimeMillis() - NETJOIN_WINDOW;
+        final Iterator<SplitClient> iterator = splitClients.values().iterator();
+        while (iterator.hasNext() && iterator.next().time < cutoff) {
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Creates a key for the given client's nickname.
+     *
+     * @param client The client
+     * @return A case-insensitive key for the client's nickname
+     */
+    private IRCStringConverter.Key key(final ClientInfo client) {
+        return parser.getStringConverter().key(client.getNickname());
+    }
+
+    /**
+     * Determines if the given quit reason is that of a netsplit, i.e. it
+     * consists of two server names separated by a space.
+     *
+     * @param reason The quit reason
+     * @return The two server names, or null if the reason isn't a netsplit
+     */
+    @Nullable
+    static String[] getSplitServers(final String reason) {
+        final int space = reason.indexOf(' ');
+        if (space == -1 || reason.indexOf(' ', space + 1) != -1) {
+            return null;
+        }
+
+        final String server = reason.substring(0, space);
+        final String splitServer = reason.substring(space + 1);
+        if (isServerName(server) && isServerName(splitServer)) {
+            return new String[]{server, splitServer};
+        }
+        return null;
+    }
+
+    /**
+     * Determines if the given string looks like a server name. Server names
+     * consist of at least two non-empty labels separated by dots, and may
+     * have wildcards in place of labels if the network hides them.
+     *
+     * @param name The string to check
+     * @return True if the string is a server name, false otherwise
+     */
+    private static boolean isServerName(final String name) {
+        if (name.isEmpty() || name.charAt(0) == '.' || name.charAt(name.length() - 1) == '.') {
+            return false;
+        }
+
+        boolean hasDot = false;
+        char last = 0;
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            if (c == '.') {
+                if (last == '.') {
+                    return false;
+                }
+                hasDot = true;
+            } else if (!Character.isLetterOrDigit(c) && c != '-' && c != '*' && c != '_') {
+                return false;
+            }
+            last = c;
+        }
+        return hasDot;
+    }
+
+    /**
+     * A netsplit or netjoin in progress.
+     */
+    private static final class Group {
+
+        /** The date the group started. */
+        private final LocalDateTime date;
+        /** True if this is a netjoin, false if it is a netsplit. */
+        private final boolean join;
+        /** The server that remained connected. */
+        private final String server;
+        /** The server that split. */
+        private final String splitServer;
+        /** The clients in the group. */
+        private final Set<ClientInfo> clients = new LinkedHashSet<>();
+        /** The channel clients in the group, by channel. */
+        private final Map<ChannelInfo, List<ChannelClientInfo>> channels = new LinkedHashMap<>();
+        /** Time of the last addition to the group, per {@link System#nanoTime()}. */
+        private volatile long lastActivity = System.nanoTime();
+        /** Timer used to check for the group becoming idle, if any. */
+        @Nullable
+        private PingScheduler.Task timer;
+
+        Group(final LocalDateTime date, final boolean join, final String server,
+                final String splitServer) {
+            this.date = date;
+            this.join = join;
+            this.server = server;
+            this.splitServer = splitServer;
+        }
+
+        /**
+         * Determines if this group is for the given servers.
+         *
+         * @param servers The server and split server
+         * @return True if this group is for the same servers
+         */
+        boolean isFor(final String... servers) {
+            return server.equalsIgnoreCase(servers[0]) && splitServer.equalsIgnoreCase(servers[1]);
+        }
+
+        /**
+         * Adds a client to this group.
+         *
+         * @param client The client
+         * @param memberships The channel memberships affected
+         */
+        void add(final ClientInfo client, final Collection<IRCChannelClientInfo> memberships) {
+            clients.add(client);
+            for (IRCChannelClientInfo member : memberships) {
+                channels.computeIfAbsent(member.getChannel(), c -> new ArrayList<>()).add(member);
+            }
+            lastActivity = System.nanoTime();
+        }
+
+    }
+
+    /**
+     * A client that has recently split.
+     */
+    private static final class SplitClient {
+
+        /** The client's username at the time. */
+        private final String username;
+        /** The client's hostname at the time. */
+        private final String hostname;
+        /** The server that remained connected. */
+        private final String server;
+        /** The server that split. */
+        private final String splitServer;
+        /** The time the client split. */
+        private final long time = System.currentTimeMillis();
+
+        SplitClient(final ClientInfo client, final Group group) {
+            this.username = client.getUsername();
+            this.hostname = client.getHostname();
+            this.server = group.server;
+            this.splitServer = group.splitServer;
+        }
+
+        /**
+         * Determines if the given client is the same user that split.
+         *
+         * @param client The client that joined
+         * @return True if the client's username and hostname match
+         */
+        boolean matches(final ClientInfo client) {
+            return username.equals(client.getUsername()) && hostname.equals(client.getHostname())
+                    && time >= System.currentTimeMillis() - NETJOIN_WINDOW;
+        }
+
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules the periodic tasks used by parsers to ping the server and check
+ * their lag.
+ *
+ * <p>A single scheduler is normally shared by every parser in the JVM (see
+ * {@link HashedWheelPingScheduler#getDefault()}), so tasks must be quick and
+ * must never block.
+ */
+public interface PingScheduler {
+
+    /**
+     * Schedules a task to run after a delay, and then optionally repeatedly
+     * at a fixed period.
+     *
+     * @param task The task to be run
+     * @param delay The delay before the first run
+     * @param period The period between subsequent runs, or 0 to only run once
+     * @param unit The unit of the delay and period
+     * @return A handle which can be used to cancel the task
+     */
+    Task schedule(Runnable task, long delay, long period, TimeUnit unit);
+
+    /**
+     * A task which has been scheduled with a {@link PingScheduler}.
+     */
+    interface Task {
+
+        /**
+         * Cancels this task. If it is currently running, it will complete but
+         * will not run again.
+         */
+        void cancel();
+
+    }
+
+}
@@ -22,34 +22,77 @@
 
 package com.dmdirc.parser.irc;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Used by the parser to ping the server at a set interval to check that the
  * server is still alive.
  */
-public class PingTimer extends TimerTask {
+public class PingTimer implements Runnable {
 
     /** Owning Parser. */
     private final IRCParser parser;
-    /** The Timer that owns this task. */
-    private final Timer timer;
+    /** The scheduled task running this timer, once started. */
+    private volatile PingScheduler.Task task;
+    /** Whether this timer has been cancelled. */
+    private volatile boolean cancelled;
 
     /**
      * Create the PingTimer.
      *
-     * @param parser IRCParser that owns this TimerTask.
-     * @param timer Timer that owns this TimerTask.
+     * @param parser IRCParser that owns this task.
      */
-    public PingTimer(final IRCParser parser, final Timer timer) {
+    public PingTimer(final IRCParser parser) {
         this.parser = parser;
-        this.timer = timer;
     }
 
-    /** Timer has been executed. */
+    /**
+     * Registers this timer with the given scheduler. The timer will first
+     * run immediately, and then at the given interval until cancelled.
+     *
+     * @param scheduler The scheduler to register with
+     * @param interval The interval between runs, in milliseconds
+     */
+    public void start(final PingScheduler scheduler, final long interval) {
+        task = scheduler.schedule(this, 0, interval, TimeUnit.MILLISECONDS);
+        if (cancelled) {
+            // Cancelled while we were being scheduled.
+            task.cancel();
+        }
+    }
+
+    /**
+     * Cancels this timer. It will not run again.
+     */
+    public void cancel() {
+        cancelled = true;
+        final PingScheduler.Task current = task;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    /**
+     * Determines whether this timer has been cancelled.
+     *
+     * @return True if the timer has been cancelled, false otherwise.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Timer has been executed. This runs on the scheduler's thread, so the
+     * actual work is handed back to the parser to run elsewhere.
+     */
     @Override
     public void run() {
-        parser.pingTimerTask(timer);
+        if (!cancelled) {
+            parser.executeTask(() -> {
+                if (!cancelled) {
+                    parser.pingTimerTask(this);
+                }
+            });
+        }
     }
 }
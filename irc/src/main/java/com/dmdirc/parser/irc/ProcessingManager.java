@@ -81,14 +81,14 @@ public class ProcessingManager {
      * @param handles String Array of tokens to add this processor as a hadler for
      */
     public void addProcessor(final String[] handles, final IRCProcessor processor) {
-        doDebug("Adding processor: " + processor.getName());
+        doDebug("Adding processor: %s", processor.getName());
 
         for (String handle : handles) {
             if (processHash.containsKey(handle.toLowerCase())) {
                 // New Processors take priority over old ones
                 processHash.remove(handle.toLowerCase());
             }
-            doDebug("\t Added handler for: " + handle);
+            doDebug("\t Added handler for: %s", handle);
             processHash.put(handle.toLowerCase(), processor);
         }
     }
@@ -99,12 +99,12 @@ public class ProcessingManager {
      * @param processor IRCProcessor subclass for the processor.
      */
     public void delProcessor(final IRCProcessor processor) {
-        doDebug("Deleting processor: " + processor.getName());
+        doDebug("Deleting processor: %s", processor.getName());
         for (String elementName : processHash.keySet()) {
-            doDebug("\t Checking handler for: " + elementName);
+            doDebug("\t Checking handler for: %s", elementName);
             final IRCProcessor testProcessor = processHash.get(elementName);
             if (testProcessor.getName().equalsIgnoreCase(processor.getName())) {
-                doDebug("\t Removed handler for: " + elementName);
+                doDebug("\t Removed handler for: %s", elementName);
                 processHash.remove(elementName);
             }
         }
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc;
+
+/**
+ * Thrown (via a query's future) when the server replies to a query made by
+ * {@link QueryManager} with an error.
+ */
+public class QueryFailedException extends Exception {
+
+    /** Version of this class. */
+    private static final long serialVersionUID = 1L;
+    /** The numeric of the error. */
+    private final int numeric;
+
+    /**
+     * Creates a new QueryFailedException.
+     *
+     * @param numeric The numeric of the error sent by the server
+     * @param message The error message sent by the server
+     */
+    public QueryFailedException(final int numeric, final String message) {
+        super(message);
+        this.numeric = numeric;
+    }
+
+    /**
+     * Gets the numeric of the error sent by the server.
+     *
+     * @return The error's numeric
+     */
+    public int getNumeric() {
+        return numeric;
+    }
+}
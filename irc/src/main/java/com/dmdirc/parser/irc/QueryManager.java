@@ -0,0 +1,773 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc;
+
+import com.dmdirc.parser.common.QueuePriority;
+import com.dmdirc.parser.events.GroupListEntryEvent;
+import com.dmdirc.parser.events.NumericEvent;
+import com.dmdirc.parser.events.UserInfoEvent.UserInfoType;
+import com.dmdirc.parser.irc.IRCReader.ReadLine;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.Nullable;
+
+import net.engio.mbassy.listener.Handler;
+
+/**
+ * Sends WHOIS, WHO, MODE and LIST queries on behalf of callers and completes
+ * a {@link CompletableFuture} with the reply, so callers don't need to listen
+ * for and piece together the individual numerics themselves.
+ *
+ * <p>Replies are gathered by the processors for the relevant numerics, and
+ * matched to outstanding queries using the target of the reply where the
+ * protocol includes one, or the order the queries were sent in otherwise.
+ * If the server supports labeled-response, queries are instead sent with a
+ * label and only the lines of the labeled response are used to complete
+ * them, which avoids any guessing.
+ *
+ * <p>A query identical to one which is still outstanding is not sent again;
+ * instead, the future for the outstanding query is returned. At most
+ * {@link #getMaxOutstanding()} queries are sent to the server at a time, and
+ * any others wait until an earlier query has finished. Queries which have
+ * not been answered within {@link #getTimeout()} milliseconds of being sent
+ * are completed exceptionally with a {@link TimeoutException}, using the
+ * parser's {@link IRCParser#getScheduler() scheduler}.
+ *
+ * <p>Futures are completed on the thread processing lines from the server,
+ * so dependent actions should not block. Timeouts are handed from the
+ * scheduler to the same thread for connections made using an event loop,
+ * and otherwise to the parser's task thread, which never runs while a line
+ * is being processed.
+ */
+public class QueryManager {
+
+    /** The default maximum number of queries sent to the server at once. */
+    public static final int DEFAULT_MAX_OUTSTANDING = 10;
+    /** The default time, in milliseconds, to wait for a reply to a query. */
+    public static final long DEFAULT_TIMEOUT = 30000;
+    /** The parser that owns this manager. */
+    private final IRCParser parser;
+    /** All queries that have not yet finished, by key. */
+    private final Map<String, Query<?>> queries = new HashMap<>();
+    /** Queries that have been sent to the server, by type, in the order they were sent. */
+    private final Map<QueryType, Deque<Query<?>>> outstanding = new EnumMap<>(QueryType.class);
+    /** Queries that have been sent to the server with a label, by their labeled response. */
+    private final Map<CompletableFuture<List<ReadLine>>, Query<?>> labeled = new HashMap<>();
+    /** Queries waiting to be sent, in order. */
+    private final Queue<Query<?>> pending = new ArrayDeque<>();
+    /** The number of queries that have been sent but not finished. */
+    private int outstandingCount;
+    /** The maximum number of queries to send at once. */
+    private int maxOutstanding = DEFAULT_MAX_OUTSTANDING;
+    /** The time, in milliseconds, to wait for a reply to a query. */
+    private long timeout = DEFAULT_TIMEOUT;
+
+    /** The types of query that can be made. */
+    public enum QueryType {
+        /** A WHOIS for a single nickname. */
+        WHOIS,
+        /** A WHO for a channel, nickname or mask. */
+        WHO,
+        /** A MODE request for a channel. */
+        MODE,
+        /** A LIST of channels. */
+        LIST
+    }
+
+    /**
+     * Creates a new query manager.
+     *
+     * @param parser The parser that owns this manager
+     */
+    public QueryManager(final IRCParser parser) {
+        this.parser = parser;
+        for (QueryType type : QueryType.values()) {
+            outstanding.put(type, new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Gets the maximum number of queries sent to the server at once.
+     *
+     * @return The maximum number of outstanding queries
+     */
+    public synchronized int getMaxOutstanding() {
+        return maxOutstanding;
+    }
+
+    /**
+     * Sets the maximum number of queries sent to the server at once. Lowering
+     * the limit doesn't affect queries which have already been sent.
+     *
+     * @param maxOutstanding The new maximum number of outstanding queries
+     */
+    public void setMaxOutstanding(final int maxOutstanding) {
+        synchronized (this) {
+            this.maxOutstanding = Math.max(1, maxOutstanding);
+        }
+        sendPending();
+    }
+
+    /**
+     * Gets the time to wait for a reply to a query.
+     *
+     * @return The timeout, in milliseconds
+     */
+    public synchronized long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the time to wait for a reply to a query. This only affects
+     * queries sent afterwards.
+     *
+     * @param timeout The new timeout, in milliseconds
+     */
+    public synchronized void setTimeout(final long timeout) {
+        this.timeout = Math.max(1, timeout);
+    }
+
+    /**
+     * Gets the number of queries that have been sent and not yet finished.
+     *
+     * @return The number of outstanding queries
+     */
+    public synchronized int getOutstandingCount() {
+        return outstandingCount;
+    }
+
+    /**
+     * Gets the number of queries waiting to be sent.
+     *
+     * @return The number of pending queries
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Requests WHOIS information about a user. If the user doesn't exist, the
+     * future is completed with an empty map.
+     *
+     * @param nickname The nickname of the user
+     * @return A future completed with the information returned by the server
+     */
+    public CompletableFuture<Map<UserInfoType, String>> whois(final String nickname) {
+        return query(QueryType.WHOIS, nickname, "WHOIS " + nickname);
+    }
+
+    /**
+     * Requests WHO information about the users in a channel, or matching a
+     * nickname or mask. Users which the parser isn't otherwise tracking are
+     * returned as fake clients.
+     *
+     * @param target The channel, nickname or mask to query
+     * @return A future completed with the clients returned by the server
+     */
+    public CompletableFuture<List<IRCClientInfo>> who(final String target) {
+        return query(QueryType.WHO, target, "WHO " + target);
+    }
+
+    /**
+     * Requests the current modes of a channel. If the server replies with an
+     * error, such as the channel not existing, the future is completed
+     * exceptionally with a {@link QueryFailedException}.
+     *
+     * @param channel The name of the channel
+     * @return A future completed with the channel's modes and their parameters
+     */
+    public CompletableFuture<String> mode(final String channel) {
+        return query(QueryType.MODE, channel, "MODE " + channel);
+    }
+
+    /**
+     * Requests a list of channels.
+     *
+     * @param searchTerms The search terms to send to the server, if any
+     * @return A future completed with the channels returned by the server
+     */
+    public CompletableFuture<List<GroupListEntryEvent>> list(final String searchTerms) {
+        return query(QueryType.LIST, searchTerms,
+                searchTerms.isEmpty() ? "LIST" : "LIST :" + searchTerms);
+    }
+
+    /**
+     * Determines whether any queries of the given type have been sent and
+     * not yet finished. Processors may use this to avoid collecting replies
+     * that nothing is waiting for.
+     *
+     * @param type The type of query to check
+     * @return True if a query of the given type is outstanding
+     */
+    public synchronized boolean isOutstanding(final QueryType type) {
+        return !outstanding.get(type).isEmpty()
+                || labeled.values().stream().anyMatch(query -> query.type == type);
+    }
+
+    /**
+     * Called when a WHO reply is received.
+     *
+     * @param channel The channel given in the reply
+     * @param client The client described by the reply
+     */
+    public synchronized void addWhoReply(final String channel, final IRCClientInfo client) {
+        final CompletableFuture<List<ReadLine>> response = getCurrentResponse();
+        if (response != null) {
+            final Query<?> query = findLabeled(QueryType.WHO, response);
+            if (query != null) {
+                query.replies.add(client);
+            }
+            return;
+        }
+
+        Query<?> query = find(QueryType.WHO, channel);
+        if (query == null) {
+            query = find(QueryType.WHO, client.getNickname());
+        }
+        if (query == null) {
+            // Replies to a WHO for a mask could name any channel, so they can
+            // only be matched to the oldest query that could have produced them.
+            for (Query<?> candidate : outstanding.get(QueryType.WHO)) {
+                if (candidate.target.indexOf(',') > -1 ? containsTarget(candidate.target, channel)
+                        : !parser.isValidChannelName(candidate.target)) {
+                    query = candidate;
+                    break;
+                }
+            }
+        }
+        if (query != null) {
+            query.replies.add(client);
+        }
+    }
+
+    /**
+     * Called when the end of a WHO reply is received.
+     *
+     * @param targets The target (or comma separated targets) given in the reply
+     */
+    public void whoEnded(final String targets) {
+        if (getCurrentResponse() != null) {
+            // Labeled queries are finished when the whole response has arrived.
+            return;
+        }
+
+        finish(QueryType.WHO, targets, null);
+        if (targets.indexOf(',') > -1) {
+            // Queries for single targets may have been merged by the output queue.
+            for (String target : targets.split(",")) {
+                finish(QueryType.WHO, target, null);
+            }
+        }
+    }
+
+    /**
+     * Called when the end of a WHOIS reply is received.
+     *
+     * @param nickname The nickname given in the reply
+     * @param info The information received about the user
+     */
+    void whoisEnded(final String nickname, final Map<UserInfoType, String> info) {
+        if (!setLabeledResult(QueryType.WHOIS, info, null)) {
+            finish(QueryType.WHOIS, nickname, info);
+        }
+    }
+
+    /**
+     * Called when a channel's modes are received.
+     *
+     * @param channel The name of the channel
+     * @param modes The channel's modes and their parameters
+     */
+    public void modeReceived(final String channel, final String modes) {
+        if (!setLabeledResult(QueryType.MODE, modes, null)) {
+            finish(QueryType.MODE, channel, modes);
+        }
+    }
+
+    /**
+     * Called when an error is received that may be in reply to a MODE query.
+     *
+     * @param channel The name of the channel given in the error
+     * @param numeric The numeric of the error
+     * @param message The error message
+     */
+    public void modeFailed(final String channel, final int numeric, final String message) {
+        if (setLabeledResult(QueryType.MODE, null, new QueryFailedException(numeric, message))) {
+            return;
+        }
+
+        final Query<?> query;
+        synchronized (this) {
+            query = find(QueryType.MODE, channel);
+            if (query == null || !remove(query)) {
+                return;
+            }
+        }
+
+        sendPending();
+        query.future.completeExceptionally(new QueryFailedException(numeric, message));
+    }
+
+    /** Handles ERR_NOSUCHCHANNEL. */
+    @Handler(condition = "msg.numeric == 403")
+    void handleNoSuchChannel(final NumericEvent event) {
+        handleModeError(event);
+    }
+
+    /** Handles ERR_NOTONCHANNEL. */
+    @Handler(condition = "msg.numeric == 442")
+    void handleNotOnChannel(final NumericEvent event) {
+        handleModeError(event);
+    }
+
+    /** Handles ERR_NOCHANMODES, sent for channels which don't support modes. */
+    @Handler(condition = "msg.numeric == 477")
+    void handleNoChannelModes(final NumericEvent event) {
+        handleModeError(event);
+    }
+
+    private void handleModeError(final NumericEvent event) {
+        // :server 403 mynickname #channel :No such channel
+        final String[] token = event.getToken();
+        if (token.length > 4) {
+            modeFailed(token[3], event.getNumeric(), token[token.length - 1]);
+        }
+    }
+
+    /**
+     * Called when an entry in a channel list is received.
+     *
+     * @param entry The entry that was received
+     */
+    public synchronized void addListEntry(final GroupListEntryEvent entry) {
+        final CompletableFuture<List<ReadLine>> response = getCurrentResponse();
+        final Query<?> query = response == null ? outstanding.get(QueryType.LIST).peek()
+                : findLabeled(QueryType.LIST, response);
+        if (query != null) {
+            query.replies.add(entry);
+        }
+    }
+
+    /**
+     * Called when the end of a channel list is received.
+     */
+    public void listEnded() {
+        if (getCurrentResponse() == null) {
+            finish(QueryType.LIST, null, null);
+        }
+    }
+
+    /**
+     * Cancels all outstanding and pending queries.
+     */
+    public void clear() {
+        final List<Query<?>> cancelled;
+        synchronized (this) {
+            cancelled = new ArrayList<>(queries.values());
+            queries.clear();
+            pending.clear();
+            outstanding.values().forEach(Deque::clear);
+            labeled.clear();
+            outstandingCount = 0;
+            cancelled.forEach(Query::cancelTimeout);
+        }
+
+        for (Query<?> query : cancelled) {
+            query.future.cancel(false);
+        }
+    }
+
+    /**
+     * Creates a query, or finds an identical one that hasn't finished, and
+     * sends it if the limit on outstanding queries allows.
+     *
+     * @param type The type of query
+     * @param target The target of the query
+     * @param line The line to send to the server
+     * @param <T> The type of result the query produces
+     * @return The future for the query
+     */
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> query(final QueryType type, final String target,
+            final String line) {
+        final Query<?> query;
+        synchronized (this) {
+            final String key = getKey(type, target);
+            final Query<?> existing = queries.get(key);
+            if (existing != null) {
+                return (CompletableFuture<T>) existing.future;
+            }
+
+            query = new Query<>(type, target, line);
+            queries.put(key, query);
+            pending.add(query);
+        }
+
+        sendPending();
+        return (CompletableFuture<T>) query.future;
+    }
+
+    /**
+     * Sends pending queries until the limit on outstanding queries is reached.
+     */
+    private void sendPending() {
+        final LabeledResponseTracker labels = parser.getLabeledResponseTracker();
+        boolean failed;
+        do {
+            final List<Query<?>> toSend = new ArrayList<>();
+            synchronized (this) {
+                while (outstandingCount < maxOutstanding && !pending.isEmpty()) {
+                    final Query<?> query = pending.poll();
+                    query.labeled = labels.isEnabled();
+                    if (!query.labeled) {
+                        outstanding.get(query.type).add(query);
+                    }
+                    outstandingCount++;
+                    query.task = parser.getScheduler().schedule(
+                            () -> parser.executeProcessingTask(() -> timedOut(query)),
+                            timeout, 0, TimeUnit.MILLISECONDS);
+                    toSend.add(query);
+                }
+            }
+
+            failed = false;
+            for (Query<?> query : toSend) {
+                if (!send(labels, query) && remove(query)) {
+                    query.future.cancel(false);
+                    failed = true;
+                }
+            }
+        } while (failed);
+    }
+
+    /**
+     * Sends a query to the server, with a label if it was marked as labeled
+     * when it was taken from the pending queue.
+     *
+     * @param labels The tracker to send labeled queries with
+     * @param query The query to send
+     * @return True if the query was sent, false otherwise
+     */
+    private boolean send(final LabeledResponseTracker labels, final Query<?> query) {
+        if (!query.labeled) {
+            return parser.sendString(query.line, QueuePriority.NORMAL);
+        }
+
+        final CompletableFuture<List<ReadLine>> response;
+        try {
+            response = labels.send(query.line, QueuePriority.NORMAL);
+        } catch (IllegalStateException ex) {
+            // The capability was removed since the query was taken from the queue.
+            return false;
+        }
+        if (response.isCancelled()) {
+            return false;
+        }
+
+        synchronized (this) {
+            if (queries.get(getKey(query.type, query.target)) != query) {
+                // Already timed out, or cleared.
+                return true;
+            }
+            query.response = response;
+            labeled.put(response, query);
+        }
+        // If the connection is closed the response is cancelled; clear() deals with the query.
+        response.thenAccept(lines -> labeledEnded(query, lines));
+        return true;
+    }
+
+    /**
+     * Called when the whole labeled response to a query has been received.
+     *
+     * @param query The query that was answered
+     * @param lines The lines of the response
+     */
+    @SuppressWarnings("unchecked")
+    private void labeledEnded(final Query<?> query, final List<ReadLine> lines) {
+        if (!remove(query)) {
+            return;
+        }
+
+        sendPending();
+        if (query.failure != null) {
+            query.future.completeExceptionally(query.failure);
+        } else if (query.result != null) {
+            ((CompletableFuture<Object>) query.future).complete(query.result);
+        } else if (query.type == QueryType.WHOIS) {
+            ((CompletableFuture<Object>) query.future).complete(Collections.emptyMap());
+        } else if (query.type == QueryType.MODE) {
+            query.future.completeExceptionally(getFailure(query, lines));
+        } else {
+            ((CompletableFuture<Object>) query.future).complete(
+                    Collections.unmodifiableList(query.replies));
+        }
+    }
+
+    /**
+     * Creates an exception for a labeled query whose response didn't include
+     * the expected reply, using the first numeric in the response if any.
+     *
+     * @param query The query that was answered
+     * @param lines The lines of the response
+     * @return The exception to complete the query with
+     */
+    private static QueryFailedException getFailure(final Query<?> query,
+            final List<ReadLine> lines) {
+        for (ReadLine line : lines) {
+            final String[] token = line.getTokens();
+            if (token.length > 2 && token[1].length() == 3
+                    && token[1].chars().allMatch(Character::isDigit)) {
+                return new QueryFailedException(Integer.parseInt(token[1]),
+                        token[token.length - 1]);
+            }
+        }
+        return new QueryFailedException(0, "No reply received to " + query.line);
+    }
+
+    /**
+     * Finishes the outstanding query of the given type with the given target.
+     *
+     * @param type The type of query
+     * @param target The target of the query, or null to finish the oldest query
+     * @param result The result of the query, or null to use the replies it has collected
+     */
+    @SuppressWarnings("unchecked")
+    private void finish(final QueryType type, @Nullable final String target,
+            @Nullable final Object result) {
+        final Query<?> query;
+        synchronized (this) {
+            query = target == null ? outstanding.get(type).peek() : find(type, target);
+            if (query == null || !remove(query)) {
+                return;
+            }
+        }
+
+        sendPending();
+        ((CompletableFuture<Object>) query.future).complete(
+                result == null ? Collections.unmodifiableList(query.replies) : result);
+    }
+
+    /**
+     * Called when a query has not been answered in time.
+     *
+     * @param query The query that timed out
+     */
+    private void timedOut(final Query<?> query) {
+        if (remove(query)) {
+            sendPending();
+            query.future.completeExceptionally(
+                    new TimeoutException("No reply received to " + query.line));
+        }
+    }
+
+    /**
+     * Removes a query that has been sent, and cancels its timeout.
+     *
+     * @param query The query to remove
+     * @return True if the query was removed, false if it had already finished
+     */
+    private synchronized boolean remove(final Query<?> query) {
+        final String key = getKey(query.type, query.target);
+        if (queries.get(key) != query) {
+            return false;
+        }
+
+        queries.remove(key);
+        if (query.labeled) {
+            if (query.response != null) {
+                labeled.remove(query.response);
+            }
+            outstandingCount--;
+            query.cancelTimeout();
+            return true;
+        }
+
+        final Iterator<Query<?>> iterator = outstanding.get(query.type).iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() == query) {
+                iterator.remove();
+                outstandingCount--;
+                break;
+            }
+        }
+        query.cancelTimeout();
+        return true;
+    }
+
+    /**
+     * Finds an outstanding query of the given type with the given target.
+     *
+     * @param type The type of query
+     * @param target The target of the query
+     * @return The matching query, or null if there isn't one
+     */
+    @Nullable
+    private Query<?> find(final QueryType type, final String target) {
+        final Query<?> query = queries.get(getKey(type, target));
+        return query != null && outstanding.get(type).contains(query) ? query : null;
+    }
+
+    /**
+     * Gets the labeled response that the line being processed belongs to.
+     *
+     * @return The response, or null if the line isn't part of a labeled response
+     */
+    @Nullable
+    private CompletableFuture<List<ReadLine>> getCurrentResponse() {
+        return parser.getLabeledResponseTracker().getCurrentResponse();
+    }
+
+    /**
+     * Finds the labeled query of the given type that a response belongs to.
+     *
+     * @param type The type of query
+     * @param response The labeled response being processed
+     * @return The matching query, or null if the response isn't to a query
+     * of that type made by this manager
+     */
+    @Nullable
+    private Query<?> findLabeled(final QueryType type,
+            final CompletableFuture<List<ReadLine>> response) {
+        final Query<?> query = labeled.get(response);
+        return query != null && query.type == type ? query : null;
+    }
+
+    /**
+     * Records the result of a labeled query, if the line being processed is
+     * part of a labeled response. The query is completed with it once the
+     * whole response has been received.
+     *
+     * @param type The type of query the result is for
+     * @param result The result of the query, if it succeeded
+     * @param failure The reason the query failed, if it did
+     * @return True if the line is part of a labeled response, whether or not
+     * it was to a query made by this manager
+     */
+    private synchronized boolean setLabeledResult(final QueryType type,
+            @Nullable final Object result, @Nullable final QueryFailedException failure) {
+        final CompletableFuture<List<ReadLine>> response = getCurrentResponse();
+        if (response == null) {
+            return false;
+        }
+
+        final Query<?> query = findLabeled(type, response);
+        if (query != null) {
+            query.result = result;
+            query.failure = failure;
+        }
+        return true;
+    }
+
+    /**
+     * Determines whether a comma separated list of targets includes the given
+     * target.
+     *
+     * @param targets The comma separated targets
+     * @param target The target to look for
+     * @return True if the target is included, false otherwise
+     */
+    private boolean containsTarget(final String targets, final String target) {
+        for (String candidate : targets.split(",")) {
+            if (parser.getStringConverter().equalsIgnoreCase(candidate, target)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the key used to identify identical queries.
+     *
+     * @param type The type of query
+     * @param target The target of the query
+     * @return The key for the query
+     */
+    private String getKey(final QueryType type, final String target) {
+        return type.name() + ' ' + parser.getStringConverter().toLowerCase(target);
+    }
+
+    /**
+     * A query sent, or waiting to be sent, to the server.
+     *
+     * @param <T> The type of result the query produces
+     */
+    private static class Query<T> {
+
+        /** The type of query. */
+        private final QueryType type;
+        /** The target of the query. */
+        private final String target;
+        /** The line sent to the server. */
+        private final String line;
+        /** The future completed when the query finishes. */
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        /** The replies collected so far. */
+        private final List<Object> replies = new ArrayList<>();
+        /** The task that will time out the query, once it has been sent. */
+        @Nullable
+        private PingScheduler.Task task;
+        /** Whether the query is sent with a label, instead of being matched by target. */
+        private boolean labeled;
+        /** The labeled response to the query, once it has been sent with a label. */
+        @Nullable
+        private CompletableFuture<List<ReadLine>> response;
+        /** The result of a labeled query, recorded until the response ends. */
+        @Nullable
+        private Object result;
+        /** The reason a labeled query failed, recorded until the response ends. */
+        @Nullable
+        private QueryFailedException failure;
+
+        Query(final QueryType type, final String target, final String line) {
+            this.type = type;
+            this.target = target;
+            this.line = line;
+        }
+
+        /**
+         * Cancels the timeout for this query, if one has been scheduled.
+         */
+        void cancelTimeout() {
+            if (task != null) {
+                task.cancel();
+            }
+        }
+
+    }
+
+}
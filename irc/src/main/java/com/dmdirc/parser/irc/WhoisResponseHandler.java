@@ -22,13 +22,13 @@
 
 package com.dmdirc.parser.irc;
 
-import com.dmdirc.parser.common.CallbackManager;
 import com.dmdirc.parser.events.NumericEvent;
 import com.dmdirc.parser.events.UserInfoEvent;
 import com.dmdirc.parser.events.UserInfoEvent.UserInfoType;
 import com.dmdirc.parser.interfaces.Parser;
 
 import java.time.LocalDateTime;
+import java.util.Collections;
 import java.util.EnumMap;
 import java.util.Map;
 
@@ -42,19 +42,23 @@ import net.engio.mbassy.listener.Handler;
 public class WhoisResponseHandler {
 
     private final Parser parser;
-    private final CallbackManager manager;
+    private final IRCParserCallbackManager manager;
+    private final QueryManager queryManager;
 
     private final Map<UserInfoType, String> info = new EnumMap<>(UserInfoType.class);
 
     @Nullable private String client;
 
-    public WhoisResponseHandler(final Parser parser, final CallbackManager manager) {
+    public WhoisResponseHandler(final Parser parser, final IRCParserCallbackManager manager,
+            final QueryManager queryManager) {
         this.parser = parser;
         this.manager = manager;
+        this.queryManager = queryManager;
     }
 
     public void start() {
-        manager.subscribe(this);
+        // Inline, so that queries are completed on the thread processing lines.
+        manager.subscribeInline(this);
     }
 
     public void stop() {
@@ -74,7 +78,12 @@ public class WhoisResponseHandler {
 
     @Handler(condition = "msg.numeric == 318")
     void handleEndOfWhois(final NumericEvent event) {
-        if (client != null) {
+        // :server 318 DMDirc User :End of /WHOIS list.
+        if (client == null) {
+            queryManager.whoisEnded(event.getToken()[3], Collections.emptyMap());
+        } else {
+            queryManager.whoisEnded(event.getToken()[3],
+                    Collections.unmodifiableMap(new EnumMap<>(info)));
             sendEvent();
             client = null;
         }
@@ -0,0 +1,412 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc;
+
+import com.dmdirc.parser.common.AwayState;
+import com.dmdirc.parser.common.QueuePriority;
+import com.dmdirc.parser.events.WhoResultEvent;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+/**
+ * Sends WHOs using the WHOX extension when the server supports it, and applies
+ * the replies to the clients they describe.
+ *
+ * <p>A WHOX asks the server for only the fields selected with
+ * {@link #setFields(Set)}, along with a token that identifies replies to it.
+ * The {@code 354} replies are collected as they arrive, and applied to the
+ * known clients in one pass once the WHO has ended, after which a single
+ * {@link WhoResultEvent} is published instead of away state events for each
+ * client and channel.
+ *
+ * <p>If the server doesn't support WHOX, a plain WHO is sent and the replies
+ * are handled by {@link com.dmdirc.parser.irc.processors.ProcessWho} as
+ * before.
+ *
+ * <p>The end of a WHO doesn't carry the token, so the tracker also keeps note
+ * of plain WHOs sent to the server and their replies. A request is only ended
+ * by a reply that the server must have sent for it: one that follows
+ * {@code 354} replies carrying its token, or, for requests with no replies,
+ * one for a target that has no plain WHO outstanding.
+ */
+public class WhoxTracker {
+
+    /** The largest token that will be sent; servers only accept three digits. */
+    private static final int MAX_TOKEN = 999;
+    /** The parser that owns this tracker. */
+    private final IRCParser parser;
+    /** Requests that have been sent but not ended, by token, in the order they were sent. */
+    private final Map<String, Request> requests = new LinkedHashMap<>();
+    /** The fields to request. */
+    private final Set<Field> fields = EnumSet.allOf(Field.class);
+    /** Targets of plain WHOs that have been sent but not ended. */
+    private final Set<IRCStringConverter.Key> plainTargets = new HashSet<>();
+    /** Whether a plain WHO reply has been received since the last WHO ended. */
+    private boolean plainReplied;
+    /** The last token that was used. */
+    private int lastToken;
+
+    /** The optional fields that may be requested in a WHOX. */
+    public enum Field {
+        /** The client's ident and host. */
+        HOST("uh"),
+        /** The client's flags, used to determine their away state. */
+        FLAGS("f"),
+        /** The account the client is logged in to. */
+        ACCOUNT("a"),
+        /** The client's real name. */
+        REALNAME("r");
+
+        /** The WHOX field letters to request. */
+        private final String letters;
+
+        Field(final String letters) {
+            this.letters = letters;
+        }
+    }
+
+    /**
+     * Creates a new tracker.
+     *
+     * @param parser The parser that owns this tracker
+     */
+    public WhoxTracker(final IRCParser parser) {
+        this.parser = parser;
+    }
+
+    /**
+     * Determines whether the server supports WHOX.
+     *
+     * @return True if WHOX requests will be sent, false otherwise
+     */
+    public boolean isSupported() {
+        return parser.h005Info.containsKey(IrcConstants.ISUPPORT_WHOX);
+    }
+
+    /**
+     * Gets the fields that are requested in a WHOX.
+     *
+     * @return The fields to request
+     */
+    public synchronized Set<Field> getFields() {
+        return Collections.unmodifiableSet(EnumSet.copyOf(fields));
+    }
+
+    /**
+     * Sets the fields that are requested in a WHOX. The nickname is always
+     * requested.
+     *
+     * @param fields The fields to request
+     */
+    public synchronized void setFields(final Set<Field> fields) {
+        this.fields.clear();
+        this.fields.addAll(fields);
+    }
+
+    /**
+     * Gets the number of WHOX requests that have been sent but not ended.
+     *
+     * @return The number of outstanding requests
+     */
+    public synchronized int getOutstandingCount() {
+        return requests.size();
+    }
+
+    /**
+     * Sends a WHO for the given target, using WHOX if it is supported.
+     *
+     * @param target The channel, nickname or mask to query
+     * @param priority The priority to send the WHO at
+     * @return True if the WHO was sent, false otherwise
+     */
+    public boolean sendWho(final String target, final QueuePriority priority) {
+        if (!isSupported()) {
+            return parser.sendLabeled("WHO " + target, priority);
+        }
+
+        final String token;
+        final StringBuilder line = new StringBuilder("WHO ").append(target).append(" %t");
+        synchronized (this) {
+            lastToken = lastToken % MAX_TOKEN + 1;
+            token = String.valueOf(lastToken);
+            for (Field field : fields) {
+                line.append(field.letters);
+            }
+            line.append('n').append(',').append(token);
+            // Tokens are reused eventually, so make sure this goes at the end.
+            requests.remove(token);
+            requests.put(token, new Request(target, EnumSet.copyOf(fields)));
+        }
+
+        if (parser.sendString(line.toString(), priority)) {
+            return true;
+        }
+
+        synchronized (this) {
+            requests.remove(token);
+        }
+        return false;
+    }
+
+    /**
+     * Called when a WHO is sent to the server, so that the end of WHOs not
+     * sent by this tracker can be told apart from the end of its own.
+     *
+     * @param token The tokenised WHO line
+     */
+    public synchronized void whoSent(final String... token) {
+        if (token.length < 2) {
+            return;
+        }
+        if (token.length > 2) {
+            final String options = token[2];
+            final int comma = options.lastIndexOf(',');
+            if (comma > -1 && requests.containsKey(options.substring(comma + 1))) {
+                return;
+            }
+        }
+        plainTargets.add(key(token[1]));
+    }
+
+    /**
+     * Called when a plain WHO reply is received.
+     */
+    public synchronized void addPlainReply() {
+        plainReplied = true;
+    }
+
+    /**
+     * Called when a WHOX reply is received.
+     *
+     * @param token IRCTokenised line
+     * @return True if the reply belongs to a request sent by this tracker
+     */
+    public synchronized boolean addReply(final String... token) {
+        final Request request = token.length > 3 ? requests.get(token[3]) : null;
+        if (request == null) {
+            return false;
+        }
+
+        request.replies.add(token);
+        return true;
+    }
+
+    /**
+     * Called when the end of a WHO reply is received. If it ends a request
+     * sent by this tracker, the collected replies are applied and a
+     * {@link WhoResultEvent} is published.
+     *
+     * @param time The time the reply was received
+     * @param target The target given in the reply
+     * @return True if the reply ended a request sent by this tracker
+     */
+    public boolean ended(final LocalDateTime time, final String target) {
+        final Request request;
+        synchronized (this) {
+            if (parser.getLabeledResponseTracker().getCurrentRequest() != null) {
+                // WHOX requests aren't labeled, so this ends someone else's WHO.
+                plainReplied = false;
+                return false;
+            }
+            // The server answers WHOs in order, so plain replies mean this ends a plain WHO.
+            request = plainReplied ? null : remove(target);
+            plainReplied = false;
+            if (request == null) {
+                forgetPlainWho(target);
+            }
+        }
+        if (request == null) {
+            return false;
+        }
+
+        apply(time, request);
+        return true;
+    }
+
+    /**
+     * Discards all outstanding requests.
+     */
+    public synchronized void clear() {
+        requests.clear();
+        plainTargets.clear();
+        plainReplied = false;
+    }
+
+    /**
+     * Removes the outstanding request that the end of a WHO for the given
+     * target belongs to. This is the oldest request for the target that has
+     * received replies, if any. Otherwise, it is the oldest request for the
+     * target, as long as no plain WHO for the target is outstanding; if one
+     * is, the reply is taken to belong to that, and the request is left to be
+     * ended by the next reply for the target.
+     *
+     * @param target The target given in the reply
+     * @return The request, or null if the reply doesn't belong to one
+     */
+    @Nullable
+    private Request remove(final String target) {
+        Request empty = null;
+        final Iterator<Request> iterator = requests.values().iterator();
+        while (iterator.hasNext()) {
+            final Request request = iterator.next();
+            if (parser.getStringConverter().equalsIgnoreCase(request.target, target)) {
+                if (!request.replies.isEmpty()) {
+                    iterator.remove();
+                    return request;
+                }
+                if (empty == null) {
+                    empty = request;
+                }
+            }
+        }
+
+        if (empty == null || plainTargets.contains(key(target))) {
+            return null;
+        }
+        requests.values().remove(empty);
+        return empty;
+    }
+
+    /**
+     * Forgets about a plain WHO that has ended.
+     *
+     * @param targets The target (or comma separated targets) given in the reply
+     */
+    private void forgetPlainWho(final String targets) {
+        plainTargets.remove(key(targets));
+        if (targets.indexOf(',') > -1) {
+            // WHOs for single targets may have been merged by the output queue.
+            for (String target : targets.split(",")) {
+                plainTargets.remove(key(target));
+            }
+        }
+    }
+
+    /**
+     * Creates a key for the given target.
+     *
+     * @param target The target of a WHO
+     * @return A case-insensitive key for the target
+     */
+    private IRCStringConverter.Key key(final String target) {
+        return parser.getStringConverter().key(target);
+    }
+
+    /**
+     * Applies the replies to a request to the known clients they describe.
+     *
+     * @param time The time the WHO ended
+     * @param request The request that has ended
+     */
+    private void apply(final LocalDateTime time, final Request request) {
+        final List<IRCClientInfo> clients = new ArrayList<>(request.replies.size());
+        final List<IRCClientInfo> awayChanged = new ArrayList<>();
+
+        for (String[] token : request.replies) {
+            // :server 354 mynickname token [ident host] nick [flags] [account] [:realname]
+            //     0    1      2        3         the requested fields follow
+            if (token.length < request.length) {
+                continue;
+            }
+
+            int index = 4;
+            final String ident;
+            final String host;
+            if (request.fields.contains(Field.HOST)) {
+                ident = token[index++];
+                host = token[index++];
+            } else {
+                ident = null;
+                host = null;
+            }
+            final String nickname = token[index++];
+            final String flags = request.fields.contains(Field.FLAGS) ? token[index++] : null;
+            final String account = request.fields.contains(Field.ACCOUNT) ? token[index++] : null;
+            final String realname = request.fields.contains(Field.REALNAME) ? token[index] : null;
+
+            if (!parser.isKnownClient(nickname)) {
+                continue;
+            }
+
+            final IRCClientInfo client = parser.getClient(nickname);
+            if (host != null) {
+                client.setIdentAndHost(ident, host);
+            }
+            if (flags != null) {
+                final AwayState state = flags.indexOf('G') == -1 ? AwayState.HERE : AwayState.AWAY;
+                if (client.getAwayState() != state) {
+                    client.setAwayState(state);
+                    awayChanged.add(client);
+                }
+            }
+            if (account != null) {
+                client.setAccountName("0".equals(account) ? null : account);
+            }
+            if (realname != null) {
+                client.setRealName(realname);
+            }
+            clients.add(client);
+        }
+
+        parser.getCallbackManager().publish(
+                new WhoResultEvent(parser, time, request.target, clients, awayChanged));
+    }
+
+    /** A WHOX that has been sent, and the replies received to it so far. */
+    private static class Request {
+
+        /** The target of the WHO. */
+        private final String target;
+        /** The fields that were requested. */
+        private final Set<Field> fields;
+        /** The number of tokens in a complete reply. */
+        private final int length;
+        /** The replies received so far. */
+        private final List<String[]> replies = new ArrayList<>();
+
+        Request(final String target, final Set<Field> fields) {
+            this.target = target;
+            this.fields = fields;
+            // Source, numeric, our nickname, token and nickname, plus the fields
+            int count = 5;
+            for (Field field : fields) {
+                count += field.letters.length();
+            }
+            this.length = count;
+        }
+
+    }
+
+}
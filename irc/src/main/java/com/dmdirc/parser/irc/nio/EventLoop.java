@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.nio;
+
+import com.dmdirc.parser.irc.PingScheduler;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single thread which multiplexes socket events, queued tasks and timers for
+ * any number of {@link NioConnection}s.
+ *
+ * <p>All connection I/O and all tasks submitted via {@link #execute(Runnable)}
+ * and {@link #schedule(Runnable, long, long, TimeUnit)} are run on the loop's
+ * thread, so they must never block.
+ */
+public class EventLoop implements Executor, PingScheduler, Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EventLoop.class);
+
+    /** Sequence used to order tasks scheduled for the same instant. */
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+    /** Selector used to wait for socket events. */
+    private final Selector selector;
+    /** Tasks waiting to be run on the loop thread. */
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    /** Timers waiting to fire, only accessed from the loop thread. */
+    private final PriorityQueue<ScheduledTask> timers = new PriorityQueue<>();
+    /** Whether a wakeup of the selector is already pending. */
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    /** The thread running this loop, once started. */
+    private volatile Thread thread;
+    /** Whether the loop should keep running. */
+    private volatile boolean running = true;
+
+    /**
+     * Creates a new event loop. The loop does nothing until {@link #run()} is
+     * called on a thread dedicated to it.
+     *
+     * @throws IOException If a selector could not be opened
+     */
+    public EventLoop() throws IOException {
+        selector = Selector.open();
+    }
+
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+
+        while (running) {
+            try {
+                final long timeout = runTimers();
+                if (tasks.isEmpty()) {
+                    selector.select(timeout);
+                } else {
+                    selector.selectNow();
+                }
+                wakeupPending.set(false);
+
+                processSelectedKeys();
+                runTasks();
+            } catch (IOException | RuntimeException ex) {
+                LOG.warn("Unexpected exception in event loop", ex);
+            }
+        }
+
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof NioConnection) {
+                ((NioConnection) key.attachment()).close(null);
+            }
+        }
+
+        try {
+            selector.close();
+        } catch (IOException ex) {
+            LOG.debug("Unable to close selector", ex);
+        }
+    }
+
+    /**
+     * Requests that this loop stops, closing any connections registered with
+     * it.
+     */
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Determines whether the calling thread is this loop's thread.
+     *
+     * @return True if called from the loop thread, false otherwise
+     */
+    public boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Queues the given task to be run on the loop thread.
+     *
+     * @param task The task to be run
+     */
+    @Override
+    public void execute(final Runnable task) {
+        tasks.add(task);
+
+        if (!inEventLoop() && wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Schedules the given task to be run on the loop thread after a delay,
+     * and then optionally repeatedly at a fixed period.
+     *
+     * @param task The task to be run
+     * @param delay The delay before the first run
+     * @param period The period between subsequent runs, or 0 to only run once
+     * @param unit The unit of the delay and period
+     * @return A handle which can be used to cancel the task
+     */
+    @Override
+    public ScheduledTask schedule(final Runnable task, final long delay, final long period,
+            final TimeUnit unit) {
+        final ScheduledTask scheduled = new ScheduledTask(task,
+                System.nanoTime() + unit.toNanos(delay), unit.toNanos(period));
+        execute(() -> timers.add(scheduled));
+        return scheduled;
+    }
+
+    /**
+     * Gets the selector used by this loop. Must only be used from the loop
+     * thread.
+     *
+     * @return This loop's selector
+     */
+    Selector getSelector() {
+        return selector;
+    }
+
+    /**
+     * Runs any timers which are due.
+     *
+     * @return The number of milliseconds until the next timer is due, or 0 if
+     * there are no timers
+     */
+    private long runTimers() {
+        final long now = System.nanoTime();
+        ScheduledTask next;
+        while ((next = timers.peek()) != null) {
+            if (next.isCancelled()) {
+                timers.poll();
+            } else if (next.deadline - now <= 0) {
+                timers.poll();
+                runSafely(next.task);
+                if (next.period > 0 && !next.isCancelled()) {
+                    next.deadline += next.period;
+                    timers.add(next);
+                }
+            } else {
+                return Math.max(1, TimeUnit.NANOSECONDS.toMillis(next.deadline - now));
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Dispatches any ready keys to their connections.
+     */
+    private void processSelectedKeys() {
+        final Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+        while (iterator.hasNext()) {
+            final SelectionKey key = iterator.next();
+            iterator.remove();
+
+            if (key.isValid() && key.attachment() instanceof NioConnection) {
+                ((NioConnection) key.attachment()).handle(key.readyOps());
+            }
+        }
+    }
+
+    /**
+     * Runs all queued tasks, including any queued by the tasks themselves.
+     */
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            runSafely(task);
+        }
+    }
+
+    /**
+     * Runs the given task, ensuring any exception it throws does not kill the
+     * loop.
+     *
+     * @param task The task to be run
+     */
+    private static void runSafely(final Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException ex) {
+            LOG.warn("Exception in event loop task", ex);
+        }
+    }
+
+    /**
+     * A task scheduled to run on an {@link EventLoop} at a later time.
+     */
+    public static final class ScheduledTask implements PingScheduler.Task,
+            Comparable<ScheduledTask> {
+
+        /** The task to run. */
+        private final Runnable task;
+        /** Period between runs, in nanoseconds, or 0 for one-shot tasks. */
+        private final long period;
+        /** Sequence number used to break ties. */
+        private final long sequence = SEQUENCE.getAndIncrement();
+        /** Time the task is next due, per {@link System#nanoTime()}. */
+        private long deadline;
+        /** Whether the task has been cancelled. */
+        private volatile boolean cancelled;
+
+        private ScheduledTask(final Runnable task, final long deadline, final long period) {
+            this.task = task;
+            this.deadline = deadline;
+            this.period = period;
+        }
+
+        /**
+         * Cancels this task. If it is currently running, it will complete but
+         * will not run again.
+         */
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * Determines whether this task has been cancelled.
+         *
+         * @return True if the task has been cancelled, false otherwise
+         */
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public int compareTo(final ScheduledTask other) {
+            final int result = Long.compare(deadline - other.deadline, 0);
+            return result == 0 ? Long.compare(sequence, other.sequence) : result;
+        }
+
+    }
+
+}
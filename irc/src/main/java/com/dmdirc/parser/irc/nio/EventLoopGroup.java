@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.nio;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed pool of {@link EventLoop}s which can be shared between many
+ * parsers. Connections are assigned to loops in turn.
+ *
+ * <p>Name resolution (including SRV lookups) cannot be done without blocking,
+ * so the group also owns a small pool of threads used only while connecting.
+ */
+public class EventLoopGroup {
+
+    /** The loops in this group. */
+    private final EventLoop[] loops;
+    /** Index of the next loop to hand out. */
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    /** Executor used for blocking work such as DNS lookups. */
+    private final ExecutorService resolverExecutor;
+
+    /**
+     * Creates a new group with the given number of loops, each running on its
+     * own daemon thread.
+     *
+     * @param threads The number of loops to create
+     * @throws IOException If a selector could not be opened
+     */
+    public EventLoopGroup(final int threads) throws IOException {
+        loops = new EventLoop[threads];
+        for (int i = 0; i < threads; i++) {
+            loops[i] = new EventLoop();
+            final Thread thread = new Thread(loops[i], "IRC Parser event loop " + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        final AtomicInteger resolverCount = new AtomicInteger();
+        resolverExecutor = Executors.newCachedThreadPool(r -> {
+            final Thread thread = new Thread(r,
+                    "IRC Parser resolver " + resolverCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Gets the next loop that a connection should be assigned to.
+     *
+     * @return An event loop from this group
+     */
+    public EventLoop next() {
+        return loops[Math.abs(nextLoop.getAndIncrement() % loops.length)];
+    }
+
+    /**
+     * Gets the executor used for blocking work needed to set up connections.
+     *
+     * @return The group's resolver executor
+     */
+    public ExecutorService getResolverExecutor() {
+        return resolverExecutor;
+    }
+
+    /**
+     * Shuts down all of the loops in this group, closing their connections.
+     */
+    public void shutdown() {
+        for (EventLoop loop : loops) {
+            loop.shutdown();
+        }
+        resolverExecutor.shutdown();
+    }
+
+}
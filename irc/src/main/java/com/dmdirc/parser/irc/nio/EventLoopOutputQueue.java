@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.nio;
+
+import com.dmdirc.parser.common.QueuePriority;
+import com.dmdirc.parser.irc.outputqueue.OutputQueue;
+import com.dmdirc.parser.irc.outputqueue.QueueComparators;
+import com.dmdirc.parser.irc.outputqueue.QueueItem;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An output queue which sends by priority without a thread of its own.
+ *
+ * <p>Queued lines are moved to the connection by its event loop, and only
+ * while the connection has less than {@link #HIGH_WATER_MARK} bytes waiting
+ * to be sent, so that higher priority lines queued later can still overtake
+ * them.
+ */
+public class EventLoopOutputQueue extends OutputQueue {
+
+    /** Number of unsent bytes above which no more lines are passed on. */
+    private static final long HIGH_WATER_MARK = 4096;
+    /** The connection to send lines on. */
+    private final NioConnection connection;
+    /** Whether a drain has already been queued on the loop. */
+    private final AtomicBoolean drainQueued = new AtomicBoolean();
+
+    /**
+     * Creates a new queue which sends lines on the given connection.
+     *
+     * @param connection The connection to send lines on
+     */
+    public EventLoopOutputQueue(final NioConnection connection) {
+        super(QueueComparators.byPriorityThenNumber(Duration.ofSeconds(10)));
+        this.connection = connection;
+        setOutputStream(connection.getOutputStream());
+        connection.setWritableListener(this::handleQueuedItems);
+    }
+
+    @Override
+    public void sendLine(final String line, final QueuePriority priority) {
+        if (isDiscarding()) {
+            return;
+        }
+
+        if (isQueueEnabled() && priority == QueuePriority.IMMEDIATE) {
+            send(line);
+        } else {
+            queueLine(line, priority);
+            if (drainQueued.compareAndSet(false, true)) {
+                connection.getEventLoop().execute(() -> {
+                    drainQueued.set(false);
+                    handleQueuedItems();
+                });
+            }
+        }
+    }
+
+    /**
+     * Passes queued lines to the connection until it has enough data waiting.
+     * Called on the connection's event loop.
+     */
+    @Override
+    protected void handleQueuedItems() {
+        while (isQueueEnabled() && connection.getPendingBytes() < HIGH_WATER_MARK) {
+            final QueueItem item = getQueue().poll();
+            if (item == null) {
+                break;
+            }
+            send(item.getLine());
+        }
+    }
+
+}
@@ -0,0 +1,568 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.nio;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+
+/**
+ * A non-blocking connection to a server, driven by an {@link EventLoop}.
+ *
+ * <p>Data may be written from any thread; it is buffered and written out by
+ * the loop as the socket allows. All callbacks to the {@link Listener} are
+ * made on the loop thread. If an {@link SSLEngine} is supplied, it is used to
+ * secure the connection and the listener only sees application data.
+ */
+public class NioConnection {
+
+    /** Size of the buffer used for reading from unsecured connections. */
+    private static final int READ_BUFFER_SIZE = 16384;
+    /** An empty buffer used when wrapping handshake data. */
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    /** The loop that drives this connection. */
+    private final EventLoop loop;
+    /** The listener to inform of events. */
+    private final Listener listener;
+    /** Application data waiting to be written. */
+    private final Queue<ByteBuffer> pendingWrites = new ConcurrentLinkedQueue<>();
+    /** Number of bytes of application data waiting to be written. */
+    private final AtomicLong pendingBytes = new AtomicLong();
+    /** Whether a flush has been queued on the loop. */
+    private final AtomicBoolean flushQueued = new AtomicBoolean();
+    /** Stream which writes to this connection. */
+    private final OutputStream outputStream = new ConnectionOutputStream();
+    /** The channel, once opened. */
+    private SocketChannel channel;
+    /** The channel's registration with the loop's selector. */
+    private SelectionKey key;
+    /** The SSL engine in use, if any. */
+    @Nullable
+    private SSLEngine engine;
+    /** Data read from the network that has not been consumed yet. */
+    private ByteBuffer netIn;
+    /** Data to be written to the network, in read mode. */
+    private ByteBuffer netOut;
+    /** Decrypted application data, for secure connections. */
+    private ByteBuffer appIn;
+    /** Timer used to enforce the connect timeout. */
+    private EventLoop.ScheduledTask connectTimeout;
+    /** Whether the connection has been fully established. */
+    private boolean established;
+    /** Whether the connection has been closed. */
+    private volatile boolean closed;
+    /** Task to be run whenever all pending data has been written. */
+    @Nullable
+    private volatile Runnable writableListener;
+
+    /**
+     * Creates a new connection which will be driven by the given loop.
+     *
+     * @param loop The loop which will perform all I/O for this connection
+     * @param listener The listener to inform of events
+     */
+    public NioConnection(final EventLoop loop, final Listener listener) {
+        this.loop = loop;
+        this.listener = listener;
+    }
+
+    /**
+     * Begins connecting to the given address. The listener will be told when
+     * the connection is established (including any SSL handshake), or if it
+     * fails.
+     *
+     * @param remote The address to connect to
+     * @param local The local address to bind to, or null to use any
+     * @param sslEngine The engine to use to secure the connection, or null
+     * @param timeout Connection timeout, in milliseconds
+     */
+    public void connect(final InetSocketAddress remote, @Nullable final InetSocketAddress local,
+            @Nullable final SSLEngine sslEngine, final int timeout) {
+        loop.execute(() -> {
+            try {
+                engine = sslEngine;
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                if (local != null) {
+                    try {
+                        channel.bind(local);
+                    } catch (IOException ex) {
+                        // Bind failed; continue trying to connect anyway.
+                    }
+                }
+
+                if (channel.connect(remote)) {
+                    key = channel.register(loop.getSelector(), SelectionKey.OP_READ, this);
+                    finishConnect();
+                } else {
+                    key = channel.register(loop.getSelector(), SelectionKey.OP_CONNECT, this);
+                    if (timeout > 0) {
+                        connectTimeout = loop.schedule(() -> close(new SocketTimeoutException(
+                                "connect timed out")), timeout, 0, TimeUnit.MILLISECONDS);
+                    }
+                }
+            } catch (IOException ex) {
+                close(ex);
+            }
+        });
+    }
+
+    /**
+     * Gets the loop which drives this connection.
+     *
+     * @return This connection's loop
+     */
+    public EventLoop getEventLoop() {
+        return loop;
+    }
+
+    /**
+     * Gets a stream which may be used to write to this connection from any
+     * thread. Writes never block; data is buffered until it can be sent.
+     *
+     * @return A stream that writes to this connection
+     */
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    /**
+     * Gets the number of bytes which have been written to this connection but
+     * not yet passed to the network.
+     *
+     * @return The number of pending bytes
+     */
+    public long getPendingBytes() {
+        return pendingBytes.get();
+    }
+
+    /**
+     * Sets a task to be run on the loop thread whenever all pending data has
+     * been written to the network.
+     *
+     * @param listener The task to run, or null for none
+     */
+    public void setWritableListener(@Nullable final Runnable listener) {
+        writableListener = listener;
+    }
+
+    /**
+     * Gets the local port the connection is bound to.
+     *
+     * @return The local port, or -1 if not bound
+     */
+    public int getLocalPort() {
+        final SocketChannel socketChannel = channel;
+        return socketChannel == null ? -1 : socketChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Closes this connection once any data already written has been sent, as
+     * far as is possible without blocking.
+     */
+    public void close() {
+        loop.execute(() -> {
+            if (!closed && established) {
+                flush();
+            }
+            close(null);
+        });
+    }
+
+    /**
+     * Queues the given data to be written.
+     *
+     * @param data The data to be written
+     */
+    void write(final ByteBuffer data) {
+        if (closed) {
+            return;
+        }
+
+        pendingBytes.addAndGet(data.remaining());
+        pendingWrites.add(data);
+        if (flushQueued.compareAndSet(false, true)) {
+            loop.execute(() -> {
+                flushQueued.set(false);
+                flush();
+            });
+        }
+    }
+
+    /**
+     * Handles the given ready operations. Called on the loop thread.
+     *
+     * @param readyOps The operations which are ready
+     */
+    void handle(final int readyOps) {
+        try {
+            if ((readyOps & SelectionKey.OP_CONNECT) != 0) {
+                if (channel.finishConnect()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                    finishConnect();
+                }
+            }
+            if ((readyOps & SelectionKey.OP_READ) != 0 && !closed) {
+                read();
+            }
+            if ((readyOps & SelectionKey.OP_WRITE) != 0 && !closed) {
+                flush();
+            }
+        } catch (IOException ex) {
+            close(ex);
+        }
+    }
+
+    /**
+     * Closes the connection, informing the listener. Called on the loop
+     * thread.
+     *
+     * @param cause The exception that caused the connection to close, if any
+     */
+    void close(@Nullable final IOException cause) {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        if (connectTimeout != null) {
+            connectTimeout.cancel();
+        }
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException ex) {
+            // Ignore, we're closing anyway.
+        }
+        pendingWrites.clear();
+        pendingBytes.set(0);
+
+        if (established) {
+            listener.closed(cause);
+        } else {
+            listener.connectFailed(cause == null ? new IOException("Connection closed") : cause);
+        }
+    }
+
+    /**
+     * Called once the socket has connected, to begin any handshake.
+     *
+     * @throws IOException If the handshake could not be started
+     */
+    private void finishConnect() throws IOException {
+        if (connectTimeout != null) {
+            connectTimeout.cancel();
+        }
+
+        if (engine == null) {
+            netIn = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            established();
+        } else {
+            netIn = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+            netOut = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+            netOut.flip();
+            appIn = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+            engine.beginHandshake();
+            handshake();
+        }
+    }
+
+    /**
+     * Marks the connection as established and informs the listener.
+     */
+    private void established() {
+        established = true;
+        listener.connected();
+        flush();
+    }
+
+    /**
+     * Reads any available data from the channel and passes it to the listener.
+     *
+     * @throws IOException If the read fails
+     */
+    private void read() throws IOException {
+        final int read = channel.read(netIn);
+        if (read == -1) {
+            close(null);
+            return;
+        }
+
+        if (engine == null) {
+            netIn.flip();
+            listener.dataReceived(netIn);
+            netIn.clear();
+        } else {
+            unwrap();
+        }
+    }
+
+    /**
+     * Decrypts as much of the data read from the network as possible, passing
+     * the result to the listener and progressing any handshake.
+     *
+     * @throws IOException If the data could not be decrypted
+     */
+    private void unwrap() throws IOException {
+        netIn.flip();
+        try {
+            while (!closed) {
+                final SSLEngineResult result = engine.unwrap(netIn, appIn);
+                if (appIn.position() > 0) {
+                    appIn.flip();
+                    listener.dataReceived(appIn);
+                    appIn.clear();
+                }
+
+                if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                    return;
+                } else if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                    close(null);
+                    return;
+                } else if (result.getStatus() == SSLEngineResult.Status.OK) {
+                    handshake();
+                    if (result.bytesConsumed() == 0 && result.bytesProduced() == 0
+                            && engine.getHandshakeStatus()
+                            != SSLEngineResult.HandshakeStatus.NEED_UNWRAP) {
+                        return;
+                    }
+                }
+            }
+        } finally {
+            netIn.compact();
+        }
+    }
+
+    /**
+     * Progresses the SSL handshake as far as possible without more data from
+     * the network.
+     *
+     * @throws IOException If the handshake fails
+     */
+    private void handshake() throws IOException {
+        while (!closed) {
+            switch (engine.getHandshakeStatus()) {
+                case NEED_TASK:
+                    Runnable task;
+                    while ((task = engine.getDelegatedTask()) != null) {
+                        task.run();
+                    }
+                    break;
+                case NEED_WRAP:
+                    if (!wrap(EMPTY) && !writeNetOut()) {
+                        // No room to wrap until the socket accepts more data.
+                        return;
+                    }
+                    break;
+                case NOT_HANDSHAKING:
+                case FINISHED:
+                    writeNetOut();
+                    if (!established) {
+                        established();
+                    }
+                    return;
+                default:
+                    // Need more data from the network.
+                    writeNetOut();
+                    return;
+            }
+        }
+    }
+
+    /**
+     * Encrypts data from the given buffer into the network output buffer.
+     *
+     * @param source The application data to wrap
+     * @return True if data was wrapped, false if the output buffer is full
+     * @throws SSLException If the data could not be wrapped
+     */
+    private boolean wrap(final ByteBuffer source) throws SSLException {
+        netOut.compact();
+        try {
+            final SSLEngineResult result = engine.wrap(source, netOut);
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                throw new SSLException("SSL engine closed");
+            }
+            return result.getStatus() != SSLEngineResult.Status.BUFFER_OVERFLOW;
+        } finally {
+            netOut.flip();
+        }
+    }
+
+    /**
+     * Writes as much of the network output buffer as the socket will accept.
+     *
+     * @return True if the buffer was completely written, false otherwise
+     * @throws IOException If the write fails
+     */
+    private boolean writeNetOut() throws IOException {
+        if (netOut.hasRemaining()) {
+            channel.write(netOut);
+        }
+        if (netOut.hasRemaining()) {
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes as much pending data as the socket will accept. Called on the
+     * loop thread.
+     */
+    private void flush() {
+        if (closed || !established && engine == null) {
+            return;
+        }
+
+        try {
+            if (engine != null) {
+                if (!writeNetOut()) {
+                    return;
+                }
+                if (!established) {
+                    handshake();
+                    return;
+                }
+            }
+
+            ByteBuffer next;
+            while ((next = pendingWrites.peek()) != null) {
+                final int before = next.remaining();
+                final boolean progressed;
+                if (engine == null) {
+                    channel.write(next);
+                    progressed = !next.hasRemaining();
+                } else {
+                    progressed = wrap(next);
+                }
+
+                pendingBytes.addAndGet(next.remaining() - before);
+                if (!next.hasRemaining()) {
+                    pendingWrites.poll();
+                }
+
+                if (engine != null && !writeNetOut()) {
+                    return;
+                } else if (engine == null && !progressed) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        } catch (IOException ex) {
+            close(ex);
+            return;
+        }
+
+        final Runnable writable = writableListener;
+        if (writable != null) {
+            writable.run();
+        }
+    }
+
+    /**
+     * Receives notifications about the state of a {@link NioConnection}. All
+     * methods are called on the connection's loop thread.
+     */
+    public interface Listener {
+
+        /**
+         * Called when the connection has been established, including any SSL
+         * handshake.
+         */
+        void connected();
+
+        /**
+         * Called when the connection could not be established.
+         *
+         * @param cause The reason the connection failed
+         */
+        void connectFailed(IOException cause);
+
+        /**
+         * Called when data has been received. The listener must consume all
+         * of the data in the buffer, as it will be reused once this method
+         * returns.
+         *
+         * @param data The data received
+         */
+        void dataReceived(ByteBuffer data);
+
+        /**
+         * Called when an established connection has been closed.
+         *
+         * @param cause The exception that caused the close, or null if the
+         * connection was closed normally
+         */
+        void closed(@Nullable IOException cause);
+
+    }
+
+    /**
+     * Output stream which queues everything written to it on the connection.
+     */
+    private class ConnectionOutputStream extends OutputStream {
+
+        @Override
+        public void write(final int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            if (len > 0) {
+                final byte[] copy = new byte[len];
+                System.arraycopy(b, off, copy, 0, len);
+                NioConnection.this.write(ByteBuffer.wrap(copy));
+            }
+        }
+
+        @Override
+        public void close() {
+            NioConnection.this.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.outputqueue;
+
+import com.dmdirc.parser.common.QueuePriority;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nullable;
+
+/**
+ * An output queue which sends by priority, like {@link PriorityOutputQueue},
+ * but without taking a lock to queue lines and with fewer writes.
+ *
+ * <p>Each priority has its own lock-free queue. The sending thread repeatedly
+ * takes the head of whichever queue sorts first according to the comparator,
+ * so starved items are still promoted as described in
+ * {@link QueueComparators}. Every line that is ready is encoded into a single
+ * reusable buffer, which is then written and flushed once, rather than
+ * flushing each line individually.
+ */
+public class BatchingOutputQueue extends OutputQueue {
+
+    /** Size of the buffer lines are encoded into. */
+    private static final int BUFFER_SIZE = 16384;
+    /** The line terminator. */
+    private static final String TERMINATOR = "\r\n";
+    /** Comparator used to pick the next item to send. */
+    private final Comparator<QueueItem> comparator;
+    /** Queued items, indexed by priority. */
+    private final Queue<QueueItem>[] queues;
+    /** The number of queued items. */
+    private final AtomicInteger count = new AtomicInteger();
+    /** Lock guarding the buffer, encoder and stream. */
+    private final Object writeLock = new Object();
+    /** Buffer lines are encoded into before being written. */
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    /** Encoder used to encode lines. */
+    private final CharsetEncoder encoder = Charset.defaultCharset().newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /** The stream to write to. */
+    @Nullable private OutputStream stream;
+    /** The thread sending queued items, if it has started. */
+    @Nullable private volatile Thread sendingThread;
+
+    /**
+     * Creates a new queue which sends by priority, promoting items which have
+     * been queued for more than ten seconds.
+     */
+    public BatchingOutputQueue() {
+        this(QueueComparators.byPriorityThenNumber(Duration.ofSeconds(10)));
+    }
+
+    /**
+     * Creates a new queue which sends items in the order given by the
+     * comparator. The comparator must order items of the same priority by
+     * their item number, as the comparators in {@link QueueComparators} do.
+     *
+     * @param comparator The comparator to use to order items.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public BatchingOutputQueue(final Comparator<QueueItem> comparator) {
+        super(comparator);
+        this.comparator = comparator;
+        this.queues = new Queue[QueuePriority.values().length];
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    @Override
+    public void setOutputStream(final OutputStream outputStream) {
+        super.setOutputStream(outputStream);
+        synchronized (writeLock) {
+            stream = outputStream;
+            buffer.clear();
+        }
+    }
+
+    @Override
+    public void setQueueEnabled(final boolean queueEnabled) {
+        final boolean old = isQueueEnabled();
+        super.setQueueEnabled(queueEnabled);
+
+        if (old && !queueEnabled) {
+            sendQueued();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The queue returned is a snapshot, and changes to it are not
+     * reflected in this queue.
+     */
+    @Override
+    public BlockingQueue<QueueItem> getQueue() {
+        final BlockingQueue<QueueItem> snapshot =
+                new PriorityBlockingQueue<>(Math.max(1, count.get()), comparator);
+        for (Queue<QueueItem> queue : queues) {
+            snapshot.addAll(queue);
+        }
+        return snapshot;
+    }
+
+    @Override
+    public void clearQueue() {
+        super.clearQueue();
+        synchronized (writeLock) {
+            for (Queue<QueueItem> queue : queues) {
+                while (queue.poll() != null) {
+                    count.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    @Override
+    public int queueCount() {
+        return count.get();
+    }
+
+    @Override
+    protected void enqueue(final QueueItem item) {
+        queues[item.getPriority().ordinal()].add(item);
+        count.incrementAndGet();
+
+        final Thread thread = sendingThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    @Override
+    protected boolean remove(final QueueItem item) {
+        if (queues[item.getPriority().ordinal()].remove(item)) {
+            count.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    protected void handleQueuedItems() {
+        sendingThread = Thread.currentThread();
+        try {
+            while (isQueueEnabled() && !Thread.currentThread().isInterrupted()) {
+                if (sendQueued() == 0) {
+                    LockSupport.park(this);
+                }
+            }
+        } finally {
+            sendingThread = null;
+        }
+    }
+
+    @Override
+    protected void send(final String line) {
+        synchronized (writeLock) {
+            checkStream();
+            encode(line);
+            flush();
+        }
+    }
+
+    /**
+     * Sends all items which are currently queued, with a single flush.
+     *
+     * @return The number of items sent
+     */
+    int sendQueued() {
+        synchronized (writeLock) {
+            checkStream();
+            int sent = 0;
+            QueueItem item;
+            while ((item = poll()) != null) {
+                encode(item.getLine());
+                sent++;
+            }
+            if (sent > 0) {
+                flush();
+            }
+            return sent;
+        }
+    }
+
+    /**
+     * Removes the item that should be sent next. Must be called while holding
+     * the write lock.
+     *
+     * <p>Queued items may be removed concurrently when lines are merged, so
+     * the head that was picked may have gone by the time it is taken. In that
+     * case the queues are searched again.
+     *
+     * @return The next item, or null if there are none
+     */
+    @Nullable
+    private QueueItem poll() {
+        while (true) {
+            Queue<QueueItem> best = null;
+            QueueItem bestHead = null;
+            for (Queue<QueueItem> queue : queues) {
+                final QueueItem head = queue.peek();
+                if (head != null && (bestHead == null || comparator.compare(head, bestHead) < 0)) {
+                    best = queue;
+                    bestHead = head;
+                }
+            }
+
+            if (best == null) {
+                return null;
+            }
+
+            if (best.remove(bestHead)) {
+                count.decrementAndGet();
+                return bestHead;
+            }
+        }
+    }
+
+    private void checkStream() {
+        if (stream == null) {
+            throw new IllegalStateException("No output stream has been set.");
+        }
+    }
+
+    /**
+     * Encodes a line and its terminator into the buffer, writing the buffer
+     * out whenever it fills.
+     *
+     * @param line The line to encode
+     */
+    private void encode(final String line) {
+        encoder.reset();
+        encode(CharBuffer.wrap(line), false);
+        encode(CharBuffer.wrap(TERMINATOR), true);
+        while (encoder.flush(buffer) == CoderResult.OVERFLOW) {
+            write();
+        }
+    }
+
+    private void encode(final CharBuffer chars, final boolean endOfInput) {
+        while (encoder.encode(chars, buffer, endOfInput) == CoderResult.OVERFLOW) {
+            write();
+        }
+    }
+
+    /**
+     * Writes the contents of the buffer to the stream, and flushes it.
+     */
+    private void flush() {
+        write();
+        try {
+            stream.flush();
+        } catch (IOException ex) {
+            // As with PrintWriter, errors are left for the reading side to notice.
+        }
+    }
+
+    /**
+     * Writes the contents of the buffer to the stream.
+     */
+    private void write() {
+        try {
+            stream.write(buffer.array(), buffer.arrayOffset(), buffer.position());
+        } catch (IOException ex) {
+            // As with PrintWriter, errors are left for the reading side to notice.
+        } finally {
+            buffer.clear();
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.outputqueue;
+
+import java.time.Duration;
+
+/**
+ * An output queue which sends items by priority, sharing each priority fairly
+ * between the targets lines are sent to.
+ *
+ * @see TargetFairQueue
+ */
+public class FairOutputQueue extends OutputQueue {
+
+    /**
+     * Create a new FairOutputQueue.
+     */
+    public FairOutputQueue() {
+        super(new TargetFairQueue(QueueComparators.byPriorityThenNumber(Duration.ofSeconds(10))));
+    }
+
+    @Override
+    protected boolean canMerge(final QueueItem queued, final String line) {
+        return TargetFairQueue.canMerge(queued, line);
+    }
+
+    @Override
+    protected void handleQueuedItems() {
+        try {
+            while (isQueueEnabled()) {
+                send(getQueue().take().getLine());
+            }
+        } catch (InterruptedException ex) {
+            // Do nothing
+        }
+    }
+
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.outputqueue;
+
+import com.dmdirc.parser.irc.ServerType;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Describes how a server penalises clients for the lines they send, for use by
+ * {@link TokenBucketOutputQueue}.
+ *
+ * <p>Costs are expressed in milliseconds of penalty. Servers generally let a
+ * client run up a certain amount of penalty (the capacity) before they stop
+ * processing its lines, or disconnect it for flooding, and the penalty drains
+ * in real time.
+ */
+public final class FloodProfile {
+
+    /** RFC 1459 section 8.10: two seconds per line, and up to ten seconds ahead. */
+    public static final FloodProfile RFC1459 = new FloodProfile(10000, 2000, 0,
+            Collections.emptyMap());
+    /** ircu and its forks, which also add a second for every 120 bytes. */
+    public static final FloodProfile IRCU = new FloodProfile(10000, 2000, 120,
+            Collections.emptyMap());
+    /** Hybrid and its descendants, which allow a burst then about a line a second. */
+    public static final FloodProfile HYBRID = new FloodProfile(10000, 1000, 0,
+            costs("WHO", 1000, "WHOIS", 1000, "LIST", 2000));
+    /** InspIRCd, which allows a burst then about a command a second, with heavier commands. */
+    public static final FloodProfile INSPIRCD = new FloodProfile(10000, 1000, 0,
+            costs("JOIN", 1000, "NICK", 2000, "WHO", 1000, "WHOIS", 1000, "LIST", 4000));
+    /** Unreal, which adds fake lag for each line and its length. */
+    public static final FloodProfile UNREAL = new FloodProfile(10000, 1000, 100,
+            Collections.emptyMap());
+    /** Servers without flood limits, such as gateways. */
+    public static final FloodProfile NONE = new FloodProfile(0, 0, 0, Collections.emptyMap());
+
+    /** The penalty that may be accrued before the server stops processing lines. */
+    private final long capacity;
+    /** The penalty for each line. */
+    private final long lineCost;
+    /** Number of bytes which add a second of penalty, or 0 if size isn't penalised. */
+    private final int bytesPerSecond;
+    /** Additional penalties for particular commands, keyed by upper case command. */
+    private final Map<String, Long> commandCosts;
+
+    /**
+     * Creates a new flood profile.
+     *
+     * @param capacity The penalty, in milliseconds, that may be accrued
+     * @param lineCost The penalty, in milliseconds, for each line
+     * @param bytesPerSecond The number of bytes which add a second of penalty, or 0
+     * @param commandCosts Additional penalties, in milliseconds, for particular commands
+     */
+    public FloodProfile(final long capacity, final long lineCost, final int bytesPerSecond,
+            final Map<String, Long> commandCosts) {
+        this.capacity = capacity;
+        this.lineCost = lineCost;
+        this.bytesPerSecond = bytesPerSecond;
+        this.commandCosts = Collections.unmodifiableMap(new HashMap<>(commandCosts));
+    }
+
+    /**
+     * Gets the profile which best describes the given type of server.
+     *
+     * @param type The type of server
+     * @return The profile to use for the server
+     */
+    public static FloodProfile forServerType(final ServerType type) {
+        switch (type) {
+            case IRCU2:
+            case IRCU_GENERIC:
+            case SNIRCD:
+            case ASUKA:
+            case NEFARIOUS:
+            case BIRCD:
+            case IRCHISPANO:
+            case IRCNET:
+                return IRCU;
+            case HYBRID:
+            case HYBRID7:
+            case OFTC_HYBRID:
+            case SCOUTLINK_HYBRID:
+            case IRCD_RIZON:
+            case PLEXUS:
+            case RATBOX:
+            case CHARYBDIS:
+            case IRCD_SEVEN:
+            case HYPERION:
+            case DANCER:
+            case SHADOW:
+            case BAHAMUT:
+                return HYBRID;
+            case INSPIRCD:
+            case UNREAL4:
+                return INSPIRCD;
+            case UNREAL:
+                return UNREAL;
+            case BITLBEE:
+            case BITLBEE_OLD:
+            case PASTICHE:
+                return NONE;
+            default:
+                return RFC1459;
+        }
+    }
+
+    /**
+     * Gets the penalty that may be accrued before the server stops processing
+     * lines.
+     *
+     * @return The capacity, in milliseconds
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the penalty the server will apply for the given line. Servers
+     * penalise the bytes they receive, so the length of the line is measured
+     * as UTF-8.
+     *
+     * @param line The line to be sent, without its terminator
+     * @return The cost of the line, in milliseconds
+     */
+    public long getCost(final String line) {
+        long cost = lineCost;
+        if (bytesPerSecond > 0) {
+            cost += (getEncodedLength(line) + 2) * 1000L / bytesPerSecond;
+        }
+        if (!commandCosts.isEmpty()) {
+            cost += commandCosts.getOrDefault(getCommand(line), 0L);
+        }
+        return cost;
+    }
+
+    /**
+     * Gets the command of a line, skipping any tags or prefix.
+     *
+     * @param line The line to get the command of
+     * @return The upper case command
+     */
+    private static String getCommand(final String line) {
+        int start = 0;
+        while (start < line.length()
+                && (line.charAt(start) == '@' || line.charAt(start) == ':')) {
+            final int space = line.indexOf(' ', start);
+            start = space == -1 ? line.length() : space + 1;
+        }
+        final int end = line.indexOf(' ', start);
+        return line.substring(start, end == -1 ? line.length() : end).toUpperCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Gets the number of bytes a line takes up when encoded as UTF-8, without
+     * actually encoding it.
+     *
+     * @param line The line to measure
+     * @return The encoded length of the line, in bytes
+     */
+    private static int getEncodedLength(final String line) {
+        int length = line.length();
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (c >= 0x800) {
+                // Surrogate pairs are two chars for four bytes, so both count one extra.
+                length += Character.isSurrogate(c) ? 1 : 2;
+            } else if (c >= 0x80) {
+                length++;
+            }
+        }
+        return length;
+    }
+
+    private static Map<String, Long> costs(final Object... pairs) {
+        final Map<String, Long> costs = new HashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            costs.put((String) pairs[i], ((Number) pairs[i + 1]).longValue());
+        }
+        return costs;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[capacity %d, line %d, bytes/s %d, commands %s]", capacity,
+                lineCost, bytesPerSecond, commandCosts);
+    }
+
+}
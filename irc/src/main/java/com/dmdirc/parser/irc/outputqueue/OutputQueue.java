@@ -29,6 +29,9 @@ import java.io.PrintWriter;
 import java.util.Comparator;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+
+import javax.annotation.Nullable;
 
 /**
  * This class handles the Parser output Queue.
@@ -45,6 +48,17 @@ public abstract class OutputQueue {
     private final BlockingQueue<QueueItem> queue;
     /** The thread on which we will send items. */
     private Thread sendingThread;
+    /** Factory used to create the sending thread, or null to create an ordinary thread. */
+    @Nullable
+    private volatile ThreadFactory threadFactory;
+    /** Merger used to combine lines with the line queued before them, if any. */
+    @Nullable
+    private volatile LineMerger lineMerger;
+    /** Lock held while lines are merged into the last queued item. */
+    private final Object mergeLock = new Object();
+    /** The last item queued, which the next line may be merged into. */
+    @Nullable
+    private volatile QueueItem lastItem;
 
     /**
      * Creates a new instance of {@link OutputQueue} that will sort items using the given
@@ -53,7 +67,16 @@ public abstract class OutputQueue {
      * @param itemComparator The comparator to use to sort queued items.
      */
     protected OutputQueue(final Comparator<QueueItem> itemComparator) {
-        queue = new PriorityBlockingQueue<>(10, itemComparator);
+        this(new PriorityBlockingQueue<>(10, itemComparator));
+    }
+
+    /**
+     * Creates a new instance of {@link OutputQueue} that will hold items in the given queue.
+     *
+     * @param queue The queue to hold items waiting to be sent.
+     */
+    protected OutputQueue(final BlockingQueue<QueueItem> queue) {
+        this.queue = queue;
     }
 
     /**
@@ -65,6 +88,37 @@ public abstract class OutputQueue {
         out = new PrintWriter(outputStream, true);
     }
 
+    /**
+     * Sets the factory used to create the thread which sends queued items.
+     * This takes effect the next time a sending thread is needed.
+     *
+     * @param threadFactory The thread factory to use, or null to create an ordinary thread
+     */
+    public void setThreadFactory(@Nullable final ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * Sets the merger used to combine newly queued lines with the line queued
+     * immediately before them, if it has not yet been sent. This reduces the
+     * number of lines sent without changing their effect or order.
+     *
+     * @param lineMerger The merger to use, or null to queue every line separately
+     */
+    public void setLineMerger(@Nullable final LineMerger lineMerger) {
+        this.lineMerger = lineMerger;
+    }
+
+    /**
+     * Gets the merger used to combine queued lines.
+     *
+     * @return The current merger, or null if lines are not merged
+     */
+    @Nullable
+    public LineMerger getLineMerger() {
+        return lineMerger;
+    }
+
     /**
      * Is output queueing enabled?
      *
@@ -144,6 +198,7 @@ public abstract class OutputQueue {
             sendingThread = null;
         }
         queue.clear();
+        lastItem = null;
     }
 
     /**
@@ -183,14 +238,60 @@ public abstract class OutputQueue {
             send(line);
         } else {
             if (sendingThread == null || !sendingThread.isAlive()) {
-                sendingThread = new Thread(this::handleQueuedItems, "IRC Parser queue handler");
+                final ThreadFactory factory = threadFactory;
+                sendingThread = factory == null
+                        ? new Thread(this::handleQueuedItems, "IRC Parser queue handler")
+                        : factory.newThread(this::handleQueuedItems);
                 sendingThread.start();
             }
 
+            queueLine(line, priority);
+        }
+    }
+
+    /**
+     * Queues a line to be sent, merging it with the last queued line if a
+     * {@link LineMerger} has been set and the line has not yet been sent.
+     *
+     * @param line The raw line to be sent to the server.
+     * @param priority The priority at which the line should be sent.
+     */
+    protected void queueLine(final String line, final QueuePriority priority) {
+        final LineMerger merger = lineMerger;
+        if (merger == null) {
+            enqueue(line, priority);
+            return;
+        }
+
+        synchronized (mergeLock) {
+            final QueueItem last = lastItem;
+            if (last != null && last.getPriority() == priority && canMerge(last, line)) {
+                final String merged = merger.merge(last.getLine(), line);
+                // If the last item has already been taken, this line is sent on its own.
+                if (merged != null && remove(last)) {
+                    final QueueItem item = last.withLine(merged);
+                    lastItem = item;
+                    enqueue(item);
+                    return;
+                }
+            }
             enqueue(line, priority);
         }
     }
 
+    /**
+     * Determines whether a line may be merged into the given queued item.
+     * Queues which order items by more than their priority should override
+     * this to prevent merges that would reorder lines.
+     *
+     * @param queued The item the line would be merged into
+     * @param line The line being queued
+     * @return True if the line may be merged, false otherwise
+     */
+    protected boolean canMerge(final QueueItem queued, final String line) {
+        return true;
+    }
+
     /**
      * Sends queued items to the output channel, blocking or waiting as necessary.
      *
@@ -205,7 +306,29 @@ public abstract class OutputQueue {
      * @param priority The priority at which the line should be sent.
      */
     protected void enqueue(final String line, final QueuePriority priority) {
-        queue.add(QueueItem.create(line, priority));
+        final QueueItem item = QueueItem.create(line, priority);
+        lastItem = item;
+        enqueue(item);
+    }
+
+    /**
+     * Adds an item to the queue. Subclasses which hold items themselves should
+     * override this along with {@link #remove(QueueItem)}.
+     *
+     * @param item The item to be queued.
+     */
+    protected void enqueue(final QueueItem item) {
+        queue.add(item);
+    }
+
+    /**
+     * Removes an item from the queue, if it has not yet been sent.
+     *
+     * @param item The item to be removed.
+     * @return True if the item was removed, false if it was no longer queued.
+     */
+    protected boolean remove(final QueueItem item) {
+        return queue.remove(item);
     }
 
     /**
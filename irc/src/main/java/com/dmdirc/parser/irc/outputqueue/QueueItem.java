@@ -68,6 +68,17 @@ public abstract class QueueItem {
      */
     public abstract QueuePriority getPriority();
 
+    /**
+     * Creates a copy of this item with a different line, which keeps this
+     * item's place in the queue.
+     *
+     * @param line The line to be sent to the server.
+     * @return A new item to be submitted to the queue in place of this one.
+     */
+    public QueueItem withLine(final String line) {
+        return new AutoValue_QueueItem(line, getTime(), getItemNumber(), getPriority());
+    }
+
     @Override
     public String toString() {
         return String.format("[%s %s] %s", getPriority(), getTime(), getLine());
@@ -0,0 +1,441 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.outputqueue;
+
+import com.dmdirc.parser.common.QueuePriority;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A queue of items which shares output fairly between the targets lines are
+ * addressed to.
+ *
+ * <p>Within each priority, items are grouped by their target (the first
+ * parameter of the line, such as the channel or nick a message is sent to)
+ * and the targets take turns using deficit round-robin: each turn a target
+ * may send up to {@link #QUANTUM} bytes, and any it doesn't use is carried
+ * over to its next turn while it still has items queued. Items for the same
+ * target are always sent in the order they were queued. This stops a long
+ * paste to one channel from holding up replies to everywhere else, while
+ * the paste still drains as fast as the queue is emptied.
+ *
+ * <p>Between priorities, the head of each priority's rotation is compared
+ * using the given comparator, so starvation handling such as that offered
+ * by {@link QueueComparators} still applies.
+ */
+public class TargetFairQueue extends AbstractQueue<QueueItem> implements BlockingQueue<QueueItem> {
+
+    /** Number of bytes each target may send per turn. */
+    static final int QUANTUM = 512;
+    /** Comparator used to choose between the heads of each priority. */
+    private final Comparator<QueueItem> comparator;
+    /** Lock guarding all state. */
+    private final ReentrantLock lock = new ReentrantLock();
+    /** Signalled when an item is added. */
+    private final Condition notEmpty = lock.newCondition();
+    /** Items waiting to be sent, by priority. */
+    private final Map<QueuePriority, Rotation> rotations = new EnumMap<>(QueuePriority.class);
+    /** Number of items in the queue. */
+    private int count;
+
+    /**
+     * Creates a new queue which will use the given comparator to choose
+     * between priorities.
+     *
+     * @param comparator The comparator to order the heads of each priority by
+     */
+    public TargetFairQueue(final Comparator<QueueItem> comparator) {
+        this.comparator = comparator;
+        for (QueuePriority priority : QueuePriority.values()) {
+            rotations.put(priority, new Rotation());
+        }
+    }
+
+    @Override
+    public boolean offer(final QueueItem item) {
+        lock.lock();
+        try {
+            rotations.get(item.getPriority()).add(item);
+            count++;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(final QueueItem item) {
+        offer(item);
+    }
+
+    @Override
+    public boolean offer(final QueueItem item, final long timeout, final TimeUnit unit) {
+        return offer(item);
+    }
+
+    @Override
+    public QueueItem peek() {
+        lock.lock();
+        try {
+            final Rotation rotation = getNextRotation();
+            return rotation == null ? null : rotation.peek();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public QueueItem poll() {
+        lock.lock();
+        try {
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public QueueItem take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                notEmpty.await();
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public QueueItem poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(final Object object) {
+        if (!(object instanceof QueueItem)) {
+            return false;
+        }
+        final QueueItem item = (QueueItem) object;
+        lock.lock();
+        try {
+            if (rotations.get(item.getPriority()).remove(item)) {
+                count--;
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int drainTo(final Collection<? super QueueItem> collection) {
+        return drainTo(collection, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(final Collection<? super QueueItem> collection, final int maxElements) {
+        if (collection == this) {
+            throw new IllegalArgumentException("Can't drain a queue to itself");
+        }
+        lock.lock();
+        try {
+            int drained = 0;
+            while (drained < maxElements && count > 0) {
+                collection.add(dequeue());
+                drained++;
+            }
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.lock();
+        try {
+            rotations.values().forEach(Rotation::clear);
+            count = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The iterator is over a snapshot of the queue, in no particular
+     * order, and does not support removal.
+     */
+    @Override
+    public Iterator<QueueItem> iterator() {
+        lock.lock();
+        try {
+            final List<QueueItem> items = new ArrayList<>(count);
+            rotations.values().forEach(rotation -> rotation.addTo(items));
+            return Collections.unmodifiableList(items).iterator();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the next item from the queue. Must be called while holding the
+     * lock.
+     *
+     * @return The next item, or null if the queue is empty
+     */
+    private QueueItem dequeue() {
+        final Rotation rotation = getNextRotation();
+        if (rotation == null) {
+            return null;
+        }
+        count--;
+        return rotation.poll();
+    }
+
+    /**
+     * Finds the priority whose next item should be sent first. Must be called
+     * while holding the lock.
+     *
+     * @return The rotation for that priority, or null if the queue is empty
+     */
+    private Rotation getNextRotation() {
+        Rotation next = null;
+        QueueItem nextItem = null;
+        for (Rotation rotation : rotations.values()) {
+            final QueueItem item = rotation.peek();
+            if (item != null && (nextItem == null || comparator.compare(item, nextItem) < 0)) {
+                next = rotation;
+                nextItem = item;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Gets the target of the given line, which is its first parameter. If
+     * the parameter is a list of targets, the first target is used.
+     *
+     * @param line The line to get the target of
+     * @return The lower case target, or an empty string if the line has no
+     * parameters
+     */
+    static String getTarget(final String line) {
+        int start = 0;
+        // Skip tags, prefix and command.
+        while (start < line.length()) {
+            final char first = line.charAt(start);
+            final int space = line.indexOf(' ', start);
+            start = space == -1 ? line.length() : space + 1;
+            if (first != '@' && first != ':') {
+                break;
+            }
+        }
+        if (start >= line.length() || line.charAt(start) == ':') {
+            return "";
+        }
+        int end = start;
+        while (end < line.length() && line.charAt(end) != ' ' && line.charAt(end) != ',') {
+            end++;
+        }
+        return line.substring(start, end).toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Determines whether a line may be merged into a queued item without
+     * changing the order lines are sent in. Merged lines are filed under the
+     * queued item's target, so this is only the case if the line has the same
+     * target.
+     *
+     * @param queued The item the line would be merged into
+     * @param line The line being queued
+     * @return True if the line may be merged, false otherwise
+     */
+    static boolean canMerge(final QueueItem queued, final String line) {
+        return getTarget(queued.getLine()).equals(getTarget(line));
+    }
+
+    /**
+     * Gets the number of bytes an item uses from its target's turn.
+     *
+     * @param item The item to get the cost of
+     * @return The cost of the item, no more than {@link #QUANTUM}
+     */
+    private static int getCost(final QueueItem item) {
+        return Math.min(QUANTUM, item.getLine().length() + 2);
+    }
+
+    /** The targets with items queued at one priority, in the order they take turns. */
+    private static class Rotation {
+
+        /** Targets with items queued, by name. */
+        private final Map<String, Target> targets = new HashMap<>();
+        /** Targets in the order they take turns. The first is the current turn. */
+        private final ArrayDeque<Target> turns = new ArrayDeque<>();
+
+        void add(final QueueItem item) {
+            final String name = getTarget(item.getLine());
+            Target target = targets.get(name);
+            if (target == null) {
+                target = new Target(name);
+                targets.put(name, target);
+                turns.addLast(target);
+            }
+            target.items.addLast(item);
+        }
+
+        /**
+         * Gets the item the current target will send next, moving on to the
+         * next target if the current one has used up its turn.
+         *
+         * @return The next item, or null if there are none
+         */
+        QueueItem peek() {
+            while (!turns.isEmpty()) {
+                final Target target = turns.peekFirst();
+                if (!target.credited) {
+                    target.deficit += QUANTUM;
+                    target.credited = true;
+                }
+                final QueueItem item = target.items.peekFirst();
+                if (target.deficit >= getCost(item)) {
+                    return item;
+                }
+                target.credited = false;
+                turns.addLast(turns.removeFirst());
+            }
+            return null;
+        }
+
+        /**
+         * Removes the item given by {@link #peek()}.
+         *
+         * @return The next item, or null if there are none
+         */
+        QueueItem poll() {
+            final QueueItem item = peek();
+            if (item == null) {
+                return null;
+            }
+            final Target target = turns.peekFirst();
+            target.items.removeFirst();
+            target.deficit -= getCost(item);
+            if (target.items.isEmpty()) {
+                // Targets don't keep unused credit once they've nothing to send.
+                turns.removeFirst();
+                targets.remove(target.name);
+            }
+            return item;
+        }
+
+        boolean remove(final QueueItem item) {
+            final Target target = targets.get(getTarget(item.getLine()));
+            // Items being removed are usually the most recently queued.
+            if (target == null || !target.items.removeLastOccurrence(item)) {
+                return false;
+            }
+            if (target.items.isEmpty()) {
+                turns.remove(target);
+                targets.remove(target.name);
+            }
+            return true;
+        }
+
+        void addTo(final Collection<QueueItem> collection) {
+            turns.forEach(target -> collection.addAll(target.items));
+        }
+
+        void clear() {
+            targets.clear();
+            turns.clear();
+        }
+
+    }
+
+    /** The items queued for a single target at one priority. */
+    private static class Target {
+
+        /** The name of the target. */
+        private final String name;
+        /** Items waiting to be sent, oldest first. */
+        private final ArrayDeque<QueueItem> items = new ArrayDeque<>();
+        /** Bytes the target may still send. */
+        private int deficit;
+        /** Whether the target has been given its quantum for the current turn. */
+        private boolean credited;
+
+        Target(final String name) {
+            this.name = name;
+        }
+
+    }
+
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.outputqueue;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * A rate limiting queue which models the server's own flood protection.
+ *
+ * <p>Each line is charged according to a {@link FloodProfile}, based on its
+ * size and command, against a bucket which refills in real time. Lines are
+ * sent by priority as soon as the bucket can pay for them; when it can't, the
+ * sending thread waits until the exact time it will be able to, or until a
+ * new line is queued. Lines of the same priority are shared fairly between
+ * their targets, as described by {@link TargetFairQueue}.
+ *
+ * <p>If the server warns that we are flooding (see {@link #floodWarning()}),
+ * the refill rate is halved and then recovers gradually while no further
+ * warnings are received.
+ */
+public class TokenBucketOutputQueue extends OutputQueue {
+
+    /** Factor the refill rate is multiplied by on each flood warning. */
+    private static final double BACKOFF_FACTOR = 0.5;
+    /** The lowest refill rate we will back off to. */
+    private static final double MIN_RATE = 0.125;
+    /** Amount the refill rate recovers by after each quiet interval. */
+    private static final double RECOVERY_STEP = 0.125;
+    /** Time without warnings after which the refill rate starts to recover. */
+    private static final long RECOVERY_INTERVAL = TimeUnit.SECONDS.toNanos(30);
+    /** Source of the current time, in nanoseconds. */
+    private final LongSupplier clock;
+    /** Lock guarding the bucket. */
+    private final ReentrantLock lock = new ReentrantLock();
+    /** Signalled when lines are queued or the profile changes. */
+    private final Condition changed = lock.newCondition();
+
+    /** The profile lines are charged according to. */
+    private FloodProfile profile;
+    /** Penalty, in milliseconds, that we can currently afford. May be negative. */
+    private double tokens;
+    /** Penalty, in milliseconds, that drains from the bucket each millisecond. */
+    private double rate = 1;
+    /** Time the bucket was last refilled. */
+    private long lastRefill;
+    /** Time the rate was last reduced or recovered. */
+    private long lastAdjustment;
+    /** Number of flood warnings received. */
+    private long floodWarnings;
+
+    /**
+     * Creates a new queue using the {@link FloodProfile#RFC1459} profile.
+     */
+    public TokenBucketOutputQueue() {
+        this(FloodProfile.RFC1459);
+    }
+
+    /**
+     * Creates a new queue using the given profile.
+     *
+     * @param profile The profile to charge lines according to
+     */
+    public TokenBucketOutputQueue(final FloodProfile profile) {
+        this(profile, System::nanoTime);
+    }
+
+    /**
+     * Creates a new queue using the given profile and clock.
+     *
+     * @param profile The profile to charge lines according to
+     * @param clock Source of the current time, in nanoseconds
+     */
+    TokenBucketOutputQueue(final FloodProfile profile, final LongSupplier clock) {
+        super(new TargetFairQueue(
+                QueueComparators.byPriorityThenNumber(Duration.ofSeconds(10))));
+        this.clock = clock;
+        this.profile = profile;
+        this.tokens = profile.getCapacity();
+        this.lastRefill = clock.getAsLong();
+        this.lastAdjustment = lastRefill;
+    }
+
+    /**
+     * Gets the profile lines are charged according to.
+     *
+     * @return The current flood profile
+     */
+    public FloodProfile getProfile() {
+        lock.lock();
+        try {
+            return profile;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the profile lines are charged according to, for example once the
+     * type of server is known.
+     *
+     * @param profile The new flood profile
+     */
+    public void setProfile(final FloodProfile profile) {
+        lock.lock();
+        try {
+            refill();
+            this.profile = profile;
+            tokens = Math.min(tokens, profile.getCapacity());
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the rate the bucket currently refills at, relative to the rate
+     * given by the profile.
+     *
+     * @return The current refill rate, between 0 and 1
+     */
+    public double getRate() {
+        lock.lock();
+        try {
+            refill();
+            return rate;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the penalty that could be spent right now without waiting.
+     *
+     * @return The available penalty, in milliseconds
+     */
+    public long getAvailable() {
+        lock.lock();
+        try {
+            refill();
+            return (long) tokens;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of flood warnings received from the server.
+     *
+     * @return The number of flood warnings
+     */
+    public long getFloodWarnings() {
+        lock.lock();
+        try {
+            return floodWarnings;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Called when the server indicates that we are sending too quickly. The
+     * bucket is emptied and the refill rate reduced.
+     */
+    public void floodWarning() {
+        lock.lock();
+        try {
+            refill();
+            floodWarnings++;
+            rate = Math.max(MIN_RATE, rate * BACKOFF_FACTOR);
+            tokens = Math.min(tokens, 0);
+            lastAdjustment = lastRefill;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    protected boolean canMerge(final QueueItem queued, final String line) {
+        return TargetFairQueue.canMerge(queued, line);
+    }
+
+    @Override
+    protected void enqueue(final QueueItem item) {
+        super.enqueue(item);
+        lock.lock();
+        try {
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    protected void send(final String line) {
+        // Lines sent immediately skip the queue, but the server still counts them.
+        lock.lock();
+        try {
+            refill();
+            tokens -= profile.getCost(line);
+        } finally {
+            lock.unlock();
+        }
+        super.send(line);
+    }
+
+    @Override
+    protected void handleQueuedItems() {
+        try {
+            while (isQueueEnabled()) {
+                super.send(takeNext().getLine());
+            }
+        } catch (InterruptedException ex) {
+            // Do nothing
+        }
+    }
+
+    /**
+     * Waits until the next item can be afforded, then removes it from the
+     * queue and charges for it.
+     *
+     * @return The next item to send
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    QueueItem takeNext() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                final long delay = getDelay();
+                if (delay == 0) {
+                    // A higher priority item may have arrived since we looked,
+                    // in which case that's sent and charged for instead.
+                    final QueueItem item = getQueue().poll();
+                    if (item != null) {
+                        // The item may have been merged into another since we looked.
+                        tokens -= profile.getCost(item.getLine());
+                        return item;
+                    }
+                } else if (delay == Long.MAX_VALUE) {
+                    changed.await();
+                } else {
+                    changed.awaitNanos(delay);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the time until the next queued item can be afforded. Must be called
+     * while holding the lock.
+     *
+     * @return The delay in nanoseconds, 0 if the item can be sent now, or
+     * {@link Long#MAX_VALUE} if there are no items
+     */
+    long getDelay() {
+        final QueueItem item = getQueue().peek();
+        if (item == null) {
+            return Long.MAX_VALUE;
+        }
+
+        refill();
+        // Lines costing more than the capacity are sent once the bucket is full.
+        final double cost = Math.min(profile.getCost(item.getLine()), profile.getCapacity());
+        if (tokens >= cost) {
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((cost - tokens) / rate
+                * TimeUnit.MILLISECONDS.toNanos(1)));
+    }
+
+    /**
+     * Adds the penalty that has drained since the last refill to the bucket,
+     * and recovers the refill rate if there have been no recent warnings.
+     * Must be called while holding the lock.
+     */
+    private void refill() {
+        final long now = clock.getAsLong();
+        if (rate < 1 && now - lastAdjustment >= RECOVERY_INTERVAL) {
+            final long intervals = (now - lastAdjustment) / RECOVERY_INTERVAL;
+            rate = Math.min(1, rate + intervals * RECOVERY_STEP);
+            lastAdjustment += intervals * RECOVERY_INTERVAL;
+        }
+
+        final double elapsed = (double) (now - lastRefill) / TimeUnit.MILLISECONDS.toNanos(1);
+        tokens = Math.min(profile.getCapacity(), tokens + elapsed * rate);
+        lastRefill = now;
+    }
+
+}
@@ -22,12 +22,12 @@
 
 package com.dmdirc.parser.irc.processors;
 
-import com.dmdirc.parser.common.CallbackManager;
 import com.dmdirc.parser.common.ParserError;
 import com.dmdirc.parser.common.QueuePriority;
 import com.dmdirc.parser.irc.IRCChannelInfo;
 import com.dmdirc.parser.irc.IRCClientInfo;
 import com.dmdirc.parser.irc.IRCParser;
+import com.dmdirc.parser.irc.IRCParserCallbackManager;
 
 import java.time.LocalDateTime;
 
@@ -115,7 +115,7 @@ public abstract class IRCProcessor {
         return parser.getChannel(name);
     }
 
-    protected CallbackManager getCallbackManager() {
+    protected IRCParserCallbackManager getCallbackManager() {
         return parser.getCallbackManager();
     }
 
@@ -24,6 +24,7 @@ package com.dmdirc.parser.irc.processors;
 
 import com.dmdirc.parser.irc.CapabilityState;
 import com.dmdirc.parser.irc.IRCParser;
+import com.dmdirc.parser.irc.LabeledResponseTracker;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -66,6 +67,11 @@ public class ProcessCap extends IRCProcessor {
         supportedCapabilities.add("extended-join");
         supportedCapabilities.add("self-message");
         supportedCapabilities.add("server-time");
+        supportedCapabilities.add("batch");
+
+        // IRCv3.2+
+        supportedCapabilities.add("message-tags");
+        supportedCapabilities.add(LabeledResponseTracker.CAPABILITY);
 
         // Freenode
         // supportedCapabilities.add("identify-msg");
@@ -23,12 +23,12 @@
 package com.dmdirc.parser.irc.processors;
 
 import com.dmdirc.parser.common.ParserError;
-import com.dmdirc.parser.common.QueuePriority;
 import com.dmdirc.parser.events.ChannelJoinEvent;
 import com.dmdirc.parser.events.ChannelSelfJoinEvent;
 import com.dmdirc.parser.interfaces.ChannelClientInfo;
 import com.dmdirc.parser.interfaces.ChannelInfo;
 import com.dmdirc.parser.irc.CapabilityState;
+import com.dmdirc.parser.irc.ChannelTrackingLevel;
 import com.dmdirc.parser.irc.IRCChannelClientInfo;
 import com.dmdirc.parser.irc.IRCChannelInfo;
 import com.dmdirc.parser.irc.IRCClientInfo;
@@ -36,8 +36,6 @@ import com.dmdirc.parser.irc.IRCParser;
 import com.dmdirc.parser.irc.ModeManager;
 import com.dmdirc.parser.irc.PrefixModeManager;
 import com.dmdirc.parser.irc.ProcessorNotFoundException;
-import com.dmdirc.parser.irc.events.IRCDataOutEvent;
-import net.engio.mbassy.listener.Handler;
 
 import java.time.LocalDateTime;
 import java.util.Arrays;
@@ -46,10 +44,12 @@ import java.util.Queue;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import javax.inject.Singleton;
 
 /**
  * Process a channel join.
  */
+@Singleton
 public class ProcessJoin extends IRCProcessor {
 
     /** The manager to use to access prefix modes. */
@@ -77,8 +77,6 @@ public class ProcessJoin extends IRCProcessor {
         this.prefixModeManager = prefixModeManager;
         this.userModeManager = userModeManager;
         this.chanModeManager = chanModeManager;
-
-        getCallbackManager().subscribe(this);
     }
 
     /**
@@ -127,6 +125,13 @@ public class ProcessJoin extends IRCProcessor {
             }
             IRCChannelInfo iChannel = parser.getChannel(token[2]);
 
+            if (iChannel != null && iChannel.getTrackingLevel() != ChannelTrackingLevel.FULL
+                    && iClient != parser.getLocalClient()) {
+                // Members of channels that aren't fully tracked are never created.
+                iChannel.adjustMemberCount(1);
+                return;
+            }
+
             callDebugInfo(IRCParser.DEBUG_INFO, "processJoin: client: %s", iClient);
             callDebugInfo(IRCParser.DEBUG_INFO, "processJoin: channel: %s", iChannel);
 
@@ -163,7 +168,10 @@ public class ProcessJoin extends IRCProcessor {
                     // joined.
                     callDebugInfo(IRCParser.DEBUG_INFO, "processJoin: Adding client to channel.");
                     final IRCChannelClientInfo iChannelClient = iChannel.addClient(iClient);
-                    callChannelJoin(date, iChannel, iChannelClient);
+                    if (!parser.getNetsplitTracker().join(date, iChannelClient)
+                            || parser.getNetsplitUserEvents()) {
+                        callChannelJoin(date, iChannel, iChannelClient);
+                    }
                     callDebugInfo(IRCParser.DEBUG_INFO, "processJoin: Added client to channel.");
                     return;
                 } else {
@@ -174,11 +182,11 @@ public class ProcessJoin extends IRCProcessor {
             }
 
             iChannel = new IRCChannelInfo(parser, prefixModeManager, userModeManager,
-                    chanModeManager, channelName);
+                    chanModeManager, channelName, parser.getChannelTrackingLevel(channelName));
             // Add ourself to the channel, this will be overridden by the NAMES reply
             iChannel.addClient(iClient);
             parser.addChannel(iChannel);
-            sendString("MODE " + iChannel.getName(), QueuePriority.LOW);
+            parser.getChannelSyncPacer().joined(iChannel);
 
             final PendingJoin pendingJoin = pendingJoins.poll();
             if (pendingJoin != null && parser.getStringConverter().equalsIgnoreCase(pendingJoin.getChannel(), channelName)) {
@@ -204,13 +212,16 @@ public class ProcessJoin extends IRCProcessor {
         }
     }
 
-    @Handler(condition = "msg.action == 'JOIN'")
-    public void handleDataOut(final IRCDataOutEvent event) {
-        // As long as this is called before the resulting DataIn
-        // Processors fire then this will work, otherwise we'll end
-        // up with an out-of-sync pendingJoins list.
-
-        final String[] newLine = event.getTokenisedData();
+    /**
+     * Called by the parser when a JOIN is sent to the server, so that any
+     * keys given can be matched up with the replies.
+     *
+     * <p>As long as this is called before the replies are processed this
+     * will work, otherwise we'll end up with an out-of-sync pendingJoins list.
+     *
+     * @param newLine The tokenised JOIN line
+     */
+    public void joinSent(final String... newLine) {
         if (newLine.length > 1) {
             final Queue<String> keys = new LinkedList<>();
 
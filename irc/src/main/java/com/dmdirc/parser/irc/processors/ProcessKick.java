@@ -26,6 +26,7 @@ import com.dmdirc.parser.common.ParserError;
 import com.dmdirc.parser.events.ChannelKickEvent;
 import com.dmdirc.parser.interfaces.ChannelClientInfo;
 import com.dmdirc.parser.interfaces.ChannelInfo;
+import com.dmdirc.parser.irc.ChannelTrackingLevel;
 import com.dmdirc.parser.irc.IRCChannelClientInfo;
 import com.dmdirc.parser.irc.IRCChannelInfo;
 import com.dmdirc.parser.irc.IRCClientInfo;
@@ -66,6 +67,11 @@ public class ProcessKick extends IRCProcessor {
         final IRCClientInfo iKicker = getClientInfo(token[0]);
         final IRCChannelInfo iChannel = getChannel(token[2]);
 
+        if (iChannel != null && iChannel.getTrackingLevel() != ChannelTrackingLevel.FULL
+                && iClient != parser.getLocalClient()) {
+            iChannel.adjustMemberCount(-1);
+            return;
+        }
         if (iClient == null) {
             return;
         }
@@ -62,11 +62,14 @@ public class ProcessList extends IRCProcessor {
                 getCallbackManager().publish(new GroupListStartEvent(parser, time));
                 break;
             case "322":
-                getCallbackManager().publish(new GroupListEntryEvent(parser, time,
-                        token[3], Integer.parseInt(token[4]), token[5]));
+                final GroupListEntryEvent entry = new GroupListEntryEvent(parser, time,
+                        token[3], Integer.parseInt(token[4]), token[5]);
+                getCallbackManager().publish(entry);
+                parser.getQueryManager().addListEntry(entry);
                 break;
             case "323":
                 getCallbackManager().publish(new GroupListEndEvent(parser, time));
+                parser.getQueryManager().listEnded();
                 break;
         }
     }
@@ -140,14 +140,26 @@ public class ProcessListModes extends IRCProcessor {
             isCleverMode = true;
         }
 
+        // If the server labeled its reply, we know exactly which list it is.
+        final Character requestedMode = isCleverMode ? null : getRequestedMode(channel);
+        if (requestedMode != null) {
+            if ("482".equals(sParam)) {
+                return;
+            }
+            parser.callDebugInfo(IRCParser.DEBUG_LMQ, "Label says this is %s", requestedMode);
+            mode = requestedMode;
+        }
+
         // Unknown mode.
         if (mode == ' ') {
-            parser.callDebugInfo(IRCParser.DEBUG_LMQ, "Unknown mode line: %s", Arrays.toString(token));
+            if (parser.isDebugging(IRCParser.DEBUG_LMQ)) {
+                parser.callDebugInfo(IRCParser.DEBUG_LMQ, "Unknown mode line: %s", Arrays.toString(token));
+            }
             return;
         }
 
         final Queue<Character> listModeQueue = channel.getListModeQueue();
-        if (!isCleverMode && listModeQueue != null) {
+        if (!isCleverMode && requestedMode == null && listModeQueue != null) {
             if ("482".equals(sParam)) {
                 parser.callDebugInfo(IRCParser.DEBUG_LMQ, "Dropped LMQ mode %s", listModeQueue.poll());
                 return;
@@ -198,7 +210,7 @@ public class ProcessListModes extends IRCProcessor {
         }
 
         if (isItem) {
-            if (!isCleverMode && listModeQueue == null && ServerTypeGroup.FREENODE.isMember(serverType) && token.length > 4 && mode == 'b') {
+            if (!isCleverMode && requestedMode == null && listModeQueue == null && ServerTypeGroup.FREENODE.isMember(serverType) && token.length > 4 && mode == 'b') {
                 // Assume mode is a 'd' mode
                 mode = 'd';
                 // Now work out if its not (or attempt to.)
@@ -280,6 +292,28 @@ public class ProcessListModes extends IRCProcessor {
         }
     }
 
+    /**
+     * Gets the list mode that was requested by the labeled command the
+     * current line is in response to, if any.
+     *
+     * @param channel The channel the current line is about
+     * @return The requested mode, or null if the line isn't a labeled
+     * response to a request for a single list mode of the channel
+     */
+    private Character getRequestedMode(final IRCChannelInfo channel) {
+        final String request = parser.getLabeledResponseTracker().getCurrentRequest();
+        if (request == null) {
+            return null;
+        }
+
+        final String[] tokens = IRCParser.tokeniseLine(request);
+        if (tokens.length == 3 && "MODE".equalsIgnoreCase(tokens[0]) && tokens[2].length() == 1
+                && parser.getStringConverter().equalsIgnoreCase(tokens[1], channel.getName())) {
+            return tokens[2].charAt(0);
+        }
+        return null;
+    }
+
     /**
      * Callback to all objects implementing the ChannelGotListModes Callback.
      *
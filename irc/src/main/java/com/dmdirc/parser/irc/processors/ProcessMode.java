@@ -92,6 +92,7 @@ public class ProcessMode extends IRCProcessor {
                 sChannelName = token[3];
                 sModestr = new String[token.length - 4];
                 System.arraycopy(token, 4, sModestr, 0, token.length - 4);
+                parser.getQueryManager().modeReceived(sChannelName, String.join(" ", sModestr));
                 break;
             case "221":
                 processUserMode(date, sParam, token, new String[]{token[token.length - 1]}, true);
@@ -190,7 +191,9 @@ public class ProcessMode extends IRCProcessor {
                         callDebugInfo(IRCParser.DEBUG_INFO, "User Mode for client not on channel. Ignoring (%s)", sModeParam);
                         continue;
                     }
-                    callDebugInfo(IRCParser.DEBUG_INFO, "\tOld Mode Value: %s", iChannelClientInfo.getAllModes());
+                    if (parser.isDebugging(IRCParser.DEBUG_INFO)) {
+                        callDebugInfo(IRCParser.DEBUG_INFO, "\tOld Mode Value: %s", iChannelClientInfo.getAllModes());
+                    }
                     if (bPositive) {
                         iChannelClientInfo.addMode(cMode);
                     } else {
@@ -33,6 +33,8 @@ import com.dmdirc.parser.irc.ModeManager;
 import com.dmdirc.parser.irc.PrefixModeManager;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -85,10 +87,7 @@ public class ProcessNames extends IRCProcessor {
             iChannel.setAddingNames(false);
             callChannelGotNames(time, iChannel);
 
-            if (!iChannel.hasAskedForListModes()
-                    && parser.getAutoListMode()) {
-                iChannel.requestListModes();
-            }
+            parser.getChannelSyncPacer().gotNames(iChannel);
         } else {
             // Names
 
@@ -98,6 +97,20 @@ public class ProcessNames extends IRCProcessor {
                 return;
             }
 
+            switch (iChannel.getTrackingLevel()) {
+                case MESSAGES_ONLY:
+                    return;
+                case COUNTS_ONLY:
+                    if (!iChannel.isAddingNames()) {
+                        iChannel.setMemberCount(0);
+                    }
+                    iChannel.setAddingNames(true);
+                    iChannel.adjustMemberCount(countNames(token[token.length - 1]));
+                    return;
+                default:
+                    break;
+            }
+
             // If we are not expecting names, clear the current known names - this is fresh stuff!
             if (!iChannel.isAddingNames()) {
                 iChannel.emptyChannel();
@@ -105,6 +118,8 @@ public class ProcessNames extends IRCProcessor {
             iChannel.setAddingNames(true);
 
             final String[] sNames = token[token.length - 1].split(" ");
+            final List<IRCClientInfo> newClients = new ArrayList<>(sNames.length);
+            final List<String> newModes = new ArrayList<>(sNames.length);
             String sName = "";
             StringBuilder sModes = new StringBuilder();
             for (String sName1 : sNames) {
@@ -122,8 +137,10 @@ public class ProcessNames extends IRCProcessor {
                         break;
                     }
                 }
-                callDebugInfo(IRCParser.DEBUG_INFO, "Name: %s Modes: \"%s\"", sName,
-                        sModes.toString());
+                if (parser.isDebugging(IRCParser.DEBUG_INFO)) {
+                    callDebugInfo(IRCParser.DEBUG_INFO, "Name: %s Modes: \"%s\"", sName,
+                            sModes.toString());
+                }
 
                 IRCClientInfo iClient = getClientInfo(sName);
                 if (iClient == null) {
@@ -131,13 +148,39 @@ public class ProcessNames extends IRCProcessor {
                     parser.addClient(iClient);
                 }
                 iClient.setUserBits(sName, false); // Will do nothing if this isn't UHNAMES
-                final IRCChannelClientInfo iChannelClient = iChannel.addClient(iClient);
-                iChannelClient.setChanMode(sModes.toString());
+                newClients.add(iClient);
+                newModes.add(sModes.toString());
 
                 sName = "";
                 sModes = new StringBuilder();
             }
+
+            // Add everyone from this line to the channel in one go.
+            final List<IRCChannelClientInfo> channelClients = iChannel.addClients(newClients);
+            for (int i = 0; i < channelClients.size(); i++) {
+                channelClients.get(i).setChanMode(newModes.get(i));
+            }
+        }
+    }
+
+    /**
+     * Counts the names in a names reply, without splitting it.
+     *
+     * @param names The space separated names
+     * @return The number of names
+     */
+    private static int countNames(final String names) {
+        int count = 0;
+        boolean inName = false;
+        for (int i = 0; i < names.length(); i++) {
+            if (names.charAt(i) == ' ') {
+                inName = false;
+            } else if (!inName) {
+                inName = true;
+                count++;
+            }
         }
+        return count;
     }
 
     /**
@@ -33,7 +33,7 @@ import com.dmdirc.parser.irc.IRCClientInfo;
 import com.dmdirc.parser.irc.IRCParser;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
+import java.util.List;
 
 import javax.inject.Inject;
 
@@ -81,26 +81,29 @@ public class ProcessQuit extends IRCProcessor {
             sReason = token[token.length - 1];
         }
 
-        final Iterable<IRCChannelInfo> channelList = new ArrayList<>(parser.getChannels());
-        for (IRCChannelInfo iChannel : channelList) {
-            final IRCChannelClientInfo iChannelClient = iChannel.getChannelClient(iClient);
-            if (iChannelClient != null) {
-                if (parser.getRemoveAfterCallback()) {
-                    callChannelQuit(date, iChannel, iChannelClient, sReason);
-                }
-                if (iClient == parser.getLocalClient()) {
-                    iChannel.emptyChannel();
-                    parser.removeChannel(iChannel);
-                } else {
-                    iChannel.delClient(iClient);
-                }
-                if (!parser.getRemoveAfterCallback()) {
-                    callChannelQuit(date, iChannel, iChannelClient, sReason);
-                }
+        final List<IRCChannelClientInfo> memberships = iClient.getChannelMemberships();
+        final boolean isNetsplit = iClient != parser.getLocalClient()
+                && parser.getNetsplitTracker().quit(date, iClient, sReason, memberships);
+        final boolean callEvents = !isNetsplit || parser.getNetsplitUserEvents();
+
+        // Only visit the channels the client is actually on
+        for (IRCChannelClientInfo iChannelClient : memberships) {
+            final IRCChannelInfo iChannel = (IRCChannelInfo) iChannelClient.getChannel();
+            if (callEvents && parser.getRemoveAfterCallback()) {
+                callChannelQuit(date, iChannel, iChannelClient, sReason);
+            }
+            if (iClient == parser.getLocalClient()) {
+                iChannel.emptyChannel();
+                parser.removeChannel(iChannel);
+            } else {
+                iChannel.delClient(iClient);
+            }
+            if (callEvents && !parser.getRemoveAfterCallback()) {
+                callChannelQuit(date, iChannel, iChannelClient, sReason);
             }
         }
 
-        if (parser.getRemoveAfterCallback()) {
+        if (callEvents && parser.getRemoveAfterCallback()) {
             callQuit(date, iClient, sReason);
         }
         if (iClient == parser.getLocalClient()) {
@@ -108,7 +111,7 @@ public class ProcessQuit extends IRCProcessor {
         } else {
             parser.removeClient(iClient);
         }
-        if (!parser.getRemoveAfterCallback()) {
+        if (callEvents && !parser.getRemoveAfterCallback()) {
             callQuit(date, iClient, sReason);
         }
     }
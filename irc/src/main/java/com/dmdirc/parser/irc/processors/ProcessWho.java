@@ -31,6 +31,8 @@ import com.dmdirc.parser.interfaces.ChannelInfo;
 import com.dmdirc.parser.interfaces.ClientInfo;
 import com.dmdirc.parser.irc.IRCClientInfo;
 import com.dmdirc.parser.irc.IRCParser;
+import com.dmdirc.parser.irc.QueryManager;
+import com.dmdirc.parser.irc.QueryManager.QueryType;
 
 import java.time.LocalDateTime;
 
@@ -48,13 +50,13 @@ public class ProcessWho extends IRCProcessor {
      */
     @Inject
     public ProcessWho(final IRCParser parser) {
-        super(parser, "352");
+        super(parser, "352", "354", "315");
     }
 
     /**
      * Process a /who reply.
      *
-     * @param sParam Type of line to process ("352")
+     * @param sParam Type of line to process ("352", "354", "315")
      * @param token IRCTokenised line to process
      */
     @Override
@@ -68,18 +70,31 @@ public class ProcessWho extends IRCProcessor {
         // :server 352 mynickname channel username address server nick flags :hops info
         //     0    1      2         3     4          5      6      7    8        9
 
+        if ("354".equals(sParam)) {
+            // WHOX replies are applied in bulk once the WHO has ended.
+            parser.getWhoxTracker().addReply(token);
+            return;
+        } else if ("315".equals(sParam)) {
+            // :server 315 mynickname target :End of /WHO list.
+            if (!parser.getWhoxTracker().ended(time, token[3])) {
+                parser.getQueryManager().whoEnded(token[3]);
+            }
+            return;
+        }
+
+        parser.getWhoxTracker().addPlainReply();
+
         final IRCClientInfo client = getClientInfo(token[7]);
+        final String mode = token[8];
+        final AwayState isAway = mode.indexOf('G') == -1 ? AwayState.HERE : AwayState.AWAY;
         if (client != null) {
             // Update ident/host
             client.setUserBits(token[7] + '!' + token[4] + '@' + token[5], false);
             // Update real name
             if (client.getRealname().isEmpty()) {
-                final String name = token[9].split(" ", 2)[1];
-                client.setRealName(name);
+                client.setRealName(getRealName(token));
             }
             // Update away state
-            final String mode = token[8];
-            final AwayState isAway = mode.indexOf('G') == -1 ? AwayState.HERE : AwayState.AWAY;
             if (client.getAwayState() != isAway) {
                 final AwayState oldState = client.getAwayState();
                 client.setAwayState(isAway);
@@ -88,15 +103,36 @@ public class ProcessWho extends IRCProcessor {
                 } else {
                     callAwayStateOther(time, client, oldState, isAway);
 
-                    for (ChannelInfo iChannel : parser.getChannels()) {
-                        final ChannelClientInfo iChannelClient = iChannel.getChannelClient(client);
-                        if (iChannelClient != null) {
-                            callChannelAwayStateOther(time, iChannel, iChannelClient, oldState, isAway);
-                        }
+                    for (ChannelClientInfo iChannelClient : client.getChannelMemberships()) {
+                        callChannelAwayStateOther(time, iChannelClient.getChannel(), iChannelClient,
+                                oldState, isAway);
                     }
                 }
             }
         }
+
+        final QueryManager queries = parser.getQueryManager();
+        if (queries.isOutstanding(QueryType.WHO)) {
+            final IRCClientInfo result;
+            if (client == null) {
+                result = parser.getClient(token[7] + '!' + token[4] + '@' + token[5]);
+                result.setRealName(getRealName(token));
+                result.setAwayState(isAway);
+            } else {
+                result = client;
+            }
+            queries.addWhoReply(token[3], result);
+        }
+    }
+
+    /**
+     * Gets the real name from a /who reply, which follows the hop count.
+     *
+     * @param token IRCTokenised line to process
+     * @return The real name given in the reply
+     */
+    private static String getRealName(final String... token) {
+        return token[9].split(" ", 2)[1];
     }
 
     /**
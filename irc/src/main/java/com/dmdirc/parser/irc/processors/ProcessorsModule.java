@@ -56,6 +56,11 @@ public class ProcessorsModule {
         return processor;
     }
 
+    @Provides(type = Provides.Type.SET)
+    public IRCProcessor getBatchProcessor(final ProcessBatch processor) {
+        return processor;
+    }
+
     @Provides(type = Provides.Type.SET)
     public IRCProcessor getCapProcessor(final ProcessCap processor) {
         return processor;
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dmdirc.parser.irc;
+
+import com.dmdirc.parser.common.SystemEncoder;
+import com.dmdirc.parser.interfaces.Encoder;
+import com.dmdirc.parser.irc.IRCReader.ReadLine;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BufferedIRCReaderTest {
+
+    /** Lines covering the different shapes of input the reader must handle. */
+    private static final String INPUT = ":server 001 nick :Welcome to the network\r\n"
+            + "PING :12345\n"
+            + ":nick!user@host PRIVMSG #chan :hello  there :)\r\n"
+            + "foo bar  baz  :qux  baz\r\n"
+            + "  leading spaces\r\n"
+            + "trailing spaces   \r\n"
+            + "   \r\n"
+            + "\r\n"
+            + "te\rst\r\n"
+            + "@123@:test ing\r\n"
+            + "@123 :test ing\r\n"
+            + "@tag=value @123@:test ing\r\n"
+            + "@123@@tag=value :test ing\r\n"
+            + "@time=2017-01-01T00:00:00.000Z;a=b;c; :nick!u@h PRIVMSG #c :x :y\r\n"
+            + "@account=foo :nick!u@h 332 me #chan :the topic\r\n"
+            + ":src 1 ö y z :x\r\n"
+            + "unterminated";
+
+    /** Verifies that the buffered reader produces the same lines as the original reader. */
+    @Test
+    public void testMatchesIRCReader() throws IOException {
+        final StringBuilder longLine = new StringBuilder(":server 353 me = #chan :");
+        for (int i = 0; i < 300; i++) {
+            longLine.append("nick").append(i).append(' ');
+        }
+        final byte[] input = (INPUT.replace("unterminated", longLine + "\r\n" + "unterminated"))
+                .getBytes(Charset.forName("UTF-8"));
+
+        assertSameLines(input, new ByteArrayInputStream(input));
+        assertSameLines(input, new TrickleInputStream(input, 1));
+        assertSameLines(input, new TrickleInputStream(input, 7));
+    }
+
+    /** Verifies that lines split across reads are reassembled. */
+    @Test
+    public void testLineSplitAcrossReads() throws IOException {
+        final InputStream stream = new TrickleInputStream("te t :foo\r\n".getBytes(), 3);
+        final Encoder encoder = mock(Encoder.class);
+
+        when(encoder.encode(isNull(), isNull(), any(), eq(6), eq(3))).thenReturn("encoded");
+
+        final ReadLine line = new BufferedIRCReader(stream, encoder).readLine();
+
+        assertEquals("te t :foo", line.getLine());
+        assertArrayEquals(new String[]{"te", "t", "encoded",}, line.getTokens());
+    }
+
+    /** Verifies that numerics are used to determine the destination. */
+    @Test
+    public void testNumericDestination() throws IOException {
+        final InputStream stream = new ByteArrayInputStream(":src 123 nick #chan :o\r\n".getBytes());
+        final Encoder encoder = mock(Encoder.class);
+
+        when(encoder.encode(eq("src"), eq("#chan"), any(), anyInt(), anyInt())).thenReturn("x");
+
+        final ReadLine line = new BufferedIRCReader(stream, encoder).readLine();
+
+        assertArrayEquals(new String[]{":src", "123", "nick", "#chan", "x",}, line.getTokens());
+    }
+
+    /** Verifies that a partial line at the end of the stream is discarded. */
+    @Test
+    public void testEndOfStream() throws IOException {
+        final InputStream stream = new ByteArrayInputStream("test\r\npartial".getBytes());
+        final BufferedIRCReader reader = new BufferedIRCReader(stream, mock(Encoder.class));
+
+        assertEquals("test", reader.readLine().getLine());
+        assertNull(reader.readLine());
+        assertNull(reader.readLine());
+    }
+
+    private static void assertSameLines(final byte[] input, final InputStream stream)
+            throws IOException {
+        final Charset charset = Charset.forName("UTF-8");
+        final IRCReader expected = new IRCReader(new ByteArrayInputStream(input),
+                new SystemEncoder(), charset);
+        final IRCReader actual = new BufferedIRCReader(stream, new SystemEncoder(), charset);
+
+        ReadLine expectedLine;
+        int count = 0;
+        do {
+            expectedLine = expected.readLine();
+            final ReadLine actualLine = actual.readLine();
+
+            if (expectedLine == null) {
+                assertNull(actualLine);
+            } else {
+                assertEquals(expectedLine.getLine(), actualLine.getLine());
+                assertEquals(Arrays.asList(expectedLine.getTokens()),
+                        Arrays.asList(actualLine.getTokens()));
+                assertEquals(expectedLine.getTags(), actualLine.getTags());
+                count++;
+            }
+        } while (expectedLine != null);
+
+        assertEquals(19, count);
+    }
+
+    /** Input stream which returns at most a fixed number of bytes per read. */
+    private static class TrickleInputStream extends InputStream {
+
+        private final byte[] data;
+        private final int chunk;
+        private int position;
+
+        TrickleInputStream(final byte[] data, final int chunk) {
+            this.data = data;
+            this.chunk = chunk;
+        }
+
+        @Override
+        public int read() {
+            return position < data.length ? data[position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            if (position >= data.length) {
+                return -1;
+            }
+            final int count = Math.min(Math.min(len, chunk), data.length - position);
+            System.arraycopy(data, position, b, off, count);
+            position += count;
+            return count;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc;
+
+import com.dmdirc.parser.common.QueuePriority;
+import com.dmdirc.parser.irc.outputqueue.OutputQueue;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ChannelSyncPacerTest {
+
+    @Mock private IRCParser parser;
+    @Mock private PingScheduler scheduler;
+    @Mock private PingScheduler.Task task;
+    @Mock private OutputQueue outputQueue;
+    @Mock private WhoxTracker whoxTracker;
+    private ChannelSyncPacer pacer;
+
+    @Before
+    public void setup() {
+        when(parser.getScheduler()).thenReturn(scheduler);
+        when(parser.getOutputQueue()).thenReturn(outputQueue);
+        when(parser.getAutoListMode()).thenReturn(true);
+        when(scheduler.schedule(any(), anyLong(), anyLong(), any())).thenReturn(task);
+        pacer = new ChannelSyncPacer(parser);
+        pacer.setWaveSize(2);
+    }
+
+    @Test
+    public void testQueriesInWaves() {
+        final IRCChannelInfo[] channels = new IRCChannelInfo[5];
+        for (int i = 0; i < channels.length; i++) {
+            channels[i] = channel("#chan" + i);
+            pacer.joined(channels[i]);
+            pacer.gotNames(channels[i]);
+        }
+        final ArgumentCaptor<Runnable> scheduled = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).schedule(scheduled.capture(), eq(0L), eq(0L), eq(TimeUnit.MILLISECONDS));
+        scheduled.getValue().run();
+        verify(parser, never()).sendString(anyString(), any(QueuePriority.class));
+
+        // The wave is handed to the parser rather than sent on the scheduler's thread.
+        final ArgumentCaptor<Runnable> wave = ArgumentCaptor.forClass(Runnable.class);
+        verify(parser).executeProcessingTask(wave.capture());
+        wave.getValue().run();
+        verify(parser).sendString("MODE #chan0", QueuePriority.LOW);
+        verify(parser).sendString("MODE #chan1", QueuePriority.LOW);
+        verify(channels[1]).requestListModes();
+        verify(parser, never()).sendString("MODE #chan2", QueuePriority.LOW);
+        verify(scheduler).schedule(any(), eq(ChannelSyncPacer.DEFAULT_WAVE_INTERVAL), eq(0L),
+                eq(TimeUnit.MILLISECONDS));
+        assertEquals(3, pacer.getPendingCount());
+
+        pacer.sendWave();
+        pacer.sendWave();
+        verify(parser).sendString("MODE #chan4", QueuePriority.LOW);
+        verify(channels[4]).requestListModes();
+        assertEquals(0, pacer.getPendingCount());
+        verify(scheduler, times(3)).schedule(any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    public void testWaitsForOutputQueue() {
+        final IRCChannelInfo channel = channel("#chan");
+        pacer.joined(channel);
+        pacer.gotNames(channel);
+        when(outputQueue.queueCount()).thenReturn(3);
+
+        pacer.sendWave();
+
+        verify(parser, never()).sendString(anyString(), any(QueuePriority.class));
+        assertEquals(1, pacer.getPendingCount());
+    }
+
+    @Test
+    public void testWho() {
+        when(parser.getAutoWho()).thenReturn(true);
+        when(parser.getWhoxTracker()).thenReturn(whoxTracker);
+        final IRCChannelInfo channel = channel("#chan");
+        pacer.joined(channel);
+        pacer.gotNames(channel);
+
+        pacer.sendWave();
+
+        verify(whoxTracker).sendWho("#chan", QueuePriority.LOW);
+    }
+
+    @Test
+    public void testLaterNamesOnlyRequestListModes() {
+        final IRCChannelInfo channel = trackedChannel();
+
+        pacer.gotNames(channel);
+
+        verify(channel).requestListModes();
+        verify(scheduler, never()).schedule(any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    public void testSkipsPartedChannels() {
+        final IRCChannelInfo channel = trackedChannel();
+        when(channel.getName()).thenReturn("#parted");
+        pacer.joined(channel);
+        pacer.gotNames(channel);
+
+        pacer.sendWave();
+
+        verify(parser, never()).sendString(anyString(), any(QueuePriority.class));
+    }
+
+    @Test
+    public void testUnpaced() {
+        pacer.setWaveSize(0);
+        final IRCChannelInfo channel = trackedChannel();
+        when(channel.getName()).thenReturn("#chan");
+
+        pacer.joined(channel);
+        verify(parser).sendString("MODE #chan", QueuePriority.LOW);
+
+        pacer.gotNames(channel);
+        verify(channel).requestListModes();
+        verify(scheduler, never()).schedule(any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    public void testUnpacedWho() {
+        pacer.setWaveSize(0);
+        when(parser.getAutoWho()).thenReturn(true);
+        when(parser.getWhoxTracker()).thenReturn(whoxTracker);
+        final IRCChannelInfo channel = trackedChannel();
+        when(channel.getName()).thenReturn("#chan");
+
+        pacer.joined(channel);
+
+        verify(parser).sendString("MODE #chan", QueuePriority.LOW);
+        verify(whoxTracker).sendWho("#chan", QueuePriority.LOW);
+    }
+
+    @Test
+    public void testIgnoresChannelsNotFullyTracked() {
+        pacer.setWaveSize(0);
+        final IRCChannelInfo channel = mock(IRCChannelInfo.class);
+        when(channel.getTrackingLevel()).thenReturn(ChannelTrackingLevel.COUNTS_ONLY);
+
+        pacer.joined(channel);
+        pacer.gotNames(channel);
+
+        verify(parser, never()).sendString(anyString(), any(QueuePriority.class));
+        verify(channel, never()).requestListModes();
+    }
+
+    @Test
+    public void testClear() {
+        final IRCChannelInfo channel = channel("#chan");
+        pacer.joined(channel);
+        pacer.gotNames(channel);
+
+        pacer.clear();
+
+        verify(task).cancel();
+        assertEquals(0, pacer.getPendingCount());
+    }
+
+    private IRCChannelInfo channel(final String name) {
+        final IRCChannelInfo channel = trackedChannel();
+        when(channel.getName()).thenReturn(name);
+        when(parser.getChannel(name)).thenReturn(channel);
+        return channel;
+    }
+
+    private static IRCChannelInfo trackedChannel() {
+        final IRCChannelInfo channel = mock(IRCChannelInfo.class);
+        when(channel.getTrackingLevel()).thenReturn(ChannelTrackingLevel.FULL);
+        return channel;
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc;
+
+import java.util.Collection;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ClientChannelRegistryTest {
+
+    private IRCParser parser;
+    private ClientChannelRegistry registry;
+
+    @Before
+    public void setUp() {
+        parser = new IRCParser();
+        registry = new ClientChannelRegistry(new IRCStringConverter(IRCEncoding.RFC1459));
+    }
+
+    @Test
+    public void testCasemappedLookup() {
+        final IRCClientInfo client = new IRCClientInfo(parser, null, "Nick[away]!user@host");
+        final IRCChannelInfo channel = new IRCChannelInfo(parser, null, null, null, "#Chan[1]");
+        registry.addClient(client);
+        registry.addChannel(channel);
+
+        assertSame(client, registry.getClient("nick{AWAY}"));
+        assertTrue(registry.isKnownClient("NICK[AWAY]"));
+        assertSame(channel, registry.getChannel("#chan{1}"));
+        assertNull(registry.getClient("other"));
+
+        registry.removeClient(client);
+        registry.removeChannel("#CHAN[1]");
+        assertFalse(registry.isKnownClient("nick[away]"));
+        assertNull(registry.getChannel("#chan[1]"));
+    }
+
+    @Test
+    public void testSnapshotsAreNotLive() {
+        final IRCClientInfo first = new IRCClientInfo(parser, null, "first!user@host");
+        registry.addClient(first);
+
+        final Collection<IRCClientInfo> snapshot = registry.getClients();
+        assertSame(snapshot, registry.getClients());
+
+        registry.addClient(new IRCClientInfo(parser, null, "second!user@host"));
+
+        assertEquals(1, snapshot.size());
+        assertEquals(2, registry.getClients().size());
+        assertEquals(2, registry.getClientCount());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSnapshotIsImmutable() {
+        registry.addChannel(new IRCChannelInfo(parser, null, null, null, "#chan"));
+        registry.getChannels().clear();
+    }
+
+    @Test
+    public void testChangingConverterRekeys() {
+        final IRCClientInfo client = new IRCClientInfo(parser, null, "Nick[1]!user@host");
+        registry.addClient(client);
+
+        registry.setConverter(new IRCStringConverter(IRCEncoding.ASCII));
+
+        assertSame(client, registry.getClient("nick[1]"));
+        assertNull(registry.getClient("nick{1}"));
+    }
+
+    @Test
+    public void testChannelsForClient() {
+        final IRCClientInfo client = new IRCClientInfo(parser, null, "nick!user@host");
+        final IRCChannelInfo channel = new IRCChannelInfo(parser, null, null, null, "#chan");
+        registry.addClient(client);
+        registry.addChannel(channel);
+        registry.addChannel(new IRCChannelInfo(parser, null, null, null, "#other"));
+
+        client.addChannelClientInfo(new IRCChannelClientInfo(parser, null, client, channel));
+
+        final Collection<IRCChannelInfo> channels = registry.getChannels("NICK");
+        assertEquals(1, channels.size());
+        assertSame(channel, channels.iterator().next());
+        assertTrue(registry.getChannels("unknown").isEmpty());
+    }
+
+}
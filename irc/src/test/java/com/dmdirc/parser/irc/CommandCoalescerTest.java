@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CommandCoalescerTest {
+
+    private IRCParser parser;
+    private CommandCoalescer coalescer;
+
+    @Before
+    public void setup() {
+        parser = new IRCParser();
+        parser.chanModesOther.put('b', IRCParser.MODE_LIST);
+        parser.chanModesOther.put('k', (byte) (IRCParser.MODE_SET | IRCParser.MODE_UNSET));
+        parser.chanModesOther.put('l', IRCParser.MODE_SET);
+        final PrefixModeManager prefixModes = new PrefixModeManager();
+        prefixModes.add('o', '@');
+        prefixModes.add('v', '+');
+        final ModeManager chanModes = new ModeManager();
+        chanModes.set("imnst");
+        coalescer = new CommandCoalescer(parser, prefixModes, chanModes);
+    }
+
+    @Test
+    public void testMergesModes() {
+        assertEquals("MODE #chan +vv a b", coalescer.merge("MODE #chan +v a", "MODE #chan +v b"));
+        assertEquals("MODE #chan +v-o+m a b",
+                coalescer.merge("MODE #chan +v-o a b", "MODE #chan +m"));
+        assertEquals("MODE #chan -l+b *!*@host",
+                coalescer.merge("MODE #chan -l", "MODE #chan +b *!*@host"));
+        assertEquals("MODE #chan +v-v a b", coalescer.merge("MODE #chan +v a", "MODE #Chan -v b"));
+    }
+
+    @Test
+    public void testRespectsModesLimit() {
+        assertNull(coalescer.merge("MODE #chan +vvv a b c", "MODE #chan +v d"));
+        parser.h005Info.put("MODES", "4");
+        assertEquals("MODE #chan +vvvv a b c d",
+                coalescer.merge("MODE #chan +vvv a b c", "MODE #chan +v d"));
+    }
+
+    @Test
+    public void testDoesNotMergeUnsafeModes() {
+        assertNull(coalescer.merge("MODE #chan +v a", "MODE #other +v b"));
+        assertNull(coalescer.merge("MODE #chan b", "MODE #chan e"));
+        assertNull(coalescer.merge("MODE #chan +b", "MODE #chan +v b"));
+        assertNull(coalescer.merge("MODE #chan +X a", "MODE #chan +v b"));
+        assertNull(coalescer.merge("MODE nick +i", "MODE nick +w"));
+    }
+
+    @Test
+    public void testMergesJoins() {
+        assertEquals("JOIN #a,#b", coalescer.merge("JOIN #a", "JOIN #b"));
+        assertEquals("JOIN #a,#b key", coalescer.merge("JOIN #a key", "JOIN #b"));
+        assertEquals("JOIN #a,#b k1,k2", coalescer.merge("JOIN #a k1", "JOIN #b k2"));
+        assertNull(coalescer.merge("JOIN #a", "JOIN #b key"));
+        assertNull(coalescer.merge("JOIN #a", "JOIN 0"));
+    }
+
+    @Test
+    public void testRespectsJoinLimit() {
+        parser.h005Info.put("TARGMAX", "PRIVMSG:4,JOIN:2");
+        assertEquals("JOIN #a,#b", coalescer.merge("JOIN #a", "JOIN #b"));
+        assertNull(coalescer.merge("JOIN #a,#b", "JOIN #c"));
+    }
+
+    @Test
+    public void testMergesMessagesWithinLimit() {
+        assertNull(coalescer.merge("PRIVMSG #a :hi", "PRIVMSG #b :hi"));
+
+        parser.h005Info.put("MAXTARGETS", "2");
+        assertEquals("PRIVMSG #a,#b :hi", coalescer.merge("PRIVMSG #a :hi", "PRIVMSG #b :hi"));
+        assertNull(coalescer.merge("PRIVMSG #a,#b :hi", "PRIVMSG #c :hi"));
+
+        parser.h005Info.put("TARGMAX", "PRIVMSG:,NOTICE:3");
+        assertEquals("PRIVMSG #a,#b,#c :hi",
+                coalescer.merge("PRIVMSG #a,#b :hi", "PRIVMSG #c :hi"));
+        assertEquals("NOTICE #a,#b,#c :hi", coalescer.merge("NOTICE #a,#b :hi", "NOTICE #c :hi"));
+    }
+
+    @Test
+    public void testDoesNotMergeDifferentMessages() {
+        parser.h005Info.put("MAXTARGETS", "4");
+        assertNull(coalescer.merge("PRIVMSG #a :hi", "PRIVMSG #b :hello"));
+        assertNull(coalescer.merge("PRIVMSG #a :hi", "PRIVMSG #A :hi"));
+        assertNull(coalescer.merge("PRIVMSG #a :hi", "NOTICE #b :hi"));
+        assertNull(coalescer.merge("@label=1 PRIVMSG #a :hi", "PRIVMSG #b :hi"));
+    }
+
+    @Test
+    public void testMergesWhos() {
+        assertEquals("WHO #a", coalescer.merge("WHO #a", "WHO #a"));
+        assertNull(coalescer.merge("WHO #a", "WHO #b"));
+
+        parser.h005Info.put("TARGMAX", "WHO:3");
+        assertEquals("WHO #a,#b %tnuhf,1", coalescer.merge("WHO #a %tnuhf,1", "WHO #b %tnuhf,1"));
+        assertNull(coalescer.merge("WHO #a %tnuhf,1", "WHO #b %tnuhf,2"));
+    }
+
+    @Test
+    public void testRespectsLineLength() {
+        final StringBuilder channels = new StringBuilder("#c0");
+        for (int i = 1; channels.length() < IRCParser.MAX_LINELENGTH - 8; i++) {
+            channels.append(",#c").append(i);
+        }
+        assertNull(coalescer.merge("JOIN " + channels, "JOIN #another"));
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc;
+
+import com.dmdirc.parser.events.DebugInfoEvent;
+import net.engio.mbassy.listener.Handler;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EventTapTest {
+
+    private final AtomicLong time = new AtomicLong();
+
+    @Test
+    public void testPublishesEverythingByDefault() {
+        final EventTap tap = new EventTap(time::get);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(tap.tryAcquire());
+        }
+        assertEquals(0, tap.getDropped());
+    }
+
+    @Test
+    public void testSampling() {
+        final EventTap tap = new EventTap(time::get);
+        tap.setSampleRate(10);
+
+        int published = 0;
+        for (int i = 0; i < 100; i++) {
+            if (tap.tryAcquire()) {
+                published++;
+            }
+        }
+
+        assertEquals(10, published);
+        assertEquals(90, tap.getDropped());
+    }
+
+    @Test
+    public void testRateLimit() {
+        final EventTap tap = new EventTap(time::get);
+        tap.setMaxPerSecond(2);
+
+        assertTrue(tap.tryAcquire());
+        assertTrue(tap.tryAcquire());
+        assertFalse(tap.tryAcquire());
+
+        time.addAndGet(TimeUnit.MILLISECONDS.toNanos(999));
+        assertFalse(tap.tryAcquire());
+
+        time.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        assertTrue(tap.tryAcquire());
+        assertEquals(2, tap.getDropped());
+    }
+
+    @Test
+    public void testParserDebugLevels() {
+        final IRCParser parser = new IRCParser();
+        final DebugListener listener = new DebugListener();
+        parser.getCallbackManager().subscribe(listener);
+        parser.setDebugLevels(IRCParser.DEBUG_SOCKET);
+
+        assertFalse(parser.isDebugging(IRCParser.DEBUG_INFO));
+        assertTrue(parser.isDebugging(IRCParser.DEBUG_SOCKET));
+
+        parser.callDebugInfo(IRCParser.DEBUG_INFO, "info %s", "ignored");
+        parser.callDebugInfo(IRCParser.DEBUG_SOCKET, "socket %s", "published");
+        assertEquals(1, listener.events.size());
+        assertEquals("socket published", listener.events.get(0).getData());
+
+        parser.getDebugTap().setSampleRate(2);
+        parser.callDebugInfo(IRCParser.DEBUG_SOCKET, "first");
+        parser.callDebugInfo(IRCParser.DEBUG_SOCKET, "second");
+        assertEquals(2, listener.events.size());
+        assertEquals(1, parser.getDebugTap().getDropped());
+    }
+
+    private static final class DebugListener {
+        private final List<DebugInfoEvent> events = new ArrayList<>();
+
+        @Handler
+        public void handleDebug(final DebugInfoEvent event) {
+            events.add(event);
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HashedWheelPingSchedulerTest {
+
+    private HashedWheelPingScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = new HashedWheelPingScheduler(5, TimeUnit.MILLISECONDS, 8, r -> {
+            final Thread thread = new Thread(r, "test scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testOneShotTaskRunsOnce() throws InterruptedException {
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(1);
+        scheduler.schedule(() -> {
+            runs.incrementAndGet();
+            latch.countDown();
+        }, 10, 0, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    public void testDelayLongerThanWheel() throws InterruptedException {
+        // 8 buckets of 5ms means this needs several turns of the wheel.
+        final CountDownLatch latch = new CountDownLatch(1);
+        final long start = System.nanoTime();
+        scheduler.schedule(latch::countDown, 150, 0, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(145));
+    }
+
+    @Test
+    public void testPeriodicTaskRepeats() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(5);
+        final PingScheduler.Task task = scheduler.schedule(latch::countDown, 0, 10,
+                TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        task.cancel();
+    }
+
+    @Test
+    public void testCancelledTaskDoesNotRun() throws InterruptedException {
+        final AtomicInteger runs = new AtomicInteger();
+        final PingScheduler.Task task = scheduler.schedule(runs::incrementAndGet, 20, 10,
+                TimeUnit.MILLISECONDS);
+        task.cancel();
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        scheduler.schedule(latch::countDown, 60, 0, TimeUnit.MILLISECONDS);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    public void testExceptionDoesNotStopScheduler() throws InterruptedException {
+        scheduler.schedule(() -> {
+            throw new IllegalStateException("test");
+        }, 0, 0, TimeUnit.MILLISECONDS);
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        scheduler.schedule(latch::countDown, 20, 0, TimeUnit.MILLISECONDS);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc;
+
+import com.dmdirc.parser.common.QueuePriority;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class IRCChannelInfoTest {
+
+    @Mock private IRCParser parser;
+    private IRCChannelInfo channel;
+    private IRCClientInfo first;
+    private IRCClientInfo second;
+
+    @Before
+    public void setup() {
+        when(parser.getStringConverter()).thenReturn(new IRCStringConverter());
+        channel = new IRCChannelInfo(parser, null, null, null, "#chan");
+        first = new IRCClientInfo(parser, null, "first!user@host");
+        second = new IRCClientInfo(parser, null, "second!user@host");
+    }
+
+    @Test
+    public void testAddClientIsIdempotent() {
+        final IRCChannelClientInfo added = channel.addClient(first);
+
+        assertSame(added, channel.addClient(first));
+        assertSame(added, channel.getChannelClient(first));
+        assertSame(added, channel.getChannelClient("FIRST"));
+        assertEquals(1, channel.getChannelClientCount());
+        assertEquals(1, first.getChannelCount());
+    }
+
+    @Test
+    public void testAddClients() {
+        final List<IRCChannelClientInfo> added = channel.addClients(
+                Arrays.asList(first, second, first));
+
+        assertEquals(3, added.size());
+        assertSame(added.get(0), added.get(2));
+        assertSame(second, added.get(1).getClient());
+        assertSame(added.get(1), channel.getChannelClient(second));
+        assertEquals(2, channel.getChannelClientCount());
+    }
+
+    @Test
+    public void testDelClient() {
+        channel.addClient(first);
+        channel.addClient(second);
+
+        channel.delClient(first);
+
+        assertNull(channel.getChannelClient(first));
+        assertNull(channel.getChannelClient("first"));
+        assertEquals(1, channel.getChannelClientCount());
+        assertFalse(first.checkVisibility());
+        verify(parser).removeClient(first);
+        verify(parser, never()).removeClient(second);
+    }
+
+    @Test
+    public void testDelClientAfterRename() {
+        final IRCChannelClientInfo added = channel.addClient(first);
+        first.setUserBits("renamed", true, true);
+        channel.renameClient("first", added);
+
+        assertSame(added, channel.getChannelClient("renamed"));
+        channel.delClient(first);
+        assertEquals(0, channel.getChannelClientCount());
+    }
+
+    @Test
+    public void testDelClientWithStaleNickname() {
+        channel.addClient(first);
+        // Nickname changed without the channel being told.
+        first.setUserBits("renamed", true, true);
+
+        channel.delClient(first);
+
+        assertNull(channel.getChannelClient(first));
+        assertEquals(0, channel.getChannelClientCount());
+    }
+
+    @Test
+    public void testEmptyChannel() {
+        channel.addClients(Arrays.asList(first, second));
+
+        channel.emptyChannel();
+
+        assertEquals(0, channel.getChannelClientCount());
+        assertNull(channel.getChannelClient(second));
+        assertTrue(channel.getChannelClients().isEmpty());
+    }
+
+    @Test
+    public void testCountsOnly() {
+        channel = new IRCChannelInfo(parser, null, null, null, "#chan",
+                ChannelTrackingLevel.COUNTS_ONLY);
+        channel.addClient(first);
+
+        channel.setMemberCount(10);
+        channel.adjustMemberCount(1);
+        assertEquals(11, channel.getChannelClientCount());
+
+        channel.adjustMemberCount(-20);
+        assertEquals(0, channel.getChannelClientCount());
+    }
+
+    @Test
+    public void testLoweringTrackingLevelForgetsMembers() {
+        when(parser.getLocalClient()).thenReturn(first);
+        when(parser.getMyNickname()).thenReturn("first");
+        channel.addClients(Arrays.asList(first, second));
+        runProcessingTasks();
+
+        channel.setTrackingLevel(ChannelTrackingLevel.COUNTS_ONLY);
+
+        assertEquals(ChannelTrackingLevel.COUNTS_ONLY, channel.getTrackingLevel());
+        assertEquals(2, channel.getChannelClientCount());
+        assertEquals(1, channel.getChannelClients().size());
+        assertSame(first, channel.getChannelClient("first").getClient());
+        verify(parser).removeClient(second);
+        verify(parser, never()).sendLabeled(anyString(), any(QueuePriority.class));
+    }
+
+    @Test
+    public void testRaisingTrackingLevelRequestsNames() {
+        final ChannelSyncPacer pacer = mock(ChannelSyncPacer.class);
+        when(parser.getChannelSyncPacer()).thenReturn(pacer);
+        channel = new IRCChannelInfo(parser, null, null, null, "#chan",
+                ChannelTrackingLevel.MESSAGES_ONLY);
+        runProcessingTasks();
+
+        channel.setTrackingLevel(ChannelTrackingLevel.COUNTS_ONLY);
+        verify(parser).sendLabeled("NAMES #chan", QueuePriority.LOW);
+        verify(pacer, never()).joined(channel);
+
+        channel.setTrackingLevel(ChannelTrackingLevel.FULL);
+        verify(pacer).joined(channel);
+        verify(parser, times(2)).sendLabeled("NAMES #chan", QueuePriority.LOW);
+        assertFalse(channel.isAddingNames());
+    }
+
+    @Test
+    public void testTrackingLevelChangedByParser() {
+        channel.setTrackingLevel(ChannelTrackingLevel.MESSAGES_ONLY);
+
+        assertEquals(ChannelTrackingLevel.FULL, channel.getTrackingLevel());
+        verify(parser).executeProcessingTask(any());
+    }
+
+    private void runProcessingTasks() {
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(parser).executeProcessingTask(any());
+    }
+
+}
@@ -83,4 +83,41 @@ public class IRCStringConverterTest {
         assertFalse(ircsc.equalsIgnoreCase(null, "null"));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testHashCodeIgnoreCase() {
+        final String[] inputs = {"", "hello", "HeLLo", "^[[MOO]]^", "~{{moo}}~", "«—»"};
+
+        for (IRCEncoding encoding : IRCEncoding.values()) {
+            final IRCStringConverter ircsc = new IRCStringConverter(encoding);
+            for (String input : inputs) {
+                assertEquals(ircsc.toLowerCase(input).hashCode(), ircsc.hashCodeIgnoreCase(input));
+            }
+        }
+    }
+
+    @Test
+    public void testKeys() {
+        final IRCStringConverter rfc = new IRCStringConverter(IRCEncoding.RFC1459);
+        final IRCStringConverter ascii = new IRCStringConverter(IRCEncoding.ASCII);
+
+        assertEquals(rfc.key("^[[MOO]]^"), rfc.key("~{{moo}}~"));
+        assertEquals(rfc.key("^[[MOO]]^").hashCode(), rfc.key("~{{moo}}~").hashCode());
+        assertEquals(rfc.key("Foo"), new IRCStringConverter().key("fOO"));
+        assertNotEquals(ascii.key("[moo]"), ascii.key("{moo}"));
+        assertEquals(rfc.key("FOO"), ascii.key("foo"));
+        assertEquals(rfc.key("[A]"), ascii.key("{a}"));
+        assertNotEquals(ascii.key("[a]"), rfc.key("{a}"));
+        assertEquals("FoO", rfc.key("FoO").getValue());
+    }
+
+    @Test
+    public void testUnchangedStringIsReused() {
+        final IRCStringConverter ircsc = new IRCStringConverter();
+        final String lower = "already~lower";
+        final String upper = "ALREADY^UPPER";
+
+        assertSame(lower, ircsc.toLowerCase(lower));
+        assertSame(upper, ircsc.toUpperCase(upper));
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JoinPackerTest {
+
+    @Test
+    public void testKeyedChannelsFirst() {
+        final JoinPacker packer = packer(Integer.MAX_VALUE, null);
+        packer.add("#a", null);
+        packer.add("#b", "key1");
+        packer.add("#c", "");
+        packer.add("#d", "key2");
+
+        assertEquals(Collections.singletonList("JOIN #b,#d,#a,#c key1,key2"), packer.getLines());
+    }
+
+    @Test
+    public void testLineLength() {
+        final JoinPacker packer = packer(Integer.MAX_VALUE, null);
+        final List<String> channels = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            final String channel = "#channel" + i;
+            channels.add(channel);
+            packer.add(channel, i % 3 == 0 ? "key" + i : null);
+        }
+
+        final List<String> lines = packer.getLines();
+        assertTrue(lines.size() > 1);
+        final List<String> joined = new ArrayList<>();
+        for (String line : lines) {
+            assertTrue(line, line.length() <= IRCParser.MAX_LINELENGTH);
+            joined.addAll(Arrays.asList(line.split(" ")[1].split(",")));
+        }
+        assertEquals(channels.size(), joined.size());
+        assertTrue(joined.containsAll(channels));
+    }
+
+    @Test
+    public void testLineLengthWithKeys() {
+        // "JOIN #a,#b k,k" is exactly 14 characters.
+        final JoinPacker packer = new JoinPacker(14, Integer.MAX_VALUE, null,
+                Collections.emptyList(), new IRCStringConverter());
+        packer.add("#a", "k");
+        packer.add("#b", "k");
+        packer.add("#c", "k");
+
+        assertEquals(Arrays.asList("JOIN #a,#b k,k", "JOIN #c k"), packer.getLines());
+    }
+
+    @Test
+    public void testMaxTargets() {
+        final JoinPacker packer = packer(2, null);
+        packer.add("#a", "k");
+        packer.add("#b", null);
+        packer.add("#c", null);
+
+        assertEquals(Arrays.asList("JOIN #a,#b k", "JOIN #c"), packer.getLines());
+    }
+
+    @Test
+    public void testChannelLimit() {
+        final JoinPacker packer = new JoinPacker(IRCParser.MAX_LINELENGTH, Integer.MAX_VALUE,
+                "#&:3,+:,!:x", Arrays.asList("#joined", "+other"), new IRCStringConverter());
+        packer.add("#a", null);
+        packer.add("&b", null);
+        packer.add("+c", null);
+        packer.add("#d", null);
+        packer.add("!e", null);
+
+        assertEquals(Collections.singletonList("JOIN #a,&b,+c,!e"), packer.getLines());
+        assertEquals(Collections.singletonList("#d"), packer.getSkipped());
+    }
+
+    @Test
+    public void testJoinedAndDuplicateChannelsNotCounted() {
+        final JoinPacker packer = new JoinPacker(IRCParser.MAX_LINELENGTH, Integer.MAX_VALUE,
+                "#:2", Arrays.asList("#joined", "#JOINED"), new IRCStringConverter());
+        packer.add("#Joined", null);
+        packer.add("#a", null);
+        packer.add("#A", "key");
+        packer.add("#b", null);
+
+        assertEquals(Collections.singletonList("JOIN #a"), packer.getLines());
+        assertEquals(Collections.singletonList("#b"), packer.getSkipped());
+    }
+
+    @Test
+    public void testNothingToJoin() {
+        assertTrue(packer(Integer.MAX_VALUE, null).getLines().isEmpty());
+    }
+
+    private static JoinPacker packer(final int maxTargets, final String channelLimit) {
+        return new JoinPacker(IRCParser.MAX_LINELENGTH, maxTargets, channelLimit,
+                Collections.emptyList(), new IRCStringConverter());
+    }
+
+}
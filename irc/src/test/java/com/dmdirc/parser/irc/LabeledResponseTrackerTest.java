@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc;
+
+import com.dmdirc.parser.common.QueuePriority;
+import com.dmdirc.parser.irc.IRCReader.ReadLine;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class LabeledResponseTrackerTest {
+
+    @Mock private IRCParser parser;
+    private LabeledResponseTracker tracker;
+
+    @Before
+    public void setup() {
+        when(parser.getCapabilityState(LabeledResponseTracker.CAPABILITY))
+                .thenReturn(CapabilityState.ENABLED);
+        when(parser.sendString(anyString(), any(QueuePriority.class))).thenReturn(true);
+        tracker = new LabeledResponseTracker(parser);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRequiresCapability() {
+        when(parser.getCapabilityState(LabeledResponseTracker.CAPABILITY))
+                .thenReturn(CapabilityState.DISABLED);
+        assertFalse(tracker.isEnabled());
+        tracker.send("WHOIS nick", QueuePriority.NORMAL);
+    }
+
+    @Test
+    public void testSendsLabel() {
+        tracker.send("WHOIS nick", QueuePriority.LOW);
+        tracker.send("WHOIS other", QueuePriority.LOW);
+
+        verify(parser).sendString("@label=1 WHOIS nick", QueuePriority.LOW);
+        verify(parser).sendString("@label=2 WHOIS other", QueuePriority.LOW);
+        assertEquals(2, tracker.getOutstandingCount());
+    }
+
+    @Test
+    public void testSingleLineResponse() {
+        final CompletableFuture<List<ReadLine>> future = tracker.send("MODE #chan",
+                QueuePriority.LOW);
+
+        process(":server 324 me #chan +nt");
+        assertFalse(future.isDone());
+        assertEquals("MODE #chan", process("@label=1 :server 324 me #chan +nt"));
+
+        assertEquals(Arrays.asList("@label=1 :server 324 me #chan +nt"), getLines(future));
+        assertEquals(0, tracker.getOutstandingCount());
+    }
+
+    @Test
+    public void testAck() {
+        final CompletableFuture<List<ReadLine>> future = tracker.send("NOTICE #chan :hi",
+                QueuePriority.LOW);
+
+        process("@label=1 :server ACK");
+
+        assertTrue(getLines(future).isEmpty());
+    }
+
+    @Test
+    public void testBatch() {
+        final CompletableFuture<List<ReadLine>> bans = tracker.send("MODE #chan b",
+                QueuePriority.LOW);
+        final CompletableFuture<List<ReadLine>> whois = tracker.send("WHOIS nick",
+                QueuePriority.LOW);
+
+        assertEquals("WHOIS nick", process("@label=2 :server BATCH +abc labeled-response"));
+        assertEquals("WHOIS nick", process("@batch=abc :server 311 me nick u h * :Real"));
+        assertEquals("WHOIS nick", process("@batch=abc :server BATCH +def example"));
+        assertEquals("WHOIS nick", process("@batch=def :server 319 me nick :#chan"));
+        assertEquals("WHOIS nick", process(":server BATCH -def"));
+        assertNull(process("@batch=other :server 319 me nick :#other"));
+        assertEquals("WHOIS nick", process("@batch=abc :server 318 me nick :End"));
+        assertFalse(whois.isDone());
+        assertEquals("WHOIS nick", process(":server BATCH -abc"));
+
+        assertEquals(Arrays.asList("@batch=abc :server 311 me nick u h * :Real",
+                "@batch=def :server 319 me nick :#chan",
+                "@batch=abc :server 318 me nick :End"), getLines(whois));
+        assertFalse(bans.isDone());
+        assertEquals(1, tracker.getOutstandingCount());
+    }
+
+    @Test
+    public void testUnknownLabel() {
+        tracker.send("WHOIS nick", QueuePriority.LOW);
+
+        assertNull(process("@label=zz :server 318 me nick :End"));
+        assertNull(process("@label=zz :server BATCH +abc labeled-response"));
+        assertNull(process("@batch=abc :server 318 me nick :End"));
+    }
+
+    @Test
+    public void testClear() {
+        final CompletableFuture<List<ReadLine>> future = tracker.send("WHOIS nick",
+                QueuePriority.LOW);
+
+        tracker.clear();
+
+        assertTrue(future.isCancelled());
+        assertEquals(0, tracker.getOutstandingCount());
+    }
+
+    @Test
+    public void testNotSent() {
+        when(parser.sendString(anyString(), any(QueuePriority.class))).thenReturn(false);
+
+        assertTrue(tracker.send("WHOIS nick", QueuePriority.LOW).isCancelled());
+        assertEquals(0, tracker.getOutstandingCount());
+    }
+
+    /**
+     * Passes a line through the tracker, as the parser would.
+     *
+     * @param line The line to process
+     * @return The request the line was a response to, while it was being processed
+     */
+    private String process(final String line) {
+        tracker.startLine(new ReadLine(line, IRCParser.tokeniseLine(line)));
+        final String request = tracker.getCurrentRequest();
+        tracker.endLine();
+        return request;
+    }
+
+    private static List<String> getLines(final CompletableFuture<List<ReadLine>> future) {
+        assertTrue(future.isDone());
+        final List<String> result = new ArrayList<>();
+        future.join().forEach(line -> result.add(line.getLine()));
+        return result;
+    }
+
+}
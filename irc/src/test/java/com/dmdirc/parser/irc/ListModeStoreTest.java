@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc;
+
+import com.dmdirc.parser.common.ChannelListModeItem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ListModeStoreTest {
+
+    private ListModeStore store;
+
+    @Before
+    public void setUp() {
+        store = new ListModeStore(new IRCStringConverter(IRCEncoding.RFC1459));
+    }
+
+    @Test
+    public void testAddIgnoresCasemappedDuplicates() {
+        final ChannelListModeItem first = item("Nick[a]!*@*");
+
+        assertTrue(store.add(first));
+        assertFalse(store.add(item("nick{A}!*@*")));
+        assertEquals(1, store.size());
+        assertSame(first, store.get("NICK{a}!*@*"));
+        assertTrue(store.contains(first));
+        assertFalse(store.contains(item("Nick[a]!*@*")));
+    }
+
+    @Test
+    public void testKeepsInsertionOrder() {
+        store.add(item("c!*@*"));
+        store.add(item("a!*@*"));
+        store.add(item("b!*@*"));
+        store.removeItem("A!*@*");
+        store.add(item("a!*@*"));
+
+        assertEquals(Arrays.asList("c!*@*", "b!*@*", "a!*@*"), getItems(store));
+    }
+
+    @Test
+    public void testRemoveItem() {
+        final ChannelListModeItem mask = item("*!*@Host");
+        store.add(mask);
+
+        assertNull(store.removeItem("*!*@other"));
+        assertSame(mask, store.removeItem("*!*@host"));
+        assertTrue(store.isEmpty());
+        assertTrue(store.getMatching("nick!user@host").isEmpty());
+    }
+
+    @Test
+    public void testGetMatching() {
+        store.add(item("*!*@*.example.net"));
+        store.add(item("bad!*@*"));
+        store.add(item("*!*@host.example.org"));
+        store.add(item("*!~Ident@*"));
+        store.add(item("Nick[1]!*@host.EXAMPLE.org"));
+        store.add(item("$a:account"));
+        store.add(item("good!*@*"));
+
+        assertEquals(Arrays.asList("*!*@host.example.org", "*!~Ident@*",
+                "Nick[1]!*@host.EXAMPLE.org"),
+                getItems(store.getMatching("nick{1}!~ident@host.example.org")));
+        assertEquals(Arrays.asList("*!*@*.example.net", "bad!*@*"),
+                getItems(store.getMatching("BAD!user@leaf.example.net")));
+        assertTrue(store.getMatching("other!user@example.com").isEmpty());
+    }
+
+    @Test
+    public void testWildcards() {
+        store.add(item("n?ck!*@*"));
+        store.add(item("*!*@*"));
+
+        assertEquals(2, store.getMatching("nick!u@h").size());
+        assertEquals(1, store.getMatching("nicks!u@h").size());
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        store.add(item("a!*@*"));
+        store.add(item("*!*@b"));
+        store.add(item("*!*c@*"));
+
+        final Iterator<ChannelListModeItem> iterator = store.iterator();
+        while (iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+
+        assertTrue(store.isEmpty());
+        assertTrue(store.getMatching("a!c@b").isEmpty());
+        assertTrue(store.add(item("a!*@*")));
+    }
+
+    @Test
+    public void testSetConverter() {
+        store = new ListModeStore(new IRCStringConverter(IRCEncoding.ASCII));
+        store.add(item("nick~!*@*"));
+        store.add(item("nick^!*@*"));
+        store.add(item("other!*@*"));
+        assertEquals(3, store.size());
+        assertEquals(Arrays.asList("nick^!*@*"), getItems(store.getMatching("NICK^!u@h")));
+
+        store.setConverter(new IRCStringConverter(IRCEncoding.RFC1459));
+
+        assertEquals(Arrays.asList("nick~!*@*", "other!*@*"), getItems(store));
+        assertEquals(Arrays.asList("nick~!*@*"), getItems(store.getMatching("NICK^!u@h")));
+    }
+
+    @Test
+    public void testClear() {
+        store.add(item("a!*@*"));
+        store.clear();
+
+        assertTrue(store.isEmpty());
+        assertTrue(store.getMatching("a!b@c").isEmpty());
+    }
+
+    private static ChannelListModeItem item(final String mask) {
+        return new ChannelListModeItem(mask, "op", 0);
+    }
+
+    private static List<String> getItems(final Iterable<ChannelListModeItem> items) {
+        final List<String> result = new ArrayList<>();
+        items.forEach(item -> result.add(item.getItem()));
+        return result;
+    }
+
+}
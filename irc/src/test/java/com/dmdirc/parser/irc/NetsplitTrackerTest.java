@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc;
+
+import com.dmdirc.parser.events.NetjoinEvent;
+import com.dmdirc.parser.events.NetsplitEvent;
+import com.dmdirc.parser.events.ParserEvent;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class NetsplitTrackerTest {
+
+    @Mock private IRCParser parser;
+    @Mock private IRCParserCallbackManager callbackManager;
+    @Mock private PingScheduler scheduler;
+    @Mock private IRCChannelInfo channel;
+    private NetsplitTracker tracker;
+
+    @Before
+    public void setup() {
+        when(parser.getCallbackManager()).thenReturn(callbackManager);
+        when(parser.getStringConverter()).thenReturn(new IRCStringConverter());
+        when(parser.getScheduler()).thenReturn(scheduler);
+        when(scheduler.schedule(any(), anyLong(), anyLong(), any()))
+                .thenReturn(mock(PingScheduler.Task.class));
+        when(channel.getName()).thenReturn("#chan");
+        tracker = new NetsplitTracker(parser);
+    }
+
+    @Test
+    public void testSplitServers() {
+        assertArrayEquals(new String[]{"hub.example.net", "leaf.example.net"},
+                NetsplitTracker.getSplitServers("hub.example.net leaf.example.net"));
+        assertArrayEquals(new String[]{"*.net", "*.split"},
+                NetsplitTracker.getSplitServers("*.net *.split"));
+        assertNull(NetsplitTracker.getSplitServers("Quit: bye"));
+        assertNull(NetsplitTracker.getSplitServers("going to bed.now"));
+        assertNull(NetsplitTracker.getSplitServers("a.b c.d e.f"));
+        assertNull(NetsplitTracker.getSplitServers("hub..net leaf.net"));
+        assertNull(NetsplitTracker.getSplitServers("hub.net http://leaf.net"));
+    }
+
+    @Test
+    public void testNormalQuitIsIgnored() {
+        assertFalse(tracker.quit(LocalDateTime.now(), client("nick"), "Bye", Collections.emptyList()));
+        tracker.flush();
+        verify(callbackManager, never()).publish(any());
+    }
+
+    @Test
+    public void testQuitsAreGrouped() {
+        final IRCClientInfo first = client("first");
+        final IRCClientInfo second = client("second");
+        final IRCChannelClientInfo member = new IRCChannelClientInfo(parser, null, first, channel);
+
+        assertTrue(tracker.quit(LocalDateTime.now(), first, "hub.net leaf.net",
+                Collections.singletonList(member)));
+        assertTrue(tracker.quit(LocalDateTime.now(), second, "hub.net leaf.net",
+                Collections.emptyList()));
+        verify(scheduler).schedule(any(), eq(NetsplitTracker.FLUSH_DELAY),
+                eq(NetsplitTracker.FLUSH_DELAY), eq(TimeUnit.MILLISECONDS));
+        verify(callbackManager, never()).publish(any());
+
+        tracker.flush();
+
+        final NetsplitEvent event = (NetsplitEvent) captureEvent();
+        assertEquals("hub.net", event.getServer());
+        assertEquals("leaf.net", event.getSplitServer());
+        assertEquals(2, event.getClients().size());
+        assertEquals(Collections.singletonList(member), event.getChannels().get(channel));
+    }
+
+    @Test
+    public void testIdleCheckIsHandedToParser() {
+        tracker.quit(LocalDateTime.now(), client("first"), "hub.net leaf.net",
+                Collections.emptyList());
+        final ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).schedule(captor.capture(), anyLong(), anyLong(), any());
+
+        captor.getValue().run();
+        verify(parser).executeProcessingTask(any());
+        verify(callbackManager, never()).publish(any());
+    }
+
+    @Test
+    public void testDifferentSplitFlushesPrevious() {
+        tracker.quit(LocalDateTime.now(), client("first"), "hub.net leaf.net",
+                Collections.emptyList());
+        tracker.quit(LocalDateTime.now(), client("second"), "hub.net other.net",
+                Collections.emptyList());
+
+        assertEquals("leaf.net", ((NetsplitEvent) captureEvent()).getSplitServer());
+    }
+
+    @Test
+    public void testNetjoinAfterSplit() {
+        final IRCClientInfo client = client("nick");
+        tracker.quit(LocalDateTime.now(), client, "hub.net leaf.net", Collections.emptyList());
+        tracker.flush();
+
+        // Flushing forgets about recent splits, so split again.
+        tracker.quit(LocalDateTime.now(), client, "hub.net leaf.net", Collections.emptyList());
+
+        final IRCClientInfo rejoined = client("nick");
+        final IRCClientInfo stranger = client("other");
+        assertTrue(tracker.join(LocalDateTime.now(),
+                new IRCChannelClientInfo(parser, null, rejoined, channel)));
+        assertFalse(tracker.join(LocalDateTime.now(),
+                new IRCChannelClientInfo(parser, null, stranger, channel)));
+        tracker.flush();
+
+        final ArgumentCaptor<ParserEvent> captor = ArgumentCaptor.forClass(ParserEvent.class);
+        verify(callbackManager, times(3)).publish(captor.capture());
+        final NetjoinEvent event = (NetjoinEvent) captor.getAllValues().get(2);
+        assertEquals("leaf.net", event.getSplitServer());
+        assertEquals(Collections.singletonList(rejoined), event.getClients());
+    }
+
+    @Test
+    public void testBatchedNetsplit() {
+        tracker.startBatch(LocalDateTime.now(), "ref", "netsplit", "hub.net", "leaf.net");
+        tracker.setCurrentBatch("ref");
+        assertTrue(tracker.quit(LocalDateTime.now(), client("nick"), "*.net *.split",
+                Collections.emptyList()));
+        assertTrue(tracker.quit(LocalDateTime.now(), client("other"), "Bye",
+                Collections.emptyList()));
+        tracker.setCurrentBatch(null);
+        verify(scheduler, never()).schedule(any(), anyLong(), anyLong(), any());
+
+        tracker.endBatch("ref");
+
+        final NetsplitEvent event = (NetsplitEvent) captureEvent();
+        assertEquals("hub.net", event.getServer());
+        assertEquals(2, event.getClients().size());
+    }
+
+    private IRCClientInfo client(final String nickname) {
+        return new IRCClientInfo(parser, null, nickname + "!user@host");
+    }
+
+    private ParserEvent captureEvent() {
+        final ArgumentCaptor<ParserEvent> captor = ArgumentCaptor.forClass(ParserEvent.class);
+        verify(callbackManager).publish(captor.capture());
+        return captor.getValue();
+    }
+
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc;
+
+import com.dmdirc.parser.common.QueuePriority;
+import com.dmdirc.parser.events.GroupListEntryEvent;
+import com.dmdirc.parser.events.NumericEvent;
+import com.dmdirc.parser.events.UserInfoEvent.UserInfoType;
+import com.dmdirc.parser.irc.IRCReader.ReadLine;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class QueryManagerTest {
+
+    @Mock private IRCParser parser;
+    @Mock private PingScheduler scheduler;
+    @Mock private PingScheduler.Task task;
+    @Mock private LabeledResponseTracker labels;
+    private QueryManager manager;
+
+    @Before
+    public void setup() {
+        when(parser.getScheduler()).thenReturn(scheduler);
+        when(parser.getStringConverter()).thenReturn(new IRCStringConverter());
+        when(parser.getLabeledResponseTracker()).thenReturn(labels);
+        when(parser.sendString(anyString(), any(QueuePriority.class))).thenReturn(true);
+        when(scheduler.schedule(any(), anyLong(), anyLong(), any())).thenReturn(task);
+        manager = new QueryManager(parser);
+    }
+
+    @Test
+    public void testWhois() throws Exception {
+        final CompletableFuture<Map<UserInfoType, String>> future = manager.whois("Nick");
+        verify(parser).sendString("WHOIS Nick", QueuePriority.NORMAL);
+        verify(scheduler).schedule(any(), eq(QueryManager.DEFAULT_TIMEOUT), eq(0L),
+                eq(TimeUnit.MILLISECONDS));
+        assertEquals(1, manager.getOutstandingCount());
+
+        manager.whoisEnded("other", Collections.emptyMap());
+        assertFalse(future.isDone());
+
+        final Map<UserInfoType, String> info =
+                Collections.singletonMap(UserInfoType.REAL_NAME, "Real name");
+        manager.whoisEnded("NICK", info);
+        assertEquals(info, future.get());
+        assertEquals(0, manager.getOutstandingCount());
+        verify(task).cancel();
+    }
+
+    @Test
+    public void testDeduplicatesQueries() {
+        final CompletableFuture<Map<UserInfoType, String>> future = manager.whois("nick");
+        assertSame(future, manager.whois("NICK"));
+        verify(parser).sendString(anyString(), any(QueuePriority.class));
+
+        manager.whoisEnded("nick", Collections.emptyMap());
+        assertTrue(future.isDone());
+        assertFalse(manager.whois("nick").isDone());
+        verify(parser, times(2)).sendString("WHOIS nick", QueuePriority.NORMAL);
+    }
+
+    @Test
+    public void testMaxOutstanding() {
+        manager.setMaxOutstanding(2);
+        manager.whois("one");
+        manager.whois("two");
+        final CompletableFuture<String> mode = manager.mode("#chan");
+        verify(parser, never()).sendString("MODE #chan", QueuePriority.NORMAL);
+        assertEquals(2, manager.getOutstandingCount());
+        assertEquals(1, manager.getPendingCount());
+
+        manager.modeReceived("#chan", "+nt");
+        assertFalse(mode.isDone());
+
+        manager.whoisEnded("two", Collections.emptyMap());
+        verify(parser).sendString("MODE #chan", QueuePriority.NORMAL);
+        assertEquals(0, manager.getPendingCount());
+
+        manager.modeReceived("#chan", "+ntk key");
+        assertEquals("+ntk key", mode.join());
+    }
+
+    @Test
+    public void testModeError() throws InterruptedException {
+        manager.setMaxOutstanding(1);
+        final CompletableFuture<String> mode = manager.mode("#chan");
+        manager.whois("nick");
+
+        manager.handleNoSuchChannel(new NumericEvent(parser, LocalDateTime.now(), 403,
+                IRCParser.tokeniseLine(":server 403 me #other :No such channel")));
+        assertFalse(mode.isDone());
+        manager.handleNoChannelModes(new NumericEvent(parser, LocalDateTime.now(), 477,
+                IRCParser.tokeniseLine(":server 477 me #CHAN :Channel doesn't support modes")));
+
+        try {
+            mode.get();
+            fail("Expected the query to fail");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof QueryFailedException);
+            assertEquals(477, ((QueryFailedException) ex.getCause()).getNumeric());
+            assertEquals("Channel doesn't support modes", ex.getCause().getMessage());
+        }
+        verify(parser).sendString("WHOIS nick", QueuePriority.NORMAL);
+        assertEquals(1, manager.getOutstandingCount());
+    }
+
+    @Test
+    public void testLabeled() {
+        final CompletableFuture<List<ReadLine>> whoisResponse = new CompletableFuture<>();
+        final CompletableFuture<List<ReadLine>> modeResponse = new CompletableFuture<>();
+        when(labels.isEnabled()).thenReturn(true);
+        when(labels.send("WHOIS nick", QueuePriority.NORMAL)).thenReturn(whoisResponse);
+        when(labels.send("MODE #chan", QueuePriority.NORMAL)).thenReturn(modeResponse);
+        final CompletableFuture<Map<UserInfoType, String>> whois = manager.whois("nick");
+        final CompletableFuture<String> mode = manager.mode("#chan");
+        verify(parser, never()).sendString(anyString(), any(QueuePriority.class));
+        assertTrue(manager.isOutstanding(QueryManager.QueryType.WHOIS));
+
+        // Replies that aren't part of the query's response are ignored.
+        manager.whoisEnded("nick", Collections.emptyMap());
+        when(labels.getCurrentResponse()).thenReturn(new CompletableFuture<>());
+        manager.modeReceived("#chan", "+s");
+        assertFalse(whois.isDone());
+        assertFalse(mode.isDone());
+
+        final Map<UserInfoType, String> info =
+                Collections.singletonMap(UserInfoType.REAL_NAME, "Real name");
+        when(labels.getCurrentResponse()).thenReturn(whoisResponse);
+        manager.whoisEnded("other", info);
+        assertFalse(whois.isDone());
+        whoisResponse.complete(Collections.emptyList());
+        assertEquals(info, whois.join());
+
+        modeResponse.complete(Collections.singletonList(new ReadLine(
+                ":server 401 me #chan :No such nick/channel",
+                IRCParser.tokeniseLine(":server 401 me #chan :No such nick/channel"))));
+        try {
+            mode.join();
+            fail("Expected the query to fail");
+        } catch (CompletionException ex) {
+            assertEquals(401, ((QueryFailedException) ex.getCause()).getNumeric());
+        }
+        assertEquals(0, manager.getOutstandingCount());
+        assertFalse(manager.isOutstanding(QueryManager.QueryType.WHOIS));
+    }
+
+    @Test
+    public void testTimeout() throws InterruptedException {
+        manager.setMaxOutstanding(1);
+        manager.setTimeout(500);
+        final CompletableFuture<String> mode = manager.mode("#chan");
+        manager.whois("nick");
+
+        final ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).schedule(captor.capture(), eq(500L), eq(0L),
+                eq(TimeUnit.MILLISECONDS));
+        captor.getValue().run();
+        final ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+        verify(parser).executeProcessingTask(task.capture());
+        assertFalse(mode.isDone());
+        task.getValue().run();
+
+        try {
+            mode.get();
+            fail("Expected the query to time out");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof TimeoutException);
+        }
+        verify(parser).sendString("WHOIS nick", QueuePriority.NORMAL);
+
+        // A late reply doesn't affect anything.
+        manager.modeReceived("#chan", "+nt");
+        assertEquals(1, manager.getOutstandingCount());
+    }
+
+    @Test
+    public void testWho() {
+        when(parser.isValidChannelName(anyString()))
+                .thenAnswer(invocation -> invocation.<String>getArgument(0).startsWith("#"));
+        final CompletableFuture<List<IRCClientInfo>> channel = manager.who("#chan");
+        final CompletableFuture<List<IRCClientInfo>> mask = manager.who("*.example.com");
+        final IRCClientInfo first = client("first");
+        final IRCClientInfo second = client("second");
+        final IRCClientInfo third = client("third");
+
+        manager.addWhoReply("#CHAN", first);
+        manager.addWhoReply("#other", second);
+        manager.addWhoReply("#chan", third);
+        manager.whoEnded("#chan,*.example.com");
+
+        assertEquals(Arrays.asList(first, third), channel.join());
+        assertEquals(Collections.singletonList(second), mask.join());
+    }
+
+    @Test
+    public void testList() {
+        final CompletableFuture<List<GroupListEntryEvent>> future = manager.list("");
+        assertSame(future, manager.list(""));
+        verify(parser).sendString("LIST", QueuePriority.NORMAL);
+
+        final GroupListEntryEvent entry = new GroupListEntryEvent(parser, LocalDateTime.now(),
+                "#chan", 10, "Topic");
+        manager.addListEntry(entry);
+        manager.listEnded();
+        assertEquals(Collections.singletonList(entry), future.join());
+
+        manager.list(">10");
+        verify(parser).sendString("LIST :>10", QueuePriority.NORMAL);
+    }
+
+    @Test
+    public void testCancelsWhenNotConnected() {
+        when(parser.sendString(anyString(), any(QueuePriority.class))).thenReturn(false);
+        manager.setMaxOutstanding(1);
+        final CompletableFuture<String> first = manager.mode("#one");
+        final CompletableFuture<String> second = manager.mode("#two");
+
+        assertTrue(first.isCancelled());
+        assertTrue(second.isCancelled());
+        assertEquals(0, manager.getOutstandingCount());
+        assertEquals(0, manager.getPendingCount());
+    }
+
+    @Test
+    public void testClear() {
+        manager.setMaxOutstanding(1);
+        final CompletableFuture<String> first = manager.mode("#one");
+        final CompletableFuture<String> second = manager.mode("#two");
+
+        manager.clear();
+        assertTrue(first.isCancelled());
+        assertTrue(second.isCancelled());
+        assertEquals(0, manager.getOutstandingCount());
+        assertEquals(0, manager.getPendingCount());
+        verify(task).cancel();
+    }
+
+    private static IRCClientInfo client(final String nickname) {
+        final IRCClientInfo client = mock(IRCClientInfo.class);
+        when(client.getNickname()).thenReturn(nickname);
+        return client;
+    }
+
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc;
+
+import com.dmdirc.parser.common.AwayState;
+import com.dmdirc.parser.common.QueuePriority;
+import com.dmdirc.parser.events.WhoResultEvent;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+@RunWith(MockitoJUnitRunner.class)
+public class WhoxTrackerTest {
+
+    @Mock private IRCParserCallbackManager callbackManager;
+    @Mock private IRCClientInfo client;
+    @Mock private IRCClientInfo other;
+    private IRCParser parser;
+    private WhoxTracker tracker;
+
+    @Before
+    public void setup() {
+        parser = spy(new IRCParser());
+        doReturn(true).when(parser).sendString(anyString(), any(QueuePriority.class));
+        doReturn(callbackManager).when(parser).getCallbackManager();
+        doReturn(true).when(parser).isKnownClient("nick");
+        doReturn(client).when(parser).getClient("nick");
+        doReturn(true).when(parser).isKnownClient("other");
+        doReturn(other).when(parser).getClient("other");
+        parser.h005Info.put(IrcConstants.ISUPPORT_WHOX, "");
+        tracker = new WhoxTracker(parser);
+    }
+
+    @Test
+    public void testPlainWhoWithoutWhox() {
+        parser.h005Info.remove(IrcConstants.ISUPPORT_WHOX);
+        assertFalse(tracker.isSupported());
+
+        tracker.sendWho("#chan", QueuePriority.LOW);
+
+        verify(parser).sendString("WHO #chan", QueuePriority.LOW);
+        assertEquals(0, tracker.getOutstandingCount());
+    }
+
+    @Test
+    public void testSendsSelectedFields() {
+        tracker.sendWho("#chan", QueuePriority.LOW);
+        tracker.setFields(EnumSet.of(WhoxTracker.Field.ACCOUNT));
+        tracker.sendWho("#other", QueuePriority.NORMAL);
+
+        verify(parser).sendString("WHO #chan %tuhfarn,1", QueuePriority.LOW);
+        verify(parser).sendString("WHO #other %tan,2", QueuePriority.NORMAL);
+        assertEquals(2, tracker.getOutstandingCount());
+    }
+
+    @Test
+    public void testAppliesRepliesWhenEnded() {
+        tracker.sendWho("#chan", QueuePriority.LOW);
+
+        assertTrue(tracker.addReply(tokens(":server 354 me 1 ident host.com nick G@ 0 :Real name")));
+        assertTrue(tracker.addReply(tokens(":server 354 me 1 id host other H acct :Other")));
+        assertTrue(tracker.addReply(tokens(":server 354 me 1 id host unknown H acct :Unknown")));
+        assertFalse(tracker.addReply(tokens(":server 354 me 99 id host nick H acct :Name")));
+        verifyZeroInteractions(client, other, callbackManager);
+
+        assertFalse(tracker.ended(LocalDateTime.now(), "#other"));
+        assertTrue(tracker.ended(LocalDateTime.now(), "#CHAN"));
+
+        verify(client).setIdentAndHost("ident", "host.com");
+        verify(client).setAwayState(AwayState.AWAY);
+        verify(client).setAccountName(null);
+        verify(client).setRealName("Real name");
+        verify(other).setAccountName("acct");
+        verify(parser, never()).getClient("unknown");
+
+        final ArgumentCaptor<WhoResultEvent> captor = ArgumentCaptor.forClass(WhoResultEvent.class);
+        verify(callbackManager).publish(captor.capture());
+        assertEquals("#chan", captor.getValue().getTarget());
+        assertEquals(2, captor.getValue().getClients().size());
+        assertEquals(2, captor.getValue().getAwayChanged().size());
+        assertEquals(0, tracker.getOutstandingCount());
+    }
+
+    @Test
+    public void testOnlyAppliesSelectedFields() {
+        tracker.setFields(EnumSet.of(WhoxTracker.Field.FLAGS));
+        tracker.sendWho("#chan", QueuePriority.LOW);
+
+        tracker.addReply(tokens(":server 354 me 1 nick G"));
+        tracker.ended(LocalDateTime.now(), "#chan");
+
+        verify(client).setAwayState(AwayState.AWAY);
+        verify(client, never()).setIdentAndHost(anyString(), anyString());
+        verify(client, never()).setRealName(anyString());
+    }
+
+    @Test
+    public void testPlainWhoRepliesDoNotEndRequest() {
+        tracker.whoSent(tokens("WHO #chan"));
+        tracker.sendWho("#chan", QueuePriority.LOW);
+
+        tracker.addPlainReply();
+        assertFalse(tracker.ended(LocalDateTime.now(), "#chan"));
+        verifyZeroInteractions(callbackManager);
+
+        tracker.addReply(tokens(":server 354 me 1 ident host.com nick G@ 0 :Real name"));
+        assertTrue(tracker.ended(LocalDateTime.now(), "#chan"));
+        verify(client).setIdentAndHost("ident", "host.com");
+    }
+
+    @Test
+    public void testRequestWithRepliesEndsBeforePlainWho() {
+        tracker.sendWho("#chan", QueuePriority.LOW);
+        tracker.whoSent(tokens("WHO #chan %tuhfarn,1"));
+        tracker.whoSent(tokens("WHO #chan"));
+
+        tracker.addReply(tokens(":server 354 me 1 ident host.com nick G@ 0 :Real name"));
+        assertTrue(tracker.ended(LocalDateTime.now(), "#chan"));
+        tracker.addPlainReply();
+        assertFalse(tracker.ended(LocalDateTime.now(), "#chan"));
+        verify(callbackManager).publish(any(WhoResultEvent.class));
+    }
+
+    @Test
+    public void testEmptyRequestWaitsForPlainWho() {
+        tracker.whoSent(tokens("WHO #chan"));
+        tracker.sendWho("#chan", QueuePriority.LOW);
+
+        // With no replies, the first end could be for either WHO.
+        assertFalse(tracker.ended(LocalDateTime.now(), "#chan"));
+        verifyZeroInteractions(callbackManager);
+        assertTrue(tracker.ended(LocalDateTime.now(), "#chan"));
+
+        final ArgumentCaptor<WhoResultEvent> captor = ArgumentCaptor.forClass(WhoResultEvent.class);
+        verify(callbackManager).publish(captor.capture());
+        assertTrue(captor.getValue().getClients().isEmpty());
+    }
+
+    @Test
+    public void testMergedPlainWhosEnd() {
+        tracker.whoSent(tokens("WHO #a"));
+        tracker.whoSent(tokens("WHO #chan"));
+        tracker.sendWho("#chan", QueuePriority.LOW);
+
+        assertFalse(tracker.ended(LocalDateTime.now(), "#a,#chan"));
+        assertTrue(tracker.ended(LocalDateTime.now(), "#chan"));
+    }
+
+    @Test
+    public void testClear() {
+        tracker.sendWho("#chan", QueuePriority.LOW);
+        tracker.clear();
+
+        assertFalse(tracker.addReply(tokens(":server 354 me 1 nick G")));
+        assertFalse(tracker.ended(LocalDateTime.now(), "#chan"));
+    }
+
+    private static String[] tokens(final String line) {
+        return IRCParser.tokeniseLine(line);
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.nio;
+
+import com.dmdirc.parser.events.ConnectErrorEvent;
+import com.dmdirc.parser.events.ServerReadyEvent;
+import com.dmdirc.parser.irc.IRCParser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.engio.mbassy.listener.Handler;
+import net.engio.mbassy.listener.Listener;
+import net.engio.mbassy.listener.References;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NioConnectionTest {
+
+    private EventLoopGroup group;
+    private ServerSocket server;
+
+    @Before
+    public void setup() throws IOException {
+        group = new EventLoopGroup(1);
+        server = new ServerSocket(0);
+        server.setSoTimeout(5000);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+        group.shutdown();
+    }
+
+    @Test
+    public void testParserRunsOnEventLoop() throws Exception {
+        final IRCParser parser = new IRCParser(
+                URI.create("irc://127.0.0.1:" + server.getLocalPort()));
+        final EventListener listener = new EventListener();
+        parser.setEventLoopGroup(group);
+        parser.getCallbackManager().subscribe(listener);
+        parser.connect();
+
+        try (Socket client = server.accept()) {
+            client.setSoTimeout(5000);
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    client.getInputStream(), StandardCharsets.UTF_8));
+            final OutputStream output = client.getOutputStream();
+
+            assertEquals("CAP LS", reader.readLine());
+            assertTrue(reader.readLine().startsWith("NICK "));
+            assertTrue(reader.readLine().startsWith("USER "));
+
+            output.write((":server 001 nick :Welcome\r\n"
+                    + ":server 005 nick NETWORK=test :are supported\r\n"
+                    + ":server 375 nick :- MOTD\r\n"
+                    + "PING :12345\r\n").getBytes(StandardCharsets.UTF_8));
+            output.flush();
+
+            assertTrue(listener.ready.tryAcquire(5, TimeUnit.SECONDS));
+            assertEquals("PONG :12345", reader.readLine());
+            assertNull(parser.getControlThread());
+            assertTrue(listener.threadName.startsWith("IRC Parser event loop"));
+
+            parser.disconnect("Bye");
+        }
+    }
+
+    @Test
+    public void testConnectErrorReported() throws Exception {
+        final int port = server.getLocalPort();
+        server.close();
+
+        final IRCParser parser = new IRCParser(URI.create("irc://127.0.0.1:" + port));
+        final EventListener listener = new EventListener();
+        parser.setEventLoopGroup(group);
+        parser.getCallbackManager().subscribe(listener);
+        parser.connect();
+
+        assertTrue(listener.connectError.tryAcquire(5, TimeUnit.SECONDS));
+    }
+
+    @Listener(references = References.Strong)
+    private static final class EventListener {
+
+        final Semaphore ready = new Semaphore(0);
+        final Semaphore connectError = new Semaphore(0);
+        volatile String threadName;
+
+        @Handler
+        public void onReady(final ServerReadyEvent event) {
+            threadName = Thread.currentThread().getName();
+            ready.release();
+        }
+
+        @Handler
+        public void onConnectError(final ConnectErrorEvent event) {
+            connectError.release();
+        }
+
+    }
+
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.outputqueue;
+
+import com.dmdirc.parser.common.QueuePriority;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class BatchingOutputQueueTest {
+
+    private BufferedReader reader;
+    private BufferedOutputStream outputStream;
+    private BatchingOutputQueue outputQueue;
+
+    @Before
+    public void setup() throws IOException {
+        PipedInputStream pipeInput = new PipedInputStream();
+        reader = new BufferedReader(new InputStreamReader(pipeInput));
+        outputStream = new BufferedOutputStream(new PipedOutputStream(pipeInput));
+        outputQueue = new BatchingOutputQueue();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testThrowsIfOutputStreamNotSet() {
+        outputQueue.sendLine("testing", QueuePriority.IMMEDIATE);
+    }
+
+    @Test
+    public void testSendsLinesToOutput() throws IOException {
+        outputQueue.setOutputStream(outputStream);
+        outputQueue.sendLine("test 123");
+        outputQueue.sendLine("456...");
+        assertEquals("test 123", reader.readLine());
+        assertEquals("456...", reader.readLine());
+    }
+
+    @Test
+    public void testDiscarding() throws IOException {
+        outputQueue.setOutputStream(outputStream);
+        outputQueue.setDiscarding(true);
+        outputQueue.sendLine("test 123");
+        outputQueue.setDiscarding(false);
+        outputQueue.sendLine("456...");
+        assertEquals("456...", reader.readLine());
+    }
+
+    @Test
+    public void testUsesThreadFactory() throws IOException {
+        final AtomicInteger created = new AtomicInteger();
+        outputQueue.setThreadFactory(r -> {
+            created.incrementAndGet();
+            return new Thread(r, "custom");
+        });
+        outputQueue.setOutputStream(outputStream);
+        outputQueue.sendLine("test 123");
+        outputQueue.sendLine("456...");
+        assertEquals("test 123", reader.readLine());
+        assertEquals("456...", reader.readLine());
+        assertEquals(1, created.get());
+    }
+
+    @Test
+    public void testSendsByPriorityInOneWrite() {
+        final CountingOutputStream stream = new CountingOutputStream();
+        outputQueue.setOutputStream(stream);
+        outputQueue.enqueue("low", QueuePriority.LOW);
+        outputQueue.enqueue("normal 1", QueuePriority.NORMAL);
+        outputQueue.enqueue("high", QueuePriority.HIGH);
+        outputQueue.enqueue("normal 2", QueuePriority.NORMAL);
+        assertEquals(4, outputQueue.queueCount());
+        assertEquals(4, outputQueue.getQueue().size());
+
+        assertEquals(4, outputQueue.sendQueued());
+        assertEquals("high\r\nnormal 1\r\nnormal 2\r\nlow\r\n", stream.toString());
+        assertEquals(1, stream.writes);
+        assertEquals(1, stream.flushes);
+        assertEquals(0, outputQueue.queueCount());
+    }
+
+    @Test
+    public void testStarvedItemsPromoted() {
+        final Clock future = Clock.fixed(Instant.now().plusSeconds(60), ZoneId.systemDefault());
+        final CountingOutputStream stream = new CountingOutputStream();
+        outputQueue = new BatchingOutputQueue(
+                QueueComparators.byPriorityThenNumber(future, Duration.ofSeconds(10)));
+        outputQueue.setOutputStream(stream);
+        outputQueue.enqueue("low", QueuePriority.LOW);
+        outputQueue.enqueue("high", QueuePriority.HIGH);
+
+        outputQueue.sendQueued();
+        assertEquals("low\r\nhigh\r\n", stream.toString());
+    }
+
+    @Test
+    public void testLongLines() {
+        final StringBuilder line = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            line.append("line ").append(i).append(' ');
+        }
+        final CountingOutputStream stream = new CountingOutputStream();
+        outputQueue.setOutputStream(stream);
+        outputQueue.enqueue(line.toString(), QueuePriority.NORMAL);
+        outputQueue.enqueue("short", QueuePriority.NORMAL);
+
+        outputQueue.sendQueued();
+        assertEquals(line + "\r\nshort\r\n", stream.toString());
+    }
+
+    @Test
+    public void testClearQueue() {
+        outputQueue.setOutputStream(new CountingOutputStream());
+        outputQueue.enqueue("low", QueuePriority.LOW);
+        outputQueue.enqueue("high", QueuePriority.HIGH);
+
+        outputQueue.clearQueue();
+        assertEquals(0, outputQueue.queueCount());
+        assertEquals(0, outputQueue.sendQueued());
+    }
+
+    @Test
+    public void testMergesQueuedLines() {
+        final CountingOutputStream stream = new CountingOutputStream();
+        outputQueue.setOutputStream(stream);
+        outputQueue.setLineMerger((queued, line) -> line.startsWith("merge")
+                ? queued + ',' + line : null);
+        outputQueue.queueLine("first", QueuePriority.NORMAL);
+        outputQueue.queueLine("merge 1", QueuePriority.NORMAL);
+        outputQueue.queueLine("merge 2", QueuePriority.LOW);
+        outputQueue.queueLine("merge 3", QueuePriority.LOW);
+        assertEquals(2, outputQueue.queueCount());
+
+        outputQueue.sendQueued();
+        // Lines are never merged into ones that have already been sent.
+        outputQueue.queueLine("merge 4", QueuePriority.LOW);
+        outputQueue.sendQueued();
+        assertEquals("first,merge 1\r\nmerge 2,merge 3\r\nmerge 4\r\n", stream.toString());
+    }
+
+    @Test
+    public void testItemRemovedWhileSending() {
+        // Remove the item about to be sent part way through picking it, as a
+        // concurrent merge would.
+        final Comparator<QueueItem> comparator = QueueComparators.byPriorityThenNumber(
+                Duration.ofSeconds(10));
+        final AtomicBoolean removed = new AtomicBoolean();
+        final QueueItem normal = QueueItem.create("normal", QueuePriority.NORMAL);
+        final CountingOutputStream stream = new CountingOutputStream();
+        outputQueue = new BatchingOutputQueue((o1, o2) -> {
+            if (removed.compareAndSet(false, true)) {
+                outputQueue.remove(normal);
+            }
+            return comparator.compare(o1, o2);
+        });
+        outputQueue.setOutputStream(stream);
+        outputQueue.enqueue(normal);
+        outputQueue.enqueue("low", QueuePriority.LOW);
+
+        assertEquals(1, outputQueue.sendQueued());
+        assertEquals("low\r\n", stream.toString());
+        assertEquals(0, outputQueue.queueCount());
+    }
+
+    @Test
+    public void testMergingWhileSending() throws InterruptedException {
+        final CountingOutputStream stream = new CountingOutputStream();
+        outputQueue.setOutputStream(stream);
+        outputQueue.setLineMerger((queued, line) -> queued + ',' + line);
+        final int lines = 20000;
+        final Thread producer = new Thread(() -> {
+            for (int i = 0; i < lines; i++) {
+                outputQueue.queueLine(String.valueOf(i), QueuePriority.NORMAL);
+            }
+        });
+        producer.start();
+        while (producer.isAlive()) {
+            outputQueue.sendQueued();
+        }
+        producer.join();
+        outputQueue.sendQueued();
+
+        assertEquals(0, outputQueue.queueCount());
+        final String[] sent = stream.toString().replace("\r\n", ",").split(",");
+        assertEquals(lines, sent.length);
+        for (int i = 0; i < lines; i++) {
+            assertEquals(String.valueOf(i), sent[i]);
+        }
+    }
+
+    private static class CountingOutputStream extends ByteArrayOutputStream {
+
+        private int writes;
+        private int flushes;
+
+        @Override
+        public synchronized void write(final byte[] b, final int off, final int len) {
+            writes++;
+            super.write(b, off, len);
+        }
+
+        @Override
+        public void flush() {
+            flushes++;
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.outputqueue;
+
+import com.dmdirc.parser.irc.ServerType;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class FloodProfileTest {
+
+    @Test
+    public void testLineCost() {
+        assertEquals(2000, FloodProfile.RFC1459.getCost("PRIVMSG #chan :hello"));
+        assertEquals(0, FloodProfile.NONE.getCost("PRIVMSG #chan :hello"));
+    }
+
+    @Test
+    public void testByteCost() {
+        final StringBuilder line = new StringBuilder("PRIVMSG #chan :");
+        while (line.length() < 238) {
+            line.append('x');
+        }
+        // 240 bytes including the terminator is two seconds.
+        assertEquals(4000, FloodProfile.IRCU.getCost(line.toString()));
+    }
+
+    @Test
+    public void testByteCostUsesEncodedLength() {
+        final StringBuilder line = new StringBuilder("PRIVMSG #chan :x");
+        for (int i = 0; i < 101; i++) {
+            line.append('\u00e9');
+        }
+        for (int i = 0; i < 5; i++) {
+            line.append("\ud83d\ude00");
+        }
+        // 127 chars, but 238 bytes as UTF-8, so 240 bytes with the terminator.
+        assertEquals(4000, FloodProfile.IRCU.getCost(line.toString()));
+    }
+
+    @Test
+    public void testCommandCost() {
+        final FloodProfile profile = new FloodProfile(10000, 1000, 0,
+                Collections.singletonMap("WHO", 3000L));
+        assertEquals(4000, profile.getCost("WHO #chan"));
+        assertEquals(4000, profile.getCost("who"));
+        assertEquals(4000, profile.getCost("@label=1 WHO #chan %nuhaf"));
+        assertEquals(1000, profile.getCost("WHOIS nick"));
+    }
+
+    @Test
+    public void testForServerType() {
+        assertSame(FloodProfile.IRCU, FloodProfile.forServerType(ServerType.SNIRCD));
+        assertSame(FloodProfile.HYBRID, FloodProfile.forServerType(ServerType.CHARYBDIS));
+        assertSame(FloodProfile.INSPIRCD, FloodProfile.forServerType(ServerType.INSPIRCD));
+        assertSame(FloodProfile.NONE, FloodProfile.forServerType(ServerType.BITLBEE));
+        assertSame(FloodProfile.RFC1459, FloodProfile.forServerType(ServerType.GENERIC));
+    }
+
+}
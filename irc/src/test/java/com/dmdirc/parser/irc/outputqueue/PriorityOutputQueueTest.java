@@ -32,6 +32,7 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
 
@@ -73,4 +74,17 @@ public class PriorityOutputQueueTest {
         assertEquals("456...", reader.readLine());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testUsesThreadFactory() throws IOException {
+        final AtomicInteger created = new AtomicInteger();
+        outputQueue.setThreadFactory(r -> {
+            created.incrementAndGet();
+            return new Thread(r, "custom");
+        });
+        outputQueue.setOutputStream(outputStream);
+        outputQueue.sendLine("test 123");
+        assertEquals("test 123", reader.readLine());
+        assertEquals(1, created.get());
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.outputqueue;
+
+import com.dmdirc.parser.common.QueuePriority;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TargetFairQueueTest {
+
+    private TargetFairQueue queue;
+
+    @Before
+    public void setup() {
+        queue = new TargetFairQueue(QueueComparators.byPriorityThenNumber());
+    }
+
+    @Test
+    public void testGetTarget() {
+        assertEquals("#chan", TargetFairQueue.getTarget("PRIVMSG #Chan :hello there"));
+        assertEquals("#chan", TargetFairQueue.getTarget("@label=1 :me PRIVMSG #chan :hi"));
+        assertEquals("#a", TargetFairQueue.getTarget("JOIN #a,#b key"));
+        assertEquals("nick", TargetFairQueue.getTarget("WHOIS nick"));
+        assertEquals("", TargetFairQueue.getTarget("PONG :12345"));
+        assertEquals("", TargetFairQueue.getTarget("QUIT"));
+    }
+
+    @Test
+    public void testSameTargetIsFifo() {
+        add(QueuePriority.NORMAL, "PRIVMSG #a :1", "PRIVMSG #a :2", "PRIVMSG #a :3");
+
+        assertEquals(Arrays.asList("PRIVMSG #a :1", "PRIVMSG #a :2", "PRIVMSG #a :3"), drain());
+    }
+
+    @Test
+    public void testPasteDoesNotStarveOtherTargets() {
+        final String paste = "PRIVMSG #paste :" + pad(400);
+        add(QueuePriority.NORMAL, paste, paste, paste, paste);
+        add(QueuePriority.NORMAL, "PRIVMSG #other :hi", "PRIVMSG nick :hello");
+
+        assertEquals(Arrays.asList(paste, "PRIVMSG #other :hi", "PRIVMSG nick :hello", paste,
+                paste, paste), drain());
+    }
+
+    @Test
+    public void testTargetsShareBytes() {
+        final String paste = "PRIVMSG #paste :" + pad(400);
+        final String line = "PRIVMSG #chat :" + pad(150);
+        add(QueuePriority.NORMAL, paste, paste, paste);
+        add(QueuePriority.NORMAL, line, line, line, line, line);
+
+        // Each turn is worth one long line, or three short ones.
+        assertEquals(Arrays.asList(paste, line, line, line, paste, line, line, paste), drain());
+    }
+
+    @Test
+    public void testPriorityIsStrict() {
+        add(QueuePriority.LOW, "PRIVMSG #a :low");
+        add(QueuePriority.NORMAL, "PRIVMSG #b :normal");
+        add(QueuePriority.HIGH, "PRIVMSG #a :high");
+
+        assertEquals(Arrays.asList("PRIVMSG #a :high", "PRIVMSG #b :normal", "PRIVMSG #a :low"),
+                drain());
+    }
+
+    @Test
+    public void testStarvedItemsAreSentFirst() {
+        final Clock queued = Clock.fixed(Instant.EPOCH, ZoneId.systemDefault());
+        final Clock now = Clock.offset(queued, Duration.ofSeconds(20));
+        queue = new TargetFairQueue(
+                QueueComparators.byPriorityThenNumber(now, Duration.ofSeconds(10)));
+        queue.add(QueueItem.create(queued, "PRIVMSG #a :old", QueuePriority.LOW));
+        queue.add(QueueItem.create(now, "PRIVMSG #b :new", QueuePriority.HIGH));
+
+        assertEquals(Arrays.asList("PRIVMSG #a :old", "PRIVMSG #b :new"), drain());
+    }
+
+    @Test
+    public void testPeekMatchesPoll() {
+        add(QueuePriority.NORMAL, "PRIVMSG #a :1", "PRIVMSG #b :1", "PRIVMSG #a :2");
+
+        while (!queue.isEmpty()) {
+            final QueueItem item = queue.peek();
+            assertEquals(item, queue.peek());
+            assertEquals(item, queue.poll());
+        }
+        assertNull(queue.peek());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testRemove() {
+        final QueueItem item = QueueItem.create("PRIVMSG #a :2", QueuePriority.NORMAL);
+        add(QueuePriority.NORMAL, "PRIVMSG #a :1");
+        queue.add(item);
+        add(QueuePriority.NORMAL, "PRIVMSG #b :1");
+
+        assertTrue(queue.remove(item));
+        assertFalse(queue.remove(item));
+        queue.add(item.withLine("PRIVMSG #a,#c :2"));
+
+        assertEquals(Arrays.asList("PRIVMSG #a :1", "PRIVMSG #a,#c :2", "PRIVMSG #b :1"),
+                drain());
+    }
+
+    @Test
+    public void testSizeAndClear() throws InterruptedException {
+        add(QueuePriority.NORMAL, "PRIVMSG #a :1", "PRIVMSG #b :1");
+        add(QueuePriority.LOW, "PRIVMSG #a :2");
+
+        assertEquals(3, queue.size());
+        assertEquals(3, queue.stream().count());
+
+        queue.clear();
+        assertEquals(0, queue.size());
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+    }
+
+    private void add(final QueuePriority priority, final String... lines) {
+        for (String line : lines) {
+            queue.add(QueueItem.create(line, priority));
+        }
+    }
+
+    private List<String> drain() {
+        final List<String> lines = new ArrayList<>();
+        QueueItem item;
+        while ((item = queue.poll()) != null) {
+            lines.add(item.getLine());
+        }
+        return lines;
+    }
+
+    private static String pad(final int length) {
+        final StringBuilder builder = new StringBuilder(length);
+        while (builder.length() < length) {
+            builder.append('x');
+        }
+        return builder.toString();
+    }
+
+}
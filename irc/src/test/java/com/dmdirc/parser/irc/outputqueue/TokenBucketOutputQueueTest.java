@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.outputqueue;
+
+import com.dmdirc.parser.common.QueuePriority;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+
+public class TokenBucketOutputQueueTest {
+
+    private final AtomicLong time = new AtomicLong();
+    private ByteArrayOutputStream output;
+    private TokenBucketOutputQueue queue;
+
+    @Before
+    public void setup() {
+        output = new ByteArrayOutputStream();
+        queue = new TokenBucketOutputQueue(FloodProfile.RFC1459, time::get);
+        queue.setOutputStream(output);
+    }
+
+    @Test
+    public void testEmptyQueueWaitsForever() {
+        assertEquals(Long.MAX_VALUE, queue.getDelay());
+    }
+
+    @Test
+    public void testBurstThenDeadline() throws InterruptedException {
+        for (int i = 0; i < 7; i++) {
+            queue.enqueue("PRIVMSG #chan :" + i, QueuePriority.NORMAL);
+        }
+
+        // Ten seconds of capacity at two seconds per line.
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, queue.getDelay());
+            assertEquals("PRIVMSG #chan :" + i, queue.takeNext().getLine());
+        }
+        assertEquals(TimeUnit.SECONDS.toNanos(2), queue.getDelay());
+
+        advance(1500);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), queue.getDelay());
+
+        advance(500);
+        assertEquals("PRIVMSG #chan :5", queue.takeNext().getLine());
+        assertEquals(TimeUnit.SECONDS.toNanos(2), queue.getDelay());
+    }
+
+    @Test
+    public void testPriorityOrder() throws InterruptedException {
+        queue.enqueue("low", QueuePriority.LOW);
+        queue.enqueue("high", QueuePriority.HIGH);
+
+        assertEquals("high", queue.takeNext().getLine());
+        assertEquals("low", queue.takeNext().getLine());
+    }
+
+    @Test
+    public void testOnlyMergesLinesForTheSameTarget() throws InterruptedException {
+        queue.setLineMerger((queued, line) -> queued + '|' + line);
+        queue.queueLine("PRIVMSG #b :paste", QueuePriority.NORMAL);
+        queue.queueLine("PRIVMSG #a :x", QueuePriority.NORMAL);
+        queue.queueLine("PRIVMSG #a :y", QueuePriority.NORMAL);
+        // Merging this into the line for #a would send it ahead of the paste.
+        queue.queueLine("PRIVMSG #b :x", QueuePriority.NORMAL);
+
+        assertEquals(3, queue.queueCount());
+        assertEquals("PRIVMSG #b :paste", queue.takeNext().getLine());
+        assertEquals("PRIVMSG #b :x", queue.takeNext().getLine());
+        assertEquals("PRIVMSG #a :x|PRIVMSG #a :y", queue.takeNext().getLine());
+    }
+
+    @Test
+    public void testImmediateLinesAreCharged() {
+        queue.sendLine("PONG :1", QueuePriority.IMMEDIATE);
+
+        assertEquals("PONG :1\r\n", output.toString());
+        assertEquals(8000, queue.getAvailable());
+    }
+
+    @Test
+    public void testFloodWarningBacksOff() {
+        queue.enqueue("PRIVMSG #chan :hi", QueuePriority.NORMAL);
+        queue.floodWarning();
+
+        assertEquals(1, queue.getFloodWarnings());
+        assertEquals(0.5, queue.getRate(), 0.001);
+        assertEquals(0, queue.getAvailable());
+        assertEquals(TimeUnit.SECONDS.toNanos(4), queue.getDelay());
+
+        queue.floodWarning();
+        assertEquals(0.25, queue.getRate(), 0.001);
+
+        // The rate recovers a step for each quiet interval.
+        advance(TimeUnit.SECONDS.toMillis(30));
+        assertEquals(0.375, queue.getRate(), 0.001);
+        advance(TimeUnit.SECONDS.toMillis(300));
+        assertEquals(1, queue.getRate(), 0.001);
+    }
+
+    @Test
+    public void testProfileChange() {
+        queue.setProfile(FloodProfile.NONE);
+        for (int i = 0; i < 100; i++) {
+            queue.enqueue("PRIVMSG #chan :" + i, QueuePriority.NORMAL);
+        }
+
+        assertEquals(0, queue.getDelay());
+        assertEquals(0, queue.getAvailable());
+    }
+
+    @Test
+    public void testSendsLinesToOutput() throws InterruptedException {
+        queue = new TokenBucketOutputQueue();
+        queue.setOutputStream(output);
+        queue.sendLine("test 123");
+        queue.sendLine("456...");
+
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!"test 123\r\n456...\r\n".equals(output.toString())
+                && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("test 123\r\n456...\r\n", output.toString());
+        queue.clearQueue();
+    }
+
+    private void advance(final long millis) {
+        time.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+}
@@ -22,9 +22,9 @@
 
 package com.dmdirc.parser.irc.processors;
 
-import com.dmdirc.parser.common.CallbackManager;
 import com.dmdirc.parser.events.PasswordRequiredEvent;
 import com.dmdirc.parser.irc.IRCParser;
+import com.dmdirc.parser.irc.IRCParserCallbackManager;
 import com.dmdirc.parser.irc.ProcessingManager;
 
 import org.junit.Before;
@@ -46,7 +46,7 @@ public class Process464Test {
 
     @Mock private IRCParser parser;
     @Mock private ProcessingManager processingManager;
-    @Mock private CallbackManager callbackManager;
+    @Mock private IRCParserCallbackManager callbackManager;
     @Captor private ArgumentCaptor<PasswordRequiredEvent> eventCaptor;
     private Process464 processor;
 
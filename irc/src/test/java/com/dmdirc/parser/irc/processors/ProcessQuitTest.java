@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.dmdirc.parser.irc.processors;
+
+import com.dmdirc.parser.events.ChannelQuitEvent;
+import com.dmdirc.parser.events.ParserEvent;
+import com.dmdirc.parser.events.QuitEvent;
+import com.dmdirc.parser.irc.IRCChannelClientInfo;
+import com.dmdirc.parser.irc.IRCChannelInfo;
+import com.dmdirc.parser.irc.IRCClientInfo;
+import com.dmdirc.parser.irc.IRCParser;
+import com.dmdirc.parser.irc.IRCParserCallbackManager;
+import com.dmdirc.parser.irc.IRCStringConverter;
+import com.dmdirc.parser.irc.NetsplitTracker;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ProcessQuitTest {
+
+    @Mock private IRCParser parser;
+    @Mock private IRCParserCallbackManager callbackManager;
+    @Mock private IRCChannelInfo channel1;
+    @Mock private IRCChannelInfo channel2;
+    @Mock private NetsplitTracker netsplitTracker;
+    private IRCClientInfo client;
+    private ProcessQuit processor;
+
+    @Before
+    public void setup() {
+        when(parser.getStringConverter()).thenReturn(new IRCStringConverter());
+        when(parser.getCallbackManager()).thenReturn(callbackManager);
+        when(parser.getNetsplitTracker()).thenReturn(netsplitTracker);
+        when(parser.isKnownClient(":nick!user@host")).thenReturn(true);
+        when(channel1.getName()).thenReturn("#one");
+        when(channel2.getName()).thenReturn("#two");
+
+        client = new IRCClientInfo(parser, null, "nick!user@host");
+        when(parser.getClient(":nick!user@host")).thenReturn(client);
+
+        processor = new ProcessQuit(parser);
+    }
+
+    @Test
+    public void testOnlyVisitsClientsChannels() {
+        final IRCChannelClientInfo member1 = new IRCChannelClientInfo(parser, null, client, channel1);
+        final IRCChannelClientInfo member2 = new IRCChannelClientInfo(parser, null, client, channel2);
+
+        processor.process(LocalDateTime.now(), "QUIT", ":nick!user@host", "QUIT", "Bye");
+
+        verify(parser, never()).getChannels();
+        verify(channel1).delClient(client);
+        verify(channel2).delClient(client);
+        verify(parser).removeClient(client);
+
+        final ArgumentCaptor<ParserEvent> captor = ArgumentCaptor.forClass(ParserEvent.class);
+        verify(callbackManager, times(3)).publish(captor.capture());
+        final List<ParserEvent> events = captor.getAllValues();
+        assertTrue(events.get(2) instanceof QuitEvent);
+        assertEquals(2, events.stream().filter(ChannelQuitEvent.class::isInstance)
+                .map(e -> ((ChannelQuitEvent) e).getClient())
+                .filter(c -> c == member1 || c == member2).distinct().count());
+    }
+
+    @Test
+    public void testQuitWithNoChannels() {
+        processor.process(LocalDateTime.now(), "QUIT", ":nick!user@host", "QUIT", "Bye");
+
+        final ArgumentCaptor<ParserEvent> captor = ArgumentCaptor.forClass(ParserEvent.class);
+        verify(callbackManager).publish(captor.capture());
+        assertSame(client, ((QuitEvent) captor.getValue()).getClient());
+    }
+
+    @Test
+    public void testNetsplitWithoutUserEvents() {
+        new IRCChannelClientInfo(parser, null, client, channel1);
+        when(netsplitTracker.quit(any(), eq(client), eq("hub.net leaf.net"), anyList()))
+                .thenReturn(true);
+
+        processor.process(LocalDateTime.now(), "QUIT", ":nick!user@host", "QUIT",
+                "hub.net leaf.net");
+
+        verify(channel1).delClient(client);
+        verify(parser).removeClient(client);
+        verify(callbackManager, never()).publish(any());
+    }
+
+}